@@ -210,6 +210,22 @@ CREATE TABLE mh_job_mh_service_registration (
 
 CREATE INDEX IX_mh_job_mh_service_registration_servicesRegistration_id ON mh_job_mh_service_registration (servicesRegistration_id);
 
+CREATE TABLE mh_workflow_journal (
+  id BIGINT NOT NULL,
+  workflow_id BIGINT NOT NULL,
+  sequence_number BIGINT NOT NULL,
+  shell MEDIUMTEXT NOT NULL,
+  operations MEDIUMTEXT,
+  operation_count INTEGER NOT NULL,
+  operation_positions TEXT(65535),
+  operation_checksums TEXT(65535),
+  mediapackage MEDIUMTEXT,
+  mediapackage_checksum VARCHAR(64),
+  PRIMARY KEY (id),
+  CONSTRAINT UNQ_mh_workflow_journal UNIQUE (workflow_id, sequence_number),
+  CONSTRAINT FK_mh_workflow_journal_workflow_id FOREIGN KEY (workflow_id) REFERENCES mh_job (id) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
 CREATE TABLE mh_incident (
   id BIGINT NOT NULL,
   jobid BIGINT,
@@ -323,6 +339,13 @@ CREATE INDEX IX_mh_user_action_outpoint ON mh_user_action (outpoint);
 CREATE INDEX IX_mh_user_action_mediapackage_id ON mh_user_action (mediapackage);
 CREATE INDEX IX_mh_user_action_type ON mh_user_action (type);
 
+CREATE TABLE mh_user_footprint_histogram (
+  mediapackage VARCHAR(128) NOT NULL,
+  views INTEGER,
+  footprints MEDIUMTEXT,
+  PRIMARY KEY (mediapackage)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
 CREATE TABLE mh_oaipmh_harvesting (
   url VARCHAR(255) NOT NULL,
   last_harvested datetime,
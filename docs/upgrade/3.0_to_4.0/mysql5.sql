@@ -192,4 +192,38 @@ ADD INDEX IX_mh_assets_asset_checksum (checksum),
 ADD INDEX IX_mh_assets_asset_mediapackage_element_id (mediapackage_element_id);
 
 
+
+####
+# mh_workflow_journal
+##
+
+CREATE TABLE mh_workflow_journal (
+  id BIGINT NOT NULL,
+  workflow_id BIGINT NOT NULL,
+  sequence_number BIGINT NOT NULL,
+  shell MEDIUMTEXT NOT NULL,
+  operations MEDIUMTEXT,
+  operation_count INTEGER NOT NULL,
+  operation_positions TEXT(65535),
+  operation_checksums TEXT(65535),
+  mediapackage MEDIUMTEXT,
+  mediapackage_checksum VARCHAR(64),
+  PRIMARY KEY (id),
+  CONSTRAINT UNQ_mh_workflow_journal UNIQUE (workflow_id, sequence_number),
+  CONSTRAINT FK_mh_workflow_journal_workflow_id FOREIGN KEY (workflow_id) REFERENCES mh_job (id) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+
+####
+# mh_user_footprint_histogram
+##
+
+CREATE TABLE mh_user_footprint_histogram (
+  mediapackage VARCHAR(128) NOT NULL,
+  views INTEGER,
+  footprints MEDIUMTEXT,
+  PRIMARY KEY (mediapackage)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+
 SET FOREIGN_KEY_CHECKS = 1;
@@ -58,6 +58,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -81,6 +84,14 @@ public class AssetManagerWithMessaging extends AssetManagerDecorator
 
   private final AbstractIndexProducer indexProducerMsgReceiver;
 
+  /** Orders snapshots by the identifier of their mediapackage */
+  private static final Comparator<Snapshot> BY_MEDIAPACKAGE_ID = new Comparator<Snapshot>() {
+    @Override
+    public int compare(Snapshot a, Snapshot b) {
+      return a.getMediaPackage().getIdentifier().toString().compareTo(b.getMediaPackage().getIdentifier().toString());
+    }
+  };
+
   public AssetManagerWithMessaging(final AssetManager delegate, final MessageSender messageSender,
           MessageReceiver messageReceiver, AuthorizationService authSvc, OrganizationDirectoryService orgDir,
           SecurityService secSvc, Workspace workspace, final String systemUserName) {
@@ -130,17 +141,29 @@ public class AssetManagerWithMessaging extends AssetManagerDecorator
         final Map<String, List<Snapshot>> byOrg = r.getSnapshots().groupMulti(Snapshots.getOrganizationId);
         final IndexRecreationBatch batch = mkRecreationBatch(indexName, AssetManagerItem.ASSETMANAGER_QUEUE_PREFIX,
                 (int) r.getSize());
+        // Partition the snapshots of each organization into ranges of mediapackage identifiers
+        final List<Runnable> partitions = new ArrayList<>();
         for (final Map.Entry<String, List<Snapshot>> es : byOrg.entrySet()) {
           final Organization organization = AssetManagerWithMessaging.this.orgDir.getOrganization(es.getKey());
-          for (final Snapshot e : es.getValue()) {
-            batch.update(organization, new P1Lazy<Serializable>() {
+          final List<Snapshot> snapshots = new ArrayList<>(es.getValue());
+          Collections.sort(snapshots, BY_MEDIAPACKAGE_ID);
+          for (final List<Snapshot> range : partition(snapshots, getRepopulateParallelism())) {
+            partitions.add(new Runnable() {
               @Override
-              public Serializable get1() {
-                return mkTakeSnapshotMessage(e);
+              public void run() {
+                for (final Snapshot e : range) {
+                  batch.update(organization, new P1Lazy<Serializable>() {
+                    @Override
+                    public Serializable get1() {
+                      return mkTakeSnapshotMessage(e);
+                    }
+                  });
+                }
               }
             });
           }
         }
+        repopulatePartitions(partitions);
         logger.info("Populating index | end");
         Organization organization = new DefaultOrganization();
         SecurityUtil.runAs(getSecurityService(), organization,
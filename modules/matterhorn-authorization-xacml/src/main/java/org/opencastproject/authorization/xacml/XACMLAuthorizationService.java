@@ -48,6 +48,8 @@ import org.opencastproject.security.api.Role;
 import org.opencastproject.security.api.SecurityService;
 import org.opencastproject.security.api.User;
 import org.opencastproject.series.api.SeriesService;
+import org.opencastproject.util.Checksum;
+import org.opencastproject.util.ChecksumType;
 import org.opencastproject.util.MimeTypes;
 import org.opencastproject.util.NotFoundException;
 import org.opencastproject.util.data.Collections;
@@ -61,6 +63,9 @@ import org.opencastproject.util.data.Tuple;
 import org.opencastproject.util.data.functions.Options;
 import org.opencastproject.workspace.api.Workspace;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.NotImplementedException;
@@ -83,6 +88,8 @@ import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 
 import javax.xml.bind.JAXBException;
 
@@ -99,6 +106,12 @@ public class XACMLAuthorizationService implements AuthorizationService {
 
   public static final String READ_PERMISSION = "read";
 
+  /** The maximum number of parsed policies to keep */
+  private static final int POLICY_CACHE_SIZE = 1000;
+
+  /** The maximum number of decisions to keep */
+  private static final int DECISION_CACHE_SIZE = 10000;
+
   /** The workspace */
   protected Workspace workspace;
 
@@ -108,6 +121,17 @@ public class XACMLAuthorizationService implements AuthorizationService {
   /** The series service */
   protected SeriesService seriesService;
 
+  /** The policy decision points of the policies, by policy URI and checksum */
+  private final Cache<String, PolicyDecisionPoint> policyCache = CacheBuilder.newBuilder()
+          .maximumSize(POLICY_CACHE_SIZE).build();
+
+  /**
+   * The decisions, by policy, media package, roles and action. The policies written by {@link XACMLUtils} only match
+   * the roles of a user, so users with the same roles share decisions.
+   */
+  private final Cache<String, Boolean> decisionCache = CacheBuilder.newBuilder().maximumSize(DECISION_CACHE_SIZE)
+          .build();
+
   @Override
   public Tuple<AccessControlList, AclScope> getActiveAcl(final MediaPackage mp) {
     // tuple up with episode flavor
@@ -223,7 +247,7 @@ public class XACMLAuthorizationService implements AuthorizationService {
         URI uri;
         InputStream in = null;
         try {
-          in = IOUtils.toInputStream(xacmlContent);
+          in = IOUtils.toInputStream(xacmlContent, "UTF-8");
           uri = workspace.put(mp.getIdentifier().toString(), elementId, XACML_FILENAME, in);
         } catch (IOException e) {
           throw new MediaPackageException("Error storing xacml for mediapackage " + mp.getIdentifier());
@@ -238,8 +262,8 @@ public class XACMLAuthorizationService implements AuthorizationService {
         attachment.setURI(uri);
         attachment.setIdentifier(elementId);
         attachment.setMimeType(MimeTypes.XML);
-        // setting the URI to a new source so the checksum will most like be invalid
-        attachment.setChecksum(null);
+        // The checksum identifies the policy in the policy cache, which saves reading the file to check permissions
+        attachment.setChecksum(Checksum.createFor(ChecksumType.DEFAULT_TYPE, xacmlContent));
         mp.add(attachment);
 
         logger.info("Saved XACML under {}", uri);
@@ -495,14 +519,47 @@ public class XACMLAuthorizationService implements AuthorizationService {
         return getXacmlAttachment(mp).map(new Function<Attachment, Boolean>() {
           @Override
           public Boolean apply(Attachment attachment) {
-            final File xacmlPolicyFile = fromWorkspace(attachment.getURI());
-            if (xacmlPolicyFile == null) {
-              logger.warn("Unable to read XACML file from {}! Prevent access permissions.", attachment);
-              return false;
+            // Policies without a checksum are identified by the checksum of their file
+            File xacmlPolicyFile = null;
+            Checksum checksum = attachment.getChecksum();
+            if (checksum == null) {
+              xacmlPolicyFile = fromWorkspace(attachment.getURI());
+              if (xacmlPolicyFile == null) {
+                logger.warn("Unable to read XACML file from {}! Prevent access permissions.", attachment);
+                return false;
+              }
+              try {
+                checksum = Checksum.create(ChecksumType.DEFAULT_TYPE, xacmlPolicyFile);
+              } catch (IOException e) {
+                logger.warn("Unable to read XACML file from {}! Prevent access permissions.", attachment);
+                return false;
+              }
             }
+            final String policyKey = attachment.getURI() + " " + checksum;
 
-            final RequestContext requestCtx = RequestResponseContextFactory.createRequestCtx();
             final User user = securityService.getUser();
+            Set<String> roles = new TreeSet<String>();
+            for (Role role : user.getRoles()) {
+              roles.add(role.getName());
+            }
+            final String decisionKey = policyKey + " " + mp.getIdentifier() + " " + action + " " + roles;
+            Boolean decision = decisionCache.getIfPresent(decisionKey);
+            if (decision != null)
+              return decision;
+
+            PolicyDecisionPoint pdp = policyCache.getIfPresent(policyKey);
+            if (pdp == null) {
+              if (xacmlPolicyFile == null)
+                xacmlPolicyFile = fromWorkspace(attachment.getURI());
+              if (xacmlPolicyFile == null) {
+                logger.warn("Unable to read XACML file from {}! Prevent access permissions.", attachment);
+                return false;
+              }
+              pdp = getPolicyDecisionPoint(xacmlPolicyFile);
+              policyCache.put(policyKey, pdp);
+            }
+
+            final RequestContext requestCtx = RequestResponseContextFactory.createRequestCtx();
 
             // Create a subject type
             SubjectType subject = new SubjectType();
@@ -545,9 +602,12 @@ public class XACMLAuthorizationService implements AuthorizationService {
               return false;
             }
 
-            PolicyDecisionPoint pdp = getPolicyDecisionPoint(xacmlPolicyFile);
-
-            return pdp.evaluate(requestCtx).getDecision() == XACMLConstants.DECISION_PERMIT;
+            // The policy decision point is shared, so it evaluates one request at a time
+            synchronized (pdp) {
+              decision = pdp.evaluate(requestCtx).getDecision() == XACMLConstants.DECISION_PERMIT;
+            }
+            decisionCache.put(decisionKey, decision);
+            return decision;
           }
         }).getOrElse(true);
       }
@@ -21,6 +21,7 @@
 
 package org.opencastproject.authorization.xacml;
 
+import org.opencastproject.mediapackage.Attachment;
 import org.opencastproject.mediapackage.MediaPackage;
 import org.opencastproject.mediapackage.MediaPackageBuilderFactory;
 import org.opencastproject.security.api.AccessControlEntry;
@@ -33,6 +34,8 @@ import org.opencastproject.security.api.JaxbUser;
 import org.opencastproject.security.api.Organization;
 import org.opencastproject.security.api.SecurityService;
 import org.opencastproject.security.api.User;
+import org.opencastproject.util.Checksum;
+import org.opencastproject.util.ChecksumType;
 import org.opencastproject.util.NotFoundException;
 import org.opencastproject.util.data.Option;
 import org.opencastproject.workspace.api.Workspace;
@@ -196,6 +199,35 @@ public class XacmlSecurityTest {
     Assert.assertFalse(authzService.hasPermission(mediapackage, "comment"));
   }
 
+  @Test
+  public void testPolicyCache() throws Exception {
+    MediaPackage mediapackage = MediaPackageBuilderFactory.newInstance().newMediaPackageBuilder().createNew();
+    AccessControlList acl = new AccessControlList();
+    acl.getEntries().add(new AccessControlEntry("admin", "write", true));
+    acl.getEntries().add(new AccessControlEntry("student", "read", true));
+    Attachment attachment = authzService.setAcl(mediapackage, AclScope.Series, acl).getB();
+    File policyFile = new File(attachment.getURI());
+    Assert.assertEquals(Checksum.create(ChecksumType.DEFAULT_TYPE, policyFile), attachment.getChecksum());
+
+    currentRoles.clear();
+    currentRoles.add(new JaxbRole("admin", organization));
+    Assert.assertTrue(authzService.hasPermission(mediapackage, "write"));
+
+    // Policies with a checksum are not read again, neither for the same roles nor for others
+    Assert.assertTrue(policyFile.delete());
+    Assert.assertTrue(authzService.hasPermission(mediapackage, "write"));
+    Assert.assertFalse(authzService.hasPermission(mediapackage, "read"));
+    currentRoles.clear();
+    currentRoles.add(new JaxbRole("student", organization));
+    Assert.assertTrue(authzService.hasPermission(mediapackage, "read"));
+    Assert.assertFalse(authzService.hasPermission(mediapackage, "write"));
+
+    // A new policy is evaluated
+    acl.getEntries().add(new AccessControlEntry("student", "write", true));
+    authzService.setAcl(mediapackage, AclScope.Series, acl);
+    Assert.assertTrue(authzService.hasPermission(mediapackage, "write"));
+  }
+
   static class WorkspaceStub implements Workspace {
 
     /** The default workspace base, this is set to the target directory within the module. */
@@ -83,10 +83,16 @@ import javax.persistence.Version;
         @NamedQuery(name = "Job.statuses", query = "SELECT j FROM Job j "
                 + "where j.status in :statuses order by j.dateCreated"),
         @NamedQuery(name = "Job.all", query = "SELECT j FROM Job j order by j.dateCreated"),
+        @NamedQuery(name = "Job.status.ids", query = "SELECT j.id, j.status FROM Job j WHERE j.id IN :ids"),
+        @NamedQuery(name = "Job.payload.status.ids", query = "SELECT j.id, j.payload FROM Job j "
+                + "WHERE j.status = :status AND j.id IN :ids"),
         @NamedQuery(name = "Job.dispatchable.status", query = "SELECT j FROM Job j where j.dispatchable = true and "
                 + "j.status in :statuses order by j.dateCreated"),
         @NamedQuery(name = "Job.dispatchable.status.idfilter", query = "SELECT j.id FROM Job j "
                 + "WHERE j.dispatchable = true AND j.status IN :statuses AND j.id IN :jobids ORDER BY j.dateCreated"),
+        @NamedQuery(name = "Job.dispatchable.status.queue", query = "SELECT j.id, j.creatorServiceRegistration.serviceType, "
+                + "j.operation, j.status, j.dateCreated, j.creator, j.organization, p.id "
+                + "FROM Job j LEFT JOIN j.parentJob p WHERE j.dispatchable = true AND j.status IN :statuses"),
         @NamedQuery(name = "Job.undispatchable.status", query = "SELECT j FROM Job j where j.dispatchable = false and "
                 + "j.status in :statuses order by j.dateCreated"),
         @NamedQuery(name = "Job.processinghost.status", query = "SELECT j FROM Job j "
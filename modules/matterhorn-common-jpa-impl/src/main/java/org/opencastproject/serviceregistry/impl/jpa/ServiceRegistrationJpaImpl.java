@@ -66,6 +66,10 @@ import javax.persistence.UniqueConstraint;
                 + "WHERE job.processorServiceRegistration.online=true and job.processorServiceRegistration.active=true and job.processorServiceRegistration.hostRegistration.maintenanceMode=false "
                 + "and job.status in :statuses "
                 + "GROUP BY job.processorServiceRegistration, job.status"),
+        @NamedQuery(name = "ServiceRegistration.jobloads", query = "SELECT job.id, job.processorServiceRegistration.hostRegistration.baseUrl, job.jobLoad, "
+                + "job.status, p.id FROM Job job LEFT JOIN job.parentJob p "
+                + "WHERE job.processorServiceRegistration.online=true and job.processorServiceRegistration.active=true and job.processorServiceRegistration.hostRegistration.maintenanceMode=false "
+                + "and job.processorServiceRegistration.serviceType <> :workflowType and job.status in :statuses"),
         @NamedQuery(name = "ServiceRegistration.getRegistration", query = "SELECT r from ServiceRegistration r "
                 + "where r.hostRegistration.baseUrl = :host and r.serviceType = :serviceType"),
         @NamedQuery(name = "ServiceRegistration.getAll", query = "SELECT rh FROM ServiceRegistration rh WHERE rh.hostRegistration.active = true"),
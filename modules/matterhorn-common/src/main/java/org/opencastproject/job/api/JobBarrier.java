@@ -46,6 +46,8 @@ import java.util.Map;
  * <li>{@link Job.Status#FAILED}</li>
  * <li>{@link Job.Status#DELETED}</li>
  * </ul>
+ * The barrier relies on {@link ServiceRegistry#waitForTerminatedJobs(List, long)} to learn about terminated jobs right
+ * away. Only if the service registry is unable to wait for jobs, their status is polled every polling interval.
  */
 public final class JobBarrier {
   /** The logging facility */
@@ -54,6 +56,9 @@ public final class JobBarrier {
   /** Default polling interval is 5 seconds */
   public static final long DEFAULT_POLLING_INTERVAL = 5000L;
 
+  /** The maximum time in milliseconds to let the service registry wait for jobs to terminate in a single call */
+  private static final long MAX_WAIT_TIME = 60000L;
+
   /** The service registry used to do the polling */
   private final ServiceRegistry serviceRegistry;
 
@@ -270,7 +275,10 @@ public final class JobBarrier {
     return status;
   }
 
-  /** Thread that keeps polling for status changes. */
+  /**
+   * Thread that waits for status changes. The service registry is asked to report jobs as soon as they terminate, and
+   * the jobs are polled for their status only if the registry is unable to do so.
+   */
   class JobStatusUpdater extends Thread {
     /** Maximum wait in milliseconds or 0 for unlimited waiting */
     private final long workTime;
@@ -290,82 +298,188 @@ public final class JobBarrier {
     public void run() {
       final long endTime = workTime > 0 ? System.currentTimeMillis() + workTime : 0;
       final Map<Job, Job.Status> finishedJobs = new HashMap<Job, Job.Status>();
+      boolean polling = false;
       while (true) {
-        final long time = System.currentTimeMillis();
-        // Wait a little..
         try {
-          final long timeToSleep = Math.min(pollingInterval, Math.abs(endTime - time));
-          Thread.sleep(timeToSleep);
+          if (!polling) {
+            final long timeToWait = endTime > 0 ? Math.max(endTime - System.currentTimeMillis(), 0L) : MAX_WAIT_TIME;
+            polling = !waitForTerminatedJobs(finishedJobs, Math.min(timeToWait, MAX_WAIT_TIME));
+          }
+          if (polling) {
+            // Wait a little..
+            final long timeToSleep = endTime > 0 ? Math.min(pollingInterval, Math.max(endTime
+                    - System.currentTimeMillis(), 0L)) : pollingInterval;
+            Thread.sleep(timeToSleep);
+            pollJobs(finishedJobs);
+          }
         } catch (InterruptedException e) {
           logger.debug("Job polling thread was interrupted");
           return;
+        } catch (JobCanceledException e) {
+          pollingException = e;
+          updateAndNotify(finishedJobs);
+          return;
+        } catch (Throwable t) {
+          logger.error("An unexpected error occured while waiting for jobs", t);
+          pollingException = t;
+          updateAndNotify(finishedJobs);
+          return;
+        }
+
+        // Are we done already?
+        if (finishedJobs.size() == jobs.size()) {
+          updateAndNotify(finishedJobs);
+          return;
+        } else if (workTime > 0 && System.currentTimeMillis() >= endTime) {
+          pollingException = new InterruptedException("Timeout waiting for job processing");
+          updateAndNotify(finishedJobs);
+          return;
+        }
+      }
+    }
+
+    /**
+     * Lets the service registry wait until some of the outstanding jobs have terminated.
+     *
+     * @param finishedJobs
+     *          the jobs that are known to have terminated
+     * @param timeToWait
+     *          the maximum time to wait in milliseconds
+     * @return <code>false</code> if the service registry is unable to wait for the jobs and they need to be polled
+     */
+    private boolean waitForTerminatedJobs(Map<Job, Job.Status> finishedJobs, long timeToWait)
+            throws JobCanceledException, InterruptedException {
+      final Map<Long, Job> outstanding = new HashMap<Long, Job>();
+      for (final Job job : jobs) {
+        if (!finishedJobs.containsKey(job))
+          outstanding.put(job.getId(), job);
+      }
+      final List<Job> terminated;
+      try {
+        terminated = serviceRegistry.waitForTerminatedJobs(new ArrayList<Long>(outstanding.keySet()), timeToWait);
+      } catch (NotFoundException e) {
+        logger.debug("One of the jobs is gone, polling for their status to find out which: {}", e.getMessage());
+        return false;
+      } catch (ServiceRegistryException e) {
+        if (Thread.currentThread().isInterrupted())
+          throw new InterruptedException();
+        logger.warn("Unable to wait for the jobs to terminate, polling for their status instead: {}", e.getMessage());
+        return false;
+      }
+      if (terminated == null) {
+        logger.debug("The service registry is unable to wait for the jobs to terminate, polling for their status");
+        return false;
+      }
+      for (final Job processedJob : terminated) {
+        final Job job = outstanding.get(processedJob.getId());
+        if (job != null)
+          updateStatus(job, processedJob, finishedJobs);
+      }
+      return true;
+    }
+
+    /**
+     * Asks the service registry for the status of the outstanding jobs, all at once if possible.
+     *
+     * @param finishedJobs
+     *          the jobs that are known to have terminated
+     */
+    private void pollJobs(Map<Job, Job.Status> finishedJobs) throws JobCanceledException {
+      final List<Long> outstanding = new ArrayList<Long>();
+      for (final Job job : jobs) {
+        if (!finishedJobs.containsKey(job))
+          outstanding.add(job.getId());
+      }
+      List<Job> statuses = null;
+      try {
+        statuses = serviceRegistry.getJobs(outstanding, true);
+      } catch (ServiceRegistryException e) {
+        logger.debug("Unable to get the status of all jobs at once, asking for each job: {}", e.getMessage());
+      }
+      if (statuses != null) {
+        final Map<Long, Job> processedJobs = new HashMap<Long, Job>();
+        for (final Job processedJob : statuses) {
+          processedJobs.put(processedJob.getId(), processedJob);
         }
-        // Look at all jobs and make sure all of them have reached the expected status
         for (final Job job : jobs) {
-          // Don't ask if we already know
-          if (!finishedJobs.containsKey(job)) {
-            // Get the job status from the service registry
-            try {
-              final Job processedJob = serviceRegistry.getJob(job.getId());
-              final Job.Status jobStatus = processedJob.getStatus();
-              switch (jobStatus) {
-                case CANCELED:
-                  throw new JobCanceledException(processedJob);
-                case DELETED:
-                case FAILED:
-                case FINISHED:
-                  job.setStatus(jobStatus);
-                  job.setPayload(processedJob.getPayload());
-                  finishedJobs.put(job, jobStatus);
-                  break;
-                case PAUSED:
-                case QUEUED:
-                case RESTART:
-                case DISPATCHING:
-                case INSTANTIATED:
-                case RUNNING:
-                  logger.trace("{} is still in the works", job);
-                  break;
-                case WAITING:
-                  logger.trace("{} is waiting", job);
-                  break;
-                default:
-                  logger.error("Unhandled job status '{}' found", jobStatus);
-                  break;
-              }
-            } catch (NotFoundException e) {
-              logger.warn("Error polling job {}: Not found!", job);
-              finishedJobs.put(job, Job.Status.DELETED);
-              pollingException = e;
-              break;
-            } catch (ServiceRegistryException e) {
-              logger.warn("Error polling service registry for the status of {}: {}", job, e.getMessage());
-            } catch (JobCanceledException e) {
-              logger.warn("Job {} got canceled", job);
-              pollingException = e;
-              updateAndNotify(finishedJobs);
-              return;
-            } catch (Throwable t) {
-              logger.error("An unexpected error occured while waiting for jobs", t);
-              pollingException = t;
-              updateAndNotify(finishedJobs);
-              return;
-            }
+          if (finishedJobs.containsKey(job))
+            continue;
+          final Job processedJob = processedJobs.get(job.getId());
+          if (processedJob == null) {
+            logger.warn("Error polling job {}: Not found!", job);
+            finishedJobs.put(job, Job.Status.DELETED);
+            pollingException = new NotFoundException("Job " + job.getId() + " not found");
+            break;
           }
+          updateStatus(job, processedJob, finishedJobs);
+        }
+        return;
+      }
 
-          // Are we done already?
-          if (finishedJobs.size() == jobs.size()) {
-            updateAndNotify(finishedJobs);
-            return;
-          } else if (workTime > 0 && endTime >= time) {
-            pollingException = new InterruptedException("Timeout waiting for job processing");
-            updateAndNotify(finishedJobs);
-            return;
+      // Look at all jobs and make sure all of them have reached the expected status
+      for (final Job job : jobs) {
+        // Don't ask if we already know
+        if (!finishedJobs.containsKey(job)) {
+          // Get the job status from the service registry
+          try {
+            updateStatus(job, serviceRegistry.getJob(job.getId()), finishedJobs);
+          } catch (NotFoundException e) {
+            logger.warn("Error polling job {}: Not found!", job);
+            finishedJobs.put(job, Job.Status.DELETED);
+            pollingException = e;
+            break;
+          } catch (ServiceRegistryException e) {
+            logger.warn("Error polling service registry for the status of {}: {}", job, e.getMessage());
           }
         }
       }
     }
 
+    /**
+     * Takes over the status of a job as reported by the service registry.
+     *
+     * @param job
+     *          the monitored job
+     * @param processedJob
+     *          the job as reported by the service registry
+     * @param finishedJobs
+     *          the jobs that are known to have terminated
+     * @throws JobCanceledException
+     *           if the job has been canceled
+     */
+    private void updateStatus(Job job, Job processedJob, Map<Job, Job.Status> finishedJobs)
+            throws JobCanceledException {
+      final Job.Status jobStatus = processedJob.getStatus();
+      switch (jobStatus) {
+        case CANCELED:
+          logger.warn("Job {} got canceled", job);
+          throw new JobCanceledException(processedJob);
+        case DELETED:
+        case FAILED:
+        case FINISHED:
+          job.setStatus(jobStatus);
+          // The status of a job may come without the payload, unless the job has finished
+          if (jobStatus == Job.Status.FINISHED || processedJob.getPayload() != null)
+            job.setPayload(processedJob.getPayload());
+          finishedJobs.put(job, jobStatus);
+          break;
+        case PAUSED:
+        case QUEUED:
+        case RESTART:
+        case DISPATCHING:
+        case INSTANTIATED:
+        case RUNNING:
+          logger.trace("{} is still in the works", job);
+          break;
+        case WAITING:
+          logger.trace("{} is waiting", job);
+          break;
+        default:
+          logger.error("Unhandled job status '{}' found", jobStatus);
+          break;
+      }
+    }
+
     /**
      * Notifies listeners about the status change.
      *
@@ -0,0 +1,136 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.serviceregistry.api;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Wakes up the threads waiting for jobs to terminate. A service registry reports every job that has terminated, and
+ * waiters subscribe to their jobs before looking at them, so that no termination in between goes unnoticed.
+ */
+public final class JobCompletionNotifier {
+
+  /** The subscriptions by job id */
+  private final Map<Long, Set<Subscription>> subscriptions = new HashMap<Long, Set<Subscription>>();
+
+  /**
+   * Subscribes to the termination of jobs.
+   *
+   * @param jobIds
+   *          the job ids
+   * @return the subscription, which needs to be cancelled when it is no longer needed
+   */
+  public Subscription subscribe(Collection<Long> jobIds) {
+    Subscription subscription = new Subscription(jobIds);
+    synchronized (subscriptions) {
+      for (Long jobId : subscription.jobIds) {
+        Set<Subscription> forJob = subscriptions.get(jobId);
+        if (forJob == null) {
+          forJob = new HashSet<Subscription>();
+          subscriptions.put(jobId, forJob);
+        }
+        forJob.add(subscription);
+      }
+    }
+    return subscription;
+  }
+
+  /**
+   * Reports that a job has terminated or has been removed.
+   *
+   * @param jobId
+   *          the job id
+   */
+  public void jobTerminated(long jobId) {
+    List<Subscription> toSignal;
+    synchronized (subscriptions) {
+      Set<Subscription> forJob = subscriptions.get(jobId);
+      if (forJob == null)
+        return;
+      toSignal = new ArrayList<Subscription>(forJob);
+    }
+    for (Subscription subscription : toSignal) {
+      subscription.signal();
+    }
+  }
+
+  /** A subscription to the termination of a number of jobs. */
+  public final class Subscription {
+
+    private final List<Long> jobIds;
+
+    /** Whether one of the jobs has been reported since the last call to {@link #await(long)} */
+    private boolean signaled = false;
+
+    private Subscription(Collection<Long> jobIds) {
+      this.jobIds = new ArrayList<Long>(jobIds);
+    }
+
+    private synchronized void signal() {
+      signaled = true;
+      notifyAll();
+    }
+
+    /**
+     * Waits until one of the jobs is reported to have terminated, or until the timeout has passed.
+     *
+     * @param timeout
+     *          the maximum time to wait in milliseconds
+     * @return <code>true</code> if one of the jobs has been reported since this method has been called last
+     * @throws InterruptedException
+     *           if the thread has been interrupted while waiting
+     */
+    public synchronized boolean await(long timeout) throws InterruptedException {
+      final long end = System.currentTimeMillis() + timeout;
+      while (!signaled) {
+        final long left = end - System.currentTimeMillis();
+        if (left <= 0)
+          return false;
+        wait(left);
+      }
+      signaled = false;
+      return true;
+    }
+
+    /** Stops listening for the termination of the jobs. */
+    public void cancel() {
+      synchronized (subscriptions) {
+        for (Long jobId : jobIds) {
+          Set<Subscription> forJob = subscriptions.get(jobId);
+          if (forJob != null) {
+            forJob.remove(this);
+            if (forJob.isEmpty())
+              subscriptions.remove(jobId);
+          }
+        }
+      }
+    }
+
+  }
+
+}
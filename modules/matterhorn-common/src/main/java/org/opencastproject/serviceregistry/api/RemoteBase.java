@@ -198,6 +198,7 @@ public class RemoteBase {
             }
             return response;
           } else {
+            demote(remoteService);
             if (!knownHttpStatuses.contains(status.getStatusCode()) && !servicesInWarningState.contains(fullUrl)) {
               logger.warn("Service at {} returned unexpected response code {}", fullUrl, status.getStatusCode());
               servicesInWarningState.add(fullUrl);
@@ -211,6 +212,7 @@ public class RemoteBase {
         } catch (Exception e) {
           logger.error("Exception while trying to dispatch job to {}: {}", fullUrl, e);
           servicesInWarningState.add(fullUrl);
+          demote(remoteService);
         }
         closeConnection(response);
       }
@@ -247,6 +249,15 @@ public class RemoteBase {
     }
   }
 
+  /**
+   * Lets the service registry try a service that failed to handle a request last for a while, if it keeps a local
+   * ranking of the services.
+   */
+  private void demote(ServiceRegistration remoteService) {
+    if (remoteServiceManager instanceof ServiceRegistrationRanking)
+      ((ServiceRegistrationRanking) remoteServiceManager).demote(remoteService);
+  }
+
   /**
    * Closes any http connections kept open by this http response.
    */
@@ -0,0 +1,41 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+
+package org.opencastproject.serviceregistry.api;
+
+/**
+ * A service registry that ranks the registrations of a service type locally, e.g. because it caches the rankings of
+ * the actual registry. Callers can report services that failed to handle a request, so these are tried last until the
+ * registry has had a chance to notice.
+ */
+public interface ServiceRegistrationRanking {
+
+  /**
+   * Moves a service registration to the end of the local ranking of its service type for a while, without asking the
+   * registry.
+   *
+   * @param registration
+   *          the service registration that failed to handle a request
+   */
+  void demote(ServiceRegistration registration);
+
+}
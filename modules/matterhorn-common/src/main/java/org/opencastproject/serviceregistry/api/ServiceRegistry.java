@@ -26,6 +26,7 @@ import org.opencastproject.job.api.Job.Status;
 import org.opencastproject.serviceregistry.api.SystemLoad.NodeLoad;
 import org.opencastproject.util.NotFoundException;
 
+import java.util.Collection;
 import java.util.List;
 
 /** Manages clustered services and the {@link Job}s they may create to enable asynchronous job handling. */
@@ -440,6 +441,23 @@ public interface ServiceRegistry {
    */
   Job getJob(long id) throws NotFoundException, ServiceRegistryException;
 
+  /**
+   * Waits until at least one of the given jobs has terminated, i.e. reached one of the states {@link Status#FINISHED},
+   * {@link Status#FAILED}, {@link Status#DELETED} or {@link Status#CANCELED}, or until the timeout has passed. Jobs that
+   * have terminated before are returned right away.
+   *
+   * @param ids
+   *          the job ids
+   * @param timeout
+   *          the maximum time to wait in milliseconds, which the service registry may shorten
+   * @return the jobs that have terminated, or an empty list if none has within the timeout
+   * @throws NotFoundException
+   *           if one of the jobs does not exist
+   * @throws ServiceRegistryException
+   *           if there is a problem accessing the service registry or the thread has been interrupted while waiting
+   */
+  List<Job> waitForTerminatedJobs(List<Long> ids, long timeout) throws NotFoundException, ServiceRegistryException;
+
   /**
    * Deletes a job from the service registry
    *
@@ -487,6 +505,20 @@ public interface ServiceRegistry {
    */
   List<Job> getJobs(String serviceType, Status status) throws ServiceRegistryException;
 
+  /**
+   * Gets the status of a number of jobs at once. The returned jobs carry their identifier and status only, plus their
+   * payload if they have finished and <code>withFinishedPayloads</code> is set. Jobs that don't exist are left out.
+   *
+   * @param ids
+   *          the job ids
+   * @param withFinishedPayloads
+   *          whether to include the payloads of finished jobs
+   * @return the jobs, in the order of their ids
+   * @throws ServiceRegistryException
+   *           if there is a problem accessing the service registry
+   */
+  List<Job> getJobs(Collection<Long> ids, boolean withFinishedPayloads) throws ServiceRegistryException;
+
   /**
    * Get the list of active jobs.
    *
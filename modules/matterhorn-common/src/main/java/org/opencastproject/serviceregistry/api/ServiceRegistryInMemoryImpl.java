@@ -40,6 +40,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
@@ -105,6 +106,9 @@ public class ServiceRegistryInMemoryImpl implements ServiceRegistry {
 
   protected Incidents incidents;
 
+  /** Wakes up the threads waiting for jobs to terminate */
+  protected final JobCompletionNotifier jobCompletionNotifier = new JobCompletionNotifier();
+
   /**
    * A static list of statuses that influence how load balancing is calculated
    */
@@ -481,6 +485,7 @@ public class ServiceRegistryInMemoryImpl implements ServiceRegistry {
 
       jobs.remove(id);
     }
+    jobCompletionNotifier.jobTerminated(id);
   }
 
   /**
@@ -567,6 +572,8 @@ public class ServiceRegistryInMemoryImpl implements ServiceRegistry {
         throw new IllegalStateException("Error serializing job", e);
       }
     }
+    if (updatedJob.getStatus().isTerminated())
+      jobCompletionNotifier.jobTerminated(updatedJob.getId());
     return updatedJob;
   }
 
@@ -631,6 +638,36 @@ public class ServiceRegistryInMemoryImpl implements ServiceRegistry {
     }
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * @see org.opencastproject.serviceregistry.api.ServiceRegistry#waitForTerminatedJobs(List, long)
+   */
+  @Override
+  public List<Job> waitForTerminatedJobs(List<Long> ids, long timeout) throws NotFoundException,
+          ServiceRegistryException {
+    final long end = System.currentTimeMillis() + timeout;
+    // Subscribe before looking at the jobs, so that no termination in between goes unnoticed
+    final JobCompletionNotifier.Subscription subscription = jobCompletionNotifier.subscribe(ids);
+    try {
+      while (true) {
+        List<Job> terminated = new ArrayList<Job>();
+        for (long id : ids) {
+          Job job = getJob(id);
+          if (job.getStatus().isTerminated())
+            terminated.add(job);
+        }
+        if (!terminated.isEmpty() || !subscription.await(end - System.currentTimeMillis()))
+          return terminated;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ServiceRegistryException("Interrupted while waiting for jobs " + ids, e);
+    } finally {
+      subscription.cancel();
+    }
+  }
+
   /**
    * {@inheritDoc}
    *
@@ -700,6 +737,30 @@ public class ServiceRegistryInMemoryImpl implements ServiceRegistry {
     return result;
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * @see org.opencastproject.serviceregistry.api.ServiceRegistry#getJobs(java.util.Collection, boolean)
+   */
+  @Override
+  public List<Job> getJobs(Collection<Long> ids, boolean withFinishedPayloads) throws ServiceRegistryException {
+    List<Job> result = new ArrayList<Job>();
+    for (Long id : ids) {
+      Job job;
+      try {
+        job = getJob(id);
+      } catch (NotFoundException e) {
+        continue;
+      }
+      Job status = new JobImpl(id);
+      status.setStatus(job.getStatus());
+      if (withFinishedPayloads && Status.FINISHED.equals(job.getStatus()))
+        status.setPayload(job.getPayload());
+      result.add(status);
+    }
+    return result;
+  }
+
   /**
    * {@inheritDoc}
    *
@@ -936,6 +997,8 @@ public class ServiceRegistryInMemoryImpl implements ServiceRegistry {
             } catch (IOException e) {
               throw new IllegalStateException("Error unmarshaling job", e);
             }
+            if (job.getStatus().isTerminated())
+              jobCompletionNotifier.jobTerminated(job.getId());
             securityService.setUser(null);
             securityService.setOrganization(null);
           }
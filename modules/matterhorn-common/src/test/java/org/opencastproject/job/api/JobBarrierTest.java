@@ -21,7 +21,9 @@
 
 package org.opencastproject.job.api;
 
+import static org.easymock.EasyMock.createMock;
 import static org.easymock.EasyMock.createNiceMock;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.opencastproject.util.data.Collections.toArray;
 import static org.opencastproject.util.data.Monadics.mlist;
@@ -36,7 +38,9 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class JobBarrierTest {
@@ -57,6 +61,53 @@ public class JobBarrierTest {
     }
   }
 
+  @Test
+  public void testWaitForJobsWithoutPolling() throws Exception {
+    final Job job1 = new JobImpl(1);
+    final Job job2 = new JobImpl(2);
+    final Job finishedJob1 = new JobImpl(1);
+    finishedJob1.setStatus(Job.Status.FINISHED);
+    finishedJob1.setPayload("payload 1");
+    final Job failedJob2 = new JobImpl(2);
+    failedJob2.setStatus(Job.Status.FAILED);
+    // Not a nice mock, so that polling for the status of a job fails the test
+    final ServiceRegistry sr = createMock(ServiceRegistry.class);
+    EasyMock.expect(sr.waitForTerminatedJobs(EasyMock.<List<Long>> anyObject(), EasyMock.anyLong()))
+            .andReturn(Arrays.asList(finishedJob1)).once();
+    EasyMock.expect(sr.waitForTerminatedJobs(EasyMock.eq(Arrays.asList(2L)), EasyMock.anyLong()))
+            .andReturn(Arrays.asList(failedJob2)).once();
+    EasyMock.replay(sr);
+
+    final JobBarrier.Result res = new JobBarrier(null, sr, job1, job2).waitForJobs();
+    assertEquals(Job.Status.FINISHED, res.getStatus().get(job1));
+    assertEquals(Job.Status.FAILED, res.getStatus().get(job2));
+    assertEquals("payload 1", job1.getPayload());
+    EasyMock.verify(sr);
+  }
+
+  @Test
+  public void testPollForAllJobsAtOnce() throws Exception {
+    final Job job1 = new JobImpl(1);
+    final Job job2 = new JobImpl(2);
+    final Job finishedJob1 = new JobImpl(1);
+    finishedJob1.setStatus(Job.Status.FINISHED);
+    final Job finishedJob2 = new JobImpl(2);
+    finishedJob2.setStatus(Job.Status.FINISHED);
+    finishedJob2.setPayload("payload 2");
+    final ServiceRegistry sr = createMock(ServiceRegistry.class);
+    // A registry that is unable to wait for jobs
+    EasyMock.expect(sr.waitForTerminatedJobs(EasyMock.<List<Long>> anyObject(), EasyMock.anyLong())).andReturn(null)
+            .once();
+    EasyMock.expect(sr.getJobs(Arrays.asList(1L, 2L), true)).andReturn(Arrays.asList(finishedJob1, finishedJob2))
+            .once();
+    EasyMock.replay(sr);
+
+    final JobBarrier.Result res = new JobBarrier(null, sr, 10, job1, job2).waitForJobs();
+    assertTrue(res.isSuccess());
+    assertEquals("payload 2", job2.getPayload());
+    EasyMock.verify(sr);
+  }
+
   private void runWaitForJobsTest(Function<Long, TestJob> jobCreator) throws Exception {
     // create a bunch of jobs
     final Map<Long, TestJob> jobs = new HashMap<Long, TestJob>();
@@ -0,0 +1,75 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.serviceregistry.api;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class JobCompletionNotifierTest {
+
+  private final JobCompletionNotifier notifier = new JobCompletionNotifier();
+
+  @Test
+  public void testOnlySubscribedJobsWakeUpWaiters() throws Exception {
+    final JobCompletionNotifier.Subscription subscription = notifier.subscribe(Arrays.asList(1L, 2L));
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      notifier.jobTerminated(3L);
+      assertFalse(subscription.await(50L));
+
+      Future<Boolean> woken = executor.submit(new Callable<Boolean>() {
+        @Override
+        public Boolean call() throws Exception {
+          return subscription.await(10000L);
+        }
+      });
+      Thread.sleep(50L);
+      notifier.jobTerminated(2L);
+      assertTrue(woken.get(10, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdownNow();
+      subscription.cancel();
+    }
+  }
+
+  @Test
+  public void testTerminationBeforeWaitingIsNotMissed() throws Exception {
+    JobCompletionNotifier.Subscription subscription = notifier.subscribe(Arrays.asList(1L));
+    notifier.jobTerminated(1L);
+    assertTrue(subscription.await(0L));
+    // The termination has been consumed
+    assertFalse(subscription.await(0L));
+    subscription.cancel();
+    notifier.jobTerminated(1L);
+    assertFalse(subscription.await(0L));
+  }
+
+}
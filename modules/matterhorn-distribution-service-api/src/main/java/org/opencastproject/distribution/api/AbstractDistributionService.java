@@ -22,17 +22,41 @@
 package org.opencastproject.distribution.api;
 
 import org.opencastproject.job.api.AbstractJobProducer;
+import org.opencastproject.mediapackage.MediaPackageElement;
+import org.opencastproject.security.api.Organization;
 import org.opencastproject.security.api.OrganizationDirectoryService;
 import org.opencastproject.security.api.SecurityService;
 import org.opencastproject.security.api.TrustedHttpClient;
+import org.opencastproject.security.api.User;
 import org.opencastproject.security.api.UserDirectoryService;
 import org.opencastproject.serviceregistry.api.ServiceRegistry;
+import org.opencastproject.util.OsgiUtil;
 import org.opencastproject.workspace.api.Workspace;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Dictionary;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public abstract class AbstractDistributionService extends AbstractJobProducer {
 
+  /** Logging facility */
+  private static final Logger logger = LoggerFactory.getLogger(AbstractDistributionService.class);
+
   /** Default distribution directory */
   public static final String DEFAULT_DISTRIBUTION_DIR = "opencast" + File.separator + "static";
 
@@ -62,6 +86,21 @@ public abstract class AbstractDistributionService extends AbstractJobProducer {
   /** The distribution channel for this service */
   protected String distributionChannel = null;
 
+  /** The key to look for in the service configuration file to override the {@link #DEFAULT_DISTRIBUTE_PARALLELISM} */
+  public static final String DISTRIBUTE_PARALLELISM_KEY = "distribute.parallelism";
+
+  /** The default number of elements of a job that are distributed at the same time */
+  public static final int DEFAULT_DISTRIBUTE_PARALLELISM = 4;
+
+  /** The number of elements of a job that are distributed at the same time */
+  protected int distributeParallelism = DEFAULT_DISTRIBUTE_PARALLELISM;
+
+  /** Time in seconds after which idle distribution threads are stopped */
+  private static final long DISTRIBUTE_THREAD_KEEP_ALIVE = 60L;
+
+  /** The executor running the distribution tasks of all jobs of this service */
+  private ExecutorService distributeExecutor = null;
+
   protected AbstractDistributionService(String jobType) {
     super(jobType);
   }
@@ -169,4 +208,160 @@ public abstract class AbstractDistributionService extends AbstractJobProducer {
   protected TrustedHttpClient getTrustedHttpClient() {
     return trustedHttpClient;
   }
+
+  /**
+   * Reads the number of elements of a job that are distributed at the same time from the service configuration.
+   *
+   * @param properties
+   *          the service configuration, may be <code>null</code>
+   */
+  protected void updateDistributeParallelism(Dictionary<?, ?> properties) {
+    int parallelism = DEFAULT_DISTRIBUTE_PARALLELISM;
+    if (properties != null)
+      parallelism = OsgiUtil.getOptCfgAsInt(properties, DISTRIBUTE_PARALLELISM_KEY).getOrElse(parallelism);
+    distributeParallelism = Math.max(1, parallelism);
+    logger.info("Distributing up to {} elements of a job at the same time", distributeParallelism);
+  }
+
+  /**
+   * Returns the executor running the distribution tasks of all jobs of this service, creating it if necessary. Idle
+   * threads are reused across jobs, while the number of tasks a job runs at a time is bounded by the job itself.
+   *
+   * @return the executor
+   */
+  private synchronized ExecutorService getDistributeExecutor() {
+    if (distributeExecutor == null) {
+      final String name = getJobType() + " distribution ";
+      distributeExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, DISTRIBUTE_THREAD_KEEP_ALIVE, TimeUnit.SECONDS,
+              new SynchronousQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                  Thread thread = new Thread(r, name + count.incrementAndGet());
+                  thread.setDaemon(true);
+                  return thread;
+                }
+              });
+    }
+    return distributeExecutor;
+  }
+
+  /**
+   * Stops the executor running the distribution tasks of the jobs of this service. To be called when the service is
+   * deactivated.
+   */
+  protected synchronized void shutdownDistributeExecutor() {
+    if (distributeExecutor != null) {
+      distributeExecutor.shutdownNow();
+      distributeExecutor = null;
+    }
+  }
+
+  /**
+   * Runs tasks concurrently and waits for all of them to finish. At most {@link #distributeParallelism} of the given
+   * tasks run at a time. The bound applies to each call on its own, so copying the elements of one job and checking the
+   * availability of the elements of another never compete for the same slots. The tasks run in the security context of
+   * the calling thread.
+   *
+   * @param tasks
+   *          the tasks
+   * @return the completed futures of the tasks, in the order of the tasks
+   * @throws InterruptedException
+   *           if the calling thread is interrupted while waiting
+   */
+  protected <A> List<Future<A>> invokeConcurrently(List<? extends Callable<A>> tasks) throws InterruptedException {
+    int parallelism = distributeParallelism;
+    List<Future<A>> futures = new ArrayList<>();
+    if (parallelism <= 1 || tasks.size() <= 1) {
+      for (Callable<A> task : tasks) {
+        FutureTask<A> future = new FutureTask<>(task);
+        future.run();
+        futures.add(future);
+      }
+      return futures;
+    }
+
+    final Organization organization = securityService.getOrganization();
+    final User user = securityService.getUser();
+    final Semaphore permits = new Semaphore(parallelism);
+    ExecutorService executor = getDistributeExecutor();
+    boolean completed = false;
+    try {
+      for (final Callable<A> task : tasks) {
+        permits.acquire();
+        FutureTask<A> future = new FutureTask<>(new Callable<A>() {
+          @Override
+          public A call() throws Exception {
+            securityService.setOrganization(organization);
+            securityService.setUser(user);
+            try {
+              return task.call();
+            } finally {
+              securityService.setOrganization(null);
+              securityService.setUser(null);
+              permits.release();
+            }
+          }
+        });
+        futures.add(future);
+        executor.execute(future);
+      }
+      for (Future<A> future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          // Reported by the caller
+        }
+      }
+      completed = true;
+      return futures;
+    } finally {
+      // Tasks that have not completed are cancelled if the calling thread is interrupted
+      if (!completed) {
+        for (Future<A> future : futures) {
+          future.cancel(true);
+        }
+      }
+    }
+  }
+
+  /**
+   * Collects the results of tasks that were run for mediapackage elements by
+   * {@link #invokeConcurrently(List)}. The results of all tasks are looked at, so that the error names every element
+   * that failed rather than just the first one.
+   *
+   * @param futures
+   *          the completed futures of the tasks
+   * @param elements
+   *          the elements that the tasks were run for, in the order of the tasks
+   * @param operation
+   *          what the tasks did, for the error message
+   * @return the results, in the order of the tasks
+   * @throws DistributionException
+   *           if any of the tasks failed
+   */
+  protected <A> List<A> getResults(List<Future<A>> futures, List<MediaPackageElement> elements, String operation)
+          throws DistributionException {
+    final List<A> results = new ArrayList<>();
+    final List<String> failed = new ArrayList<>();
+    Throwable cause = null;
+    for (int i = 0; i < futures.size(); i++) {
+      try {
+        results.add(futures.get(i).get());
+      } catch (ExecutionException e) {
+        logger.warn("Unable to {} element {}: {}", operation, elements.get(i).getIdentifier(),
+                e.getCause().getMessage());
+        failed.add(elements.get(i).getIdentifier());
+        if (cause == null)
+          cause = e.getCause();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new DistributionException(e);
+      }
+    }
+    if (!failed.isEmpty())
+      throw new DistributionException("Unable to " + operation + " elements " + failed, cause);
+    return results;
+  }
 }
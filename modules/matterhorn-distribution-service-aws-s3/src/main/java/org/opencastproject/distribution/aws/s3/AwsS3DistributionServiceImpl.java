@@ -78,6 +78,7 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import javax.servlet.http.HttpServletResponse;
 
@@ -183,6 +184,7 @@ public class AwsS3DistributionServiceImpl extends AbstractDistributionService im
       // Create AWS S3 bucket if not there yet
       createAWSBucket();
       this.distributionChannel = OsgiUtil.getComponentContextProperty(cc, CONFIG_KEY_STORE_TYPE);
+      updateDistributeParallelism(cc.getProperties());
 
       logger.info("AwsS3DistributionService activated!");
     }
@@ -193,6 +195,7 @@ public class AwsS3DistributionServiceImpl extends AbstractDistributionService im
   }
 
   public void deactivate() {
+    shutdownDistributeExecutor();
     s3TransferManager.shutdownNow();
 
     logger.info("AwsS3DistributionService deactivated!");
@@ -263,18 +266,44 @@ public class AwsS3DistributionServiceImpl extends AbstractDistributionService im
    *           Thrown if the parent directory of the MediaPackageElement cannot be created, if the MediaPackageElement
    *           cannot be copied or another unexpected exception occurs.
    */
-  public MediaPackageElement[] distributeElements(String channelId, MediaPackage mediapackage, Set<String> elementIds,
-          boolean checkAvailability) throws DistributionException {
+  public MediaPackageElement[] distributeElements(final String channelId, final MediaPackage mediapackage,
+          Set<String> elementIds, boolean checkAvailability) throws DistributionException {
     notNull(mediapackage, "mediapackage");
     notNull(elementIds, "elementIds");
     notNull(channelId, "channelId");
 
-    final Set<MediaPackageElement> elements = getElements(mediapackage, elementIds);
-    List<MediaPackageElement> distributedElements = new ArrayList<MediaPackageElement>();
-
-    for (MediaPackageElement element : elements) {
-      MediaPackageElement distributedElement = distributeElement(channelId, mediapackage, element, checkAvailability);
-      distributedElements.add(distributedElement);
+    // Upload the elements concurrently and check their availability once all of them are uploaded
+    final List<MediaPackageElement> elements = new ArrayList<MediaPackageElement>(getElements(mediapackage,
+            elementIds));
+    final List<Callable<MediaPackageElement>> uploads = new ArrayList<Callable<MediaPackageElement>>();
+    for (final MediaPackageElement element : elements) {
+      uploads.add(new Callable<MediaPackageElement>() {
+        @Override
+        public MediaPackageElement call() throws Exception {
+          return distributeElement(channelId, mediapackage, element, false);
+        }
+      });
+    }
+    final List<MediaPackageElement> distributedElements;
+    try {
+      distributedElements = getResults(invokeConcurrently(uploads), elements, "distribute");
+      if (checkAvailability) {
+        final List<Callable<Void>> checks = new ArrayList<Callable<Void>>();
+        for (final MediaPackageElement distributedElement : distributedElements) {
+          checks.add(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+              checkAvailability(distributedElement);
+              return null;
+            }
+          });
+        }
+        getResults(invokeConcurrently(checks), distributedElements, "check availability of");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DistributionException("Interrupted while distributing elements of media package "
+              + mediapackage.getIdentifier(), e);
     }
     return distributedElements.toArray(new MediaPackageElement[distributedElements.size()]);
   }
@@ -347,41 +376,8 @@ public class AwsS3DistributionServiceImpl extends AbstractDistributionService im
 
       logger.info("Distributed element {}, object {}", element.getIdentifier(), objectName);
 
-      if (checkAvailability) {
-        URI uri = distributedElement.getURI();
-        int tries = 0;
-        CloseableHttpResponse response = null;
-        boolean success = false;
-        while (tries < MAX_TRIES) {
-          try {
-            CloseableHttpClient httpClient = HttpClients.createDefault();
-            logger.trace("Trying to access {}", uri);
-            response = httpClient.execute(new HttpHead(uri));
-            if (response.getStatusLine().getStatusCode() == HttpServletResponse.SC_OK) {
-              logger.trace("Successfully got {}", uri);
-              success = true;
-              break; // Exit the loop, response is closed
-            } else {
-              logger.debug("Http status code when checking distributed element {} is {}", objectName, response
-                      .getStatusLine().getStatusCode());
-            }
-          } catch (Exception e) {
-            logger.info("Checking availability of {} threw exception {}. Trying again.", objectName, e.getMessage());
-            // Just try again
-          } finally {
-            if (null != response) {
-              response.close();
-            }
-          }
-          tries++;
-          logger.trace("Sleeping for {} seconds...", SLEEP_INTERVAL / 1000);
-          Thread.sleep(SLEEP_INTERVAL);
-        }
-        if (!success) {
-          logger.warn("Could not check availability of distributed file {}", uri);
-          // throw new DistributionException("Unable to load distributed file " + uri.toString());
-        }
-      }
+      if (checkAvailability)
+        checkAvailability(distributedElement);
 
       return distributedElement;
     } catch (Exception e) {
@@ -394,6 +390,49 @@ public class AwsS3DistributionServiceImpl extends AbstractDistributionService im
     }
   }
 
+  /**
+   * Checks whether a distributed element can be accessed, trying again for a while if it cannot. Elements that do not
+   * become available are only logged.
+   *
+   * @param distributedElement
+   *          the distributed element
+   */
+  private void checkAvailability(MediaPackageElement distributedElement) throws Exception {
+    URI uri = distributedElement.getURI();
+    int tries = 0;
+    CloseableHttpResponse response = null;
+    boolean success = false;
+    while (tries < MAX_TRIES) {
+      try {
+        CloseableHttpClient httpClient = HttpClients.createDefault();
+        logger.trace("Trying to access {}", uri);
+        response = httpClient.execute(new HttpHead(uri));
+        if (response.getStatusLine().getStatusCode() == HttpServletResponse.SC_OK) {
+          logger.trace("Successfully got {}", uri);
+          success = true;
+          break; // Exit the loop, response is closed
+        } else {
+          logger.debug("Http status code when checking distributed element {} is {}", uri, response
+                  .getStatusLine().getStatusCode());
+        }
+      } catch (Exception e) {
+        logger.info("Checking availability of {} threw exception {}. Trying again.", uri, e.getMessage());
+        // Just try again
+      } finally {
+        if (null != response) {
+          response.close();
+        }
+      }
+      tries++;
+      logger.trace("Sleeping for {} seconds...", SLEEP_INTERVAL / 1000);
+      Thread.sleep(SLEEP_INTERVAL);
+    }
+    if (!success) {
+      logger.warn("Could not check availability of distributed file {}", uri);
+      // throw new DistributionException("Unable to load distributed file " + uri.toString());
+    }
+  }
+
   @Override
   public Job retract(String channelId, MediaPackage mediapackage, String elementId) throws DistributionException {
     Set<String> elementIds = new HashSet<String>();
@@ -0,0 +1,269 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.distribution.download;
+
+import org.opencastproject.util.Checksum;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import org.apache.commons.io.FilenameUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Index of the files that have been distributed for a media package across all publication channels of an
+ * organization, by their size and checksum. It allows to find a file with the same content as the one that is about to
+ * be distributed without reading any of the distributed files.
+ * <p>
+ * There is one index file per media package, which maps keys like <code>1024:md5:0123abcd</code> to the paths of the
+ * files, relative to the organization directory. The index files live outside of the distribution directory, so that
+ * they are not served along with the distributed files. Index files are locked while they are read or updated, so that
+ * nodes sharing the distribution directory do not get in each other's way.
+ */
+class DistributedFileIndex {
+
+  /** Suffix of the name of the index directory, which is a sibling of the distribution directory */
+  static final String INDEX_DIRECTORY_SUFFIX = "-index";
+
+  /** The type of the index */
+  private static final Type INDEX_TYPE = new TypeToken<TreeMap<String, List<String>>>() { }.getType();
+
+  /** The monitors guarding the index files against concurrent access from within this process */
+  private final Object[] locks = new Object[32];
+
+  private final Gson gson = new Gson();
+
+  /** The directory containing the index files */
+  private final File directory;
+
+  /**
+   * Creates an index of the files distributed to the given distribution directory.
+   *
+   * @param distributionDirectory
+   *          the distribution directory
+   */
+  DistributedFileIndex(File distributionDirectory) {
+    File absoluteDirectory = distributionDirectory.getAbsoluteFile();
+    directory = new File(absoluteDirectory.getParentFile(), absoluteDirectory.getName() + INDEX_DIRECTORY_SUFFIX);
+    for (int i = 0; i < locks.length; i++) {
+      locks[i] = new Object();
+    }
+  }
+
+  /**
+   * Returns the key of a file with the given size and checksum.
+   *
+   * @param size
+   *          the file size
+   * @param checksum
+   *          the checksum of the file content
+   * @return the key
+   */
+  static String createKey(long size, Checksum checksum) {
+    return size + ":" + checksum.getType() + ":" + checksum.getValue();
+  }
+
+  /**
+   * Looks for a distributed file of a media package with the given key. Files that no longer exist or whose size does
+   * not match the key are not returned.
+   *
+   * @param root
+   *          the organization directory
+   * @param mediaPackageId
+   *          the media package identifier
+   * @param key
+   *          the key of the file content
+   * @param size
+   *          the file size
+   * @return the distributed file or <code>null</code> if there is none
+   * @throws IOException
+   *           if the index cannot be read
+   */
+  File find(File root, String mediaPackageId, String key, long size) throws IOException {
+    File indexFile = getIndexFile(root, mediaPackageId);
+    synchronized (getLock(mediaPackageId)) {
+      if (!indexFile.isFile())
+        return null;
+      try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ);
+              FileLock lock = channel.lock(0, Long.MAX_VALUE, true)) {
+        List<String> paths = read(channel).get(key);
+        if (paths == null)
+          return null;
+        for (String path : paths) {
+          File file = new File(root, path);
+          if (file.isFile() && file.length() == size)
+            return file;
+        }
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Adds a distributed file to the index of its media package, replacing any previous entry of the same file.
+   *
+   * @param root
+   *          the organization directory
+   * @param mediaPackageId
+   *          the media package identifier
+   * @param key
+   *          the key of the file content
+   * @param file
+   *          the distributed file
+   * @throws IOException
+   *           if the index cannot be updated
+   */
+  void add(File root, String mediaPackageId, String key, File file) throws IOException {
+    String path = getRelativePath(root, file);
+    File indexFile = getIndexFile(root, mediaPackageId);
+    synchronized (getLock(mediaPackageId)) {
+      while (true) {
+        indexFile.getParentFile().mkdirs();
+        try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE); FileLock lock = channel.lock()) {
+          // Another node may have deleted the index file while this one was waiting for the lock
+          if (!indexFile.isFile())
+            continue;
+          Map<String, List<String>> index = read(channel);
+          remove(index, path);
+          List<String> paths = index.get(key);
+          if (paths == null) {
+            paths = new ArrayList<String>();
+            index.put(key, paths);
+          }
+          paths.add(path);
+          write(channel, index);
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes a distributed file, or all files within a directory, from the index of their media package. Once the last
+   * file of the media package has been removed, the index file is deleted while it is still locked. Nodes that have
+   * opened it to add a file in the meantime notice that it is gone once they get the lock, and start over.
+   *
+   * @param root
+   *          the organization directory
+   * @param mediaPackageId
+   *          the media package identifier
+   * @param file
+   *          the distributed file or a directory containing distributed files
+   * @throws IOException
+   *           if the index cannot be updated
+   */
+  void remove(File root, String mediaPackageId, File file) throws IOException {
+    String path = getRelativePath(root, file);
+    File indexFile = getIndexFile(root, mediaPackageId);
+    synchronized (getLock(mediaPackageId)) {
+      if (!indexFile.isFile())
+        return;
+      try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ,
+              StandardOpenOption.WRITE); FileLock lock = channel.lock()) {
+        Map<String, List<String>> index = read(channel);
+        boolean changed = remove(index, path);
+        if (index.isEmpty())
+          Files.delete(indexFile.toPath());
+        else if (changed)
+          write(channel, index);
+      }
+    }
+  }
+
+  /**
+   * Removes a path and all paths below it from the index.
+   *
+   * @return <code>true</code> if the index has changed
+   */
+  private static boolean remove(Map<String, List<String>> index, String path) {
+    boolean changed = false;
+    for (Iterator<List<String>> i = index.values().iterator(); i.hasNext();) {
+      List<String> paths = i.next();
+      for (Iterator<String> j = paths.iterator(); j.hasNext();) {
+        String p = j.next();
+        if (p.equals(path) || p.startsWith(path + "/")) {
+          j.remove();
+          changed = true;
+        }
+      }
+      if (paths.isEmpty())
+        i.remove();
+    }
+    return changed;
+  }
+
+  private Map<String, List<String>> read(FileChannel channel) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, buffer.position()) < 0)
+        break;
+    }
+    Map<String, List<String>> index = gson.fromJson(new String(buffer.array(), 0, buffer.position(),
+            StandardCharsets.UTF_8), INDEX_TYPE);
+    return index != null ? index : new TreeMap<String, List<String>>();
+  }
+
+  private void write(FileChannel channel, Map<String, List<String>> index) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(gson.toJson(index, INDEX_TYPE).getBytes(StandardCharsets.UTF_8));
+    channel.truncate(0);
+    while (buffer.hasRemaining()) {
+      channel.write(buffer, buffer.position());
+    }
+    channel.force(false);
+  }
+
+  private Object getLock(String mediaPackageId) {
+    return locks[(mediaPackageId.hashCode() & Integer.MAX_VALUE) % locks.length];
+  }
+
+  /**
+   * Returns the index file of a media package. The index files of an organization are kept in a directory named like
+   * the organization directory.
+   */
+  File getIndexFile(File root, String mediaPackageId) {
+    return new File(new File(directory, root.getName()), mediaPackageId + ".json");
+  }
+
+  private static String getRelativePath(File root, File file) {
+    String rootPath = FilenameUtils.separatorsToUnix(root.getAbsolutePath());
+    String path = FilenameUtils.separatorsToUnix(file.getAbsolutePath());
+    if (!path.startsWith(rootPath + "/"))
+      throw new IllegalArgumentException(file + " is not within " + root);
+    return path.substring(rootPath.length() + 1);
+  }
+
+}
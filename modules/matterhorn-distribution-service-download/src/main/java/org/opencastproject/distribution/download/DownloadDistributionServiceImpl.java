@@ -37,6 +37,8 @@ import org.opencastproject.mediapackage.MediaPackageElementParser;
 import org.opencastproject.mediapackage.MediaPackageException;
 import org.opencastproject.mediapackage.MediaPackageParser;
 import org.opencastproject.serviceregistry.api.ServiceRegistryException;
+import org.opencastproject.util.Checksum;
+import org.opencastproject.util.ChecksumType;
 import org.opencastproject.util.FileSupport;
 import org.opencastproject.util.LoadUtil;
 import org.opencastproject.util.NotFoundException;
@@ -50,7 +52,6 @@ import com.google.gson.reflect.TypeToken;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.osgi.service.cm.ConfigurationException;
 import org.osgi.service.cm.ManagedService;
@@ -60,22 +61,15 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.nio.file.DirectoryStream;
-import java.nio.file.FileVisitResult;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.SimpleFileVisitor;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Dictionary;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import javax.servlet.http.HttpServletResponse;
 
@@ -122,6 +116,9 @@ public class DownloadDistributionServiceImpl extends AbstractDistributionService
 
   private Gson gson = new Gson();
 
+  /** The index of the distributed files by their content */
+  private DistributedFileIndex fileIndex = null;
+
   /**
    * Creates a new instance of the download distribution service.
    */
@@ -148,9 +145,17 @@ public class DownloadDistributionServiceImpl extends AbstractDistributionService
       throw new IllegalStateException("Distribution directory must be set (org.opencastproject.download.directory)");
     this.distributionDirectory = new File(ccDistributionDirectory);
     logger.info("Download distribution directory is {}", distributionDirectory);
+    this.fileIndex = new DistributedFileIndex(distributionDirectory);
     this.distributionChannel = OsgiUtil.getComponentContextProperty(cc, CONFIG_KEY_STORE_TYPE);
   }
 
+  /**
+   * Deactivate method for this OSGi service implementation.
+   */
+  public void deactivate() {
+    shutdownDistributeExecutor();
+  }
+
   public String getDistributionType() {
     return this.distributionChannel;
   }
@@ -202,18 +207,44 @@ public class DownloadDistributionServiceImpl extends AbstractDistributionService
    *           Thrown if the parent directory of the MediaPackageElement cannot be created, if the MediaPackageElement
    *           cannot be copied or another unexpected exception occurs.
    */
-  public MediaPackageElement[] distributeElements(String channelId, MediaPackage mediapackage, Set<String> elementIds,
-          boolean checkAvailability) throws DistributionException {
+  public MediaPackageElement[] distributeElements(final String channelId, final MediaPackage mediapackage,
+          Set<String> elementIds, boolean checkAvailability) throws DistributionException {
     notNull(mediapackage, "mediapackage");
     notNull(elementIds, "elementIds");
     notNull(channelId, "channelId");
 
-    final Set<MediaPackageElement> elements = getElements(mediapackage, elementIds);
-    List<MediaPackageElement> distributedElements = new ArrayList<MediaPackageElement>();
-
-    for (MediaPackageElement element : elements) {
-      MediaPackageElement distributedElement = distributeElement(channelId, mediapackage, element, checkAvailability);
-      distributedElements.add(distributedElement);
+    // Distribute the elements concurrently and check their availability once all of them are in place
+    final List<MediaPackageElement> elements = new ArrayList<MediaPackageElement>(getElements(mediapackage,
+            elementIds));
+    final List<Callable<MediaPackageElement>> distributions = new ArrayList<Callable<MediaPackageElement>>();
+    for (final MediaPackageElement element : elements) {
+      distributions.add(new Callable<MediaPackageElement>() {
+        @Override
+        public MediaPackageElement call() throws Exception {
+          return distributeElement(channelId, mediapackage, element, false);
+        }
+      });
+    }
+    final List<MediaPackageElement> distributedElements;
+    try {
+      distributedElements = getResults(invokeConcurrently(distributions), elements, "distribute");
+      if (checkAvailability) {
+        final List<Callable<Void>> checks = new ArrayList<Callable<Void>>();
+        for (final MediaPackageElement distributedElement : distributedElements) {
+          checks.add(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+              checkAvailability(distributedElement);
+              return null;
+            }
+          });
+        }
+        getResults(invokeConcurrently(checks), distributedElements, "access distributed");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DistributionException("Interrupted while distributing elements of media package "
+              + mediapackage.getIdentifier(), e);
     }
     return distributedElements.toArray(new MediaPackageElement[distributedElements.size()]);
   }
@@ -251,8 +282,10 @@ public class DownloadDistributionServiceImpl extends AbstractDistributionService
       }
 
       // Try to find a duplicated element source
+      String key = null;
       try {
-        source = findDuplicatedElementSource(source, mediapackageId);
+        key = getFileIndexKey(element, source);
+        source = findDuplicatedElementSource(source, key, mediapackageId);
       } catch (IOException e) {
         logger.warn("Unable to find duplicated source {}: {}", source, ExceptionUtils.getMessage(e));
       }
@@ -274,6 +307,14 @@ public class DownloadDistributionServiceImpl extends AbstractDistributionService
           throw new DistributionException(format("Unable to copy %s to %s", source, destination), e);
         }
       }
+      if (key != null) {
+        try {
+          fileIndex.add(getOrganizationDirectory(), mediapackageId, key, destination);
+        } catch (IOException e) {
+          logger.warn("Unable to add {} to the index of distributed files: {}", destination,
+              ExceptionUtils.getMessage(e));
+        }
+      }
       // Create a media package element representation of the distributed file
       MediaPackageElement distributedElement = (MediaPackageElement) element.clone();
       try {
@@ -284,20 +325,8 @@ public class DownloadDistributionServiceImpl extends AbstractDistributionService
 
       logger.debug("Finished distributing element {} of media package {} to publication channel {}", elementId,
           mediapackageId, channelId);
-      final URI uri = distributedElement.getURI();
-      if (checkAvailability) {
-        logger.debug("Checking availability of distributed artifact {} at {}", distributedElement, uri);
-        waitForResource(trustedHttpClient, uri, HttpServletResponse.SC_OK, TIMEOUT, INTERVAL)
-                .fold(Misc.<Exception, Void> chuck(), new Effect.X<Integer>() {
-                  @Override
-                  public void xrun(Integer status) throws Exception {
-                    if (ne(status, HttpServletResponse.SC_OK)) {
-                      logger.warn("Attempt to access distributed file {} returned code {}", uri, status);
-                      throw new DistributionException("Unable to load distributed file " + uri.toString());
-                    }
-                  }
-                });
-      }
+      if (checkAvailability)
+        checkAvailability(distributedElement);
       return distributedElement;
     } catch (Exception e) {
       logger.warn("Error distributing " + element, e);
@@ -309,6 +338,29 @@ public class DownloadDistributionServiceImpl extends AbstractDistributionService
     }
   }
 
+  /**
+   * Waits for a distributed element to become available via http.
+   *
+   * @param distributedElement
+   *          the distributed element
+   * @throws Exception
+   *           if the element does not become available
+   */
+  private void checkAvailability(MediaPackageElement distributedElement) throws Exception {
+    final URI uri = distributedElement.getURI();
+    logger.debug("Checking availability of distributed artifact {} at {}", distributedElement, uri);
+    waitForResource(trustedHttpClient, uri, HttpServletResponse.SC_OK, TIMEOUT, INTERVAL)
+            .fold(Misc.<Exception, Void> chuck(), new Effect.X<Integer>() {
+              @Override
+              public void xrun(Integer status) throws Exception {
+                if (ne(status, HttpServletResponse.SC_OK)) {
+                  logger.warn("Attempt to access distributed file {} returned code {}", uri, status);
+                  throw new DistributionException("Unable to load distributed file " + uri.toString());
+                }
+              }
+            });
+  }
+
   @Override
   public Job retract(String channelId, MediaPackage mediapackage, String elementId) throws DistributionException {
     Set<String> elementIds = new HashSet();
@@ -401,6 +453,12 @@ public class DownloadDistributionServiceImpl extends AbstractDistributionService
 
       // Try to remove the file and its parent folder representing the mediapackage element id
       FileUtils.forceDelete(elementFile.getParentFile());
+      try {
+        fileIndex.remove(getOrganizationDirectory(), mediapackageId, elementFile.getParentFile());
+      } catch (IOException e) {
+        logger.warn("Unable to remove {} from the index of distributed files: {}", elementFile.getParentFile(),
+            ExceptionUtils.getMessage(e));
+      }
       if (mediapackageDir.isDirectory() && mediapackageDir.list().length == 0)
         FileSupport.delete(mediapackageDir);
 
@@ -477,60 +535,46 @@ public class DownloadDistributionServiceImpl extends AbstractDistributionService
    *
    * @param source
    *          the source file
+   * @param key
+   *          the key of the source file in the index of distributed files
    * @param mpId
    *          the element's mediapackage id
    * @return the found duplicated file or the given source if nothing has been found
    * @throws IOException
    *           if an I/O error occurs
    */
-  private File findDuplicatedElementSource(final File source, final String mpId) throws IOException {
-    String orgId = securityService.getOrganization().getId();
-    final Path rootPath = Paths.get(distributionDirectory.getAbsolutePath(), orgId);
-
-    if (!Files.exists(rootPath))
-      return source;
-
-    List<Path> mediaPackageDirectories = new ArrayList<>();
-    try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(rootPath)) {
-      for (Path path : directoryStream) {
-        Path mpDir = path.resolve(mpId);
-        if (Files.exists(mpDir)) {
-          mediaPackageDirectories.add(mpDir);
-        }
-      }
-    }
-
-    if (mediaPackageDirectories.isEmpty())
-      return source;
-
-    final long size = Files.size(source.toPath());
+  private File findDuplicatedElementSource(final File source, final String key, final String mpId)
+          throws IOException {
+    File duplicate = fileIndex.find(getOrganizationDirectory(), mpId, key, source.length());
+    return duplicate != null ? duplicate : source;
+  }
 
-    final File[] result = new File[1];
-    for (Path p : mediaPackageDirectories) {
-      Files.walkFileTree(p, new SimpleFileVisitor<Path>() {
-        @Override
-        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-          if (attrs.isDirectory())
-            return FileVisitResult.CONTINUE;
-
-          if (size != attrs.size())
-            return FileVisitResult.CONTINUE;
-
-          try (InputStream is1 = Files.newInputStream(source.toPath()); InputStream is2 = Files.newInputStream(file)) {
-            if (!IOUtils.contentEquals(is1, is2))
-              return FileVisitResult.CONTINUE;
-          }
-          result[0] = file.toFile();
-          return FileVisitResult.TERMINATE;
-        }
-      });
-      if (result[0] != null)
-        break;
-    }
-    if (result[0] != null)
-      return result[0];
+  /**
+   * Returns the key of an element's file in the index of distributed files. The checksum of the element is used if it
+   * has one, which saves reading the file.
+   *
+   * @param element
+   *          the mediapackage element
+   * @param source
+   *          the element's file
+   * @return the key
+   * @throws IOException
+   *           if the checksum of the file cannot be calculated
+   */
+  private String getFileIndexKey(MediaPackageElement element, File source) throws IOException {
+    Checksum checksum = element.getChecksum();
+    if (checksum == null)
+      checksum = Checksum.create(ChecksumType.DEFAULT_TYPE, source);
+    return DistributedFileIndex.createKey(source.length(), checksum);
+  }
 
-    return source;
+  /**
+   * Gets the directory containing the publication channels of the current organization.
+   *
+   * @return the filesystem directory
+   */
+  protected File getOrganizationDirectory() {
+    return new File(distributionDirectory, securityService.getOrganization().getId());
   }
 
   /**
@@ -592,6 +636,7 @@ public class DownloadDistributionServiceImpl extends AbstractDistributionService
             DEFAULT_DISTRIBUTE_JOB_LOAD, serviceRegistry);
     retractJobLoad = LoadUtil.getConfiguredLoadValue(properties, RETRACT_JOB_LOAD_KEY, DEFAULT_RETRACT_JOB_LOAD,
             serviceRegistry);
+    updateDistributeParallelism(properties);
   }
 
 }
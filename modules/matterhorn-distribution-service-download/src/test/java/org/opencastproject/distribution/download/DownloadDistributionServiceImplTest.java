@@ -64,7 +64,9 @@ import org.osgi.service.component.ComponentContext;
 import java.io.File;
 import java.net.URI;
 import java.util.Dictionary;
+import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.Set;
 
 import javax.servlet.http.HttpServletResponse;
 
@@ -158,7 +160,9 @@ public class DownloadDistributionServiceImplTest {
 
   @After
   public void tearDown() throws Exception {
+    service.deactivate();
     FileUtils.deleteDirectory(distributionRoot);
+    FileUtils.deleteDirectory(new File(distributionRoot.getPath() + DistributedFileIndex.INDEX_DIRECTORY_SUFFIX));
     ((ServiceRegistryInMemoryImpl) serviceRegistry).dispose();
   }
 
@@ -302,4 +306,89 @@ public class DownloadDistributionServiceImplTest {
     Assert.assertTrue(service.getDistributionFile("oai-pmh", mp, mp.getElementById("notes")).isFile());
   }
 
+  @Test
+  public void testConcurrentDistribution() throws Exception {
+    Dictionary<String, Object> properties = new Hashtable<String, Object>();
+    properties.put(DownloadDistributionServiceImpl.DISTRIBUTE_PARALLELISM_KEY, "2");
+    service.updated(properties);
+
+    Set<String> elementIds = new HashSet<String>();
+    elementIds.add("track-1");
+    elementIds.add("catalog-1");
+    elementIds.add("catalog-2");
+    elementIds.add("notes");
+    MediaPackageElement[] distributed = service.distributeElements("engage-player", mp, elementIds, true);
+    Assert.assertEquals(4, distributed.length);
+    for (MediaPackageElement element : distributed) {
+      Assert.assertTrue(elementIds.contains(element.getIdentifier()));
+      Assert.assertTrue(service.getDistributionFile("engage-player", mp, element).isFile());
+    }
+
+    // The elements have been distributed by the threads of the service, which are kept for the next job
+    Set<Thread> threads = getDistributionThreads();
+    Assert.assertFalse(threads.isEmpty());
+    service.distributeElements("oai-pmh", mp, elementIds, false);
+    for (Thread thread : threads) {
+      Assert.assertTrue(thread.isAlive());
+    }
+  }
+
+  private static Set<Thread> getDistributionThreads() {
+    Set<Thread> threads = new HashSet<Thread>();
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (thread.isAlive() && thread.getName().startsWith(DownloadDistributionServiceImpl.JOB_TYPE + " distribution "))
+        threads.add(thread);
+    }
+    return threads;
+  }
+
+  @Test
+  public void testDuplicateIndex() throws Exception {
+    MediaPackageElement track = mp.getElementById("track-1");
+    Job job1 = service.distribute("engage-player", mp, "track-1");
+    Job job2 = service.distribute("oai-pmh", mp, "notes");
+    JobBarrier jobBarrier = new JobBarrier(null, serviceRegistry, 500, job1, job2);
+    jobBarrier.waitForJobs();
+
+    // The index is kept on disk and knows the distributed files by their size and checksum
+    File engageFile = service.getDistributionFile("engage-player", mp, track);
+    File oaiFile = service.getDistributionFile("oai-pmh", mp, track);
+    String key = DistributedFileIndex.createKey(engageFile.length(), track.getChecksum());
+    File organizationDir = service.getOrganizationDirectory();
+    String mpId = mp.getIdentifier().compact();
+    DistributedFileIndex index = new DistributedFileIndex(distributionRoot);
+    // The index is not served along with the distributed files
+    File indexFile = index.getIndexFile(organizationDir, mpId);
+    Assert.assertTrue(indexFile.isFile());
+    Assert.assertFalse(indexFile.getAbsolutePath().startsWith(distributionRoot.getAbsolutePath() + File.separator));
+    Assert.assertEquals(engageFile.getAbsoluteFile(), index.find(organizationDir, mpId, key, engageFile.length()));
+    Assert.assertNull(index.find(organizationDir, mpId, key, engageFile.length() + 1));
+
+    Job job3 = service.distribute("oai-pmh", mp, "track-1");
+    jobBarrier = new JobBarrier(null, serviceRegistry, 500, job3);
+    jobBarrier.waitForJobs();
+    Assert.assertTrue(oaiFile.isFile());
+
+    // Retracted files are removed from the index
+    Job job4 = service.retract("engage-player", mp, "track-1");
+    jobBarrier = new JobBarrier(null, serviceRegistry, 500, job4);
+    jobBarrier.waitForJobs();
+    Assert.assertEquals(oaiFile.getAbsoluteFile(), index.find(organizationDir, mpId, key, oaiFile.length()));
+
+    Job job5 = service.retract("oai-pmh", mp, "track-1");
+    Job job6 = service.retract("oai-pmh", mp, "notes");
+    jobBarrier = new JobBarrier(null, serviceRegistry, 500, job5, job6);
+    jobBarrier.waitForJobs();
+    Assert.assertNull(index.find(organizationDir, mpId, key, oaiFile.length()));
+
+    // The index is deleted along with the last distributed file of the media package
+    Assert.assertFalse(indexFile.exists());
+
+    // and files distributed later are found again
+    Job job7 = service.distribute("engage-player", mp, "track-1");
+    jobBarrier = new JobBarrier(null, serviceRegistry, 500, job7);
+    jobBarrier.waitForJobs();
+    Assert.assertEquals(engageFile.getAbsoluteFile(), index.find(organizationDir, mpId, key, engageFile.length()));
+  }
+
 }
@@ -63,6 +63,7 @@ import org.opencastproject.util.data.Option;
 
 import com.entwinemedia.fn.Fn;
 
+import org.apache.commons.lang3.StringUtils;
 import org.elasticsearch.action.delete.DeleteRequestBuilder;
 import org.elasticsearch.action.delete.DeleteResponse;
 import org.elasticsearch.action.search.SearchRequestBuilder;
@@ -73,23 +74,40 @@ import org.elasticsearch.search.aggregations.AggregationBuilders;
 import org.elasticsearch.search.aggregations.bucket.terms.Terms;
 import org.elasticsearch.search.aggregations.bucket.terms.Terms.Bucket;
 import org.elasticsearch.search.aggregations.bucket.terms.TermsBuilder;
+import org.osgi.service.component.ComponentContext;
+import org.osgi.service.component.ComponentException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.locks.ReentrantLock;
 
 public abstract class AbstractSearchIndex extends AbstractElasticsearchIndex {
 
   private static final Logger logger = LoggerFactory.getLogger(AbstractSearchIndex.class);
 
+  /** Configuration key for the number of services and service partitions that are recreated concurrently */
+  public static final String RECREATE_PARALLELISM_KEY = "org.opencastproject.index.recreate.parallelism";
+
+  /** By default, services are recreated one after another */
+  public static final int DEFAULT_RECREATE_PARALLELISM = 1;
+
   /** The message sender */
   private MessageSender messageSender;
 
@@ -99,9 +117,42 @@ public abstract class AbstractSearchIndex extends AbstractElasticsearchIndex {
   /** An Executor to get messages */
   private ExecutorService executor = Executors.newSingleThreadExecutor();
 
+  /** The number of services and service partitions that are recreated concurrently */
+  private int recreateParallelism = DEFAULT_RECREATE_PARALLELISM;
+
+  /** Event updates waiting to be written to the index in bulk, by document identifier */
+  private final Map<String, SearchMetadataCollection> pendingEvents = new LinkedHashMap<>();
+
+  /**
+   * Locks ordering the bulk writes of pending events with other writes and deletions of the same events. Each event is
+   * guarded by one of them according to its document identifier, so writes of unrelated events don't wait for each
+   * other.
+   */
+  private final ReentrantLock[] eventWriteLocks = createLocks(64);
+
+  /** Whether the current thread is collecting event updates to be written in bulk */
+  private final ThreadLocal<Boolean> collectingEvents = new ThreadLocal<>();
+
+  /** Whether event updates have ever been collected on this index */
+  private volatile boolean eventBatching = false;
+
   @Override
   public abstract String getIndexName();
 
+  @Override
+  public void activate(ComponentContext ctx) throws ComponentException {
+    super.activate(ctx);
+    String parallelism = StringUtils.trimToNull(ctx.getBundleContext().getProperty(RECREATE_PARALLELISM_KEY));
+    if (parallelism != null) {
+      try {
+        recreateParallelism = Math.max(1, Integer.parseInt(parallelism));
+      } catch (NumberFormatException e) {
+        logger.warn("Index recreation parallelism '{}' is malformed, setting to {}", parallelism,
+                DEFAULT_RECREATE_PARALLELISM);
+      }
+    }
+  }
+
   /** OSGi DI. */
   public void setMessageSender(MessageSender messageSender) {
     this.messageSender = messageSender;
@@ -114,6 +165,11 @@ public abstract class AbstractSearchIndex extends AbstractElasticsearchIndex {
 
   /**
    * Recreate the index from all of the services that provide data.
+   * <p>
+   * The data is written into a fresh index, while searches keep being answered by the current index. Once all services
+   * have re-sent their data, the new index atomically replaces the current one. Services that don't depend on each
+   * other are recreated concurrently, and each service is asked to re-send its data in concurrent partitions, according
+   * to the configured parallelism.
    *
    * @throws InterruptedException
    *           Thrown if the process is interupted.
@@ -128,23 +184,35 @@ public abstract class AbstractSearchIndex extends AbstractElasticsearchIndex {
    */
   public synchronized void recreateIndex()
           throws InterruptedException, CancellationException, ExecutionException, IOException, IndexServiceException {
-    // Clear index first
-    clear();
-    recreateService(IndexRecreateObject.Service.Groups);
-    recreateService(IndexRecreateObject.Service.Acl);
-    recreateService(IndexRecreateObject.Service.Themes);
-    recreateService(IndexRecreateObject.Service.Series);
-    recreateService(IndexRecreateObject.Service.Scheduler);
-    recreateService(IndexRecreateObject.Service.Workflow);
-    recreateService(IndexRecreateObject.Service.AssetManager);
-    recreateService(IndexRecreateObject.Service.Comments);
+    try {
+      beginRebuild();
+    } catch (SearchIndexException e) {
+      throw new IndexServiceException("Unable to create a new index to recreate '" + getIndexName() + "'", e);
+    }
+    boolean completed = false;
+    try {
+      // Events are looked up by series, and comments are added to existing events
+      recreateServices(IndexRecreateObject.Service.Groups, IndexRecreateObject.Service.Acl,
+              IndexRecreateObject.Service.Themes, IndexRecreateObject.Service.Series);
+      recreateServices(IndexRecreateObject.Service.Scheduler, IndexRecreateObject.Service.Workflow,
+              IndexRecreateObject.Service.AssetManager);
+      recreateServices(IndexRecreateObject.Service.Comments);
+      flushEvents();
+      completeRebuild();
+      completed = true;
+    } catch (SearchIndexException e) {
+      throw new IndexServiceException("Unable to replace index '" + getIndexName() + "' with the recreated one", e);
+    } finally {
+      if (!completed)
+        abortRebuild();
+    }
   }
 
   /**
-   * Ask for data to be rebuilt from a service.
+   * Ask for data to be rebuilt from a number of services, running up to {@link #recreateParallelism} services at once.
    *
-   * @param service
-   *          The {@link IndexRecreateObject.Service} representing the service to start re-sending the data from.
+   * @param services
+   *          The {@link IndexRecreateObject.Service}s representing the services to start re-sending the data from.
    * @throws IndexServiceException
    *           Thrown if there is a problem re-sending the data from the service.
    * @throws InterruptedException
@@ -154,50 +222,112 @@ public abstract class AbstractSearchIndex extends AbstractElasticsearchIndex {
    * @throws ExecutionException
    *           Thrown if the process of re-sending the data has an error.
    */
-  private void recreateService(IndexRecreateObject.Service service)
+  private void recreateServices(IndexRecreateObject.Service... services)
           throws IndexServiceException, InterruptedException, CancellationException, ExecutionException {
-    logger.info("Starting to recreate index for service '{}'", service);
-    messageSender.sendObjectMessage(IndexProducer.RECEIVER_QUEUE + "." + service, MessageSender.DestinationType.Queue,
-            IndexRecreateObject.start(getIndexName(), service));
-    boolean done = false;
+    Deque<IndexRecreateObject.Service> waiting = new ArrayDeque<>(Arrays.asList(services));
+    Map<IndexRecreateObject.Service, RecreationProgress> running = new EnumMap<>(IndexRecreateObject.Service.class);
     // TODO Add a timeout for services that are not going to respond.
-    while (!done) {
+    while (!waiting.isEmpty() || !running.isEmpty()) {
+      while (!waiting.isEmpty() && running.size() < recreateParallelism) {
+        IndexRecreateObject.Service service = waiting.poll();
+        logger.info("Starting to recreate index for service '{}'", service);
+        running.put(service, new RecreationProgress(service));
+        messageSender.sendObjectMessage(IndexProducer.RECEIVER_QUEUE + "." + service,
+                MessageSender.DestinationType.Queue,
+                IndexRecreateObject.start(getIndexName(), service, recreateParallelism));
+      }
+
       FutureTask<Serializable> future = messageReceiver.receiveSerializable(IndexProducer.RESPONSE_QUEUE,
               MessageSender.DestinationType.Queue);
       executor.execute(future);
       BaseMessage message = (BaseMessage) future.get();
-      if (message.getObject() instanceof IndexRecreateObject) {
-        IndexRecreateObject indexRecreateObject = (IndexRecreateObject) message.getObject();
-        switch (indexRecreateObject.getStatus()) {
-          case Update:
-            logger.info("Updating service: '{}' with {}/{} finished, {}% complete.", new Object[] { indexRecreateObject.getService(),
-                    indexRecreateObject.getCurrent(), indexRecreateObject.getTotal(), (int) (indexRecreateObject.getCurrent() * 100 / indexRecreateObject.getTotal()) });
-            if (indexRecreateObject.getCurrent() == indexRecreateObject.getTotal()) {
-              logger.info("Waiting for service '{}' indexing to complete", indexRecreateObject.getService());
-            }
-            break;
-          case End:
-            done = true;
-            logger.info("Finished re-creating data for service '{}'", indexRecreateObject.getService());
-            break;
-          case Error:
-            logger.error("Error updating service '{}' with {}/{} finished.",
-                    new Object[] { indexRecreateObject.getService(), indexRecreateObject.getCurrent(),
-                            indexRecreateObject.getTotal() });
-            throw new IndexServiceException(
-                    format("Error updating service '%s' with %s/%s finished.", indexRecreateObject.getService(),
-                            indexRecreateObject.getCurrent(), indexRecreateObject.getTotal()));
-          default:
-            logger.error("Unable to handle the status '{}' for service '{}'", indexRecreateObject.getStatus(),
-                    indexRecreateObject.getService());
-            throw new IllegalArgumentException(format("Unable to handle the status '%s' for service '%s'",
-                    indexRecreateObject.getStatus(), indexRecreateObject.getService()));
+      if (!(message.getObject() instanceof IndexRecreateObject))
+        continue;
 
-        }
+      IndexRecreateObject indexRecreateObject = (IndexRecreateObject) message.getObject();
+      RecreationProgress progress = running.get(indexRecreateObject.getService());
+      if (progress == null) {
+        logger.debug("Ignoring '{}' message of service '{}' which is not being recreated",
+                indexRecreateObject.getStatus(), indexRecreateObject.getService());
+        continue;
+      }
+      switch (indexRecreateObject.getStatus()) {
+        case Update:
+          progress.update(indexRecreateObject.getCurrent(), indexRecreateObject.getTotal());
+          logger.info("Updating service: '{}' with {}/{} finished, {}% complete, {} updates/s.",
+                  new Object[] { progress.getService(), progress.getCurrent(), progress.getTotal(),
+                          progress.getPercentage(), progress.getThroughput() });
+          if (progress.getCurrent() == progress.getTotal()) {
+            logger.info("Waiting for service '{}' indexing to complete", progress.getService());
+          }
+          break;
+        case End:
+          running.remove(progress.getService());
+          logger.info("Finished re-creating data for service '{}': {} updates in {} s, {} updates/s",
+                  new Object[] { progress.getService(), progress.getCurrent(), progress.getElapsedSeconds(),
+                          progress.getThroughput() });
+          break;
+        case Error:
+          logger.error("Error updating service '{}' with {}/{} finished.",
+                  new Object[] { indexRecreateObject.getService(), indexRecreateObject.getCurrent(),
+                          indexRecreateObject.getTotal() });
+          throw new IndexServiceException(
+                  format("Error updating service '%s' with %s/%s finished.", indexRecreateObject.getService(),
+                          indexRecreateObject.getCurrent(), indexRecreateObject.getTotal()));
+        default:
+          logger.error("Unable to handle the status '{}' for service '{}'", indexRecreateObject.getStatus(),
+                  indexRecreateObject.getService());
+          throw new IllegalArgumentException(format("Unable to handle the status '%s' for service '%s'",
+                  indexRecreateObject.getStatus(), indexRecreateObject.getService()));
       }
     }
   }
 
+  /** Progress of a single service while recreating the index */
+  private static final class RecreationProgress {
+
+    private final IndexRecreateObject.Service service;
+    private final long started = System.currentTimeMillis();
+    private int current = 0;
+    private int total = 0;
+
+    RecreationProgress(IndexRecreateObject.Service service) {
+      this.service = service;
+    }
+
+    /** Updates are sent concurrently and may arrive out of order */
+    void update(int current, int total) {
+      this.current = Math.max(this.current, current);
+      this.total = total;
+    }
+
+    IndexRecreateObject.Service getService() {
+      return service;
+    }
+
+    int getCurrent() {
+      return current;
+    }
+
+    int getTotal() {
+      return total;
+    }
+
+    int getPercentage() {
+      return total > 0 ? (int) ((long) current * 100 / total) : 100;
+    }
+
+    long getElapsedSeconds() {
+      return (System.currentTimeMillis() - started) / 1000;
+    }
+
+    long getThroughput() {
+      long elapsed = System.currentTimeMillis() - started;
+      return elapsed > 0 ? current * 1000L / elapsed : current;
+    }
+
+  }
+
   /**
    * Adds the recording event to the search index or updates it accordingly if it is there.
    *
@@ -219,16 +349,194 @@ public abstract class AbstractSearchIndex extends AbstractElasticsearchIndex {
 
     // Add the resource to the index
     SearchMetadataCollection inputDocument = EventIndexUtils.toSearchMetadata(event);
+
+    // Defer the update if this thread is collecting event updates
+    if (Boolean.TRUE.equals(collectingEvents.get())) {
+      synchronized (pendingEvents) {
+        pendingEvents.put(inputDocument.getIdentifier(), inputDocument);
+      }
+      return;
+    }
+
     List<SearchMetadata<?>> resourceMetadata = inputDocument.getMetadata();
     ElasticsearchDocument doc = new ElasticsearchDocument(inputDocument.getIdentifier(),
             inputDocument.getDocumentType(), resourceMetadata);
     try {
-      update(doc);
+      if (eventBatching) {
+        // Make sure a pending update to the same event can't overwrite this one
+        ReentrantLock lock = getEventWriteLock(inputDocument.getIdentifier());
+        lock.lock();
+        try {
+          removePendingEvent(inputDocument.getIdentifier());
+          update(doc);
+        } finally {
+          lock.unlock();
+        }
+      } else {
+        update(doc);
+      }
     } catch (Throwable t) {
       throw new SearchIndexException("Cannot write resource " + event + " to index", t);
     }
   }
 
+  /**
+   * Starts collecting the event updates made by the current thread. Instead of being written to the index one at a
+   * time, the updates are kept in memory and written by a single bulk request when {@link #endEventBatch()} is called.
+   * Several updates of the same event are merged into one.
+   * <p>
+   * Pending updates are returned by {@link #getPendingEvent(String, String)} and written to the index before the index
+   * is searched for events, so they are visible to all users of the index.
+   */
+  public void beginEventBatch() {
+    eventBatching = true;
+    collectingEvents.set(Boolean.TRUE);
+  }
+
+  /**
+   * Stops collecting the event updates made by the current thread and writes all pending event updates to the index.
+   *
+   * @throws SearchIndexException
+   *           if writing the pending updates fails
+   */
+  public void endEventBatch() throws SearchIndexException {
+    collectingEvents.remove();
+    flushEvents();
+  }
+
+  /**
+   * Writes all pending event updates to the index using a single bulk request. The updates are only removed from the
+   * pending ones once they have been written, so if writing fails they are kept and written by the next flush.
+   *
+   * @throws SearchIndexException
+   *           if writing the pending updates fails
+   */
+  public void flushEvents() throws SearchIndexException {
+    SortedSet<Integer> stripes = new TreeSet<>();
+    synchronized (pendingEvents) {
+      if (pendingEvents.isEmpty())
+        return;
+      for (String identifier : pendingEvents.keySet()) {
+        stripes.add(getEventWriteLockIndex(identifier));
+      }
+    }
+
+    // Take the locks in a fixed order, so that concurrent flushes don't deadlock
+    List<ReentrantLock> locks = new ArrayList<>(stripes.size());
+    try {
+      for (int stripe : stripes) {
+        ReentrantLock lock = eventWriteLocks[stripe];
+        lock.lock();
+        locks.add(lock);
+      }
+
+      // Only events guarded by the locks held can be written, the others are left for the next flush
+      List<SearchMetadataCollection> batch = new ArrayList<>();
+      synchronized (pendingEvents) {
+        for (SearchMetadataCollection inputDocument : pendingEvents.values()) {
+          if (stripes.contains(getEventWriteLockIndex(inputDocument.getIdentifier())))
+            batch.add(inputDocument);
+        }
+      }
+      if (batch.isEmpty())
+        return;
+
+      ElasticsearchDocument[] docs = new ElasticsearchDocument[batch.size()];
+      for (int i = 0; i < docs.length; i++) {
+        SearchMetadataCollection inputDocument = batch.get(i);
+        docs[i] = new ElasticsearchDocument(inputDocument.getIdentifier(), inputDocument.getDocumentType(),
+                inputDocument.getMetadata());
+      }
+
+      logger.debug("Writing {} pending event updates to search index '{}'", docs.length, getIndexName());
+      try {
+        update(docs);
+      } catch (SearchIndexException e) {
+        // Leave the updates pending, so that they are still visible and written by the next flush
+        logger.warn("Writing {} pending event updates to search index '{}' failed, keeping them for the next flush: {}",
+                docs.length, getIndexName(), e.getMessage());
+        throw e;
+      }
+
+      // Keep the updates that have been made while writing
+      synchronized (pendingEvents) {
+        for (SearchMetadataCollection inputDocument : batch) {
+          if (pendingEvents.get(inputDocument.getIdentifier()) == inputDocument)
+            pendingEvents.remove(inputDocument.getIdentifier());
+        }
+      }
+    } finally {
+      for (ReentrantLock lock : locks) {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Returns the recording event if an update to it is waiting to be written to the index.
+   *
+   * @param mediapackageId
+   *          the mediapackage identifier
+   * @param organization
+   *          the organization
+   * @return the pending recording event or <code>null</code> if there is no pending update
+   * @throws SearchIndexException
+   *           if the pending event cannot be read
+   */
+  public Event getPendingEvent(String mediapackageId, String organization) throws SearchIndexException {
+    SearchMetadataCollection inputDocument;
+    synchronized (pendingEvents) {
+      inputDocument = pendingEvents.get(mediapackageId.concat(organization));
+    }
+    if (inputDocument == null)
+      return null;
+    try {
+      return EventIndexUtils.toRecordingEvent(inputDocument);
+    } catch (IOException e) {
+      throw new SearchIndexException("Cannot read pending event " + mediapackageId, e);
+    }
+  }
+
+  /**
+   * Returns <code>true</code> if the query may be looking for events with pending updates.
+   */
+  private boolean hasPendingEvents(EventSearchQuery query) {
+    synchronized (pendingEvents) {
+      if (pendingEvents.isEmpty())
+        return false;
+      String[] identifiers = query.getIdentifier();
+      if (identifiers.length == 0 || query.getOrganization() == null)
+        return true;
+      for (String identifier : identifiers) {
+        if (pendingEvents.containsKey(identifier.concat(query.getOrganization())))
+          return true;
+      }
+      return false;
+    }
+  }
+
+  private static ReentrantLock[] createLocks(int count) {
+    ReentrantLock[] locks = new ReentrantLock[count];
+    for (int i = 0; i < count; i++) {
+      locks[i] = new ReentrantLock();
+    }
+    return locks;
+  }
+
+  private int getEventWriteLockIndex(String documentId) {
+    return (documentId.hashCode() & Integer.MAX_VALUE) % eventWriteLocks.length;
+  }
+
+  private ReentrantLock getEventWriteLock(String documentId) {
+    return eventWriteLocks[getEventWriteLockIndex(documentId)];
+  }
+
+  private void removePendingEvent(String documentId) {
+    synchronized (pendingEvents) {
+      pendingEvents.remove(documentId);
+    }
+  }
+
   /**
    * Adds or updates the group in the search index.
    *
@@ -322,12 +630,31 @@ public abstract class AbstractSearchIndex extends AbstractElasticsearchIndex {
 
   @Override
   public boolean delete(String documentType, String uid) throws SearchIndexException {
+    if (eventBatching && Event.DOCUMENT_TYPE.equals(documentType)) {
+      // Make sure a pending update can't bring the event back
+      ReentrantLock lock = getEventWriteLock(uid);
+      lock.lock();
+      try {
+        removePendingEvent(uid);
+        return deleteDocument(documentType, uid);
+      } finally {
+        lock.unlock();
+      }
+    }
+    return deleteDocument(documentType, uid);
+  }
+
+  private boolean deleteDocument(String documentType, String uid) {
     logger.debug("Removing element with id '{}' from searching index '{}'", uid, getIndexName());
 
-    DeleteRequestBuilder deleteRequest = getSearchClient().prepareDelete(getIndexName(), documentType, uid);
-    deleteRequest.setRefresh(true);
-    DeleteResponse delete = deleteRequest.execute().actionGet();
-    if (!delete.isFound()) {
+    boolean found = false;
+    for (String writeIndex : getWriteIndexNames()) {
+      DeleteRequestBuilder deleteRequest = getSearchClient().prepareDelete(writeIndex, documentType, uid);
+      deleteRequest.setRefresh(true);
+      DeleteResponse delete = deleteRequest.execute().actionGet();
+      found |= delete.isFound();
+    }
+    if (!found) {
       logger.trace("Document {} to delete was not found on index '{}'", uid, getIndexName());
       return false;
     }
@@ -450,6 +777,9 @@ public abstract class AbstractSearchIndex extends AbstractElasticsearchIndex {
    */
   public SearchResult<Event> getByQuery(EventSearchQuery query) throws SearchIndexException {
     logger.debug("Searching index using event query '{}'", query);
+    if (hasPendingEvents(query))
+      flushEvents();
+
     // Create the request builder
     SearchRequestBuilder requestBuilder = getSearchRequestBuilder(query, new EventQueryBuilder(query));
 
@@ -566,7 +896,7 @@ public abstract class AbstractSearchIndex extends AbstractElasticsearchIndex {
   public List<String> getTermsForField(String field, Option<String[]> types) {
     final String facetName = "terms";
     TermsBuilder aggBuilder = AggregationBuilders.terms(facetName).field(field);
-    SearchRequestBuilder search = getSearchClient().prepareSearch(getIndexName()).addAggregation(aggBuilder);
+    SearchRequestBuilder search = getSearchClient().prepareSearch(getReadIndexName()).addAggregation(aggBuilder);
 
     if (types.isSome())
       search = search.setTypes(types.get());
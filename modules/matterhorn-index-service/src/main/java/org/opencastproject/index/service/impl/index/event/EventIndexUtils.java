@@ -385,6 +385,9 @@ public final class EventIndexUtils {
    */
   public static Event getOrCreateEvent(String mediapackageId, String organization, User user,
           AbstractSearchIndex searchIndex) throws SearchIndexException {
+    Event pendingEvent = searchIndex.getPendingEvent(mediapackageId, organization);
+    if (pendingEvent != null)
+      return pendingEvent;
     EventSearchQuery query = new EventSearchQuery(organization, user).withoutActions().withIdentifier(mediapackageId);
     SearchResult<Event> searchResult = searchIndex.getByQuery(query);
     if (searchResult.getDocumentCount() == 0) {
@@ -416,6 +419,9 @@ public final class EventIndexUtils {
    */
   public static Event getEvent(String mediapackageId, String organization, User user, AbstractSearchIndex searchIndex)
           throws SearchIndexException {
+    Event pendingEvent = searchIndex.getPendingEvent(mediapackageId, organization);
+    if (pendingEvent != null)
+      return pendingEvent;
     EventSearchQuery query = new EventSearchQuery(organization, user).withoutActions().withIdentifier(mediapackageId);
     SearchResult<Event> searchResult = searchIndex.getByQuery(query);
     if (searchResult.getDocumentCount() == 0) {
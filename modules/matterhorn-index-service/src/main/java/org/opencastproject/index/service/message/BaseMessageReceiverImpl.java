@@ -23,6 +23,7 @@ package org.opencastproject.index.service.message;
 
 import org.opencastproject.index.IndexProducer;
 import org.opencastproject.index.service.impl.index.AbstractSearchIndex;
+import org.opencastproject.matterhorn.search.SearchIndexException;
 import org.opencastproject.message.broker.api.BaseMessage;
 import org.opencastproject.message.broker.api.MessageReceiver;
 import org.opencastproject.message.broker.api.MessageSender;
@@ -33,6 +34,7 @@ import org.opencastproject.security.api.SecurityService;
 import org.opencastproject.util.OsgiUtil;
 import org.opencastproject.util.data.Effect2;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.osgi.service.component.ComponentContext;
 import org.slf4j.Logger;
@@ -44,10 +46,25 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public abstract class BaseMessageReceiverImpl<T extends Serializable> {
 
   private static final String DESTINATION_ID_KEY = "destinationId";
+
+  /** Configuration key for the maximum number of messages whose index updates are written in a single bulk request */
+  public static final String BATCH_SIZE_KEY = "org.opencastproject.index.message.batch.size";
+
+  /** Configuration key for the maximum time to wait for more messages before writing a batch [ms] */
+  public static final String BATCH_TIMEOUT_KEY = "org.opencastproject.index.message.batch.timeout";
+
+  /** By default, every message is written to the index on its own */
+  public static final int DEFAULT_BATCH_SIZE = 1;
+
+  /** Default maximum time to wait for more messages before writing a batch in milliseconds */
+  public static final long DEFAULT_BATCH_TIMEOUT = 1000;
+
   private static final Logger logger = LoggerFactory.getLogger(BaseMessageReceiverImpl.class);
   private final ExecutorService singleThreadExecutor = Executors.newSingleThreadExecutor();
 
@@ -59,6 +76,8 @@ public abstract class BaseMessageReceiverImpl<T extends Serializable> {
   private MessageReceiverLockService lockService;
   private String destinationId;
   private MessageSender.DestinationType destinationType;
+  private int batchSize = DEFAULT_BATCH_SIZE;
+  private long batchTimeout = DEFAULT_BATCH_TIMEOUT;
 
   public BaseMessageReceiverImpl(MessageSender.DestinationType destinationType) {
     this.destinationType = destinationType;
@@ -68,6 +87,27 @@ public abstract class BaseMessageReceiverImpl<T extends Serializable> {
     logger.info("Activating {}", this.getClass().getName());
     destinationId = OsgiUtil.getComponentContextProperty(cc, DESTINATION_ID_KEY);
     logger.info("The {} for this message receiver is '{}'", DESTINATION_ID_KEY, destinationId);
+
+    String batchSizeString = StringUtils.trimToNull(cc.getBundleContext().getProperty(BATCH_SIZE_KEY));
+    if (batchSizeString != null) {
+      try {
+        batchSize = Math.max(1, Integer.parseInt(batchSizeString));
+      } catch (NumberFormatException e) {
+        logger.warn("Message batch size '{}' is malformed, setting to {}", batchSizeString, DEFAULT_BATCH_SIZE);
+      }
+    }
+    String batchTimeoutString = StringUtils.trimToNull(cc.getBundleContext().getProperty(BATCH_TIMEOUT_KEY));
+    if (batchTimeoutString != null) {
+      try {
+        batchTimeout = Math.max(0L, Long.parseLong(batchTimeoutString));
+      } catch (NumberFormatException e) {
+        logger.warn("Message batch timeout '{}' is malformed, setting to {}", batchTimeoutString,
+                DEFAULT_BATCH_TIMEOUT);
+      }
+    }
+    if (batchSize > 1)
+      logger.info("Writing the index updates of up to {} messages or {} ms at once", batchSize, batchTimeout);
+
     messageWatcher = new MessageWatcher(lockService);
     singleThreadExecutor.execute(messageWatcher);
   }
@@ -107,6 +147,10 @@ public abstract class BaseMessageReceiverImpl<T extends Serializable> {
     private final ExecutorService executor = Executors.newSingleThreadExecutor();
     private final String clazzName = BaseMessageReceiverImpl.this.getClass().getName();
     private final MessageReceiverLockService lockService;
+    /** Number of messages in the current batch */
+    private int batchCount = 0;
+    /** Time the current batch has been started in milliseconds */
+    private long batchStarted = 0L;
 
     MessageWatcher(MessageReceiverLockService lockService) {
       this.lockService = lockService;
@@ -120,11 +164,11 @@ public abstract class BaseMessageReceiverImpl<T extends Serializable> {
     @Override
     public void run() {
       logger.info("Starting to listen for {} Messages", clazzName);
+      // Updates depend on earlier updates, so they need to read from the index they are written to during a rebuild
+      getSearchIndex().joinRebuild();
       while (listening) {
-        future = messageReceiver.receiveSerializable(getDestinationId(), getDestinationType());
-        executor.execute(future);
         try {
-          BaseMessage baseMessage = (BaseMessage) future.get();
+          BaseMessage baseMessage = receive();
           if (baseMessage == null) {
             continue;
           }
@@ -132,11 +176,17 @@ public abstract class BaseMessageReceiverImpl<T extends Serializable> {
           securityService.setUser(baseMessage.getUser());
           if (baseMessage.getObject() instanceof IndexRecreateObject) {
             IndexRecreateObject obj = (IndexRecreateObject) baseMessage.getObject();
-            if (Status.End.equals(obj.getStatus()))
+            if (Status.End.equals(obj.getStatus())) {
+              // Make sure all updates are in the index before reporting the end of the recreation
+              endBatch();
               messageSender.sendObjectMessage(IndexProducer.RESPONSE_QUEUE, MessageSender.DestinationType.Queue,
                       IndexRecreateObject.end(obj.getIndexName(), obj.getService()));
+            }
           } else {
+            beginBatch();
             lockService.synchronize(baseMessage.getId().get(), execute.curry(baseMessage.getObject()).toFn());
+            if (batchCount >= batchSize)
+              endBatch();
           }
         } catch (InterruptedException e) {
           logger.error("Problem while getting {} message events {}", clazzName, ExceptionUtils.getStackTrace(e));
@@ -144,6 +194,9 @@ public abstract class BaseMessageReceiverImpl<T extends Serializable> {
           logger.error("Problem while getting {} message events {}", clazzName, ExceptionUtils.getStackTrace(e));
         } catch (CancellationException e) {
           logger.trace("Listening for messages {} has been cancelled.", clazzName);
+        } catch (TimeoutException e) {
+          // No more messages arrived in time, write the current batch
+          endBatchSilently();
         } catch (Throwable t) {
           logger.error("Problem while getting {} message events {}", clazzName, ExceptionUtils.getStackTrace(t));
         } finally {
@@ -151,8 +204,54 @@ public abstract class BaseMessageReceiverImpl<T extends Serializable> {
           securityService.setUser(null);
         }
       }
+      endBatchSilently();
       logger.info("Stopping listening for {} Messages", clazzName);
     }
+
+    /**
+     * Waits for the next message. While a batch is open, waits no longer than until the batch is due to be written.
+     */
+    private BaseMessage receive() throws InterruptedException, ExecutionException, TimeoutException {
+      // A message that has not arrived in time is still picked up by the pending receive
+      if (future == null || future.isDone()) {
+        future = messageReceiver.receiveSerializable(getDestinationId(), getDestinationType());
+        executor.execute(future);
+      }
+      if (batchCount == 0)
+        return (BaseMessage) future.get();
+      long timeout = batchStarted + batchTimeout - System.currentTimeMillis();
+      if (timeout <= 0)
+        throw new TimeoutException();
+      return (BaseMessage) future.get(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Adds the next message to the current batch, opening a new one if necessary.
+     */
+    private void beginBatch() {
+      if (batchSize <= 1)
+        return;
+      if (batchCount++ > 0)
+        return;
+      getSearchIndex().beginEventBatch();
+      batchStarted = System.currentTimeMillis();
+    }
+
+    private void endBatch() throws SearchIndexException {
+      if (batchSize <= 1 || batchCount == 0)
+        return;
+      logger.debug("Writing index updates of {} {} messages", batchCount, clazzName);
+      batchCount = 0;
+      getSearchIndex().endEventBatch();
+    }
+
+    private void endBatchSilently() {
+      try {
+        endBatch();
+      } catch (Throwable t) {
+        logger.error("Problem while writing {} message events {}", clazzName, ExceptionUtils.getStackTrace(t));
+      }
+    }
   }
 
   private final Effect2<Serializable, String> execute = new Effect2<Serializable, String>() {
@@ -0,0 +1,250 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.index.service.impl.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.opencastproject.index.service.impl.index.event.Event;
+import org.opencastproject.matterhorn.search.SearchIndexException;
+import org.opencastproject.matterhorn.search.impl.ElasticsearchDocument;
+
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests collecting event updates and writing them to the index in bulk.
+ */
+public class AbstractSearchIndexTest {
+
+  private static final String ORGANIZATION = "mh_default_org";
+
+  private RecordingSearchIndex index;
+
+  @Before
+  public void setUp() {
+    index = new RecordingSearchIndex();
+  }
+
+  @Test
+  public void testBatchedUpdatesAreMerged() throws Exception {
+    index.beginEventBatch();
+    index.addOrUpdate(event("a", "First title"));
+    index.addOrUpdate(event("a", "Second title"));
+    index.addOrUpdate(event("b", "Other event"));
+
+    assertTrue(index.getWrites().isEmpty());
+    assertEquals("Second title", index.getPendingEvent("a", ORGANIZATION).getTitle());
+
+    index.endEventBatch();
+    assertEquals(1, index.getWrites().size());
+    assertEquals(2, index.getWrites().get(0).size());
+    assertNull(index.getPendingEvent("a", ORGANIZATION));
+  }
+
+  @Test
+  public void testFlushWithoutPendingEvents() throws Exception {
+    index.flushEvents();
+    assertTrue(index.getWrites().isEmpty());
+  }
+
+  @Test
+  public void testFailedFlushKeepsPendingUpdates() throws Exception {
+    collectInOtherThread(event("a", "Batched title"));
+
+    index.failWrites(true);
+    try {
+      index.flushEvents();
+      fail("Writing the pending updates should have failed");
+    } catch (SearchIndexException e) {
+      // Expected
+    }
+    assertEquals("Batched title", index.getPendingEvent("a", ORGANIZATION).getTitle());
+
+    // The next flush writes the updates that have been kept
+    index.failWrites(false);
+    index.flushEvents();
+    assertEquals(1, index.getWrites().size());
+    assertEquals(Collections.singletonList("a" + ORGANIZATION), index.getWrites().get(0));
+    assertNull(index.getPendingEvent("a", ORGANIZATION));
+  }
+
+  @Test
+  public void testDirectWriteReplacesPendingUpdate() throws Exception {
+    collectInOtherThread(event("a", "Batched title"));
+    assertEquals("Batched title", index.getPendingEvent("a", ORGANIZATION).getTitle());
+
+    // A direct write of the same event wins over the pending update
+    index.addOrUpdate(event("a", "Direct title"));
+    assertNull(index.getPendingEvent("a", ORGANIZATION));
+
+    index.flushEvents();
+    assertEquals(1, index.getWrites().size());
+    assertEquals(Collections.singletonList("a" + ORGANIZATION), index.getWrites().get(0));
+  }
+
+  @Test
+  public void testFlushDoesNotBlockWritesOfOtherEvents() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      collectInOtherThread(event("a", "Batched title"));
+
+      // Block the bulk write of event a while it holds its lock
+      final CountDownLatch release = new CountDownLatch(1);
+      index.blockWritesOf("a" + ORGANIZATION, release);
+      Future<?> flush = executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          index.flushEvents();
+          return null;
+        }
+      });
+      assertTrue(index.awaitBlockedWrite());
+
+      // An event guarded by a different lock can still be written
+      final String other = eventGuardedByOtherLock("a");
+      Future<?> write = executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          index.addOrUpdate(event(other, "Direct title"));
+          return null;
+        }
+      });
+      write.get(10, TimeUnit.SECONDS);
+
+      release.countDown();
+      flush.get(10, TimeUnit.SECONDS);
+      assertEquals(2, index.getWrites().size());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /** Collects an event update in another thread, leaving it pending. */
+  private void collectInOtherThread(final Event event) throws Exception {
+    ExecutorService collector = Executors.newSingleThreadExecutor();
+    try {
+      collector.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          index.beginEventBatch();
+          index.addOrUpdate(event);
+          return null;
+        }
+      }).get();
+    } finally {
+      collector.shutdownNow();
+    }
+  }
+
+  /** Returns the identifier of an event that is guarded by another lock than the given event. */
+  private static String eventGuardedByOtherLock(String identifier) {
+    int stripe = stripe(identifier + ORGANIZATION);
+    for (int i = 0;; i++) {
+      String candidate = identifier + i;
+      if (stripe(candidate + ORGANIZATION) != stripe)
+        return candidate;
+    }
+  }
+
+  private static int stripe(String documentId) {
+    return (documentId.hashCode() & Integer.MAX_VALUE) % 64;
+  }
+
+  private static Event event(String identifier, String title) {
+    Event event = new Event(identifier, ORGANIZATION);
+    event.setTitle(title);
+    return event;
+  }
+
+  /** Search index recording the bulk writes instead of sending them to Elasticsearch. */
+  private static final class RecordingSearchIndex extends AbstractSearchIndex {
+
+    private final List<List<String>> writes = Collections.synchronizedList(new ArrayList<List<String>>());
+    private final CountDownLatch blocked = new CountDownLatch(1);
+    private volatile String blockedId;
+    private volatile CountDownLatch release;
+    private volatile boolean failing;
+
+    @Override
+    public String getIndexName() {
+      return "test";
+    }
+
+    @Override
+    public String[] getDocumenTypes() {
+      return new String[] { Event.DOCUMENT_TYPE };
+    }
+
+    @Override
+    protected BulkResponse update(ElasticsearchDocument... documents) throws SearchIndexException {
+      if (failing)
+        throw new SearchIndexException("Index is not available");
+      List<String> ids = new ArrayList<>();
+      for (ElasticsearchDocument document : documents) {
+        ids.add(document.getUID());
+      }
+      if (release != null && ids.contains(blockedId)) {
+        blocked.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new SearchIndexException(e);
+        }
+      }
+      writes.add(ids);
+      return null;
+    }
+
+    void failWrites(boolean failing) {
+      this.failing = failing;
+    }
+
+    void blockWritesOf(String documentId, CountDownLatch release) {
+      this.blockedId = documentId;
+      this.release = release;
+    }
+
+    boolean awaitBlockedWrite() throws InterruptedException {
+      return blocked.await(10, TimeUnit.SECONDS);
+    }
+
+    List<List<String>> getWrites() {
+      return writes;
+    }
+
+  }
+
+}
@@ -25,6 +25,10 @@ package org.opencastproject.kernel.http.impl;
 
 import org.opencastproject.kernel.http.api.HttpClient;
 
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.pool.PoolStats;
 import org.osgi.service.cm.ConfigurationException;
 import org.osgi.service.cm.ManagedService;
 import org.osgi.service.component.ComponentContext;
@@ -32,12 +36,42 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Dictionary;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /** Creates HttpClients that can be used for making requests such as GET, POST etc.*/
 public class HttpClientFactory implements ManagedService {
   /** The logger */
   private static final Logger logger = LoggerFactory.getLogger(HttpClientFactory.class);
 
+  /** The configuration property specifying the maximum number of pooled connections, 0 turns pooling off */
+  public static final String MAX_CONNECTIONS_KEY = "org.opencastproject.http.pool.max.total";
+
+  /** The configuration property specifying the maximum number of pooled connections to a single host */
+  public static final String MAX_CONNECTIONS_PER_ROUTE_KEY = "org.opencastproject.http.pool.max.per.route";
+
+  /** The configuration property specifying the time in seconds an idle connection is kept open for reuse */
+  public static final String KEEP_ALIVE_KEY = "org.opencastproject.http.pool.keepalive";
+
+  /** The default maximum number of pooled connections */
+  public static final int DEFAULT_MAX_CONNECTIONS = 200;
+
+  /** The default maximum number of pooled connections to a single host */
+  public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 50;
+
+  /** The default time in seconds an idle connection is kept open */
+  public static final int DEFAULT_KEEP_ALIVE = 30;
+
+  /** The connections shared by all clients, or <code>null</code> if every client opens connections of its own */
+  private PoolingClientConnectionManager pool = null;
+
+  /** The maximum time in milliseconds an idle connection is kept open */
+  private long keepAlive = TimeUnit.SECONDS.toMillis(DEFAULT_KEEP_ALIVE);
+
+  /** Closes the connections that have been idle for too long */
+  private ScheduledExecutorService idleConnectionMonitor = null;
+
 
   /**
    * Callback from the OSGi container once this service is started. This is where we register our shell commands.
@@ -47,6 +81,33 @@ public class HttpClientFactory implements ManagedService {
    */
   public void activate(ComponentContext componentContext) {
     logger.debug("Starting up");
+    int maxConnections = getIntProperty(componentContext, MAX_CONNECTIONS_KEY, DEFAULT_MAX_CONNECTIONS);
+    if (maxConnections <= 0) {
+      logger.info("Http connection pooling is turned off");
+      return;
+    }
+    int maxConnectionsPerRoute = getIntProperty(componentContext, MAX_CONNECTIONS_PER_ROUTE_KEY,
+            DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+    keepAlive = TimeUnit.SECONDS.toMillis(getIntProperty(componentContext, KEEP_ALIVE_KEY, DEFAULT_KEEP_ALIVE));
+
+    pool = new PoolingClientConnectionManager(HttpClientImpl.createSchemeRegistry());
+    pool.setMaxTotal(maxConnections);
+    pool.setDefaultMaxPerRoute(Math.max(1, Math.min(maxConnectionsPerRoute, maxConnections)));
+    logger.info("Pooling up to {} http connections, {} per host, kept alive for {} seconds", new Object[] {
+            maxConnections, pool.getDefaultMaxPerRoute(), TimeUnit.MILLISECONDS.toSeconds(keepAlive) });
+
+    // Connections closed by the other side are only noticed when they are taken from the pool, so they are closed
+    // regularly in the background as well
+    final PoolingClientConnectionManager monitoredPool = pool;
+    long interval = Math.max(1000L, keepAlive / 2);
+    idleConnectionMonitor = Executors.newSingleThreadScheduledExecutor();
+    idleConnectionMonitor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        monitoredPool.closeExpiredConnections();
+        monitoredPool.closeIdleConnections(keepAlive, TimeUnit.MILLISECONDS);
+      }
+    }, interval, interval, TimeUnit.MILLISECONDS);
   }
 
   /**
@@ -54,6 +115,39 @@ public class HttpClientFactory implements ManagedService {
    */
   public void deactivate() {
     logger.debug("Shutting down");
+    if (idleConnectionMonitor != null) {
+      idleConnectionMonitor.shutdownNow();
+      idleConnectionMonitor = null;
+    }
+    if (pool != null) {
+      pool.shutdown();
+      pool = null;
+    }
+  }
+
+  /**
+   * Gets a positive or zero integer from the bundle properties.
+   *
+   * @param cc
+   *          the component context
+   * @param key
+   *          the property key
+   * @param defaultValue
+   *          the value to use if the property is not set or malformed
+   * @return the property value
+   */
+  private int getIntProperty(ComponentContext cc, String key, int defaultValue) {
+    if (cc == null || cc.getBundleContext() == null)
+      return defaultValue;
+    String value = StringUtils.trimToNull(cc.getBundleContext().getProperty(key));
+    if (value == null)
+      return defaultValue;
+    int result = NumberUtils.toInt(value, -1);
+    if (result < 0) {
+      logger.warn("Unable to use '{}' as value of {}, using default of {}", new Object[] { value, key, defaultValue });
+      return defaultValue;
+    }
+    return result;
   }
 
   /** Updates the properties for this service. */
@@ -63,8 +157,24 @@ public class HttpClientFactory implements ManagedService {
 
   }
 
-  /** Creates a new HttpClient to make requests.*/
+  /**
+   * Creates a new HttpClient to make requests. Clients take their connections from a shared pool, if pooling is turned
+   * on. Shutting down the connection manager of a client then only closes the connections that it still holds.
+   */
   public HttpClient makeHttpClient() {
-    return new HttpClientImpl();
+    PoolingClientConnectionManager pool = this.pool;
+    if (pool == null)
+      return new HttpClientImpl();
+    return new HttpClientImpl(new ScopedConnectionManager(pool), keepAlive);
+  }
+
+  /**
+   * Returns the statistics of the connection pool.
+   *
+   * @return the statistics, or <code>null</code> if connections are not pooled
+   */
+  public PoolStats getPoolStats() {
+    PoolingClientConnectionManager pool = this.pool;
+    return pool == null ? null : pool.getTotalStats();
   }
 }
@@ -31,8 +31,11 @@ import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
 import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.conn.ssl.X509HostnameVerifier;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
 import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -57,7 +60,32 @@ public class HttpClientImpl implements HttpClient {
   private static final Logger logger = LoggerFactory.getLogger(HttpClientImpl.class);
 
   /** client used for all http requests. */
-  private DefaultHttpClient defaultHttpClient = makeHttpClient();
+  private DefaultHttpClient defaultHttpClient;
+
+  /** Creates a client with a connection manager of its own. */
+  public HttpClientImpl() {
+    defaultHttpClient = makeHttpClient();
+  }
+
+  /**
+   * Creates a client that takes its connections from a shared connection pool.
+   *
+   * @param connectionManager
+   *          the connection manager handing out the pooled connections
+   * @param keepAlive
+   *          the maximum time in milliseconds an idle connection is kept open for reuse
+   */
+  HttpClientImpl(ClientConnectionManager connectionManager, final long keepAlive) {
+    defaultHttpClient = new DefaultHttpClient(connectionManager);
+    defaultHttpClient.setKeepAliveStrategy(new DefaultConnectionKeepAliveStrategy() {
+      @Override
+      public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+        // Servers not announcing a keep alive timeout would have their connections kept open forever
+        long duration = super.getKeepAliveDuration(response, context);
+        return duration < 0 ? keepAlive : Math.min(duration, keepAlive);
+      }
+    });
+  }
 
   /** See org.opencastproject.kernel.http.api.HttpClient */
   @Override
@@ -89,8 +117,29 @@ public class HttpClientImpl implements HttpClient {
    * @return the client
    */
   private DefaultHttpClient makeHttpClient() {
-
     DefaultHttpClient defaultHttpClient = new DefaultHttpClient();
+    registerForgivingTls(defaultHttpClient.getConnectionManager().getSchemeRegistry());
+    return defaultHttpClient;
+  }
+
+  /**
+   * Creates the schemes for connection managers that are shared between clients.
+   *
+   * @return the scheme registry
+   */
+  static SchemeRegistry createSchemeRegistry() {
+    SchemeRegistry sr = SchemeRegistryFactory.createDefault();
+    registerForgivingTls(sr);
+    return sr;
+  }
+
+  /**
+   * Installs an https scheme that can deal with all kinds of oddities with regards to https connections.
+   *
+   * @param sr
+   *          the scheme registry
+   */
+  private static void registerForgivingTls(SchemeRegistry sr) {
     try {
       logger.debug("Installing forgiving hostname verifier and trust managers");
       X509TrustManager trustManager = createTrustManager();
@@ -98,16 +147,12 @@ public class HttpClientImpl implements HttpClient {
       SSLContext sslContext = SSLContext.getInstance("TLS");
       sslContext.init(null, new TrustManager[] { trustManager }, new SecureRandom());
       SSLSocketFactory ssf = new SSLSocketFactory(sslContext, hostNameVerifier);
-      ClientConnectionManager ccm = defaultHttpClient.getConnectionManager();
-      SchemeRegistry sr = ccm.getSchemeRegistry();
       sr.register(new Scheme("https", 443, ssf));
     } catch (NoSuchAlgorithmException e) {
       logger.error("Error creating context to handle TLS connections: {}", e.getMessage());
     } catch (KeyManagementException e) {
       logger.error("Error creating context to handle TLS connections: {}", e.getMessage());
     }
-
-    return defaultHttpClient;
   }
 
   /**
@@ -116,7 +161,7 @@ public class HttpClientImpl implements HttpClient {
    *
    * @return the trust manager
    */
-  private X509TrustManager createTrustManager() {
+  private static X509TrustManager createTrustManager() {
     X509TrustManager trustManager = new X509TrustManager() {
 
       /**
@@ -157,7 +202,7 @@ public class HttpClientImpl implements HttpClient {
    *
    * @return the host name verifier
    */
-  private X509HostnameVerifier createHostNameVerifier() {
+  private static X509HostnameVerifier createHostNameVerifier() {
     X509HostnameVerifier verifier = new X509HostnameVerifier() {
 
       /**
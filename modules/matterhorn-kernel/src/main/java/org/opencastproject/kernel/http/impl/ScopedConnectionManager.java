@@ -0,0 +1,139 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+
+package org.opencastproject.kernel.http.impl;
+
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.ClientConnectionRequest;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The connection manager of a single client, taking its connections from a pool that is shared by all clients.
+ * <p>
+ * Shutting it down does not touch the pool, but only closes the connections that the client still holds, e.g. because
+ * the body of a response has not been read completely. Connections whose responses have been consumed are back in the
+ * pool by then and are kept alive for the next client.
+ */
+class ScopedConnectionManager implements ClientConnectionManager {
+
+  /** The logging facility */
+  private static final Logger logger = LoggerFactory.getLogger(ScopedConnectionManager.class);
+
+  /** The shared pool */
+  private final ClientConnectionManager pool;
+
+  /** The connections that have been taken from the pool */
+  private final Set<ManagedClientConnection> leased = new HashSet<ManagedClientConnection>();
+
+  /** Whether this connection manager has been shut down */
+  private boolean shutdown = false;
+
+  /**
+   * Creates a connection manager on top of a pool.
+   *
+   * @param pool
+   *          the shared pool
+   */
+  ScopedConnectionManager(ClientConnectionManager pool) {
+    this.pool = pool;
+  }
+
+  @Override
+  public SchemeRegistry getSchemeRegistry() {
+    return pool.getSchemeRegistry();
+  }
+
+  @Override
+  public ClientConnectionRequest requestConnection(HttpRoute route, Object state) {
+    final ClientConnectionRequest request = pool.requestConnection(route, state);
+    return new ClientConnectionRequest() {
+      @Override
+      public ManagedClientConnection getConnection(long timeout, TimeUnit tunit) throws InterruptedException,
+              ConnectionPoolTimeoutException {
+        ManagedClientConnection connection = request.getConnection(timeout, tunit);
+        synchronized (ScopedConnectionManager.this) {
+          if (!shutdown) {
+            leased.add(connection);
+            return connection;
+          }
+        }
+        pool.releaseConnection(connection, 0, TimeUnit.MILLISECONDS);
+        throw new IllegalStateException("Connection manager has been shut down");
+      }
+
+      @Override
+      public void abortRequest() {
+        request.abortRequest();
+      }
+    };
+  }
+
+  @Override
+  public void releaseConnection(ManagedClientConnection connection, long validDuration, TimeUnit timeUnit) {
+    synchronized (this) {
+      leased.remove(connection);
+    }
+    pool.releaseConnection(connection, validDuration, timeUnit);
+  }
+
+  @Override
+  public void closeExpiredConnections() {
+    pool.closeExpiredConnections();
+  }
+
+  @Override
+  public void closeIdleConnections(long idletime, TimeUnit tunit) {
+    pool.closeIdleConnections(idletime, tunit);
+  }
+
+  /**
+   * Closes the connections that have not been given back to the pool. Connections that have been released meanwhile are
+   * not affected, since aborting a released connection does nothing.
+   */
+  @Override
+  public void shutdown() {
+    Set<ManagedClientConnection> connections;
+    synchronized (this) {
+      shutdown = true;
+      connections = new HashSet<ManagedClientConnection>(leased);
+      leased.clear();
+    }
+    for (ManagedClientConnection connection : connections) {
+      try {
+        connection.abortConnection();
+      } catch (IOException e) {
+        logger.debug("Unable to abort connection: {}", e.getMessage());
+      }
+    }
+  }
+
+}
@@ -27,4 +27,16 @@ package org.opencastproject.kernel.security;
 public interface HttpConnectionMXBean {
   /** Gets the number of open http connections */
   int getOpenConnections();
+
+  /** Gets the number of pooled connections that are in use */
+  int getLeasedConnections();
+
+  /** Gets the number of idle pooled connections that are kept alive for reuse */
+  int getAvailableConnections();
+
+  /** Gets the number of requests waiting for a pooled connection */
+  int getPendingConnections();
+
+  /** Gets the maximum number of pooled connections */
+  int getMaxConnections();
 }
@@ -49,8 +49,12 @@ import com.entwinemedia.fn.data.Opt;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.Header;
 import org.apache.http.HeaderElement;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.AuthenticationException;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.ResponseHandler;
@@ -60,12 +64,15 @@ import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.impl.auth.DigestScheme;
 import org.apache.http.params.CoreConnectionPNames;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.util.EntityUtils;
 import org.osgi.service.component.ComponentContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
+import java.net.URI;
 import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
@@ -109,6 +116,12 @@ public class TrustedHttpClientImpl implements TrustedHttpClient, HttpConnectionM
   public static final String NONCE_TIMEOUT_RETRY_MAXIMUM_VARIABLE_TIME_KEY =
     "org.opencastproject.security.digest.nonce.variable.time";
 
+  /**
+   * The configuration property specifying the time in seconds a nonce is reused for further requests to the same host.
+   * A value of 0 fetches a new nonce for every request.
+   */
+  public static final String NONCE_CACHE_TIME_KEY = "org.opencastproject.security.digest.nonce.cache.time";
+
   /** The default time until a connection attempt fails */
   public static final int DEFAULT_CONNECTION_TIMEOUT = 60 * 1000;
 
@@ -127,6 +140,9 @@ public class TrustedHttpClientImpl implements TrustedHttpClient, HttpConnectionM
   /** Default maximum amount of time in a random range between 0 and this value to add to the base time. */
   public static final int DEFAULT_RETRY_MAXIMUM_VARIABLE_TIME = 300;
 
+  /** The default time in seconds a nonce is reused, which is less than the time the servers accept it. */
+  public static final int DEFAULT_NONCE_CACHE_TIME = 240;
+
   /**
    * The default time before a piece of signed content expires. 1 Minute. These are internal calls to another server, if
    * we can't make the request in under a minute something has gone horribly wrong.
@@ -157,6 +173,12 @@ public class TrustedHttpClientImpl implements TrustedHttpClient, HttpConnectionM
   /** The maximum amount of time in seconds to wait in addition to the RETRY_BASE_DELAY. */
   private int retryMaximumVariableTime = 300;
 
+  /** The time in seconds a nonce is reused for further requests to the same host. */
+  private int nonceCacheTime = DEFAULT_NONCE_CACHE_TIME;
+
+  /** The last realm and nonce received from each host */
+  private final Map<String, CachedNonce> nonces = new ConcurrentHashMap<String, CachedNonce>();
+
   /** The duration a signed url will remain valid for. */
   private long signedUrlExpiresDuration = DEFAULT_URL_SIGNING_EXPIRES_DURATION;
 
@@ -179,6 +201,7 @@ public class TrustedHttpClientImpl implements TrustedHttpClient, HttpConnectionM
     getRetryNumber(cc);
     getRetryBaseTime(cc);
     getRetryMaximumVariableTime(cc);
+    nonceCacheTime = getIntFromComponentContext(cc, NONCE_CACHE_TIME_KEY, DEFAULT_NONCE_CACHE_TIME);
 
     // register with jmx
     try {
@@ -371,14 +394,21 @@ public class TrustedHttpClientImpl implements TrustedHttpClient, HttpConnectionM
       // Run the request (the http client handles the multiple back-and-forth requests)
       try {
         Opt<HttpUriRequest> optSignedHttpUriRequest = getSignedUrl(httpUriRequest);
-        HttpResponse response;
+        HttpUriRequest request;
         if (optSignedHttpUriRequest.isSome()) {
           logger.debug("Adding url signing to request {} so that it is {}", httpUriRequest.getURI().toString(),
                   optSignedHttpUriRequest.get().getURI().toString());
-          response = new HttpResponseWrapper(httpClient.execute(optSignedHttpUriRequest.get()));
+          request = optSignedHttpUriRequest.get();
         } else {
           logger.debug("Not adding url signing to request {}", httpUriRequest.getURI().toString());
-          response = new HttpResponseWrapper(httpClient.execute(httpUriRequest));
+          request = httpUriRequest;
+        }
+        boolean cachedNonce = authenticateWithCachedNonce(request);
+        HttpResponse response = new HttpResponseWrapper(httpClient.execute(request));
+        if (cachedNonce && response.getStatusLine().getStatusCode() == HttpStatus.SC_UNAUTHORIZED) {
+          // The nonce is not accepted anymore, so leave the digest handshake to the http client
+          discardCachedNonce(request, response);
+          response = new HttpResponseWrapper(httpClient.execute(request));
         }
         responseMap.put(response, httpClient);
         return response;
@@ -390,10 +420,16 @@ public class TrustedHttpClientImpl implements TrustedHttpClient, HttpConnectionM
     } else {
       // HttpClient doesn't handle the request dynamics for other verbs (especially when sending a streamed multipart
       // request), so we need to handle the details of the digest auth back-and-forth manually
-      manuallyHandleDigestAuthentication(httpUriRequest, httpClient);
+      boolean cachedNonce = manuallyHandleDigestAuthentication(httpUriRequest, httpClient, true);
       HttpResponse response = null;
       try {
         response = new HttpResponseWrapper(httpClient.execute(httpUriRequest));
+        if (cachedNonce && response.getStatusLine().getStatusCode() == HttpStatus.SC_UNAUTHORIZED) {
+          // The nonce is not accepted anymore, so try again right away with a new one
+          discardCachedNonce(httpUriRequest, response);
+          manuallyHandleDigestAuthentication(httpUriRequest, httpClient, false);
+          response = new HttpResponseWrapper(httpClient.execute(httpUriRequest));
+        }
         if (nonceTimeoutRetries > 0 && hadNonceTimeoutResponse(response)) {
           httpClient.getConnectionManager().shutdown();
           response = retryAuthAndRequestAfterNonceTimeout(httpUriRequest, response);
@@ -487,7 +523,7 @@ public class TrustedHttpClientImpl implements TrustedHttpClient, HttpConnectionM
           logger.error("Suffered InteruptedException while trying to sleep until next retry.", e);
         }
       }
-      manuallyHandleDigestAuthentication(httpUriRequest, httpClient);
+      manuallyHandleDigestAuthentication(httpUriRequest, httpClient, false);
       response = new HttpResponseWrapper(httpClient.execute(httpUriRequest));
       if (!hadNonceTimeoutResponse(response)) {
         responseMap.put(response, httpClient);
@@ -517,39 +553,155 @@ public class TrustedHttpClientImpl implements TrustedHttpClient, HttpConnectionM
    *         The request location to get the digest authentication for.
    * @param httpClient
    *         The client to send the request through.
+   * @param useCachedNonce
+   *         Whether the nonce that has been cached for the host may be used instead of asking for a new one. It is only
+   *         used for requests that can be sent again in case the nonce is not accepted anymore.
+   * @return true if the cached nonce has been used
    * @throws TrustedHttpClientException
    *         Thrown if the client cannot be shutdown.
    */
-  private void manuallyHandleDigestAuthentication(HttpUriRequest httpUriRequest, HttpClient httpClient)
-          throws TrustedHttpClientException {
-    HttpRequestBase digestRequest;
-    try {
-      digestRequest = (HttpRequestBase) httpUriRequest.getClass().newInstance();
-    } catch (Exception e) {
-      throw new IllegalStateException("Can not create a new " + httpUriRequest.getClass().getName());
+  private boolean manuallyHandleDigestAuthentication(HttpUriRequest httpUriRequest, HttpClient httpClient,
+          boolean useCachedNonce) throws TrustedHttpClientException {
+    String[] realmAndNonce = null;
+    if (useCachedNonce && isRepeatable(httpUriRequest))
+      realmAndNonce = getCachedRealmAndNonce(httpUriRequest.getURI());
+    boolean cachedNonce = realmAndNonce != null;
+
+    if (!cachedNonce) {
+      HttpRequestBase digestRequest;
+      try {
+        digestRequest = (HttpRequestBase) httpUriRequest.getClass().newInstance();
+      } catch (Exception e) {
+        throw new IllegalStateException("Can not create a new " + httpUriRequest.getClass().getName());
+      }
+      digestRequest.setURI(httpUriRequest.getURI());
+      digestRequest.setHeader(REQUESTED_AUTH_HEADER, DIGEST_AUTH);
+      realmAndNonce = getRealmAndNonce(digestRequest);
+      cacheRealmAndNonce(httpUriRequest.getURI(), realmAndNonce);
     }
-    digestRequest.setURI(httpUriRequest.getURI());
-    digestRequest.setHeader(REQUESTED_AUTH_HEADER, DIGEST_AUTH);
-    String[] realmAndNonce = getRealmAndNonce(digestRequest);
 
     if (realmAndNonce != null) {
-      // Set the user/pass
-      UsernamePasswordCredentials creds = new UsernamePasswordCredentials(user, pass);
-
-      // Set up the digest authentication with the required values
-      DigestScheme digestAuth = new DigestScheme();
-      digestAuth.overrideParamter("realm", realmAndNonce[0]);
-      digestAuth.overrideParamter("nonce", realmAndNonce[1]);
-
       // Add the authentication header
       try {
-        httpUriRequest.setHeader(digestAuth.authenticate(creds, httpUriRequest));
+        authenticate(httpUriRequest, realmAndNonce);
       } catch (Exception e) {
         // close the http connection(s)
         httpClient.getConnectionManager().shutdown();
         throw new TrustedHttpClientException(e);
       }
     }
+    return cachedNonce;
+  }
+
+  /**
+   * Adds the digest authentication header to a request.
+   *
+   * @param httpUriRequest
+   *         The request to authenticate.
+   * @param realmAndNonce
+   *         The realm and nonce to use.
+   * @throws AuthenticationException
+   *         Thrown if the header cannot be created.
+   */
+  private void authenticate(HttpUriRequest httpUriRequest, String[] realmAndNonce) throws AuthenticationException {
+    // Set the user/pass
+    UsernamePasswordCredentials creds = new UsernamePasswordCredentials(user, pass);
+
+    // Set up the digest authentication with the required values
+    DigestScheme digestAuth = new DigestScheme();
+    digestAuth.overrideParamter("realm", realmAndNonce[0]);
+    digestAuth.overrideParamter("nonce", realmAndNonce[1]);
+    httpUriRequest.setHeader(digestAuth.authenticate(creds, httpUriRequest));
+  }
+
+  /**
+   * Adds the digest authentication header to a GET or HEAD request if a nonce has been cached for its host, which saves
+   * the http client the handshake with the server.
+   *
+   * @param httpUriRequest
+   *         The request to authenticate.
+   * @return true if the cached nonce has been used
+   */
+  private boolean authenticateWithCachedNonce(HttpUriRequest httpUriRequest) {
+    String[] realmAndNonce = getCachedRealmAndNonce(httpUriRequest.getURI());
+    if (realmAndNonce == null)
+      return false;
+    try {
+      authenticate(httpUriRequest, realmAndNonce);
+      return true;
+    } catch (AuthenticationException e) {
+      logger.debug("Unable to authenticate {} with cached nonce: {}", httpUriRequest.getURI(), e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Forgets the nonce cached for the host of a request which has been turned down, and removes it from the request so
+   * it can be sent again.
+   *
+   * @param httpUriRequest
+   *         The request that has been turned down.
+   * @param response
+   *         The response, which is consumed so that its connection can be reused.
+   */
+  private void discardCachedNonce(HttpUriRequest httpUriRequest, HttpResponse response) {
+    logger.debug("Cached nonce for {} is not accepted anymore", httpUriRequest.getURI());
+    String key = getNonceCacheKey(httpUriRequest.getURI());
+    if (key != null)
+      nonces.remove(key);
+    EntityUtils.consumeQuietly(response.getEntity());
+    httpUriRequest.removeHeaders(AUTHORIZATION_HEADER_NAME);
+  }
+
+  /**
+   * Returns the realm and nonce that have been cached for the host of a uri, as long as they are recent enough.
+   *
+   * @param uri
+   *         The uri.
+   * @return The realm and nonce or null if there are none
+   */
+  private String[] getCachedRealmAndNonce(URI uri) {
+    String key = getNonceCacheKey(uri);
+    if (key == null)
+      return null;
+    CachedNonce cachedNonce = nonces.get(key);
+    if (cachedNonce == null)
+      return null;
+    if (System.currentTimeMillis() - cachedNonce.received >= nonceCacheTime * (long) MILLISECONDS_IN_SECONDS) {
+      nonces.remove(key, cachedNonce);
+      return null;
+    }
+    return cachedNonce.realmAndNonce;
+  }
+
+  /**
+   * Remembers the realm and nonce received from the host of a uri.
+   *
+   * @param uri
+   *         The uri.
+   * @param realmAndNonce
+   *         The realm and nonce, may be null.
+   */
+  private void cacheRealmAndNonce(URI uri, String[] realmAndNonce) {
+    String key = getNonceCacheKey(uri);
+    if (key == null || nonceCacheTime <= 0 || realmAndNonce == null || realmAndNonce[1] == null)
+      return;
+    nonces.put(key, new CachedNonce(realmAndNonce, System.currentTimeMillis()));
+  }
+
+  /** Returns the key nonces are cached under, which is the server the uri points to. */
+  private static String getNonceCacheKey(URI uri) {
+    if (uri == null || uri.getHost() == null)
+      return null;
+    return uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort();
+  }
+
+  /** Determines whether the body of a request, if any, can be sent more than once. */
+  private static boolean isRepeatable(HttpUriRequest httpUriRequest) {
+    if (!(httpUriRequest instanceof HttpEntityEnclosingRequest))
+      return true;
+    HttpEntity entity = ((HttpEntityEnclosingRequest) httpUriRequest).getEntity();
+    return entity == null || entity.isRepeatable();
   }
 
   @Override
@@ -623,6 +775,8 @@ public class TrustedHttpClientImpl implements TrustedHttpClient, HttpConnectionM
         realm = element.getValue();
       }
     }
+    // Read the rest of the response, so that the connection can be kept alive
+    EntityUtils.consumeQuietly(response.getEntity());
     httpClient.getConnectionManager().shutdown();
     return new String[]{realm, nonce};
   }
@@ -632,6 +786,35 @@ public class TrustedHttpClientImpl implements TrustedHttpClient, HttpConnectionM
     return responseMap.size();
   }
 
+  @Override
+  public int getLeasedConnections() {
+    PoolStats stats = getPoolStats();
+    return stats == null ? 0 : stats.getLeased();
+  }
+
+  @Override
+  public int getAvailableConnections() {
+    PoolStats stats = getPoolStats();
+    return stats == null ? 0 : stats.getAvailable();
+  }
+
+  @Override
+  public int getPendingConnections() {
+    PoolStats stats = getPoolStats();
+    return stats == null ? 0 : stats.getPending();
+  }
+
+  @Override
+  public int getMaxConnections() {
+    PoolStats stats = getPoolStats();
+    return stats == null ? 0 : stats.getMax();
+  }
+
+  /** Returns the statistics of the connection pool or null if connections are not pooled. */
+  private PoolStats getPoolStats() {
+    return httpClientFactory == null ? null : httpClientFactory.getPoolStats();
+  }
+
   /**
    * @return Returns the number of times the TrustedHttpClient will retry a request if nonce timeouts are occuring.
    */
@@ -653,4 +836,15 @@ public class TrustedHttpClientImpl implements TrustedHttpClient, HttpConnectionM
     return retryMaximumVariableTime;
   }
 
+  /** A realm and nonce, along with the time they have been received. */
+  private static final class CachedNonce {
+    private final String[] realmAndNonce;
+    private final long received;
+
+    private CachedNonce(String[] realmAndNonce, long received) {
+      this.realmAndNonce = realmAndNonce;
+      this.received = received;
+    }
+  }
+
 }
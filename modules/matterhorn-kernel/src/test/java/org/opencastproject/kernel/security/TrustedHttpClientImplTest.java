@@ -326,6 +326,82 @@ public class TrustedHttpClientImplTest {
     Assert.assertEquals(200, response.getStatusLine().getStatusCode());
   }
 
+  @Test
+  public void nonceIsReusedForRequestsToTheSameHost() throws ClientProtocolException, IOException {
+    HttpParams httpParams = createNiceMock(HttpParams.class);
+    ClientConnectionManager clientConnectionManager = createMock(ClientConnectionManager.class);
+
+    // Only the first request goes through the handshake
+    HttpClient securityDefaultHttpClient = createMock("Digest", HttpClient.class);
+    expect(securityDefaultHttpClient.execute(isA(HttpUriRequest.class))).andReturn(digestResponse);
+    expect(securityDefaultHttpClient.getConnectionManager()).andReturn(clientConnectionManager);
+    replay(securityDefaultHttpClient);
+
+    HttpClient firstDefaultHttpClient = createMock("First", HttpClient.class);
+    expect(firstDefaultHttpClient.getParams()).andReturn(httpParams);
+    expect(firstDefaultHttpClient.execute(isA(HttpUriRequest.class))).andReturn(okResponse);
+    replay(firstDefaultHttpClient);
+
+    HttpClient secondDefaultHttpClient = createMock("Second", HttpClient.class);
+    expect(secondDefaultHttpClient.getParams()).andReturn(httpParams);
+    expect(secondDefaultHttpClient.execute(isA(HttpUriRequest.class))).andReturn(okResponse);
+    replay(secondDefaultHttpClient);
+
+    // Setup DefaultHttpClientFactory
+    HttpClientFactory httpClientFactory = createMock(HttpClientFactory.class);
+    expect(httpClientFactory.makeHttpClient()).andReturn(firstDefaultHttpClient);
+    expect(httpClientFactory.makeHttpClient()).andReturn(securityDefaultHttpClient);
+    expect(httpClientFactory.makeHttpClient()).andReturn(secondDefaultHttpClient);
+    replay(httpClientFactory);
+
+    client.setHttpClientFactory(httpClientFactory);
+
+    client.execute(new HttpPost("http://localhost:8080/fake"));
+    HttpPost httpPost = new HttpPost("http://localhost:8080/other");
+    HttpResponse response = client.execute(httpPost);
+    Assert.assertEquals(200, response.getStatusLine().getStatusCode());
+    assertTrue(httpPost.getFirstHeader("Authorization").getValue().contains("dcd98b7102dd2f0e8b11d0f600bfb0c093"));
+    verify(httpClientFactory, securityDefaultHttpClient, secondDefaultHttpClient);
+  }
+
+  @Test
+  public void rejectedCachedNonceIsReplacedRightAway() throws ClientProtocolException, IOException {
+    HttpParams httpParams = createNiceMock(HttpParams.class);
+    ClientConnectionManager clientConnectionManager = createMock(ClientConnectionManager.class);
+
+    HttpClient securityDefaultHttpClient = createMock("Digest", HttpClient.class);
+    expect(securityDefaultHttpClient.execute(isA(HttpUriRequest.class))).andReturn(digestResponse).times(2);
+    expect(securityDefaultHttpClient.getConnectionManager()).andReturn(clientConnectionManager).times(2);
+    replay(securityDefaultHttpClient);
+
+    HttpClient firstDefaultHttpClient = createMock("First", HttpClient.class);
+    expect(firstDefaultHttpClient.getParams()).andReturn(httpParams);
+    expect(firstDefaultHttpClient.execute(isA(HttpUriRequest.class))).andReturn(okResponse);
+    replay(firstDefaultHttpClient);
+
+    // The cached nonce is turned down, the request is sent again with a new one without waiting
+    HttpClient secondDefaultHttpClient = createMock("Second", HttpClient.class);
+    expect(secondDefaultHttpClient.getParams()).andReturn(httpParams);
+    expect(secondDefaultHttpClient.execute(isA(HttpUriRequest.class))).andReturn(nonceResponse);
+    expect(secondDefaultHttpClient.execute(isA(HttpUriRequest.class))).andReturn(okResponse);
+    replay(secondDefaultHttpClient);
+
+    // Setup DefaultHttpClientFactory
+    HttpClientFactory httpClientFactory = createMock(HttpClientFactory.class);
+    expect(httpClientFactory.makeHttpClient()).andReturn(firstDefaultHttpClient);
+    expect(httpClientFactory.makeHttpClient()).andReturn(securityDefaultHttpClient);
+    expect(httpClientFactory.makeHttpClient()).andReturn(secondDefaultHttpClient);
+    expect(httpClientFactory.makeHttpClient()).andReturn(securityDefaultHttpClient);
+    replay(httpClientFactory);
+
+    client.setHttpClientFactory(httpClientFactory);
+
+    client.execute(new HttpPost("http://localhost:8080/fake"));
+    HttpResponse response = client.execute(new HttpPost("http://localhost:8080/fake"));
+    Assert.assertEquals(200, response.getStatusLine().getStatusCode());
+    verify(httpClientFactory, securityDefaultHttpClient, secondDefaultHttpClient);
+  }
+
   @Test
   public void failsIfNonceReturnAndNoRetries() throws ClientProtocolException, IOException {
     // Setup bundle context for TrustedHttpClientImpl
@@ -47,16 +47,23 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This service produces messages for an elastic search index
  */
 public abstract class AbstractIndexProducer implements IndexProducer {
+  private static final Logger logger = LoggerFactory.getLogger(AbstractIndexProducer.class);
+
   public static final P1<Serializable> IDENTITY_MSG = Products.E.<Serializable>p1(new Serializable() { });
 
   public abstract String getClassName();
@@ -77,6 +84,9 @@ public abstract class AbstractIndexProducer implements IndexProducer {
   /** Single thread executor */
   private final ExecutorService singleThreadExecutor = Executors.newSingleThreadExecutor();
 
+  /** The number of partitions that may be re-sent concurrently, as requested by the index being repopulated */
+  private volatile int repopulateParallelism = 1;
+
   /**
    * Initialize the index producer.
    */
@@ -95,6 +105,74 @@ public abstract class AbstractIndexProducer implements IndexProducer {
     singleThreadExecutor.shutdown();
   }
 
+  /**
+   * Returns the number of partitions that may be re-sent concurrently while repopulating the index.
+   */
+  protected int getRepopulateParallelism() {
+    return repopulateParallelism;
+  }
+
+  /**
+   * Splits a list of items, ordered by identifier, into at most <code>partitions</code> consecutive identifier ranges of
+   * about the same size.
+   *
+   * @param items
+   *         the items to split
+   * @param partitions
+   *         the maximum number of partitions
+   * @return the partitions
+   */
+  public static <A> List<List<A>> partition(List<A> items, int partitions) {
+    final List<List<A>> result = new ArrayList<>();
+    if (items.isEmpty())
+      return result;
+    final int size = (items.size() + Math.max(1, partitions) - 1) / Math.max(1, partitions);
+    for (int i = 0; i < items.size(); i += size) {
+      result.add(items.subList(i, Math.min(i + size, items.size())));
+    }
+    return result;
+  }
+
+  /**
+   * Re-sends the given partitions of this service's data concurrently, using up to
+   * {@link #getRepopulateParallelism()} threads. Partitions are sent using the calling thread if only one thread may be
+   * used. Returns once all partitions have been sent.
+   *
+   * @param partitions
+   *         the partitions to send
+   * @throws Exception
+   *         the first error that occurred while sending a partition
+   */
+  protected void repopulatePartitions(List<? extends Runnable> partitions) throws Exception {
+    final int threads = Math.min(getRepopulateParallelism(), partitions.size());
+    if (threads <= 1) {
+      for (Runnable partition : partitions) {
+        partition.run();
+      }
+      return;
+    }
+
+    logger.info("Sending {} partitions of {} using {} threads", partitions.size(), getService(), threads);
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      final List<Callable<Object>> tasks = new ArrayList<>();
+      for (Runnable partition : partitions) {
+        tasks.add(Executors.callable(partition));
+      }
+      for (Future<Object> future : executor.invokeAll(tasks)) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          if (e.getCause() instanceof Exception)
+            throw (Exception) e.getCause();
+          throw e;
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
   /* ------------------------------------------------------------------------------------------------------------------ */
 
   /**
@@ -137,6 +215,7 @@ public abstract class AbstractIndexProducer implements IndexProducer {
   /**
    * State management for a batch of recreate index update messages.
    * Messages are always sent under the identity of the system user.
+   * Updates may be sent concurrently, e.g. by {@link AbstractIndexProducer#repopulatePartitions(List)}.
    */
   public final class IndexRecreationBatch {
     private final Logger logger = LoggerFactory.getLogger(IndexRecreationBatch.class);
@@ -146,7 +225,10 @@ public abstract class AbstractIndexProducer implements IndexProducer {
     private final int updatesTotal;
     private final Opt<Organization> endMessageOrg;
 
-    private int updatesCurrent;
+    /** Number of updates that have been started */
+    private final AtomicInteger updatesStarted = new AtomicInteger();
+    /** Number of updates that have been sent completely */
+    private final AtomicInteger updatesCurrent = new AtomicInteger();
 
     /**
      * Create a new batch.
@@ -168,7 +250,6 @@ public abstract class AbstractIndexProducer implements IndexProducer {
       this.destinationId = queuePrefix + WordUtils.capitalize(indexName);
       this.updatesTotal = RequireUtil.min(updatesTotal, 0);
       this.endMessageOrg = endMessageOrg;
-      this.updatesCurrent = 0;
     }
 
     public int getUpdatesTotal() {
@@ -182,14 +263,14 @@ public abstract class AbstractIndexProducer implements IndexProducer {
      * {@link #IDENTITY_MSG} is the identity element of messages, i.e. identity message will be filtered out
      */
     public void update(final Organization org, final Iterable<P1<? extends Serializable>> messages) {
-      if (updatesCurrent < updatesTotal) {
+      if (updatesStarted.incrementAndGet() <= updatesTotal) {
         final User user = SecurityUtil.createSystemUser(getSystemUserName(), org);
         SecurityUtil.runAs(getSecurityService(), org, user, new Effect0() {
           @Override protected void run() {
             for (final P1<? extends Serializable> m : $(messages).filter(Booleans.<P1<? extends Serializable>>ne(IDENTITY_MSG))) {
               getMessageSender().sendObjectMessage(destinationId, MessageSender.DestinationType.Queue, m.get1());
             }
-            updatesCurrent = updatesCurrent + 1;
+            final int current = updatesCurrent.incrementAndGet();
             getMessageSender().sendObjectMessage(
                     IndexProducer.RESPONSE_QUEUE,
                     MessageSender.DestinationType.Queue,
@@ -197,8 +278,9 @@ public abstract class AbstractIndexProducer implements IndexProducer {
                             indexName,
                             getService(),
                             updatesTotal,
-                            updatesCurrent));
-            if (updatesCurrent >= updatesTotal) {
+                            current));
+            // The last update to complete sends the end message, after the messages of all other updates
+            if (current == updatesTotal) {
               // send end-of-batch message
               final Organization emo = endMessageOrg.getOr(org);
               final User emu = SecurityUtil.createSystemUser(getSystemUserName(), emo);
@@ -214,6 +296,7 @@ public abstract class AbstractIndexProducer implements IndexProducer {
           }
         });
       } else {
+        updatesStarted.decrementAndGet();
         throw new IllegalStateException(format("The number of allowed update messages (%d) has already been sent", updatesTotal));
       }
     }
@@ -227,8 +310,8 @@ public abstract class AbstractIndexProducer implements IndexProducer {
 
     @Override protected void finalize() throws Throwable {
       super.finalize();
-      if (updatesCurrent < updatesTotal) {
-        logger.warn(format("Only %d messages have been sent even though the batch has been initialized with %d", updatesCurrent, updatesTotal));
+      if (updatesCurrent.get() < updatesTotal) {
+        logger.warn(format("Only %d messages have been sent even though the batch has been initialized with %d", updatesCurrent.get(), updatesTotal));
       }
     }
   }
@@ -273,6 +356,7 @@ public abstract class AbstractIndexProducer implements IndexProducer {
             continue;
           logger.info("Index '{}' has received a start repopulating command for service '{}'.",
                   indexObject.getIndexName(), getService());
+          repopulateParallelism = indexObject.getParallelism();
           repopulate(indexObject.getIndexName());
           logger.info("Index '{}' has finished repopulating service '{}'.", indexObject.getIndexName(), getService());
         } catch (InterruptedException e) {
@@ -44,6 +44,7 @@ public final class IndexRecreateObject implements Serializable {
   private int current;
   private Status status;
   private Service service;
+  private int parallelism = 1;
 
   /**
    * Constructor for a start or stop message.
@@ -108,6 +109,23 @@ public final class IndexRecreateObject implements Serializable {
     return new IndexRecreateObject(indexName, service, Status.Start);
   }
 
+  /**
+   * Creates a start message asking the service to re-send its data in the given number of concurrent partitions.
+   *
+   * @param indexName
+   *          The index name
+   * @param service
+   *          The service to start re-sending its data.
+   * @param parallelism
+   *          The number of partitions the service may re-send concurrently.
+   * @return the start message
+   */
+  public static IndexRecreateObject start(String indexName, Service service, int parallelism) {
+    IndexRecreateObject start = new IndexRecreateObject(indexName, service, Status.Start);
+    start.parallelism = Math.max(1, parallelism);
+    return start;
+  }
+
   public static IndexRecreateObject update(String indexName, Service service, int total, int current) {
     return new IndexRecreateObject(indexName, service, total, current);
   }
@@ -143,4 +161,12 @@ public final class IndexRecreateObject implements Serializable {
   public Service getService() {
     return service;
   }
+
+  /**
+   * Returns the number of partitions a service may re-send concurrently. Messages that have been created without a
+   * parallelism, e.g. by an older version, return 1.
+   */
+  public int getParallelism() {
+    return Math.max(1, parallelism);
+  }
 }
@@ -0,0 +1,93 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+
+package org.opencastproject.message.broker.api.serviceregistry;
+
+import org.opencastproject.message.broker.api.MessageItem;
+
+import java.io.Serializable;
+
+/**
+ * {@link Serializable} class announcing a change of the service registrations, e.g. a service going offline or a host
+ * being put into maintenance.
+ */
+public class ServiceRegistryItem implements MessageItem, Serializable {
+
+  private static final long serialVersionUID = 4702398543290211684L;
+
+  public static final String SERVICE_REGISTRY_TOPIC_PREFIX = "SERVICEREGISTRY.";
+
+  public static final String SERVICE_REGISTRY_TOPIC = SERVICE_REGISTRY_TOPIC_PREFIX + "TOPIC";
+
+  private final String serviceType;
+  private final String host;
+
+  /**
+   * @param serviceType
+   *          The service type
+   * @param host
+   *          The host the service is running on
+   * @return Builds {@link ServiceRegistryItem} for a change of a single service registration.
+   */
+  public static ServiceRegistryItem serviceChanged(String serviceType, String host) {
+    return new ServiceRegistryItem(serviceType, host);
+  }
+
+  /**
+   * @param host
+   *          The host
+   * @return Builds {@link ServiceRegistryItem} for a change affecting all services on a host.
+   */
+  public static ServiceRegistryItem hostChanged(String host) {
+    return new ServiceRegistryItem(null, host);
+  }
+
+  /**
+   * Constructor to build a {@link ServiceRegistryItem}.
+   *
+   * @param serviceType
+   *          The service type or <code>null</code> if all services on the host are affected
+   * @param host
+   *          The host
+   */
+  public ServiceRegistryItem(String serviceType, String host) {
+    this.serviceType = serviceType;
+    this.host = host;
+  }
+
+  @Override
+  public String getId() {
+    return serviceType == null ? host : serviceType + "@" + host;
+  }
+
+  /**
+   * @return The service type or <code>null</code> if all services on the host are affected
+   */
+  public String getServiceType() {
+    return serviceType;
+  }
+
+  public String getHost() {
+    return host;
+  }
+
+}
@@ -72,6 +72,17 @@ public class WorkflowItem implements MessageItem, Serializable {
     return new WorkflowItem(workflowInstance);
   }
 
+  /**
+   * @param workflowInstance
+   *          The workflow instance to update.
+   * @param workflowInstanceXml
+   *          The workflow instance as serialized by {@link WorkflowParser#toXml(WorkflowInstance)}.
+   * @return Builds {@link WorkflowItem} for updating a workflow instance without serializing it again.
+   */
+  public static WorkflowItem updateInstance(WorkflowInstance workflowInstance, String workflowInstanceXml) {
+    return new WorkflowItem(workflowInstance, workflowInstanceXml);
+  }
+
   /**
    * @param workflowInstanceId
    *          The unique id of the workflow instance to delete.
@@ -132,6 +143,23 @@ public class WorkflowItem implements MessageItem, Serializable {
     this.type = Type.UpdateInstance;
   }
 
+  /**
+   * Constructor to build an update workflow instance {@link WorkflowItem} from an already serialized instance.
+   *
+   * @param workflowInstance
+   *          The workflow instance to update.
+   * @param workflowInstanceXml
+   *          The serialized workflow instance.
+   */
+  private WorkflowItem(WorkflowInstance workflowInstance, String workflowInstanceXml) {
+    this.id = workflowInstance.getMediaPackage().getIdentifier().compact();
+    this.workflowDefinitionId = null;
+    this.workflowDefinition = null;
+    this.workflowInstanceId = -1;
+    this.workflowInstance = workflowInstanceXml;
+    this.type = Type.UpdateInstance;
+  }
+
   /**
    * Constructor to build a delete workflow {@link WorkflowItem}.
    *
@@ -222,6 +222,29 @@ public interface SchedulerService {
   DublinCoreCatalogList findConflictingEvents(String captureDeviceID, String rrule, Date startDate, Date endDate,
           long duration, String timezone) throws SchedulerException;
 
+  /**
+   * Returns the conflicting events of several capture devices at once. Conflicting periods are calculated based on
+   * recurrence rule, start date, end date and duration of each conflicting period.
+   *
+   * @param captureDeviceIDs
+   *          capture device IDs for which conflicting events are searched for
+   * @param rrule
+   *          recurrence rule
+   * @param startDate
+   *          beginning of period
+   * @param endDate
+   *          ending of period
+   * @param duration
+   *          duration of each period
+   * @param timezone
+   *          the time zone the recurrence rule is expressed in
+   * @return the conflicting events by capture device ID
+   * @throws SchedulerException
+   *           if exception occurred
+   */
+  Map<String, DublinCoreCatalogList> findConflictingEvents(List<String> captureDeviceIDs, String rrule,
+          Date startDate, Date endDate, long duration, String timezone) throws SchedulerException;
+
   /**
    * Generates calendar for specified capture agent.
    *
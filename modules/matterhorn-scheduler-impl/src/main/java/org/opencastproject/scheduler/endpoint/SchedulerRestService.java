@@ -60,6 +60,9 @@ import org.opencastproject.util.doc.rest.RestQuery;
 import org.opencastproject.util.doc.rest.RestResponse;
 import org.opencastproject.util.doc.rest.RestService;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 import net.fortuna.ical4j.model.property.RRule;
 
 import org.apache.commons.io.IOUtils;
@@ -75,6 +78,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringReader;
@@ -85,6 +89,8 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
 import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -124,6 +130,25 @@ public class SchedulerRestService {
 
   private static final String LINE_SEPERATOR = System.getProperty("line.separator");
 
+  /** The maximum number of rendered calendars to keep */
+  private static final int CALENDAR_CACHE_SIZE = 1000;
+
+  /**
+   * The time in minutes a rendered calendar is served for. The calendar window moves with the current time, so even an
+   * unchanged schedule needs to be rendered again every now and then.
+   */
+  private static final int CALENDAR_CACHE_EXPIRE = 10;
+
+  /**
+   * The precision of calendar cutoffs in milliseconds. Capture agents ask for a cutoff relative to the current time, so
+   * it is rounded up to allow their requests to share a rendered calendar.
+   */
+  private static final long CALENDAR_CUTOFF_PRECISION = TimeUnit.MINUTES.toMillis(CALENDAR_CACHE_EXPIRE);
+
+  /** The rendered calendars by capture agent, series and rounded cutoff */
+  private final Cache<String, RenderedCalendar> calendarCache = CacheBuilder.newBuilder()
+          .maximumSize(CALENDAR_CACHE_SIZE).expireAfterWrite(CALENDAR_CACHE_EXPIRE, TimeUnit.MINUTES).build();
+
   private SchedulerService service;
   private CaptureAgentStateService agentService;
   private CaptureNowProlongingService prolongingService;
@@ -1200,7 +1225,8 @@ public class SchedulerRestService {
     Date endDate = null;
     if (StringUtils.isNotEmpty(cutoff)) {
       try {
-        endDate = new Date(Long.valueOf(cutoff));
+        long precision = CALENDAR_CUTOFF_PRECISION;
+        endDate = new Date((Long.parseLong(cutoff) + precision - 1) / precision * precision);
       } catch (NumberFormatException e) {
         return Response.status(Status.BAD_REQUEST).build();
       }
@@ -1212,17 +1238,29 @@ public class SchedulerRestService {
       if (StringUtils.isNotBlank(ifNoneMatch) && ifNoneMatch.equals(lastModified)) {
         return Response.notModified(lastModified).expires(null).build();
       }
-      SchedulerQuery filter = new SchedulerQuery().setSpatial(captureAgentId).setSeriesId(seriesId)
-              .setEndsFrom(DateTime.now().minusHours(1).toDate());
-      if (endDate != null)
-        filter.setStartsTo(endDate);
-
-      String result = service.getCalendar(filter);
-      if (!result.isEmpty()) {
-        return Response.ok(result).header(HttpHeaders.ETAG, lastModified)
-                .header(HttpHeaders.CONTENT_TYPE, "text/calendar; charset=UTF-8").build();
+
+      // Serve the calendar rendered for the current ETag, if there is one
+      String cacheKey = captureAgentId + "/" + seriesId + "/" + (endDate != null ? endDate.getTime() : null);
+      RenderedCalendar calendar = calendarCache.getIfPresent(cacheKey);
+      if (calendar == null || !calendar.etag.equals(lastModified)) {
+        SchedulerQuery filter = new SchedulerQuery().setSpatial(captureAgentId).setSeriesId(seriesId)
+                .setEndsFrom(DateTime.now().minusHours(1).toDate());
+        if (endDate != null)
+          filter.setStartsTo(endDate);
+
+        String result = service.getCalendar(filter);
+        if (result.isEmpty())
+          throw new NotFoundException("No calendar for agent " + captureAgentId + " found!");
+        calendar = new RenderedCalendar(lastModified, result);
+        calendarCache.put(cacheKey, calendar);
+      }
+
+      Response.ResponseBuilder response = Response.ok().header(HttpHeaders.ETAG, lastModified)
+              .header(HttpHeaders.CONTENT_TYPE, "text/calendar; charset=UTF-8").header("Vary", HttpHeaders.ACCEPT_ENCODING);
+      if (acceptsGzip(request)) {
+        return response.entity(calendar.gzipped).header(HttpHeaders.CONTENT_ENCODING, "gzip").build();
       } else {
-        throw new NotFoundException("No calendar for agent " + captureAgentId + " found!");
+        return response.entity(calendar.content).build();
       }
     } catch (NotFoundException e) {
       throw e;
@@ -1586,4 +1624,42 @@ public class SchedulerRestService {
     caProperties.load(new StringReader(serializedProperties));
     return caProperties;
   }
+
+  /**
+   * Returns whether the client accepts gzip encoded responses.
+   */
+  private static boolean acceptsGzip(HttpServletRequest request) {
+    String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+    if (StringUtils.isBlank(acceptEncoding))
+      return false;
+    for (String encoding : acceptEncoding.split(",")) {
+      String[] parts = encoding.split(";");
+      if (!"gzip".equalsIgnoreCase(parts[0].trim()))
+        continue;
+      // An explicit quality of zero rules the encoding out
+      return parts.length < 2 || !parts[1].trim().matches("q\\s*=\\s*0(\\.0*)?");
+    }
+    return false;
+  }
+
+  /** An iCalendar rendered for a capture agent, along with its gzip encoded variant */
+  private static final class RenderedCalendar {
+    private final String etag;
+    private final byte[] content;
+    private final byte[] gzipped;
+
+    RenderedCalendar(String etag, String calendar) throws IOException {
+      this.etag = etag;
+      this.content = calendar.getBytes("UTF-8");
+      ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 4);
+      GZIPOutputStream gzip = new GZIPOutputStream(out);
+      try {
+        gzip.write(content);
+      } finally {
+        IOUtils.closeQuietly(gzip);
+      }
+      this.gzipped = out.toByteArray();
+    }
+  }
+
 }
@@ -0,0 +1,279 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.scheduler.impl;
+
+import static org.opencastproject.scheduler.impl.Util.getEventIdentifier;
+
+import org.opencastproject.metadata.dublincore.DCMIPeriod;
+import org.opencastproject.metadata.dublincore.DublinCore;
+import org.opencastproject.metadata.dublincore.DublinCoreCatalog;
+import org.opencastproject.metadata.dublincore.EncodingSchemeUtils;
+import org.opencastproject.scheduler.api.SchedulerQuery;
+
+import net.fortuna.ical4j.model.Period;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+
+/**
+ * In-memory index of the time slots taken by scheduled events, per capture agent.
+ * <p>
+ * The events of a capture agent are loaded from the search index with a single query the first time a conflict check
+ * for that agent comes in, and kept current from then on by the scheduler service, which reports every event it
+ * indexes or deletes. A conflict check for a whole recurrence is then answered by one sweep over the periods and the
+ * agent's events, both sorted by start date.
+ * <p>
+ * As with the search index queries this replaces, an event conflicts with a period if it starts before or at the end of
+ * the period and ends at or after its start.
+ */
+class EventConflictIndex {
+
+  /** The logging facility */
+  private static final Logger logger = LoggerFactory.getLogger(EventConflictIndex.class);
+
+  /** Orders time slots by start date, then by event identifier */
+  private static final Comparator<Slot> START_ORDER = new Comparator<Slot>() {
+    @Override
+    public int compare(Slot a, Slot b) {
+      int result = Long.compare(a.start, b.start);
+      return result != 0 ? result : Long.compare(a.eventId, b.eventId);
+    }
+  };
+
+  /** Orders time slots by end date */
+  private static final Comparator<Slot> END_ORDER = new Comparator<Slot>() {
+    @Override
+    public int compare(Slot a, Slot b) {
+      return Long.compare(a.end, b.end);
+    }
+  };
+
+  /** Orders recurrence periods by start date */
+  private static final Comparator<Period> PERIOD_ORDER = new Comparator<Period>() {
+    @Override
+    public int compare(Period a, Period b) {
+      return a.getStart().compareTo(b.getStart());
+    }
+  };
+
+  /** The search index the events are loaded from */
+  private final SchedulerServiceIndex index;
+
+  /** The time slots of the loaded capture agents */
+  private final Map<String, TreeSet<Slot>> agents = new HashMap<String, TreeSet<Slot>>();
+
+  /** The time slots of the events of the loaded capture agents, by event identifier */
+  private final Map<Long, Slot> events = new HashMap<Long, Slot>();
+
+  /**
+   * The changes that were reported while the events of a capture agent were being loaded, which take precedence over
+   * what the load returns. A <code>null</code> slot means that the event no longer belongs to the agent.
+   */
+  private final Map<String, Map<Long, Slot>> loading = new HashMap<String, Map<Long, Slot>>();
+
+  /**
+   * Creates an empty conflict index.
+   *
+   * @param index
+   *          the search index to load the events of a capture agent from
+   */
+  EventConflictIndex(SchedulerServiceIndex index) {
+    this.index = index;
+  }
+
+  /**
+   * Records the time slot of an event that has been added to or updated in the search index.
+   *
+   * @param event
+   *          the event catalog
+   */
+  synchronized void put(DublinCoreCatalog event) {
+    long eventId = getEventIdentifier(event);
+    Slot slot = toSlot(eventId, event);
+    remove(eventId);
+    for (Map.Entry<String, Map<Long, Slot>> changes : loading.entrySet()) {
+      changes.getValue().put(eventId, slot != null && slot.agent.equals(changes.getKey()) ? slot : null);
+    }
+    if (slot == null)
+      return;
+    TreeSet<Slot> slots = agents.get(slot.agent);
+    if (slots != null) {
+      slots.add(slot);
+      events.put(eventId, slot);
+    }
+  }
+
+  /**
+   * Forgets about an event that has been deleted from the search index.
+   *
+   * @param eventId
+   *          the event identifier
+   */
+  synchronized void remove(long eventId) {
+    Slot slot = events.remove(eventId);
+    if (slot != null)
+      agents.get(slot.agent).remove(slot);
+    for (Map<Long, Slot> changes : loading.values()) {
+      changes.put(eventId, null);
+    }
+  }
+
+  /**
+   * Returns the identifiers of the events of a capture agent that conflict with at least one of the periods.
+   *
+   * @param agent
+   *          the capture agent identifier
+   * @param periods
+   *          the periods to check, in any order
+   * @return the identifiers of the conflicting events, ordered by start date
+   * @throws SchedulerServiceDatabaseException
+   *           if the events of the capture agent could not be loaded
+   */
+  List<Long> findConflicts(String agent, List<Period> periods) throws SchedulerServiceDatabaseException {
+    List<Slot> slots = getSlots(agent);
+    List<Period> sortedPeriods = new ArrayList<Period>(periods);
+    Collections.sort(sortedPeriods, PERIOD_ORDER);
+
+    // Events that have started, ordered by end date so that the ones which are over can be dropped from the top
+    PriorityQueue<Slot> started = new PriorityQueue<Slot>(Math.max(1, slots.size()), END_ORDER);
+    TreeSet<Slot> conflicts = new TreeSet<Slot>(START_ORDER);
+    int next = 0;
+    for (Period period : sortedPeriods) {
+      long start = period.getStart().getTime();
+      long end = period.getEnd().getTime();
+      while (next < slots.size() && slots.get(next).start <= end) {
+        started.add(slots.get(next++));
+      }
+      while (!started.isEmpty() && started.peek().end < start) {
+        started.poll();
+      }
+      // An earlier, longer period may have let in events that start after the end of this one
+      for (Iterator<Slot> i = started.iterator(); i.hasNext();) {
+        Slot slot = i.next();
+        if (slot.start <= end) {
+          conflicts.add(slot);
+          i.remove();
+        }
+      }
+    }
+
+    List<Long> eventIds = new ArrayList<Long>(conflicts.size());
+    for (Slot slot : conflicts) {
+      eventIds.add(slot.eventId);
+    }
+    return eventIds;
+  }
+
+  /**
+   * Returns the time slots of a capture agent ordered by start date, loading them from the search index if needed.
+   */
+  private List<Slot> getSlots(String agent) throws SchedulerServiceDatabaseException {
+    synchronized (this) {
+      while (true) {
+        TreeSet<Slot> slots = agents.get(agent);
+        if (slots != null)
+          return new ArrayList<Slot>(slots);
+        if (!loading.containsKey(agent))
+          break;
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new SchedulerServiceDatabaseException(e);
+        }
+      }
+      loading.put(agent, new HashMap<Long, Slot>());
+    }
+
+    List<DublinCoreCatalog> catalogs = null;
+    try {
+      logger.debug("Loading the scheduled events of capture agent '{}' into the conflict index", agent);
+      catalogs = index.search(new SchedulerQuery().setSpatial(agent)).getCatalogList();
+    } finally {
+      synchronized (this) {
+        Map<Long, Slot> changes = loading.remove(agent);
+        if (catalogs != null) {
+          TreeSet<Slot> slots = new TreeSet<Slot>(START_ORDER);
+          for (DublinCoreCatalog catalog : catalogs) {
+            long eventId = getEventIdentifier(catalog);
+            Slot slot = toSlot(eventId, catalog);
+            if (slot != null && agent.equals(slot.agent) && !changes.containsKey(eventId))
+              slots.add(slot);
+          }
+          for (Slot slot : changes.values()) {
+            if (slot != null)
+              slots.add(slot);
+          }
+          for (Slot slot : slots) {
+            events.put(slot.eventId, slot);
+          }
+          agents.put(agent, slots);
+        }
+        notifyAll();
+      }
+    }
+    return getSlots(agent);
+  }
+
+  /**
+   * Returns the time slot of an event, or <code>null</code> if it is not assigned to a capture agent or has no start
+   * and end date.
+   */
+  private static Slot toSlot(long eventId, DublinCoreCatalog event) {
+    String agent = event.getFirst(DublinCore.PROPERTY_SPATIAL);
+    String temporal = event.getFirst(DublinCore.PROPERTY_TEMPORAL);
+    if (StringUtils.isBlank(agent) || StringUtils.isBlank(temporal))
+      return null;
+    DCMIPeriod period = EncodingSchemeUtils.decodePeriod(temporal);
+    if (period == null || !period.hasStart() || !period.hasEnd())
+      return null;
+    return new Slot(eventId, agent, period.getStart(), period.getEnd());
+  }
+
+  /** The time slot taken by an event on a capture agent */
+  private static final class Slot {
+    private final long eventId;
+    private final String agent;
+    private final long start;
+    private final long end;
+
+    Slot(long eventId, String agent, Date start, Date end) {
+      this.eventId = eventId;
+      this.agent = agent;
+      this.start = start.getTime();
+      this.end = end.getTime();
+    }
+  }
+
+}
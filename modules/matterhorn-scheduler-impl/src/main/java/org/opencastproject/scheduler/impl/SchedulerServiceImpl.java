@@ -162,12 +162,15 @@ public class SchedulerServiceImpl extends AbstractIndexProducer implements Sched
   /** The default cache expire time in seconds */
   private static final int DEFAULT_CACHE_EXPIRE = 60;
 
+  /** The maximum number of event identifiers to look up in a single search index query */
+  private static final int EVENT_ID_QUERY_BATCH_SIZE = 500;
+
   /** The Etag for an empty calendar */
   private static final String EMPTY_CALENDAR_ETAG = "mod0";
 
   private ComponentContext cc;
 
-  /** The last modified cache */
+  /** The last modified cache, which is cleared whenever the schedule changes */
   protected Cache<String, String> lastModifiedCache = CacheBuilder.newBuilder()
           .expireAfterWrite(DEFAULT_CACHE_EXPIRE, TimeUnit.SECONDS).build();
 
@@ -201,6 +204,9 @@ public class SchedulerServiceImpl extends AbstractIndexProducer implements Sched
   /** Solr index for events */
   protected SchedulerServiceIndex index;
 
+  /** In-memory index of the time slots taken on each capture agent */
+  protected EventConflictIndex conflicts;
+
   /** Workspace */
   protected Workspace workspace;
 
@@ -267,6 +273,7 @@ public class SchedulerServiceImpl extends AbstractIndexProducer implements Sched
    */
   public void setIndex(SchedulerServiceIndex index) {
     this.index = index;
+    this.conflicts = new EventConflictIndex(index);
   }
 
   /**
@@ -723,6 +730,8 @@ public class SchedulerServiceImpl extends AbstractIndexProducer implements Sched
       logger.warn("Unable to index event with ID '{}': {}", eventId, e.getMessage());
       throw new SchedulerException(e);
     }
+    conflicts.put(event);
+    lastModifiedCache.invalidateAll();
 
     // update with default CA properties
     try {
@@ -795,6 +804,7 @@ public class SchedulerServiceImpl extends AbstractIndexProducer implements Sched
         logger.warn("Unable to update capture agent properties for event with ID '{}': {}", eventId, ex.getMessage());
         throw new SchedulerException(ex);
       }
+      lastModifiedCache.invalidateAll();
     }
   }
 
@@ -848,6 +858,8 @@ public class SchedulerServiceImpl extends AbstractIndexProducer implements Sched
       logger.warn("Unable to index event with ID '{}': {}", eventId, e.getMessage());
       throw new SchedulerException(e);
     }
+    conflicts.put(event);
+    lastModifiedCache.invalidateAll();
 
     // update workflow
     try {
@@ -1016,6 +1028,8 @@ public class SchedulerServiceImpl extends AbstractIndexProducer implements Sched
       logger.warn("Unable to delete event '{}' from index: {}", eventId, e);
       throw new SchedulerException(e);
     }
+    conflicts.remove(eventId);
+    lastModifiedCache.invalidateAll();
   }
 
   /**
@@ -1064,6 +1078,8 @@ public class SchedulerServiceImpl extends AbstractIndexProducer implements Sched
       logger.warn("Unable to delete event '{}' from index: {}", eventId, e);
       throw new SchedulerException(e);
     }
+    conflicts.remove(eventId);
+    lastModifiedCache.invalidateAll();
   }
 
   /*
@@ -1139,6 +1155,44 @@ public class SchedulerServiceImpl extends AbstractIndexProducer implements Sched
   @Override
   public DublinCoreCatalogList findConflictingEvents(String captureDeviceID, String rrule, Date startDate,
           Date endDate, long duration, String timezone) throws SchedulerException {
+    List<Period> periods = calculateConflictPeriods(rrule, startDate, endDate, duration, timezone);
+    try {
+      return getEventCatalogs(conflicts.findConflicts(captureDeviceID, periods));
+    } catch (SchedulerServiceDatabaseException e) {
+      logger.error("Could not complete search after conflicting events for device '{}': {}", captureDeviceID,
+              e.getMessage());
+      throw new SchedulerException(e);
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see org.opencastproject.scheduler.api.SchedulerService#findConflictingEvents(java.util.List, java.lang.String,
+   * java.util.Date, java.util.Date, long, java.lang.String)
+   */
+  @Override
+  public Map<String, DublinCoreCatalogList> findConflictingEvents(List<String> captureDeviceIDs, String rrule,
+          Date startDate, Date endDate, long duration, String timezone) throws SchedulerException {
+    List<Period> periods = calculateConflictPeriods(rrule, startDate, endDate, duration, timezone);
+    Map<String, DublinCoreCatalogList> result = new HashMap<String, DublinCoreCatalogList>();
+    for (String captureDeviceID : captureDeviceIDs) {
+      try {
+        result.put(captureDeviceID, getEventCatalogs(conflicts.findConflicts(captureDeviceID, periods)));
+      } catch (SchedulerServiceDatabaseException e) {
+        logger.error("Could not complete search after conflicting events for device '{}': {}", captureDeviceID,
+                e.getMessage());
+        throw new SchedulerException(e);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Expands a recurrence rule into the periods to check for conflicts.
+   */
+  private List<Period> calculateConflictPeriods(String rrule, Date startDate, Date endDate, long duration,
+          String timezone) throws SchedulerException {
     RRule rule;
     try {
       rule = new RRule(rrule);
@@ -1147,18 +1201,23 @@ public class SchedulerServiceImpl extends AbstractIndexProducer implements Sched
       logger.error("Could not create rule for finding conflicting events: {}", e.getMessage());
       throw new SchedulerException(e);
     }
+    return Util.calculatePeriods(startDate, endDate, duration, rule, TimeZone.getTimeZone(timezone));
+  }
 
-    TimeZone tz = TimeZone.getTimeZone(timezone);
-
-    List<Period> periods = Util.calculatePeriods(startDate, endDate, duration, rule, tz);
-    List<DublinCoreCatalog> events = new ArrayList<DublinCoreCatalog>();
-
-    for (Period p : periods) {
-      List<DublinCoreCatalog> filterEvents = findConflictingEvents(captureDeviceID, p.getStart(), p.getEnd())
-              .getCatalogList();
-      events.addAll(filterEvents);
+  /**
+   * Looks up the catalogs of the given events in the search index, a batch of identifiers per query.
+   *
+   * @param eventIds
+   *          the event identifiers
+   * @return the catalogs, ordered by start date
+   */
+  private DublinCoreCatalogList getEventCatalogs(List<Long> eventIds) throws SchedulerServiceDatabaseException {
+    List<DublinCoreCatalog> events = new ArrayList<DublinCoreCatalog>(eventIds.size());
+    for (int i = 0; i < eventIds.size(); i += EVENT_ID_QUERY_BATCH_SIZE) {
+      List<Long> batch = eventIds.subList(i, Math.min(i + EVENT_ID_QUERY_BATCH_SIZE, eventIds.size()));
+      SchedulerQuery q = new SchedulerQuery().withIdInList(batch).withSort(Sort.EVENT_START);
+      events.addAll(index.search(q).getCatalogList());
     }
-
     return new DublinCoreCatalogList(events, events.size());
   }
 
@@ -0,0 +1,125 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package org.opencastproject.scheduler.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.opencastproject.metadata.dublincore.DCMIPeriod;
+import org.opencastproject.metadata.dublincore.DublinCore;
+import org.opencastproject.metadata.dublincore.DublinCoreCatalog;
+import org.opencastproject.metadata.dublincore.DublinCoreCatalogList;
+import org.opencastproject.metadata.dublincore.DublinCores;
+import org.opencastproject.metadata.dublincore.EncodingSchemeUtils;
+import org.opencastproject.metadata.dublincore.Precision;
+import org.opencastproject.scheduler.api.SchedulerQuery;
+
+import net.fortuna.ical4j.model.DateTime;
+import net.fortuna.ical4j.model.Period;
+
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+public class EventConflictIndexTest {
+
+  private static final long HOUR = 60 * 60 * 1000L;
+  private static final long DAY = 24 * HOUR;
+
+  private SchedulerServiceIndex index;
+  private EventConflictIndex conflicts;
+
+  @Before
+  public void setUp() throws Exception {
+    // Device A has an event every day from 10 to 11, starting on day 1
+    List<DublinCoreCatalog> events = new ArrayList<DublinCoreCatalog>();
+    for (int day = 1; day <= 5; day++) {
+      events.add(event(day, "Device A", day * DAY + 10 * HOUR, day * DAY + 11 * HOUR));
+    }
+    index = EasyMock.createMock(SchedulerServiceIndex.class);
+    EasyMock.expect(index.search(EasyMock.anyObject(SchedulerQuery.class)))
+            .andReturn(new DublinCoreCatalogList(events, events.size())).once();
+    EasyMock.expect(index.search(EasyMock.anyObject(SchedulerQuery.class)))
+            .andReturn(new DublinCoreCatalogList(new ArrayList<DublinCoreCatalog>(), 0)).anyTimes();
+    EasyMock.replay(index);
+    conflicts = new EventConflictIndex(index);
+  }
+
+  @Test
+  public void testRecurrence() throws Exception {
+    // Every other day from 10:30 to 12, in reverse order
+    List<Period> periods = Arrays.asList(period(5 * DAY + 10 * HOUR + HOUR / 2, 5 * DAY + 12 * HOUR),
+            period(3 * DAY + 10 * HOUR + HOUR / 2, 3 * DAY + 12 * HOUR),
+            period(DAY + 10 * HOUR + HOUR / 2, DAY + 12 * HOUR));
+    assertEquals(Arrays.asList(1L, 3L, 5L), conflicts.findConflicts("Device A", periods));
+    assertTrue(conflicts.findConflicts("Device B", periods).isEmpty());
+
+    // The events of device A are only loaded once
+    conflicts.findConflicts("Device A", periods);
+    EasyMock.verify(index);
+  }
+
+  @Test
+  public void testBoundaries() throws Exception {
+    // Touching periods conflict, as with the search index query
+    assertEquals(Arrays.asList(1L, 2L),
+            conflicts.findConflicts("Device A", Arrays.asList(period(DAY + 11 * HOUR, 2 * DAY + 10 * HOUR))));
+    assertTrue(conflicts.findConflicts("Device A",
+            Arrays.asList(period(DAY + 11 * HOUR + 1, 2 * DAY + 10 * HOUR - 1))).isEmpty());
+  }
+
+  @Test
+  public void testUpdates() throws Exception {
+    List<Period> periods = Arrays.asList(period(DAY, 2 * DAY), period(6 * DAY, 7 * DAY));
+    assertEquals(Arrays.asList(1L), conflicts.findConflicts("Device A", periods));
+
+    conflicts.put(event(6, "Device A", 6 * DAY + 10 * HOUR, 6 * DAY + 11 * HOUR));
+    assertEquals(Arrays.asList(1L, 6L), conflicts.findConflicts("Device A", periods));
+
+    // Move event 1 to another device
+    assertTrue(conflicts.findConflicts("Device B", periods).isEmpty());
+    conflicts.put(event(1, "Device B", DAY + 10 * HOUR, DAY + 11 * HOUR));
+    assertEquals(Arrays.asList(6L), conflicts.findConflicts("Device A", periods));
+    assertEquals(Arrays.asList(1L), conflicts.findConflicts("Device B", periods));
+
+    conflicts.remove(6L);
+    assertTrue(conflicts.findConflicts("Device A", periods).isEmpty());
+  }
+
+  private static DublinCoreCatalog event(long id, String agent, long start, long end) {
+    DublinCoreCatalog dc = DublinCores.mkSimple();
+    dc.set(DublinCore.PROPERTY_IDENTIFIER, Long.toString(id));
+    dc.set(DublinCore.PROPERTY_SPATIAL, agent);
+    dc.set(DublinCore.PROPERTY_TEMPORAL,
+            EncodingSchemeUtils.encodePeriod(new DCMIPeriod(new Date(start), new Date(end)), Precision.Second));
+    return dc;
+  }
+
+  private static Period period(long start, long end) {
+    return new Period(new DateTime(start), new DateTime(end));
+  }
+
+}
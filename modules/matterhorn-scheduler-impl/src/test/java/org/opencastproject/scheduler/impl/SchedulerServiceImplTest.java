@@ -113,6 +113,7 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -121,6 +122,7 @@ import java.io.StringReader;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -130,6 +132,7 @@ import java.util.Properties;
 import java.util.Random;
 import java.util.concurrent.Callable;
 import java.util.concurrent.FutureTask;
+import java.util.zip.GZIPInputStream;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -437,6 +440,13 @@ public class SchedulerServiceImplTest {
     events = schedSvc.findConflictingEvents("Device A", "FREQ=WEEKLY;BYDAY=SU,MO,TU,WE,TH,FR,SA", start,
             new Date(start.getTime() + (48 * 60 * 60 * 1000)), new Long(36000), "America/Chicago").getCatalogList();
     assertEquals(2, events.size());
+
+    Map<String, DublinCoreCatalogList> conflicts = schedSvc.findConflictingEvents(
+            Arrays.asList("Device A", "Device D", "Some Other Device"), "FREQ=WEEKLY;BYDAY=SU,MO,TU,WE,TH,FR,SA", start,
+            new Date(start.getTime() + (48 * 60 * 60 * 1000)), new Long(36000), "America/Chicago");
+    assertEquals(2, conflicts.get("Device A").getCatalogList().size());
+    assertEquals(1, conflicts.get("Device D").getCatalogList().size());
+    assertEquals(0, conflicts.get("Some Other Device").getCatalogList().size());
   }
 
   @Test
@@ -579,6 +589,53 @@ public class SchedulerServiceImplTest {
     Assert.assertFalse(etag.equals(secondEtag));
   }
 
+  @Test
+  public void testCalendarGzip() throws Exception {
+    String device = "Test Device";
+    schedSvc.addEvent(generateEvent(device, new Date(), new Date(System.currentTimeMillis() + 60000)), wfProperties);
+
+    SchedulerRestService restService = new SchedulerRestService();
+    restService.setService(schedSvc);
+    restService.setDublinCoreService(dcSvc);
+
+    HttpServletRequest request = EasyMock.createNiceMock(HttpServletRequest.class);
+    EasyMock.replay(request);
+    Response response = restService.getCalendar(device, null, null, request);
+    assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+    Assert.assertNull(response.getMetadata().getFirst(HttpHeaders.CONTENT_ENCODING));
+    byte[] calendar = (byte[]) response.getEntity();
+
+    EasyMock.reset(request);
+    EasyMock.expect(request.getHeader(HttpHeaders.ACCEPT_ENCODING)).andReturn("deflate, gzip;q=0.8").anyTimes();
+    EasyMock.replay(request);
+    response = restService.getCalendar(device, null, null, request);
+    assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+    assertEquals("gzip", response.getMetadata().getFirst(HttpHeaders.CONTENT_ENCODING));
+    byte[] gzipped = (byte[]) response.getEntity();
+    Assert.assertArrayEquals(calendar, IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(gzipped))));
+  }
+
+  @Test
+  public void testCalendarCutoffIsRounded() throws Exception {
+    String device = "Test Device";
+    schedSvc.addEvent(generateEvent(device, new Date(), new Date(System.currentTimeMillis() + 60000)), wfProperties);
+
+    SchedulerRestService restService = new SchedulerRestService();
+    restService.setService(schedSvc);
+    restService.setDublinCoreService(dcSvc);
+
+    HttpServletRequest request = EasyMock.createNiceMock(HttpServletRequest.class);
+    EasyMock.replay(request);
+
+    // Capture agents ask for a cutoff relative to the current time, so that should not prevent reusing the calendar
+    long cutoff = (System.currentTimeMillis() / 3600000 + 24) * 3600000 + 1;
+    Response response = restService.getCalendar(device, null, Long.toString(cutoff), request);
+    assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+    Response nextResponse = restService.getCalendar(device, null, Long.toString(cutoff + 1000), request);
+    assertEquals(HttpServletResponse.SC_OK, nextResponse.getStatus());
+    Assert.assertSame(response.getEntity(), nextResponse.getEntity());
+  }
+
   @Test
   public void testUpdateEvent() throws Exception {
     final long currentTime = System.currentTimeMillis();
@@ -370,6 +370,12 @@ public class SchedulerServiceRemoteImpl extends RemoteBase implements SchedulerS
     throw new UnsupportedOperationException();
   }
 
+  @Override
+  public Map<String, DublinCoreCatalogList> findConflictingEvents(List<String> captureDeviceIDs, String rrule,
+          Date startDate, Date endDate, long duration, String timezone) throws SchedulerException {
+    throw new UnsupportedOperationException();
+  }
+
   @Override
   public String getCalendar(SchedulerQuery filter) throws SchedulerException {
     throw new UnsupportedOperationException();
@@ -42,6 +42,7 @@ public class SearchQuery {
   protected Date deletedDate = null;
   protected Sort sort = Sort.DATE_CREATED;
   protected boolean sortAscending = true;
+  protected boolean mediaPackageJson = false;
 
   public enum Sort {
     DATE_CREATED, DATE_PUBLISHED, TITLE, SERIES_ID, MEDIA_PACKAGE_ID, CREATOR, CONTRIBUTOR, LANGUAGE, LICENSE, SUBJECT, DESCRIPTION, PUBLISHER
@@ -57,6 +58,16 @@ public class SearchQuery {
     return this;
   }
 
+  /**
+   * Asks for the media packages of the hits as JSON, which saves parsing them if the search index holds them in that
+   * form already. The JSON is then available from {@link SearchResultItemImpl#getMediaPackageJson()}, and
+   * {@link SearchResultItem#getMediaPackage()} may be <code>null</code>.
+   */
+  public SearchQuery withMediaPackageJson(boolean mediaPackageJson) {
+    this.mediaPackageJson = mediaPackageJson;
+    return this;
+  }
+
   public SearchQuery withId(String id) {
     this.id = id;
     return this;
@@ -119,6 +130,10 @@ public class SearchQuery {
     return includeSeries;
   }
 
+  public boolean isMediaPackageJson() {
+    return mediaPackageJson;
+  }
+
   public MediaPackageElementFlavor[] getElementFlavors() {
     return flavors;
   }
@@ -37,6 +37,7 @@ import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlElementWrapper;
 import javax.xml.bind.annotation.XmlID;
 import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
 import javax.xml.bind.annotation.XmlType;
 
 /**
@@ -63,6 +64,10 @@ public class SearchResultItemImpl implements SearchResultItem {
   @XmlElement(name = "mediapackage", namespace = "http://mediapackage.opencastproject.org")
   private MediaPackage mediaPackage = null;
 
+  /** The media package serialized to JSON, if it was asked for instead of the media package */
+  @XmlTransient
+  private String mediaPackageJson = null;
+
   /** Dublin core field 'dc:extent' */
   @XmlElement
   private long dcExtent = -1;
@@ -591,6 +596,26 @@ public class SearchResultItemImpl implements SearchResultItem {
     return mediaPackage;
   }
 
+  /**
+   * Sets the JSON serialization of the media package, which is handed out instead of the media package.
+   *
+   * @param mediaPackageJson
+   *          the media package as a JSON object
+   */
+  public void setMediaPackageJson(String mediaPackageJson) {
+    this.mediaPackageJson = mediaPackageJson;
+  }
+
+  /**
+   * Returns the media package as a JSON object, if it was asked for with
+   * {@link SearchQuery#withMediaPackageJson(boolean)} and the search index holds it in that form.
+   *
+   * @return the media package as a JSON object, or <code>null</code>
+   */
+  public String getMediaPackageJson() {
+    return mediaPackageJson;
+  }
+
   /**
    * {@inheritDoc}
    *
@@ -29,6 +29,8 @@ import org.opencastproject.mediapackage.MediaPackageImpl;
 import org.opencastproject.rest.AbstractJobProducerEndpoint;
 import org.opencastproject.search.api.SearchException;
 import org.opencastproject.search.api.SearchQuery;
+import org.opencastproject.search.api.SearchResult;
+import org.opencastproject.search.api.SearchResultImpl;
 import org.opencastproject.search.impl.SearchServiceImpl;
 import org.opencastproject.security.api.UnauthorizedException;
 import org.opencastproject.serviceregistry.api.ServiceRegistry;
@@ -198,15 +200,22 @@ public class SearchRestService extends AbstractJobProducerEndpoint {
     // Build the response
     ResponseBuilder rb = Response.ok();
 
+    // JSON results are written from the media packages the index holds as JSON
+    boolean json = "json".equals(format);
+    query.withMediaPackageJson(json);
+
+    SearchResult result;
     if (admin) {
-      rb.entity(searchService.getForAdministrativeRead(query));
+      result = searchService.getForAdministrativeRead(query);
     } else {
-      rb.entity(searchService.getByQuery(query));
+      result = searchService.getByQuery(query);
     }
 
-    if ("json".equals(format)) {
+    if (json) {
+      rb.entity(new SearchResultJsonWriter((SearchResultImpl) result));
       rb.type(MediaType.APPLICATION_JSON);
     } else {
+      rb.entity(result);
       rb.type(MediaType.TEXT_XML);
     }
 
@@ -281,15 +290,22 @@ public class SearchRestService extends AbstractJobProducerEndpoint {
     // Build the response
     ResponseBuilder rb = Response.ok();
 
+    // JSON results are written from the media packages the index holds as JSON
+    boolean json = "json".equals(format);
+    search.withMediaPackageJson(json);
+
+    SearchResult result;
     if (admin) {
-      rb.entity(searchService.getForAdministrativeRead(search));
+      result = searchService.getForAdministrativeRead(search);
     } else {
-      rb.entity(searchService.getByQuery(search));
+      result = searchService.getByQuery(search);
     }
 
-    if ("json".equals(format)) {
+    if (json) {
+      rb.entity(new SearchResultJsonWriter((SearchResultImpl) result));
       rb.type(MediaType.APPLICATION_JSON);
     } else {
+      rb.entity(result);
       rb.type(MediaType.TEXT_XML);
     }
 
@@ -0,0 +1,164 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.search.endpoint;
+
+import org.opencastproject.search.api.SearchResultImpl;
+import org.opencastproject.search.api.SearchResultItem;
+import org.opencastproject.search.api.SearchResultItemImpl;
+
+import org.codehaus.jettison.mapped.Configuration;
+import org.codehaus.jettison.mapped.MappedNamespaceConvention;
+import org.codehaus.jettison.mapped.MappedXMLStreamWriter;
+import org.json.simple.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Writes a search result as JSON, copying the media packages that the search index holds as JSON straight into the
+ * output instead of serializing media package objects.
+ * <p>
+ * The rest of the result is serialized the way the REST publisher serializes JAXB entities to JSON. Each item that
+ * comes with a JSON media package has a unique marker in place of its <code>ocMediapackage</code> value, which is
+ * replaced with the original value and the media package while writing the output.
+ */
+class SearchResultJsonWriter implements StreamingOutput {
+
+  /** The namespaces to map, as configured for the REST publisher's JSON provider */
+  private static final Map<String, String> NAMESPACE_MAP = Collections.singletonMap(
+          "http://www.w3.org/2001/XMLSchema-instance", "");
+
+  /** Context for serializing search results */
+  private static final JAXBContext context;
+
+  static {
+    try {
+      context = JAXBContext.newInstance("org.opencastproject.search.api", SearchResultImpl.class.getClassLoader());
+    } catch (JAXBException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** The search result, which is not modified */
+  private final SearchResultImpl result;
+
+  /**
+   * Creates a writer for the search result.
+   *
+   * @param result
+   *          the search result
+   */
+  SearchResultJsonWriter(SearchResultImpl result) {
+    this.result = result;
+  }
+
+  @Override
+  public void write(OutputStream output) throws IOException, WebApplicationException {
+    // The markers go into a copy, since the result may be shared with other requests
+    String marker = UUID.randomUUID().toString();
+    SearchResultImpl copy = new SearchResultImpl(result.getQuery());
+    copy.setOffset(result.getOffset());
+    copy.setLimit(result.getLimit());
+    copy.setTotal(result.getTotalSize());
+    copy.setSearchTime(result.getSearchTime());
+    List<String> ids = new ArrayList<String>();
+    List<String> values = new ArrayList<String>();
+    for (SearchResultItem item : result.getItems()) {
+      SearchResultItemImpl itemCopy = SearchResultItemImpl.fill(item);
+      String mediaPackageJson = ((SearchResultItemImpl) item).getMediaPackageJson();
+      if (mediaPackageJson != null && item.getOcMediapackage() != null) {
+        values.add("\"" + JSONObject.escape(item.getOcMediapackage()) + "\",\"mediapackage\":" + mediaPackageJson);
+        ids.add(item.getId());
+        itemCopy.setOcMediapackage(marker + values.size());
+      }
+      copy.addItem(itemCopy);
+    }
+
+    String json = toJson(copy);
+    Writer writer = new OutputStreamWriter(output, "UTF-8");
+    int position = 0;
+    for (int i = 0; i < values.size(); i++) {
+      String placeholder = "\"" + marker + (i + 1) + "\"";
+      int index = json.indexOf(placeholder, position);
+      if (index < 0)
+        throw new IllegalStateException("Marker of search result item " + ids.get(i) + " is missing");
+      writer.write(json, position, index - position);
+      writer.write(values.get(i));
+      position = index + placeholder.length();
+    }
+    writer.write(json, position, json.length() - position);
+    writer.flush();
+  }
+
+  /**
+   * Serializes a search result to JSON.
+   */
+  private static String toJson(SearchResultImpl result) {
+    try {
+      Marshaller marshaller = context.createMarshaller();
+      Configuration config = new Configuration(NAMESPACE_MAP);
+      config.setSupressAtAttributes(true);
+      MappedNamespaceConvention con = new MappedNamespaceConvention(config);
+      StringWriter writer = new StringWriter();
+      XMLStreamWriter xmlStreamWriter = new MappedXMLStreamWriter(con, writer) {
+        @Override
+        public void writeStartElement(String prefix, String local, String uri) throws XMLStreamException {
+          super.writeStartElement("", local, "");
+        }
+
+        @Override
+        public void writeStartElement(String uri, String local) throws XMLStreamException {
+          super.writeStartElement("", local, "");
+        }
+
+        @Override
+        public void setPrefix(String pfx, String uri) throws XMLStreamException {
+        }
+
+        @Override
+        public void setDefaultNamespace(String uri) throws XMLStreamException {
+        }
+      };
+      marshaller.marshal(result, xmlStreamWriter);
+      return writer.toString();
+    } catch (JAXBException e) {
+      throw new IllegalStateException(e.getLinkedException() != null ? e.getLinkedException() : e);
+    }
+  }
+
+}
@@ -0,0 +1,352 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.search.impl;
+
+import org.opencastproject.mediapackage.MediaPackage;
+import org.opencastproject.mediapackage.MediaPackageElementFlavor;
+import org.opencastproject.search.api.SearchQuery;
+import org.opencastproject.search.api.SearchResult;
+import org.opencastproject.search.api.SearchResultImpl;
+import org.opencastproject.search.api.SearchResultItem;
+import org.opencastproject.search.api.SearchResultItemImpl;
+import org.opencastproject.search.impl.jmx.SearchResultCacheMXBean;
+import org.opencastproject.security.api.Organization;
+import org.opencastproject.security.api.Role;
+import org.opencastproject.security.api.User;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Iterator;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache for the results of search queries, keyed by the query and the roles that the permission filter of the query is
+ * built from. Users with the same roles therefore share the cached results, which is what anonymous users and the
+ * members of a course mostly have in common.
+ * <p>
+ * A change to any media package of an organization may change the result of any of its queries, be it by adding an
+ * item, removing one or changing the total, so all cached results of the organization are dropped when it happens.
+ * Queries that were already running at that time yield results which are cached under the previous generation of the
+ * organization and are therefore never returned.
+ * <p>
+ * Callers may modify the results they get, for instance to merge a media package, so results are copied on the way in
+ * and out. Copying a media package costs about as much as parsing it from the index, but saves the query. Callers that
+ * copy the result anyway, like the serializer does, can get the cached result itself through {@link #getShared(Key)}.
+ */
+public class SearchResultCache implements SearchResultCacheMXBean {
+
+  /** The cached search results, or <code>null</code> if caching is disabled */
+  private volatile Cache<Key, SearchResult> cache = null;
+
+  /** The current generation of the cached results, per organization */
+  private final ConcurrentMap<String, AtomicLong> generations = new ConcurrentHashMap<String, AtomicLong>();
+
+  /** The number of invalidations */
+  private final AtomicLong invalidations = new AtomicLong();
+
+  /**
+   * Creates a search result cache.
+   *
+   * @param size
+   *          the maximum number of cached results, or <code>0</code> to disable caching
+   * @param expiration
+   *          the number of seconds after which a cached result expires
+   */
+  public SearchResultCache(int size, long expiration) {
+    configure(size, expiration);
+  }
+
+  /**
+   * Replaces the cache with an empty one of the given size and expiration.
+   *
+   * @param size
+   *          the maximum number of cached results, or <code>0</code> to disable caching
+   * @param expiration
+   *          the number of seconds after which a cached result expires
+   */
+  public void configure(int size, long expiration) {
+    if (size <= 0 || expiration <= 0) {
+      cache = null;
+      return;
+    }
+    cache = CacheBuilder.newBuilder().maximumSize(size).expireAfterWrite(expiration, TimeUnit.SECONDS).recordStats()
+            .build();
+  }
+
+  /**
+   * Returns the key under which the result of a query for the given user is cached.
+   *
+   * @param organization
+   *          the organization
+   * @param user
+   *          the user
+   * @param query
+   *          the query
+   * @return the cache key
+   */
+  public Key createKey(Organization organization, User user, SearchQuery query) {
+    // The permission filter includes the anonymous role, unless the user has no roles at all
+    Set<String> roles = new TreeSet<String>();
+    boolean anonymous = false;
+    for (Role role : user.getRoles()) {
+      roles.add(role.getName());
+      anonymous |= role.getName().equalsIgnoreCase(organization.getAnonymousRole());
+    }
+    if (!roles.isEmpty() && !anonymous)
+      roles.add(organization.getAnonymousRole());
+    return new Key(organization.getId(), getGeneration(organization.getId()).get(), roles.toString(), normalize(query));
+  }
+
+  /**
+   * Returns a copy of the cached result for the key, which the caller is free to modify.
+   *
+   * @param key
+   *          the cache key
+   * @return the search result, or <code>null</code> if there is none
+   */
+  public SearchResult get(Key key) {
+    Cache<Key, SearchResult> cache = this.cache;
+    SearchResult result = cache != null ? cache.getIfPresent(key) : null;
+    return result != null ? copy(result) : null;
+  }
+
+  /**
+   * Returns the cached result for the key itself rather than a copy. The result is shared by all callers and must not
+   * be modified.
+   *
+   * @param key
+   *          the cache key
+   * @return the shared search result, or <code>null</code> if there is none
+   */
+  public SearchResult getShared(Key key) {
+    Cache<Key, SearchResult> cache = this.cache;
+    return cache != null ? cache.getIfPresent(key) : null;
+  }
+
+  /**
+   * Caches a copy of a search result.
+   *
+   * @param key
+   *          the cache key, created before the query was run
+   * @param result
+   *          the search result
+   */
+  public void put(Key key, SearchResult result) {
+    Cache<Key, SearchResult> cache = this.cache;
+    if (cache == null || key.generation != getGeneration(key.organization).get())
+      return;
+    cache.put(key, copy(result));
+  }
+
+  /**
+   * Drops the cached results of an organization.
+   *
+   * @param organization
+   *          the organization identifier
+   */
+  public void invalidate(String organization) {
+    getGeneration(organization).incrementAndGet();
+    invalidations.incrementAndGet();
+    Cache<Key, SearchResult> cache = this.cache;
+    if (cache == null)
+      return;
+    for (Iterator<Key> i = cache.asMap().keySet().iterator(); i.hasNext();) {
+      if (organization.equals(i.next().organization))
+        i.remove();
+    }
+  }
+
+  /**
+   * Drops all cached results.
+   */
+  public void invalidateAll() {
+    for (AtomicLong generation : generations.values()) {
+      generation.incrementAndGet();
+    }
+    invalidations.incrementAndGet();
+    Cache<Key, SearchResult> cache = this.cache;
+    if (cache != null)
+      cache.invalidateAll();
+  }
+
+  /**
+   * @see org.opencastproject.search.impl.jmx.SearchResultCacheMXBean#getCacheHitRatio()
+   */
+  @Override
+  public float getCacheHitRatio() {
+    return (float) getStats().hitRate();
+  }
+
+  /**
+   * @see org.opencastproject.search.impl.jmx.SearchResultCacheMXBean#getCacheHits()
+   */
+  @Override
+  public long getCacheHits() {
+    return getStats().hitCount();
+  }
+
+  /**
+   * @see org.opencastproject.search.impl.jmx.SearchResultCacheMXBean#getCacheMisses()
+   */
+  @Override
+  public long getCacheMisses() {
+    return getStats().missCount();
+  }
+
+  /**
+   * @see org.opencastproject.search.impl.jmx.SearchResultCacheMXBean#getCacheEvictions()
+   */
+  @Override
+  public long getCacheEvictions() {
+    return getStats().evictionCount();
+  }
+
+  /**
+   * @see org.opencastproject.search.impl.jmx.SearchResultCacheMXBean#getCacheInvalidations()
+   */
+  @Override
+  public long getCacheInvalidations() {
+    return invalidations.get();
+  }
+
+  /**
+   * @see org.opencastproject.search.impl.jmx.SearchResultCacheMXBean#getCacheSize()
+   */
+  @Override
+  public long getCacheSize() {
+    Cache<Key, SearchResult> cache = this.cache;
+    return cache != null ? cache.size() : 0;
+  }
+
+  private CacheStats getStats() {
+    Cache<Key, SearchResult> cache = this.cache;
+    return cache != null ? cache.stats() : new CacheStats(0, 0, 0, 0, 0, 0);
+  }
+
+  private AtomicLong getGeneration(String organization) {
+    AtomicLong generation = generations.get(organization);
+    if (generation == null) {
+      generation = new AtomicLong();
+      AtomicLong existing = generations.putIfAbsent(organization, generation);
+      if (existing != null)
+        generation = existing;
+    }
+    return generation;
+  }
+
+  /**
+   * Copies a search result, including the media packages of its items.
+   */
+  private static SearchResult copy(SearchResult result) {
+    SearchResultImpl copy = new SearchResultImpl(result.getQuery());
+    copy.setOffset(result.getOffset());
+    copy.setLimit(result.getLimit());
+    copy.setTotal(result.getTotalSize());
+    copy.setSearchTime(result.getSearchTime());
+    for (SearchResultItem item : result.getItems()) {
+      SearchResultItemImpl itemCopy = SearchResultItemImpl.fill(item);
+      if (item.getMediaPackage() != null)
+        itemCopy.setMediaPackage((MediaPackage) item.getMediaPackage().clone());
+      itemCopy.setMediaPackageJson(((SearchResultItemImpl) item).getMediaPackageJson());
+      copy.addItem(itemCopy);
+    }
+    return copy;
+  }
+
+  /**
+   * Returns a string that is the same for all queries which are run the same way.
+   */
+  private static String normalize(SearchQuery query) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("episodes=").append(query.isIncludeEpisodes());
+    sb.append("&series=").append(query.isIncludeSeries());
+    sb.append("&id=").append(StringUtils.trimToEmpty(query.getId()));
+    sb.append("&seriesId=").append(StringUtils.trimToEmpty(query.getSeriesId()));
+    sb.append("&text=").append(StringUtils.trimToEmpty(query.getText()));
+    sb.append("&q=").append(StringUtils.trimToEmpty(query.getQuery()));
+    sb.append("&limit=").append(Math.max(0, query.getLimit()));
+    sb.append("&offset=").append(Math.max(0, query.getOffset()));
+    Set<String> tags = new TreeSet<String>();
+    if (query.getElementTags() != null) {
+      for (String tag : query.getElementTags()) {
+        tags.add(tag);
+      }
+    }
+    sb.append("&tags=").append(tags);
+    Set<String> flavors = new TreeSet<String>();
+    if (query.getElementFlavors() != null) {
+      for (MediaPackageElementFlavor flavor : query.getElementFlavors()) {
+        flavors.add(flavor.toString());
+      }
+    }
+    sb.append("&flavors=").append(flavors);
+    if (query.getDeletedDate() != null)
+      sb.append("&deletedSince=").append(query.getDeletedDate().getTime());
+    sb.append("&sort=").append(query.getSort()).append(query.isSortAscending() ? " asc" : " desc");
+    sb.append("&json=").append(query.isMediaPackageJson());
+    return sb.toString();
+  }
+
+  /** The key of a cached search result */
+  public static final class Key {
+    private final String organization;
+    private final long generation;
+    private final String roles;
+    private final String query;
+
+    Key(String organization, long generation, String roles, String query) {
+      this.organization = organization;
+      this.generation = generation;
+      this.roles = roles;
+      this.query = query;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o)
+        return true;
+      if (!(o instanceof Key))
+        return false;
+      Key other = (Key) o;
+      return generation == other.generation && organization.equals(other.organization) && roles.equals(other.roles)
+              && query.equals(other.query);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = organization.hashCode();
+      result = 31 * result + (int) (generation ^ (generation >>> 32));
+      result = 31 * result + roles.hashCode();
+      return 31 * result + query.hashCode();
+    }
+  }
+
+}
@@ -55,7 +55,9 @@ import org.opencastproject.serviceregistry.api.ServiceRegistryException;
 import org.opencastproject.solr.SolrServerFactory;
 import org.opencastproject.util.LoadUtil;
 import org.opencastproject.util.NotFoundException;
+import org.opencastproject.util.OsgiUtil;
 import org.opencastproject.util.data.Tuple;
+import org.opencastproject.util.jmx.JmxUtil;
 import org.opencastproject.workspace.api.Workspace;
 
 import org.apache.commons.io.FileUtils;
@@ -84,6 +86,8 @@ import java.util.Dictionary;
 import java.util.Iterator;
 import java.util.List;
 
+import javax.management.ObjectInstance;
+
 /**
  * A Solr-based {@link SearchService} implementation.
  */
@@ -113,6 +117,18 @@ public final class SearchServiceImpl extends AbstractJobProducer implements Sear
   /** The key to look for in the service configuration file to override the {@link DEFAULT_DELETE_JOB_LOAD} */
   public static final String DELETE_JOB_LOAD_KEY = "job.load.delete";
 
+  /** The default maximum number of cached search results */
+  public static final int DEFAULT_CACHE_SIZE = 1000;
+
+  /** The default number of seconds after which a cached search result expires */
+  public static final int DEFAULT_CACHE_EXPIRATION = 300;
+
+  /** The key to look for in the service configuration file to override the {@link DEFAULT_CACHE_SIZE} */
+  public static final String CACHE_SIZE_KEY = "cache.size";
+
+  /** The key to look for in the service configuration file to override the {@link DEFAULT_CACHE_EXPIRATION} */
+  public static final String CACHE_EXPIRATION_KEY = "cache.expiration";
+
   /** The load introduced on the system by creating an add job */
   private float addJobLoad = DEFAULT_ADD_JOB_LOAD;
 
@@ -130,6 +146,12 @@ public final class SearchServiceImpl extends AbstractJobProducer implements Sear
   /** Solr server */
   private SolrServer solrServer;
 
+  /** The cache for the results of {@link #getByQuery(SearchQuery)} */
+  private final SearchResultCache resultCache = new SearchResultCache(DEFAULT_CACHE_SIZE, DEFAULT_CACHE_EXPIRATION);
+
+  /** The JMX bean object instance of the result cache */
+  private ObjectInstance resultCacheMXBean;
+
   private SolrRequester solrRequester;
 
   private SolrIndexManager indexManager;
@@ -234,12 +256,16 @@ public final class SearchServiceImpl extends AbstractJobProducer implements Sear
 
     String systemUserName = cc.getBundleContext().getProperty(SecurityUtil.PROPERTY_KEY_SYS_USER);
     populateIndex(systemUserName);
+
+    resultCacheMXBean = JmxUtil.registerMXBean(resultCache, "SearchResultCache");
   }
 
   /**
    * Service deactivator, called via declarative services configuration.
    */
   public void deactivate() {
+    if (resultCacheMXBean != null)
+      JmxUtil.unregisterMXBean(resultCacheMXBean);
     SolrServerFactory.shutdown(solrServer);
   }
 
@@ -381,6 +407,8 @@ public final class SearchServiceImpl extends AbstractJobProducer implements Sear
       }
     } catch (SolrServerException e) {
       throw new SearchException(e);
+    } finally {
+      resultCache.invalidate(securityService.getOrganization().getId());
     }
 
     try {
@@ -443,7 +471,11 @@ public final class SearchServiceImpl extends AbstractJobProducer implements Sear
         throw new SearchException(e);
       }
 
-      return indexManager.delete(mediaPackageId, now);
+      try {
+        return indexManager.delete(mediaPackageId, now);
+      } finally {
+        resultCache.invalidate(securityService.getOrganization().getId());
+      }
     } catch (SolrServerException e) {
       logger.info("Could not delete media package with id {} from search index", mediaPackageId);
       throw new SearchException(e);
@@ -462,6 +494,8 @@ public final class SearchServiceImpl extends AbstractJobProducer implements Sear
       indexManager.clear();
     } catch (SolrServerException e) {
       throw new SearchException(e);
+    } finally {
+      resultCache.invalidateAll();
     }
   }
 
@@ -471,12 +505,20 @@ public final class SearchServiceImpl extends AbstractJobProducer implements Sear
    * @see org.opencastproject.search.api.SearchService#getByQuery(org.opencastproject.search.api.SearchQuery)
    */
   public SearchResult getByQuery(SearchQuery q) throws SearchException {
-    try {
-      logger.debug("Searching index using query object '" + q + "'");
-      return solrRequester.getForRead(q);
-    } catch (SolrServerException e) {
-      throw new SearchException(e);
+    SearchResultCache.Key key = resultCache.createKey(securityService.getOrganization(), securityService.getUser(), q);
+    // The result is copied by the serializer, so there is no need for the cache to copy it as well
+    SearchResult result = resultCache.getShared(key);
+    if (result == null) {
+      try {
+        logger.debug("Searching index using query object '" + q + "'");
+        // The serializer may sign URLs for the current client, so results are cached before it is applied
+        result = solrRequester.getForRead(q, false);
+        resultCache.put(key, result);
+      } catch (SolrServerException e) {
+        throw new SearchException(e);
+      }
     }
+    return solrRequester.serialize(result);
   }
 
   /**
@@ -549,6 +591,7 @@ public final class SearchServiceImpl extends AbstractJobProducer implements Sear
           securityService.setUser(null);
         }
       }
+      resultCache.invalidateAll();
       if (errors > 0)
         logger.error("Skipped {} erroneous search entries while populating the search index", errors);
       logger.info("Finished populating search index");
@@ -734,11 +777,21 @@ public final class SearchServiceImpl extends AbstractJobProducer implements Sear
     this.serializer = serializer;
     if (solrRequester != null)
       solrRequester.setMediaPackageSerializer(serializer);
+    resultCache.invalidateAll();
   }
 
   @Override
   public void updated(@SuppressWarnings("rawtypes") Dictionary properties) throws ConfigurationException {
     addJobLoad = LoadUtil.getConfiguredLoadValue(properties, ADD_JOB_LOAD_KEY, DEFAULT_ADD_JOB_LOAD, serviceRegistry);
     deleteJobLoad = LoadUtil.getConfiguredLoadValue(properties, DELETE_JOB_LOAD_KEY, DEFAULT_DELETE_JOB_LOAD, serviceRegistry);
+
+    int cacheSize = DEFAULT_CACHE_SIZE;
+    int cacheExpiration = DEFAULT_CACHE_EXPIRATION;
+    if (properties != null) {
+      cacheSize = OsgiUtil.getOptCfgAsInt(properties, CACHE_SIZE_KEY).getOrElse(DEFAULT_CACHE_SIZE);
+      cacheExpiration = OsgiUtil.getOptCfgAsInt(properties, CACHE_EXPIRATION_KEY).getOrElse(DEFAULT_CACHE_EXPIRATION);
+    }
+    resultCache.configure(cacheSize, cacheExpiration);
+    logger.info("Caching up to {} search results for {} seconds", cacheSize, cacheExpiration);
   }
 }
@@ -0,0 +1,71 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.search.impl.jmx;
+
+/**
+ * JMX Bean interface exposing the statistics of the search result cache.
+ */
+public interface SearchResultCacheMXBean {
+
+  /**
+   * Gets the ratio of cache hits to total requests
+   *
+   * @return the hit ratio
+   */
+  float getCacheHitRatio();
+
+  /**
+   * Gets the number of requests that were answered from the cache
+   *
+   * @return the number of cache hits
+   */
+  long getCacheHits();
+
+  /**
+   * Gets the number of requests that had to go to the search index
+   *
+   * @return the number of cache misses
+   */
+  long getCacheMisses();
+
+  /**
+   * Gets the number of results that were evicted because the cache was full or they expired
+   *
+   * @return the number of evictions
+   */
+  long getCacheEvictions();
+
+  /**
+   * Gets the number of times the results of an organization were dropped because its media packages changed
+   *
+   * @return the number of invalidations
+   */
+  long getCacheInvalidations();
+
+  /**
+   * Gets the number of results in the cache
+   *
+   * @return the number of cached results
+   */
+  long getCacheSize();
+
+}
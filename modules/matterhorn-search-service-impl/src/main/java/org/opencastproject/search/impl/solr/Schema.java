@@ -95,6 +95,7 @@ public final class Schema {
   // Additional fields
   public static final String OC_ORGANIZATION = "oc_organization";
   public static final String OC_MEDIAPACKAGE = "oc_mediapackage";
+  public static final String OC_MEDIAPACKAGE_JSON = "oc_mediapackage_json";
   public static final String OC_KEYWORDS = "oc_keywords";
   public static final String OC_COVER = "oc_cover";
   public static final String OC_MODIFIED = "oc_modified";
@@ -483,6 +484,14 @@ public final class Schema {
     doc.setField(OC_MEDIAPACKAGE, mediapackage);
   }
 
+  public static String getOcMediapackageJson(SolrDocument doc) {
+    return mkString(doc.get(OC_MEDIAPACKAGE_JSON));
+  }
+
+  public static void setOcMediapackageJson(SolrInputDocument doc, String mediapackage) {
+    doc.setField(OC_MEDIAPACKAGE_JSON, mediapackage);
+  }
+
   public static String getOcKeywords(SolrDocument doc) {
     return mkString(doc.get(OC_KEYWORDS));
   }
@@ -125,6 +125,9 @@ public class SolrIndexManager {
    */
   private static final double RELEVANCE_BOOST = 2.0;
 
+  /** The start of the JSON serialization of a media package, up to the media package object */
+  private static final String MEDIAPACKAGE_JSON_PREFIX = "{\"mediapackage\":";
+
   /** Number of characters an important should have at least. */
   private static final int MAX_CHAR = 3;
 
@@ -373,6 +376,9 @@ public class SolrIndexManager {
     Schema.setOcMediatype(doc, SearchResultItemType.AudioVisual.toString());
     Schema.setOrganization(doc, securityService.getOrganization().getId());
     Schema.setOcMediapackage(doc, MediaPackageParser.getAsXml(mediaPackage));
+    String mediaPackageJson = getMediaPackageJson(mediaPackage);
+    if (mediaPackageJson != null)
+      Schema.setOcMediapackageJson(doc, mediaPackageJson);
     Schema.setOcElementtags(doc, tags(mediaPackage));
     Schema.setOcElementflavors(doc, flavors(mediaPackage));
     // Add cover
@@ -631,6 +637,23 @@ public class SolrIndexManager {
     });
   }
 
+  /**
+   * Serializes the media package to the JSON object that search results list under the <code>mediapackage</code> key,
+   * so that JSON search results can be rendered without parsing the media package.
+   *
+   * @param mediaPackage
+   *          the media package
+   * @return the JSON object, or <code>null</code> if the serialization does not have the expected form
+   */
+  static String getMediaPackageJson(MediaPackage mediaPackage) {
+    String json = MediaPackageParser.getAsJSON(mediaPackage);
+    if (!json.startsWith(MEDIAPACKAGE_JSON_PREFIX) || !json.endsWith("}")) {
+      logger.warn("Unexpected JSON serialization of media package {}, not storing it", mediaPackage.getIdentifier());
+      return null;
+    }
+    return json.substring(MEDIAPACKAGE_JSON_PREFIX.length(), json.length() - 1);
+  }
+
   /**
    * Adds authorization fields to the solr document.
    *
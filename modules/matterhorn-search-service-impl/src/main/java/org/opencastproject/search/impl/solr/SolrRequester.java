@@ -31,6 +31,7 @@ import static org.opencastproject.util.data.Option.option;
 import org.opencastproject.mediapackage.MediaPackage;
 import org.opencastproject.mediapackage.MediaPackageBuilder;
 import org.opencastproject.mediapackage.MediaPackageBuilderFactory;
+import org.opencastproject.mediapackage.MediaPackageParser;
 import org.opencastproject.mediapackage.MediaPackageSerializer;
 import org.opencastproject.search.api.MediaSegment;
 import org.opencastproject.search.api.MediaSegmentImpl;
@@ -148,11 +149,16 @@ public class SolrRequester {
    *
    * @param query
    *          The solr query.
+   * @param mediaPackageJson
+   *          Whether to hand out the media packages as JSON where the index holds them in that form.
+   * @param serialize
+   *          Whether to load the media packages through the serializer.
    * @return The search result.
    * @throws SolrServerException
    *           if the solr server is not working as expected
    */
-  private SearchResult createSearchResult(final SolrQuery query) throws SolrServerException {
+  private SearchResult createSearchResult(final SolrQuery query, boolean mediaPackageJson, final boolean serialize)
+          throws SolrServerException {
 
     // Execute the query and try to get hold of a query response
     QueryResponse solrResponse = null;
@@ -169,8 +175,12 @@ public class SolrRequester {
     result.setLimit(solrResponse.getResults().size());
     result.setTotal(solrResponse.getResults().getNumFound());
 
+    // The JSON form does not go through the serializer, so it can only be handed out if there is none
+    final boolean useMediaPackageJson = mediaPackageJson && serializer == null;
+
     // Walk through response and create new items with title, creator, etc:
     for (final SolrDocument doc : solrResponse.getResults()) {
+      final String mediaPackageJsonFieldValue = useMediaPackageJson ? Schema.getOcMediapackageJson(doc) : null;
       final SearchResultItemImpl item = SearchResultItemImpl.fill(new SearchResultItem() {
         private final String dfltString = null;
 
@@ -191,8 +201,10 @@ public class SolrRequester {
 
         @Override
         public MediaPackage getMediaPackage() {
+          if (mediaPackageJsonFieldValue != null)
+            return null;
           MediaPackageBuilder builder = MediaPackageBuilderFactory.newInstance().newMediaPackageBuilder();
-          if (serializer != null)
+          if (serialize && serializer != null)
             builder.setSerializer(serializer);
           String mediaPackageFieldValue = Schema.getOcMediapackage(doc);
           if (mediaPackageFieldValue != null) {
@@ -371,6 +383,7 @@ public class SolrRequester {
             return new MediaSegmentImpl[0];
         }
       });
+      item.setMediaPackageJson(mediaPackageJsonFieldValue);
 
       // Add the item to the result set
       result.addItem(item);
@@ -776,7 +789,7 @@ public class SolrRequester {
    */
   public SearchResult getForAdministrativeRead(SearchQuery q) throws SolrServerException {
     SolrQuery query = getForAction(q, READ.toString(), false);
-    return createSearchResult(query);
+    return createSearchResult(query, q.isMediaPackageJson(), true);
   }
 
   /**
@@ -788,8 +801,59 @@ public class SolrRequester {
    * @throws SolrServerException
    */
   public SearchResult getForRead(SearchQuery q) throws SolrServerException {
+    return getForRead(q, true);
+  }
+
+  /**
+   * Returns the search results that are accessible for read by the current user.
+   *
+   * @param q
+   *          the search query
+   * @param serialize
+   *          whether to load the media packages through the serializer, which may depend on the current request,
+   *          like URLs signed for the client's IP address. If not, {@link #serialize(SearchResult)} needs to be called
+   *          before handing out the result.
+   * @return the readable search result
+   * @throws SolrServerException
+   */
+  public SearchResult getForRead(SearchQuery q, boolean serialize) throws SolrServerException {
     SolrQuery query = getForAction(q, READ.toString(), true);
-    return createSearchResult(query);
+    return createSearchResult(query, q.isMediaPackageJson(), serialize);
+  }
+
+  /**
+   * Passes the media packages of a search result that was created without the serializer through it. The result itself
+   * is left untouched, so it can be cached and serialized again for the next request. The media packages are copied
+   * even if there is no serializer, so the result may be shared with other callers.
+   *
+   * @param result
+   *          the search result
+   * @return a copy of the search result with serialized media packages
+   */
+  public SearchResult serialize(SearchResult result) {
+    SearchResultImpl serialized = new SearchResultImpl(result.getQuery());
+    serialized.setOffset(result.getOffset());
+    serialized.setLimit(result.getLimit());
+    serialized.setSearchTime(result.getSearchTime());
+    serialized.setTotal(result.getTotalSize());
+    for (SearchResultItem item : result.getItems()) {
+      SearchResultItemImpl copy = SearchResultItemImpl.fill(item);
+      if (item.getMediaPackage() != null) {
+        MediaPackageBuilder builder = MediaPackageBuilderFactory.newInstance().newMediaPackageBuilder();
+        if (serializer != null)
+          builder.setSerializer(serializer);
+        try {
+          copy.setMediaPackage(builder.loadFromXml(MediaPackageParser.getAsXml(item.getMediaPackage())));
+        } catch (Exception e) {
+          logger.warn("Unable to serialize media package {} of search result", item.getId(), e);
+          copy.setMediaPackage(null);
+        }
+      }
+      if (item instanceof SearchResultItemImpl)
+        copy.setMediaPackageJson(((SearchResultItemImpl) item).getMediaPackageJson());
+      serialized.addItem(copy);
+    }
+    return serialized;
   }
 
   /**
@@ -802,7 +866,7 @@ public class SolrRequester {
    */
   public SearchResult getForWrite(SearchQuery q) throws SolrServerException {
     SolrQuery query = getForAction(q, WRITE.toString(), true);
-    return createSearchResult(query);
+    return createSearchResult(query, q.isMediaPackageJson(), true);
   }
 
   /**
@@ -0,0 +1,157 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.search.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.opencastproject.mediapackage.MediaPackage;
+import org.opencastproject.mediapackage.MediaPackageBuilderFactory;
+import org.opencastproject.search.api.SearchQuery;
+import org.opencastproject.search.api.SearchResult;
+import org.opencastproject.search.api.SearchResultImpl;
+import org.opencastproject.search.api.SearchResultItemImpl;
+import org.opencastproject.security.api.DefaultOrganization;
+import org.opencastproject.security.api.JaxbOrganization;
+import org.opencastproject.security.api.JaxbRole;
+import org.opencastproject.security.api.JaxbUser;
+import org.opencastproject.security.api.User;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class SearchResultCacheTest {
+
+  private JaxbOrganization organization;
+  private SearchResultCache cache;
+
+  @Before
+  public void setUp() throws Exception {
+    organization = new DefaultOrganization();
+    cache = new SearchResultCache(10, 60);
+  }
+
+  @Test
+  public void testKeys() throws Exception {
+    SearchQuery query = new SearchQuery().withText("lecture").withElementTags(new String[] { "b", "a" });
+    SearchQuery sameQuery = new SearchQuery().withText(" lecture ").withElementTags(new String[] { "a", "b" });
+    assertEquals(cache.createKey(organization, user("ROLE_A", "ROLE_B"), query),
+            cache.createKey(organization, user("ROLE_B", "ROLE_A"), sameQuery));
+
+    // The anonymous role is always part of the permission filter
+    assertEquals(cache.createKey(organization, user("ROLE_A"), query),
+            cache.createKey(organization, user("ROLE_A", organization.getAnonymousRole()), query));
+
+    assertFalse(cache.createKey(organization, user("ROLE_A"), query).equals(
+            cache.createKey(organization, user("ROLE_B"), query)));
+    assertFalse(cache.createKey(organization, user("ROLE_A"), query).equals(
+            cache.createKey(organization, user("ROLE_A"), new SearchQuery().withText("lecture"))));
+  }
+
+  @Test
+  public void testCopies() throws Exception {
+    SearchResultCache.Key key = cache.createKey(organization, user("ROLE_A"), new SearchQuery());
+    assertNull(cache.get(key));
+    cache.put(key, result());
+
+    SearchResult result = cache.get(key);
+    assertNotNull(result);
+    assertEquals(1, result.size());
+    assertNotSame(result, cache.get(key));
+
+    // Changing a result does not change the cached one
+    MediaPackage mediaPackage = result.getItems()[0].getMediaPackage();
+    mediaPackage.setTitle("Changed");
+    assertEquals("Cached", cache.get(key).getItems()[0].getMediaPackage().getTitle());
+    assertEquals(1, cache.getCacheMisses());
+    assertEquals(3, cache.getCacheHits());
+  }
+
+  @Test
+  public void testShared() throws Exception {
+    SearchResultCache.Key key = cache.createKey(organization, user("ROLE_A"), new SearchQuery());
+    assertNull(cache.getShared(key));
+    cache.put(key, result());
+
+    // The cached result is handed out without copying it
+    SearchResult result = cache.getShared(key);
+    assertNotNull(result);
+    assertSame(result, cache.getShared(key));
+    assertNotSame(result, cache.get(key));
+    assertEquals(3, cache.getCacheHits());
+  }
+
+  @Test
+  public void testInvalidation() throws Exception {
+    User user = user("ROLE_A");
+    SearchResultCache.Key key = cache.createKey(organization, user, new SearchQuery());
+    cache.put(key, result());
+
+    // Results of other organizations are kept
+    cache.invalidate("other");
+    assertNotNull(cache.get(key));
+
+    cache.invalidate(organization.getId());
+    assertNull(cache.get(key));
+    assertEquals(0, cache.getCacheSize());
+
+    // A result that was queried before the invalidation is not cached
+    SearchResultCache.Key newKey = cache.createKey(organization, user, new SearchQuery());
+    cache.invalidate(organization.getId());
+    cache.put(newKey, result());
+    assertNull(cache.get(cache.createKey(organization, user, new SearchQuery())));
+    assertEquals(3, cache.getCacheInvalidations());
+  }
+
+  @Test
+  public void testDisabled() throws Exception {
+    cache.configure(0, 60);
+    SearchResultCache.Key key = cache.createKey(organization, user("ROLE_A"), new SearchQuery());
+    cache.put(key, result());
+    assertNull(cache.get(key));
+  }
+
+  private User user(String... roles) {
+    JaxbRole[] jaxbRoles = new JaxbRole[roles.length];
+    for (int i = 0; i < roles.length; i++) {
+      jaxbRoles[i] = new JaxbRole(roles[i], organization);
+    }
+    return new JaxbUser("user", "test", organization, jaxbRoles);
+  }
+
+  private static SearchResult result() throws Exception {
+    MediaPackage mediaPackage = MediaPackageBuilderFactory.newInstance().newMediaPackageBuilder().createNew();
+    mediaPackage.setTitle("Cached");
+    SearchResultItemImpl item = new SearchResultItemImpl();
+    item.setId(mediaPackage.getIdentifier().toString());
+    item.setMediaPackage(mediaPackage);
+    SearchResultImpl result = new SearchResultImpl("*:*");
+    result.addItem(item);
+    result.setTotal(1);
+    return result;
+  }
+
+}
@@ -24,6 +24,8 @@ package org.opencastproject.search.impl;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.opencastproject.security.api.Permissions.Action.READ;
 import static org.opencastproject.security.api.Permissions.Action.WRITE;
 import static org.opencastproject.util.persistence.PersistenceUtil.newTestEntityManagerFactory;
@@ -38,6 +40,7 @@ import org.opencastproject.mediapackage.MediaPackageBuilder;
 import org.opencastproject.mediapackage.MediaPackageBuilderFactory;
 import org.opencastproject.mediapackage.MediaPackageException;
 import org.opencastproject.mediapackage.MediaPackageParser;
+import org.opencastproject.mediapackage.MediaPackageSerializer;
 import org.opencastproject.mediapackage.identifier.IdBuilderFactory;
 import org.opencastproject.metadata.api.StaticMetadataService;
 import org.opencastproject.metadata.dublincore.DublinCoreCatalog;
@@ -47,6 +50,7 @@ import org.opencastproject.metadata.mpeg7.Mpeg7CatalogService;
 import org.opencastproject.search.api.SearchQuery;
 import org.opencastproject.search.api.SearchResult;
 import org.opencastproject.search.api.SearchResultItem;
+import org.opencastproject.search.api.SearchResultItemImpl;
 import org.opencastproject.search.impl.persistence.SearchServiceDatabaseImpl;
 import org.opencastproject.search.impl.solr.SolrIndexManager;
 import org.opencastproject.search.impl.solr.SolrRequester;
@@ -83,6 +87,7 @@ import org.junit.Test;
 import java.io.File;
 import java.io.InputStream;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -336,6 +341,71 @@ public class SearchServiceImplTest {
   /**
    * Tests whether an episode can be found based on its series metadata.
    */
+  @Test
+  public void testGetMediaPackageJson() throws Exception {
+    MediaPackage mediaPackage = getMediaPackage("/manifest-simple.xml");
+    acl.getEntries().add(new AccessControlEntry(ROLE_STUDENT, READ.toString(), true));
+
+    Job job = service.add(mediaPackage);
+    JobBarrier barrier = new JobBarrier(null, serviceRegistry, 1000, job);
+    barrier.waitForJobs();
+    assertEquals("Job to add mediapckage did not finish", Job.Status.FINISHED, job.getStatus());
+
+    // By default, the media package is parsed from the index
+    SearchQuery q = new SearchQuery().withId("10.0000/1");
+    SearchResultItemImpl item = (SearchResultItemImpl) service.getByQuery(q).getItems()[0];
+    assertNotNull(item.getMediaPackage());
+    assertNull(item.getMediaPackageJson());
+
+    // If asked for, the JSON held by the index is passed on instead
+    item = (SearchResultItemImpl) service.getByQuery(q.withMediaPackageJson(true)).getItems()[0];
+    assertNull(item.getMediaPackage());
+    assertTrue(item.getMediaPackageJson().startsWith("{"));
+    assertTrue(item.getMediaPackageJson().contains("10.0000/1"));
+  }
+
+  /**
+   * Tests that cached results are passed through the serializer on every request, since it may sign the URLs for the
+   * requesting client.
+   */
+  @Test
+  public void testCachedResultsAreSerializedPerRequest() throws Exception {
+    MediaPackage mediaPackage = getMediaPackage("/manifest-simple.xml");
+    acl.getEntries().add(new AccessControlEntry(ROLE_STUDENT, READ.toString(), true));
+
+    Job job = service.add(mediaPackage);
+    JobBarrier barrier = new JobBarrier(null, serviceRegistry, 1000, job);
+    barrier.waitForJobs();
+    assertEquals("Job to add mediapckage did not finish", Job.Status.FINISHED, job.getStatus());
+
+    final String[] client = new String[] { "a" };
+    service.setMediaPackageSerializer(new MediaPackageSerializer() {
+      @Override
+      public URI encodeURI(URI uri) throws URISyntaxException {
+        return uri;
+      }
+
+      @Override
+      public URI decodeURI(URI path) throws URISyntaxException {
+        return new URI(path.toString() + "?client=" + client[0]);
+      }
+
+      @Override
+      public int getRanking() {
+        return 0;
+      }
+    });
+
+    SearchQuery q = new SearchQuery().withId("10.0000/1");
+    String first = service.getByQuery(q).getItems()[0].getMediaPackage().getCatalogs()[0].getURI().toString();
+    assertTrue(first.endsWith("?client=a"));
+
+    client[0] = "b";
+    String second = service.getByQuery(q).getItems()[0].getMediaPackage().getCatalogs()[0].getURI().toString();
+    assertTrue(second.endsWith("?client=b"));
+    assertEquals(second.indexOf("?client="), second.lastIndexOf("?client="));
+  }
+
   @Test
   public void testSearchForEpisodeWithSeriesMetadata() throws Exception {
     MediaPackage mediaPackage = getMediaPackage("/manifest-full.xml");
@@ -36,6 +36,7 @@ import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequestBuilder;
 import org.elasticsearch.action.admin.indices.create.CreateIndexRequestBuilder;
 import org.elasticsearch.action.admin.indices.create.CreateIndexResponse;
 import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
@@ -74,6 +75,8 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -98,6 +101,9 @@ public abstract class AbstractElasticsearchIndex implements SearchIndex {
   /** Type of the document containing the index version information */
   private static final String VERSION_TYPE = "version";
 
+  /** Suffix of the alias that marks indices which are still being rebuilt */
+  private static final String REBUILD_ALIAS_SUFFIX = "_rebuilding";
+
   /** The index identifier */
   private String index = null;
 
@@ -119,6 +125,18 @@ public abstract class AbstractElasticsearchIndex implements SearchIndex {
   /** The path to the index settings */
   protected String indexSettingsPath;
 
+  /** Name of the index that is currently being rebuilt to replace this index, or <code>null</code> */
+  private volatile String rebuildIndex = null;
+
+  /**
+   * Name of a rebuilt index that has replaced an index created before aliases were used, but which the index alias
+   * could not be pointed to yet, or <code>null</code>
+   */
+  private volatile String unaliasedIndex = null;
+
+  /** Whether the current thread is taking part in rebuilding the index */
+  private final ThreadLocal<Boolean> rebuildParticipant = new ThreadLocal<Boolean>();
+
   /**
    * Returns an array of document types for the index. For every one of these, the corresponding document type
    * definition will be loaded.
@@ -181,6 +199,11 @@ public abstract class AbstractElasticsearchIndex implements SearchIndex {
     }
 
     preparedIndices.remove(getIndexName());
+    String currentUnaliasedIndex = unaliasedIndex;
+    if (currentUnaliasedIndex != null) {
+      unaliasedIndex = null;
+      deleteIndex(currentUnaliasedIndex);
+    }
     // Create the index
     try {
       createIndex(index);
@@ -212,10 +235,14 @@ public abstract class AbstractElasticsearchIndex implements SearchIndex {
 
     logger.debug("Removing element with id '{}' from searching index", uid);
 
-    DeleteRequestBuilder deleteRequest = nodeClient.prepareDelete(index, type, uid);
-    deleteRequest.setRefresh(true);
-    DeleteResponse delete = deleteRequest.execute().actionGet();
-    if (!delete.isFound()) {
+    boolean found = false;
+    for (String writeIndex : getWriteIndexNames()) {
+      DeleteRequestBuilder deleteRequest = nodeClient.prepareDelete(writeIndex, type, uid);
+      deleteRequest.setRefresh(true);
+      DeleteResponse delete = deleteRequest.execute().actionGet();
+      found |= delete.isFound();
+    }
+    if (!found) {
       logger.trace("Document {} to delete was not found", uid);
       return false;
     }
@@ -234,11 +261,14 @@ public abstract class AbstractElasticsearchIndex implements SearchIndex {
    */
   protected BulkResponse update(ElasticsearchDocument... documents) throws SearchIndexException {
 
+    String[] writeIndices = getWriteIndexNames();
     BulkRequestBuilder bulkRequest = nodeClient.prepareBulk();
-    for (ElasticsearchDocument doc : documents) {
-      String type = doc.getType();
-      String uid = doc.getUID();
-      bulkRequest.add(nodeClient.prepareIndex(index, type, uid).setSource(doc));
+    for (String writeIndex : writeIndices) {
+      for (ElasticsearchDocument doc : documents) {
+        String type = doc.getType();
+        String uid = doc.getUID();
+        bulkRequest.add(nodeClient.prepareIndex(writeIndex, type, uid).setSource(doc));
+      }
     }
 
     // Make sure the operations are searchable immediately
@@ -259,10 +289,225 @@ public abstract class AbstractElasticsearchIndex implements SearchIndex {
 
       return bulkResponse;
     } catch (Throwable t) {
-      throw new SearchIndexException("Cannot update documents in index " + index, t);
+      throw new SearchIndexException("Cannot update documents in index " + StringUtils.join(writeIndices, ", "), t);
+    }
+  }
+
+  /**
+   * Starts rebuilding the index from scratch. A new, empty index is created next to the current one. Until the rebuild
+   * is completed or aborted, all updates go to both the current and the new index, while searches keep being answered
+   * by the current index unless they are made by a thread taking part in the rebuild.
+   * <p>
+   * The new index is marked by an alias until it replaces the current one, so that it can be told apart from a
+   * complete index and removed if the rebuild is interrupted by a shutdown.
+   *
+   * @return the name of the new index
+   * @throws SearchIndexException
+   *           if the new index cannot be created
+   * @throws IOException
+   *           if loading the type definitions fails
+   * @see #joinRebuild()
+   */
+  protected synchronized String beginRebuild() throws SearchIndexException, IOException {
+    if (rebuildIndex != null)
+      throw new IllegalStateException("Index '" + index + "' is already being rebuilt");
+    String newIndex = index + "_" + System.currentTimeMillis();
+    logger.info("Rebuilding index '{}' as '{}'", index, newIndex);
+    createIndex(newIndex);
+    boolean marked = false;
+    try {
+      marked = nodeClient.admin().indices().prepareAliases().addAlias(newIndex, getRebuildAliasName()).execute()
+              .actionGet().isAcknowledged();
+    } catch (ElasticsearchException e) {
+      logger.warn("Unable to mark index '{}' as being rebuilt: {}", newIndex, e.getMessage());
+    }
+    if (!marked) {
+      deleteIndex(newIndex);
+      preparedIndices.remove(newIndex);
+      throw new SearchIndexException("Unable to mark index '" + newIndex + "' as being rebuilt");
+    }
+    rebuildIndex = newIndex;
+    return newIndex;
+  }
+
+  /**
+   * Replaces the current index with the rebuilt one by atomically moving the index alias to the new index. The index
+   * that has been replaced is deleted once the alias has been moved.
+   * <p>
+   * An index that has been created before aliases were used needs to be deleted before the alias can take its name. The
+   * rebuilt index is then considered complete, so that it is kept and used even if the alias cannot be created, and it
+   * is no longer marked as being rebuilt.
+   *
+   * @throws SearchIndexException
+   *           if the index alias cannot be switched
+   */
+  protected synchronized void completeRebuild() throws SearchIndexException {
+    if (rebuildIndex == null)
+      throw new IllegalStateException("Index '" + index + "' is not being rebuilt");
+
+    String newIndex = rebuildIndex;
+    try {
+      IndicesAdminClient indexAdmin = nodeClient.admin().indices();
+      List<String> previousIndices = new ArrayList<String>();
+      List<String> replacedIndices = new ArrayList<String>();
+      boolean marked = true;
+      if (isAlias(index)) {
+        Iterator<String> aliased = indexAdmin.prepareGetAliases(index).execute().actionGet().getAliases().keysIt();
+        while (aliased.hasNext()) {
+          previousIndices.add(aliased.next());
+        }
+        replacedIndices.addAll(previousIndices);
+      } else if (indexAdmin.exists(new IndicesExistsRequest(index)).actionGet().isExists()) {
+        // The index has been created before aliases were used. It needs to make room for the alias, which leaves the
+        // rebuilt index as the only copy of the data.
+        logger.info("Replacing index '{}' with an alias", index);
+        if (!indexAdmin.prepareAliases().removeAlias(newIndex, getRebuildAliasName()).execute().actionGet()
+                .isAcknowledged())
+          throw new SearchIndexException("Unable to mark index '" + newIndex + "' as rebuilt");
+        marked = false;
+        String previousUnaliasedIndex = unaliasedIndex;
+        if (previousUnaliasedIndex != null)
+          replacedIndices.add(previousUnaliasedIndex);
+        unaliasedIndex = newIndex;
+        rebuildIndex = null;
+        DeleteIndexResponse delete = indexAdmin.delete(new DeleteIndexRequest(index)).actionGet();
+        if (!delete.isAcknowledged())
+          throw new SearchIndexException("Unable to delete index '" + index + "' to replace it with an alias");
+      } else if (unaliasedIndex != null) {
+        replacedIndices.add(unaliasedIndex);
+      }
+
+      IndicesAliasesRequestBuilder aliasRequest = indexAdmin.prepareAliases();
+      for (String previousIndex : previousIndices) {
+        aliasRequest.removeAlias(previousIndex, index);
+      }
+      if (marked)
+        aliasRequest.removeAlias(newIndex, getRebuildAliasName());
+      aliasRequest.addAlias(newIndex, index);
+      if (!updateAliases(aliasRequest))
+        throw new SearchIndexException("Unable to point index alias '" + index + "' to '" + newIndex + "'");
+      logger.info("Index alias '{}' now points to '{}'", index, newIndex);
+      rebuildIndex = null;
+      unaliasedIndex = null;
+
+      for (String replacedIndex : replacedIndices) {
+        if (!replacedIndex.equals(newIndex))
+          deleteIndex(replacedIndex);
+      }
+    } catch (ElasticsearchException e) {
+      throw new SearchIndexException("Unable to switch index '" + index + "' to '" + newIndex + "'", e);
     }
   }
 
+  /**
+   * Sends a request to update index aliases.
+   *
+   * @param aliasRequest
+   *          the request
+   * @return <code>true</code> if the update has been acknowledged
+   */
+  protected boolean updateAliases(IndicesAliasesRequestBuilder aliasRequest) {
+    return aliasRequest.execute().actionGet().isAcknowledged();
+  }
+
+  /**
+   * Aborts rebuilding the index and deletes the partially rebuilt index. Updates made during the rebuild have been
+   * written to the current index as well, which is used on its own again.
+   * <p>
+   * The rebuilt index is kept if the index alias points to it, which happens if the alias has been moved without the
+   * request being acknowledged, or if it has replaced an index created before aliases were used.
+   */
+  protected synchronized void abortRebuild() {
+    if (rebuildIndex == null) {
+      if (unaliasedIndex != null)
+        logger.error("Index alias '{}' could not be created, index '{}' is used instead until the index is rebuilt",
+                index, unaliasedIndex);
+      return;
+    }
+    String abortedIndex = rebuildIndex;
+    rebuildIndex = null;
+    try {
+      if (isAlias(index)
+              && nodeClient.admin().indices().prepareGetAliases(index).execute().actionGet().getAliases()
+                      .containsKey(abortedIndex)) {
+        logger.warn("Index alias '{}' already points to '{}', which is kept", index, abortedIndex);
+        return;
+      }
+    } catch (ElasticsearchException e) {
+      logger.warn("Unable to look up index alias '{}', keeping '{}': {}", index, abortedIndex, e.getMessage());
+      return;
+    }
+    logger.info("Aborting rebuild of index '{}', deleting '{}'", index, abortedIndex);
+    deleteIndex(abortedIndex);
+    preparedIndices.remove(abortedIndex);
+  }
+
+  private void deleteIndex(String name) {
+    try {
+      DeleteIndexResponse delete = nodeClient.admin().indices().delete(new DeleteIndexRequest(name)).actionGet();
+      if (!delete.isAcknowledged())
+        logger.warn("Index '{}' could not be deleted", name);
+    } catch (ElasticsearchException e) {
+      logger.warn("Unable to delete index '{}': {}", name, e.getMessage());
+    }
+  }
+
+  /**
+   * Marks the current thread as taking part in rebuilding the index. While a rebuild is in progress, searches made by
+   * this thread are answered by the index that is being rebuilt, so that updates which depend on earlier updates see
+   * them.
+   */
+  public void joinRebuild() {
+    rebuildParticipant.set(Boolean.TRUE);
+  }
+
+  /**
+   * Returns whether the index is currently being rebuilt.
+   *
+   * @return <code>true</code> if the index is being rebuilt
+   */
+  public boolean isRebuilding() {
+    return rebuildIndex != null;
+  }
+
+  /**
+   * Returns the names of the indices that updates are written to. While the index is being rebuilt, updates go to both
+   * the current and the new index, so that they are kept no matter whether the rebuild is completed or aborted.
+   *
+   * @return the index names
+   */
+  protected String[] getWriteIndexNames() {
+    String currentRebuildIndex = rebuildIndex;
+    if (currentRebuildIndex != null)
+      return new String[] { getCurrentIndexName(), currentRebuildIndex };
+    return new String[] { getCurrentIndexName() };
+  }
+
+  /**
+   * Returns the name of the index that searches made by the current thread go to.
+   *
+   * @return the index name
+   */
+  protected String getReadIndexName() {
+    String currentRebuildIndex = rebuildIndex;
+    if (currentRebuildIndex != null && Boolean.TRUE.equals(rebuildParticipant.get()))
+      return currentRebuildIndex;
+    return getCurrentIndexName();
+  }
+
+  private String getCurrentIndexName() {
+    String currentUnaliasedIndex = unaliasedIndex;
+    return currentUnaliasedIndex != null ? currentUnaliasedIndex : getIndexName();
+  }
+
+  private String getRebuildAliasName() {
+    return index + REBUILD_ALIAS_SUFFIX;
+  }
+
+  private boolean isAlias(String name) {
+    return nodeClient.admin().indices().prepareAliasesExist(name).execute().actionGet().exists();
+  }
+
   /**
    * Initializes an Elasticsearch node for the given index.
    *
@@ -307,10 +552,72 @@ public abstract class AbstractElasticsearchIndex implements SearchIndex {
       elasticSearchClients.add(nodeClient);
     }
 
-    // Create the index
+    // Clean up after a rebuild that has been interrupted, then create the index
+    recoverRebuild();
     createIndex(index);
   }
 
+  /**
+   * Cleans up after a rebuild that has been interrupted by a shutdown, based on the indices and aliases found in
+   * Elasticsearch. Indices still marked as being rebuilt are incomplete and deleted, as are rebuilt indices that have
+   * been replaced. If the index that has been created before aliases were used is gone, the rebuilt index that has
+   * replaced it is used again.
+   */
+  private void recoverRebuild() {
+    try {
+      IndicesAdminClient indexAdmin = nodeClient.admin().indices();
+      List<String> rebuiltIndices = new ArrayList<String>();
+      for (String name : nodeClient.admin().cluster().prepareState().execute().actionGet().getState().getMetaData()
+              .concreteAllIndices()) {
+        if (name.startsWith(index + "_") && StringUtils.isNumeric(name.substring(index.length() + 1)))
+          rebuiltIndices.add(name);
+      }
+      if (rebuiltIndices.isEmpty())
+        return;
+
+      List<String> incompleteIndices = new ArrayList<String>();
+      if (isAlias(getRebuildAliasName())) {
+        Iterator<String> marked = indexAdmin.prepareGetAliases(getRebuildAliasName()).execute().actionGet()
+                .getAliases().keysIt();
+        while (marked.hasNext()) {
+          incompleteIndices.add(marked.next());
+        }
+      }
+
+      String completeIndex = null;
+      if (isAlias(index)) {
+        Iterator<String> aliased = indexAdmin.prepareGetAliases(index).execute().actionGet().getAliases().keysIt();
+        while (aliased.hasNext()) {
+          rebuiltIndices.remove(aliased.next());
+        }
+      } else if (!indexAdmin.exists(new IndicesExistsRequest(index)).actionGet().isExists()) {
+        // Index names end with the time the rebuild has been started
+        Collections.sort(rebuiltIndices);
+        for (String rebuiltIndex : rebuiltIndices) {
+          if (!incompleteIndices.contains(rebuiltIndex))
+            completeIndex = rebuiltIndex;
+        }
+        rebuiltIndices.remove(completeIndex);
+      }
+
+      for (String rebuiltIndex : rebuiltIndices) {
+        logger.info("Deleting index '{}' left behind by an interrupted rebuild of '{}'", rebuiltIndex, index);
+        deleteIndex(rebuiltIndex);
+      }
+
+      if (completeIndex != null) {
+        logger.info("Pointing index alias '{}' to the rebuilt index '{}'", index, completeIndex);
+        if (!updateAliases(indexAdmin.prepareAliases().addAlias(completeIndex, index))) {
+          logger.error("Index alias '{}' could not be created, index '{}' is used instead until the index is rebuilt",
+                  index, completeIndex);
+          unaliasedIndex = completeIndex;
+        }
+      }
+    } catch (ElasticsearchException e) {
+      logger.warn("Unable to clean up after an interrupted rebuild of index '{}': {}", index, e.getMessage());
+    }
+  }
+
   /**
    * Closes the client and stops and closes the Elasticsearch node.
    *
@@ -353,22 +660,26 @@ public abstract class AbstractElasticsearchIndex implements SearchIndex {
   private void createIndex(String idx) throws SearchIndexException, IOException {
 
     // Make sure the site index exists
-    try {
-      IndicesAdminClient indexAdmin = nodeClient.admin().indices();
-      CreateIndexRequestBuilder siteIdxRequest = indexAdmin.prepareCreate(idx);
-      logger.debug("Trying to create index for '{}'", idx);
-      CreateIndexResponse siteidxResponse = siteIdxRequest.execute().actionGet();
-      if (!siteidxResponse.isAcknowledged()) {
-        throw new SearchIndexException("Unable to create index for '" + idx + "'");
+    if (isAlias(idx)) {
+      logger.info("Detected existing index alias '{}'", idx);
+    } else {
+      try {
+        IndicesAdminClient indexAdmin = nodeClient.admin().indices();
+        CreateIndexRequestBuilder siteIdxRequest = indexAdmin.prepareCreate(idx);
+        logger.debug("Trying to create index for '{}'", idx);
+        CreateIndexResponse siteidxResponse = siteIdxRequest.execute().actionGet();
+        if (!siteidxResponse.isAcknowledged()) {
+          throw new SearchIndexException("Unable to create index for '" + idx + "'");
+        }
+      } catch (IndexAlreadyExistsException e) {
+        logger.info("Detected existing index '{}'", idx);
       }
-    } catch (IndexAlreadyExistsException e) {
-      logger.info("Detected existing index '{}'", idx);
     }
 
     // Store the correct mapping
     for (String type : getDocumenTypes()) {
       PutMappingRequest siteMappingRequest = new PutMappingRequest(idx);
-      siteMappingRequest.source(getIndexTypeDefinition(idx, type));
+      siteMappingRequest.source(getIndexTypeDefinition(index, type));
       siteMappingRequest.type(type);
       PutMappingResponse siteMappingResponse = nodeClient.admin().indices().putMapping(siteMappingRequest).actionGet();
       if (!siteMappingResponse.isAcknowledged()) {
@@ -504,7 +815,7 @@ public abstract class AbstractElasticsearchIndex implements SearchIndex {
   protected SearchRequestBuilder getSearchRequestBuilder(SearchQuery query, QueryBuilder queryBuilder) {
 
     SearchRequestBuilder requestBuilder = new SearchRequestBuilder(getSearchClient());
-    requestBuilder.setIndices(getIndexName());
+    requestBuilder.setIndices(getReadIndexName());
     requestBuilder.setSearchType(SearchType.QUERY_THEN_FETCH);
     requestBuilder.setPreference("_local");
 
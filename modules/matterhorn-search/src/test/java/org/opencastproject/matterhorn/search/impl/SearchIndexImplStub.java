@@ -24,6 +24,8 @@ package org.opencastproject.matterhorn.search.impl;
 
 import org.opencastproject.matterhorn.search.SearchIndexException;
 
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequestBuilder;
+
 import java.io.IOException;
 
 /**
@@ -37,6 +39,9 @@ public class SearchIndexImplStub extends AbstractElasticsearchIndex {
   /** Name of the version document type */
   public static final String VERSION_TYPE = "version";
 
+  /** Whether updates to the index aliases are failing */
+  private boolean failAliasUpdates = false;
+
   /**
    * Creates a new search index.
    *
@@ -65,6 +70,24 @@ public class SearchIndexImplStub extends AbstractElasticsearchIndex {
     super.close();
   }
 
+  /**
+   * Makes updates to the index aliases fail without being sent.
+   *
+   * @param failAliasUpdates
+   *          whether the updates fail
+   */
+  public void setFailAliasUpdates(boolean failAliasUpdates) {
+    this.failAliasUpdates = failAliasUpdates;
+  }
+
+  /**
+   * @see AbstractElasticsearchIndex#updateAliases(IndicesAliasesRequestBuilder)
+   */
+  @Override
+  protected boolean updateAliases(IndicesAliasesRequestBuilder aliasRequest) {
+    return !failAliasUpdates && super.updateAliases(aliasRequest);
+  }
+
   /**
    * @see org.opencastproject.matterhorn.search.impl.AbstractElasticsearchIndex#getDocumenTypes()
    */
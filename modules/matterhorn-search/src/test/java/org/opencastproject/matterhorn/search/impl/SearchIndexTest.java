@@ -22,10 +22,14 @@
 
 package org.opencastproject.matterhorn.search.impl;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.opencastproject.matterhorn.search.impl.SearchIndexImplStub.CONTENT_TYPE;
 
+import org.opencastproject.matterhorn.search.SearchIndexException;
 import org.opencastproject.matterhorn.search.SearchMetadata;
 
 import org.apache.commons.io.FileUtils;
@@ -98,6 +102,8 @@ public class SearchIndexTest {
    */
   @After
   public void tearDown() throws Exception {
+    idx.setFailAliasUpdates(false);
+    idx.abortRebuild();
     idx.clear();
   }
 
@@ -110,6 +116,177 @@ public class SearchIndexTest {
     assertEquals(indexVersion, idx.getIndexVersion());
   }
 
+  /**
+   * Tests that rebuilding an index that has been created before aliases were used replaces it with an alias.
+   */
+  @Test
+  public void testRebuildReplacesIndexWithAlias() throws Exception {
+    populateIndex();
+    assertFalse(isAlias(indexName));
+
+    String rebuildIndex = idx.beginRebuild();
+    idx.update(createDocument(0));
+    assertEquals(10, count(indexName));
+    idx.completeRebuild();
+
+    assertTrue(isAliasOf(indexName, rebuildIndex));
+    assertEquals(1, count(indexName));
+    assertArrayEquals(new String[] { indexName }, idx.getWriteIndexNames());
+    assertFalse(idx.isRebuilding());
+  }
+
+  /**
+   * Tests that the rebuilt index is kept and used if the alias cannot be created after the index that has been created
+   * before aliases were used is gone.
+   */
+  @Test
+  public void testFailedAliasCreationKeepsRebuiltIndex() throws Exception {
+    populateIndex();
+    String rebuildIndex = idx.beginRebuild();
+    idx.update(createDocument(0));
+
+    idx.setFailAliasUpdates(true);
+    try {
+      idx.completeRebuild();
+      fail("Index alias should not have been created");
+    } catch (SearchIndexException e) {
+      // expected
+    }
+    idx.abortRebuild();
+
+    assertTrue(exists(rebuildIndex));
+    assertFalse(exists(indexName));
+    assertEquals(rebuildIndex, idx.getReadIndexName());
+    assertArrayEquals(new String[] { rebuildIndex }, idx.getWriteIndexNames());
+    assertEquals(1, count(rebuildIndex));
+
+    // The next rebuild creates the alias and removes the index that was kept
+    idx.setFailAliasUpdates(false);
+    String nextRebuildIndex = idx.beginRebuild();
+    idx.update(createDocument(0), createDocument(1));
+    idx.completeRebuild();
+
+    assertTrue(isAliasOf(indexName, nextRebuildIndex));
+    assertArrayEquals(new String[] { indexName }, idx.getWriteIndexNames());
+    assertEquals(2, count(indexName));
+    assertFalse(exists(rebuildIndex));
+  }
+
+  /**
+   * Tests that a failed swap of the index alias leaves the current index in place.
+   */
+  @Test
+  public void testFailedAliasSwapKeepsCurrentIndex() throws Exception {
+    String currentIndex = idx.beginRebuild();
+    populateIndex();
+    idx.completeRebuild();
+    assertTrue(isAliasOf(indexName, currentIndex));
+
+    String rebuildIndex = idx.beginRebuild();
+    idx.update(createDocument(0));
+    idx.setFailAliasUpdates(true);
+    try {
+      idx.completeRebuild();
+      fail("Index alias should not have been swapped");
+    } catch (SearchIndexException e) {
+      // expected
+    }
+    idx.abortRebuild();
+
+    assertFalse(exists(rebuildIndex));
+    assertTrue(isAliasOf(indexName, currentIndex));
+    assertArrayEquals(new String[] { indexName }, idx.getWriteIndexNames());
+    assertEquals(10, count(indexName));
+  }
+
+  /**
+   * Tests that updates made while the index is being rebuilt are kept when the rebuild is aborted.
+   */
+  @Test
+  public void testUpdatesDuringRebuildAreKeptOnAbort() throws Exception {
+    populateIndex();
+    String rebuildIndex = idx.beginRebuild();
+    idx.update(createDocument(10));
+    assertEquals(11, count(indexName));
+    assertEquals(1, count(rebuildIndex));
+
+    idx.abortRebuild();
+    assertFalse(exists(rebuildIndex));
+    assertEquals(11, count(indexName));
+  }
+
+  /**
+   * Tests that an index left behind by a rebuild that has been interrupted by a shutdown is deleted on startup.
+   */
+  @Test
+  public void testRestartDeletesIncompleteRebuild() throws Exception {
+    populateIndex();
+    String rebuildIndex = idx.beginRebuild();
+    idx.update(createDocument(0));
+
+    SearchIndexImplStub restarted = new SearchIndexImplStub(indexName, indexVersion, idxRoot.getPath());
+    try {
+      assertFalse(exists(rebuildIndex));
+      assertEquals(10, count(indexName));
+      assertFalse(restarted.isRebuilding());
+    } finally {
+      restarted.close();
+    }
+  }
+
+  /**
+   * Tests that the rebuilt index that has replaced an index created before aliases were used is aliased on startup if
+   * the alias could not be created before the shutdown.
+   */
+  @Test
+  public void testRestartAliasesRebuiltIndex() throws Exception {
+    populateIndex();
+    String rebuildIndex = idx.beginRebuild();
+    idx.update(createDocument(0));
+    idx.setFailAliasUpdates(true);
+    try {
+      idx.completeRebuild();
+      fail("Index alias should not have been created");
+    } catch (SearchIndexException e) {
+      // expected
+    }
+
+    SearchIndexImplStub restarted = new SearchIndexImplStub(indexName, indexVersion, idxRoot.getPath());
+    try {
+      assertTrue(isAliasOf(indexName, rebuildIndex));
+      assertArrayEquals(new String[] { indexName }, restarted.getWriteIndexNames());
+      assertEquals(1, count(indexName));
+    } finally {
+      restarted.close();
+    }
+  }
+
+  private boolean isAlias(String name) {
+    return idx.getSearchClient().admin().indices().prepareAliasesExist(name).execute().actionGet().exists();
+  }
+
+  private boolean isAliasOf(String alias, String name) {
+    return isAlias(alias)
+            && idx.getSearchClient().admin().indices().prepareGetAliases(alias).execute().actionGet().getAliases()
+                    .containsKey(name);
+  }
+
+  private boolean exists(String name) {
+    return idx.getSearchClient().admin().indices().prepareExists(name).execute().actionGet().isExists();
+  }
+
+  private long count(String name) {
+    return idx.getSearchClient().prepareCount(name).setTypes(CONTENT_TYPE).execute().actionGet().getCount();
+  }
+
+  private ElasticsearchDocument createDocument(int id) {
+    List<SearchMetadata<?>> metadata = new ArrayList<SearchMetadata<?>>();
+    SearchMetadata<String> title = new SearchMetadataImpl<String>("title");
+    title.addValue("Rebuilt entry " + id);
+    metadata.add(title);
+    return new ElasticsearchDocument(Integer.toString(id), CONTENT_TYPE, metadata);
+  }
+
   /**
    * Adds sample pages to the search index and returns the number of documents added.
    * 
@@ -68,6 +68,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
 
 /**
@@ -89,6 +91,9 @@ public abstract class ServiceRegistryRemoteBase implements ServiceRegistry {
   /** Current job used to process job in the service registry. */
   private static final ThreadLocal<Job> currentJob = new ThreadLocal<Job>();
 
+  /** The maximum number of job ids passed in a single request */
+  private static final int MAX_JOB_IDS_PER_REQUEST = 100;
+
   /** Configuration key for the service registry */
   public static final String OPT_SERVICE_REGISTRY_URL = "org.opencastproject.serviceregistry.url";
 
@@ -480,6 +485,65 @@ public abstract class ServiceRegistryRemoteBase implements ServiceRegistry {
     throw new ServiceRegistryException("Unable to retrieve job " + id + " (" + responseStatusCode + ")");
   }
 
+  @Override
+  public List<Job> getJobs(Collection<Long> ids, boolean withFinishedPayloads) throws ServiceRegistryException {
+    final List<Long> distinctIds = new ArrayList<Long>(new LinkedHashSet<Long>(ids));
+    final List<Job> jobs = new ArrayList<Job>(distinctIds.size());
+    // Keep the request lines short
+    for (int i = 0; i < distinctIds.size(); i += MAX_JOB_IDS_PER_REQUEST) {
+      QueryStringBuilder qsb = new QueryStringBuilder("jobs/status.xml");
+      for (Long id : distinctIds.subList(i, Math.min(i + MAX_JOB_IDS_PER_REQUEST, distinctIds.size()))) {
+        qsb.add("id", id.toString());
+      }
+      qsb.add("payloads", Boolean.toString(withFinishedPayloads));
+      final HttpGet get = get(qsb.toString());
+      HttpResponse response = null;
+      try {
+        response = getHttpClient().execute(get);
+        int responseStatusCode = response.getStatusLine().getStatusCode();
+        if (responseStatusCode != HttpStatus.SC_OK)
+          throw new ServiceRegistryException("Unable to retrieve the status of jobs " + ids + " ("
+                  + responseStatusCode + ")");
+        final JaxbJobList jaxbJobList = JobParser.parseJobList(response.getEntity().getContent());
+        jobs.addAll($(jaxbJobList.getJobs()).map(JaxbJob.fnToJob()).toList());
+      } catch (IOException e) {
+        throw new ServiceRegistryException("Unable to get the status of jobs " + ids, e);
+      } finally {
+        getHttpClient().close(response);
+      }
+    }
+    return jobs;
+  }
+
+  @Override
+  public List<Job> waitForTerminatedJobs(List<Long> ids, long timeout) throws NotFoundException,
+          ServiceRegistryException {
+    QueryStringBuilder qsb = new QueryStringBuilder("jobs/terminated.xml");
+    for (Long id : ids) {
+      qsb.add("id", id.toString());
+    }
+    qsb.add("timeout", Long.toString(timeout));
+    final HttpGet get = get(qsb.toString());
+    HttpResponse response = null;
+    int responseStatusCode;
+    try {
+      response = getHttpClient().execute(get);
+      responseStatusCode = response.getStatusLine().getStatusCode();
+      if (responseStatusCode == HttpStatus.SC_NOT_FOUND) {
+        throw new NotFoundException("Unable to locate one of the jobs " + ids);
+      }
+      if (responseStatusCode == HttpStatus.SC_OK) {
+        final JaxbJobList jaxbJobList = JobParser.parseJobList(response.getEntity().getContent());
+        return $(jaxbJobList.getJobs()).map(JaxbJob.fnToJob()).toList();
+      }
+    } catch (IOException e) {
+      throw new ServiceRegistryException("Unable to wait for jobs " + ids, e);
+    } finally {
+      getHttpClient().close(response);
+    }
+    throw new ServiceRegistryException("Unable to wait for jobs " + ids + " (" + responseStatusCode + ")");
+  }
+
   @Override
   public List<Job> getChildJobs(long id) throws ServiceRegistryException {
     final HttpGet get = get("job/" + id + "/children.xml");
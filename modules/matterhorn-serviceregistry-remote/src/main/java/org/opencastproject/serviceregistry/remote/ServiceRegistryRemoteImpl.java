@@ -21,20 +21,67 @@
 
 package org.opencastproject.serviceregistry.remote;
 
+import org.opencastproject.message.broker.api.BaseMessage;
+import org.opencastproject.message.broker.api.MessageReceiver;
+import org.opencastproject.message.broker.api.MessageSender.DestinationType;
+import org.opencastproject.message.broker.api.serviceregistry.ServiceRegistryItem;
 import org.opencastproject.security.api.TrustedHttpClient;
 import org.opencastproject.serviceregistry.api.IncidentService;
+import org.opencastproject.serviceregistry.api.ServiceRegistration;
+import org.opencastproject.serviceregistry.api.ServiceRegistrationRanking;
+import org.opencastproject.serviceregistry.api.ServiceRegistryException;
 import org.opencastproject.systems.MatterhornConstants;
 import org.opencastproject.util.UrlSupport;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.osgi.framework.ServiceException;
 import org.osgi.service.component.ComponentContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.Serializable;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
-/** OSGi bound implementation. */
-public final class ServiceRegistryRemoteImpl extends ServiceRegistryRemoteBase {
+/**
+ * OSGi bound implementation.
+ * <p>
+ * The rankings of the services by load are cached for a short time, since every call to a remote service asks for
+ * them. The cache is cleared whenever the registry announces a change of the registrations through the message broker.
+ */
+public final class ServiceRegistryRemoteImpl extends ServiceRegistryRemoteBase implements ServiceRegistrationRanking {
+
+  /** The logger */
+  private static final Logger logger = LoggerFactory.getLogger(ServiceRegistryRemoteImpl.class);
+
+  /** Configuration key for the time in seconds the rankings of the services are cached, 0 turns caching off */
+  public static final String OPT_CACHE_TTL = "org.opencastproject.serviceregistry.remote.cache.ttl";
+
+  /** Configuration key for the time in seconds a service that failed to handle a request is tried last */
+  public static final String OPT_DEMOTION_TIME = "org.opencastproject.serviceregistry.remote.demotion.time";
+
+  /** The default time in seconds the rankings of the services are cached */
+  public static final int DEFAULT_CACHE_TTL = 10;
+
+  /** The default time in seconds a service that failed to handle a request is tried last */
+  public static final int DEFAULT_DEMOTION_TIME = 60;
+
+  /** Time to wait before listening for announcements again after the message broker has not been available */
+  private static final long LISTENER_RETRY_DELAY = TimeUnit.SECONDS.toMillis(10);
 
   /** The http client to use when connecting to remote servers */
   private TrustedHttpClient client;
@@ -48,6 +95,30 @@ public final class ServiceRegistryRemoteImpl extends ServiceRegistryRemoteBase {
   /** The base URL of this server */
   private String serverUrl = UrlSupport.DEFAULT_BASE_URL;
 
+  /** The message receiver delivering the announcements of the registry */
+  private volatile MessageReceiver messageReceiver;
+
+  /** The time in milliseconds the rankings of the services are cached */
+  private long cacheTtl = TimeUnit.SECONDS.toMillis(DEFAULT_CACHE_TTL);
+
+  /** The time in milliseconds a service that failed to handle a request is tried last */
+  private long demotionTime = TimeUnit.SECONDS.toMillis(DEFAULT_DEMOTION_TIME);
+
+  /** The cached rankings by service type */
+  private final Map<String, CachedRanking> rankings = new ConcurrentHashMap<String, CachedRanking>();
+
+  /** Incremented whenever cached rankings are dropped, so that rankings fetched before are not cached anymore */
+  private final AtomicLong invalidations = new AtomicLong();
+
+  /** The end of the demotion of services by service type and host */
+  private final Map<String, Long> demotions = new ConcurrentHashMap<String, Long>();
+
+  /** Runs the listener for the announcements of the registry */
+  private ExecutorService listenerExecutor;
+
+  /** Listens for the announcements of the registry */
+  private RegistrationChangeListener listener;
+
   @Override
   public TrustedHttpClient getHttpClient() {
     return client;
@@ -100,6 +171,146 @@ public final class ServiceRegistryRemoteImpl extends ServiceRegistryRemoteBase {
                 + StringUtils.trimToNull(cc.getBundleContext().getProperty(OPT_SERVICE_REGISTRY_URL)));
       }
     }
+
+    if (cc != null) {
+      cacheTtl = TimeUnit.SECONDS.toMillis(getSeconds(cc, OPT_CACHE_TTL, DEFAULT_CACHE_TTL));
+      demotionTime = TimeUnit.SECONDS.toMillis(getSeconds(cc, OPT_DEMOTION_TIME, DEFAULT_DEMOTION_TIME));
+    }
+    if (cacheTtl > 0) {
+      logger.info("Caching the rankings of the services for {} seconds", TimeUnit.MILLISECONDS.toSeconds(cacheTtl));
+      listener = new RegistrationChangeListener();
+      listenerExecutor = Executors.newSingleThreadExecutor();
+      listenerExecutor.execute(listener);
+    }
+  }
+
+  /**
+   * Callback for the OSGi environment that is called upon service deactivation.
+   */
+  public void deactivate() {
+    if (listener != null)
+      listener.stopListening();
+    if (listenerExecutor != null)
+      listenerExecutor.shutdownNow();
+    invalidate(null, null);
+  }
+
+  /** Reads a positive or zero number of seconds from the bundle properties. */
+  private static int getSeconds(ComponentContext cc, String key, int defaultValue) {
+    String value = StringUtils.trimToNull(cc.getBundleContext().getProperty(key));
+    if (value == null)
+      return defaultValue;
+    int seconds = NumberUtils.toInt(value, -1);
+    if (seconds < 0) {
+      logger.warn("Configuration key '{}' is not a valid number of seconds, using {}", key, defaultValue);
+      return defaultValue;
+    }
+    return seconds;
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * The ranking is served from the cache if possible. Services that failed to handle requests lately are moved to the
+   * end of the ranking.
+   */
+  @Override
+  public List<ServiceRegistration> getServiceRegistrationsByLoad(String serviceType) throws ServiceRegistryException {
+    List<ServiceRegistration> ranking = null;
+    CachedRanking cached = rankings.get(serviceType);
+    if (cached != null && cached.expires > System.currentTimeMillis())
+      ranking = cached.registrations;
+
+    if (ranking == null) {
+      long invalidation = invalidations.get();
+      ranking = Collections.unmodifiableList(super.getServiceRegistrationsByLoad(serviceType));
+      // An empty ranking is not cached, so that services coming up are found right away
+      if (cacheTtl > 0 && !ranking.isEmpty()) {
+        rankings.put(serviceType, new CachedRanking(ranking, System.currentTimeMillis() + cacheTtl));
+        // Don't keep the ranking if an announcement has come in while it was fetched
+        if (invalidations.get() != invalidation)
+          rankings.remove(serviceType);
+      }
+    }
+    return applyDemotions(serviceType, ranking);
+  }
+
+  /**
+   * Moves the demoted services to the end of a ranking.
+   *
+   * @param serviceType
+   *          the service type
+   * @param ranking
+   *          the ranking of the registry
+   * @return the local ranking
+   */
+  private List<ServiceRegistration> applyDemotions(String serviceType, List<ServiceRegistration> ranking) {
+    List<ServiceRegistration> result = new ArrayList<ServiceRegistration>(ranking.size());
+    if (demotions.isEmpty()) {
+      result.addAll(ranking);
+      return result;
+    }
+    long now = System.currentTimeMillis();
+    List<ServiceRegistration> demoted = new ArrayList<ServiceRegistration>();
+    for (ServiceRegistration registration : ranking) {
+      String key = getDemotionKey(serviceType, registration.getHost());
+      Long end = demotions.get(key);
+      if (end != null && end <= now) {
+        demotions.remove(key, end);
+        end = null;
+      }
+      if (end == null) {
+        result.add(registration);
+      } else {
+        demoted.add(registration);
+      }
+    }
+    result.addAll(demoted);
+    return result;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @see org.opencastproject.serviceregistry.api.ServiceRegistrationRanking#demote(ServiceRegistration)
+   */
+  @Override
+  public void demote(ServiceRegistration registration) {
+    if (demotionTime <= 0 || registration == null)
+      return;
+    logger.debug("Trying service {} on {} last for the next {} seconds", new Object[] { registration.getServiceType(),
+            registration.getHost(), TimeUnit.MILLISECONDS.toSeconds(demotionTime) });
+    demotions.put(getDemotionKey(registration.getServiceType(), registration.getHost()),
+            System.currentTimeMillis() + demotionTime);
+  }
+
+  private static String getDemotionKey(String serviceType, String host) {
+    return serviceType + "@" + host;
+  }
+
+  /**
+   * Drops cached rankings and demotions after a change of the registrations.
+   *
+   * @param serviceType
+   *          the service type, or <code>null</code> for all service types
+   * @param host
+   *          the host whose demotions are dropped, or <code>null</code> to keep the demotions
+   */
+  void invalidate(String serviceType, String host) {
+    invalidations.incrementAndGet();
+    if (serviceType == null) {
+      rankings.clear();
+    } else {
+      rankings.remove(serviceType);
+    }
+    if (host != null) {
+      // The registry knows better about this host now
+      for (Iterator<String> i = demotions.keySet().iterator(); i.hasNext();) {
+        String key = i.next();
+        if (key.endsWith("@" + host) && (serviceType == null || key.equals(getDemotionKey(serviceType, host))))
+          i.remove();
+      }
+    }
   }
 
   /** OSGi DI. */
@@ -112,4 +323,73 @@ public final class ServiceRegistryRemoteImpl extends ServiceRegistryRemoteBase {
     this.incidentService = incidentService;
   }
 
+  /** OSGi DI. */
+  public void setMessageReceiver(MessageReceiver messageReceiver) {
+    this.messageReceiver = messageReceiver;
+  }
+
+  /** OSGi DI. */
+  public void unsetMessageReceiver(MessageReceiver messageReceiver) {
+    if (this.messageReceiver == messageReceiver)
+      this.messageReceiver = null;
+  }
+
+  /** A ranking of the services of a type, as returned by the registry */
+  private static final class CachedRanking {
+    private final List<ServiceRegistration> registrations;
+    private final long expires;
+
+    private CachedRanking(List<ServiceRegistration> registrations, long expires) {
+      this.registrations = registrations;
+      this.expires = expires;
+    }
+  }
+
+  /** Drops the cached rankings whenever the registry announces a change of the registrations. */
+  private final class RegistrationChangeListener implements Runnable {
+
+    private volatile boolean listening = true;
+    private volatile FutureTask<Serializable> future;
+
+    void stopListening() {
+      listening = false;
+      FutureTask<Serializable> current = future;
+      if (current != null)
+        current.cancel(true);
+    }
+
+    @Override
+    public void run() {
+      while (listening) {
+        try {
+          MessageReceiver receiver = messageReceiver;
+          Serializable message = null;
+          if (receiver != null) {
+            future = receiver.receiveSerializable(ServiceRegistryItem.SERVICE_REGISTRY_TOPIC, DestinationType.Topic);
+            future.run();
+            message = future.get();
+          }
+          if (message instanceof BaseMessage && ((BaseMessage) message).getObject() instanceof ServiceRegistryItem) {
+            ServiceRegistryItem item = (ServiceRegistryItem) ((BaseMessage) message).getObject();
+            logger.debug("Registrations changed on {}, dropping cached rankings", item.getId());
+            invalidate(item.getServiceType(), item.getHost());
+          } else if (message == null) {
+            // Announcements may have been missed, and the message broker is not to be asked again right away
+            invalidate(null, null);
+            Thread.sleep(LISTENER_RETRY_DELAY);
+          }
+        } catch (InterruptedException e) {
+          logger.debug("Interrupted while listening for registry announcements");
+          return;
+        } catch (CancellationException e) {
+          logger.debug("Listening for registry announcements has been cancelled");
+          return;
+        } catch (ExecutionException e) {
+          logger.warn("Unable to receive registry announcements: {}", e.getMessage());
+          invalidate(null, null);
+        }
+      }
+    }
+  }
+
 }
@@ -0,0 +1,237 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.serviceregistry.remote;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.opencastproject.message.broker.api.BaseMessage;
+import org.opencastproject.message.broker.api.MessageReceiver;
+import org.opencastproject.message.broker.api.MessageSender.DestinationType;
+import org.opencastproject.message.broker.api.serviceregistry.ServiceRegistryItem;
+import org.opencastproject.security.api.DefaultOrganization;
+import org.opencastproject.security.api.JaxbOrganization;
+import org.opencastproject.security.api.JaxbUser;
+import org.opencastproject.security.api.TrustedHttpClient;
+import org.opencastproject.serviceregistry.api.JaxbServiceRegistration;
+import org.opencastproject.serviceregistry.api.JaxbServiceRegistrationList;
+import org.opencastproject.serviceregistry.api.ServiceRegistration;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.BundleContext;
+import org.osgi.service.component.ComponentContext;
+
+import java.io.Serializable;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.bind.JAXBContext;
+
+/**
+ * Tests the local ranking of the services on a node talking to a remote service registry.
+ */
+public class ServiceRegistryRemoteImplTest {
+
+  private static final String SERVICE_TYPE = "org.opencastproject.composer";
+  private static final String HOST_A = "http://a.example.org";
+  private static final String HOST_B = "http://b.example.org";
+
+  private ServiceRegistryRemoteImpl serviceRegistry;
+
+  /** The number of times the rankings have been fetched from the registry */
+  private final AtomicInteger fetches = new AtomicInteger();
+
+  /** The ranking returned by the registry */
+  private volatile List<ServiceRegistration> ranking;
+
+  /** The announcements to be delivered to the listener */
+  private final BlockingQueue<Serializable> announcements = new LinkedBlockingQueue<Serializable>();
+
+  /** Released whenever the listener waits for the next announcement */
+  private final Semaphore listening = new Semaphore(0);
+
+  @Before
+  public void setUp() throws Exception {
+    ranking = Arrays.asList(service(HOST_A), service(HOST_B));
+
+    TrustedHttpClient client = EasyMock.createNiceMock(TrustedHttpClient.class);
+    EasyMock.expect(client.execute(EasyMock.anyObject(HttpUriRequest.class))).andAnswer(new IAnswer<HttpResponse>() {
+      @Override
+      public HttpResponse answer() throws Throwable {
+        fetches.incrementAndGet();
+        BasicHttpResponse response = new BasicHttpResponse(new BasicStatusLine(HttpVersion.HTTP_1_1,
+                HttpStatus.SC_OK, "OK"));
+        response.setEntity(new StringEntity(toXml(ranking), ContentType.APPLICATION_XML));
+        return response;
+      }
+    }).anyTimes();
+    EasyMock.replay(client);
+
+    MessageReceiver messageReceiver = EasyMock.createNiceMock(MessageReceiver.class);
+    EasyMock.expect(messageReceiver.receiveSerializable(ServiceRegistryItem.SERVICE_REGISTRY_TOPIC,
+            DestinationType.Topic)).andAnswer(new IAnswer<FutureTask<Serializable>>() {
+              @Override
+              public FutureTask<Serializable> answer() throws Throwable {
+                listening.release();
+                return new FutureTask<Serializable>(new Callable<Serializable>() {
+                  @Override
+                  public Serializable call() throws Exception {
+                    return announcements.take();
+                  }
+                });
+              }
+            }).anyTimes();
+    EasyMock.replay(messageReceiver);
+
+    serviceRegistry = new ServiceRegistryRemoteImpl();
+    serviceRegistry.setTrustedHttpClient(client);
+    serviceRegistry.setMessageReceiver(messageReceiver);
+  }
+
+  @After
+  public void tearDown() {
+    serviceRegistry.deactivate();
+  }
+
+  @Test
+  public void testRankingsAreCached() throws Exception {
+    activate();
+
+    List<ServiceRegistration> first = serviceRegistry.getServiceRegistrationsByLoad(SERVICE_TYPE);
+    List<ServiceRegistration> second = serviceRegistry.getServiceRegistrationsByLoad(SERVICE_TYPE);
+    assertEquals(1, fetches.get());
+    assertEquals(Arrays.asList(HOST_A, HOST_B), hosts(first));
+    assertEquals(hosts(first), hosts(second));
+  }
+
+  @Test
+  public void testEmptyRankingsAreNotCached() throws Exception {
+    ranking = new ArrayList<ServiceRegistration>();
+    activate();
+
+    assertTrue(serviceRegistry.getServiceRegistrationsByLoad(SERVICE_TYPE).isEmpty());
+    ranking = Arrays.asList(service(HOST_A));
+    assertEquals(Arrays.asList(HOST_A), hosts(serviceRegistry.getServiceRegistrationsByLoad(SERVICE_TYPE)));
+    assertEquals(2, fetches.get());
+  }
+
+  @Test
+  public void testCachingCanBeTurnedOff() throws Exception {
+    activate("0", null);
+
+    serviceRegistry.getServiceRegistrationsByLoad(SERVICE_TYPE);
+    serviceRegistry.getServiceRegistrationsByLoad(SERVICE_TYPE);
+    assertEquals(2, fetches.get());
+  }
+
+  @Test
+  public void testDemotedServiceIsTriedLastUntilTheDemotionEnds() throws Exception {
+    activate(null, "1");
+
+    List<ServiceRegistration> services = serviceRegistry.getServiceRegistrationsByLoad(SERVICE_TYPE);
+    serviceRegistry.demote(services.get(0));
+    assertEquals(Arrays.asList(HOST_B, HOST_A), hosts(serviceRegistry.getServiceRegistrationsByLoad(SERVICE_TYPE)));
+
+    Thread.sleep(TimeUnit.SECONDS.toMillis(1) + 100);
+    assertEquals(Arrays.asList(HOST_A, HOST_B), hosts(serviceRegistry.getServiceRegistrationsByLoad(SERVICE_TYPE)));
+    assertEquals(1, fetches.get());
+  }
+
+  @Test
+  public void testRegistrationChangeInvalidatesTheCache() throws Exception {
+    activate();
+    assertTrue(listening.tryAcquire(10, TimeUnit.SECONDS));
+
+    List<ServiceRegistration> services = serviceRegistry.getServiceRegistrationsByLoad(SERVICE_TYPE);
+    serviceRegistry.demote(services.get(0));
+    assertEquals(1, fetches.get());
+
+    // The registry announces that host a has come back
+    JaxbOrganization organization = JaxbOrganization.fromOrganization(new DefaultOrganization());
+    announcements.add(new BaseMessage(organization, new JaxbUser("admin", "test", organization),
+            ServiceRegistryItem.serviceChanged(SERVICE_TYPE, HOST_A)));
+    // The listener asks for the next announcement once it has handled this one
+    assertTrue(listening.tryAcquire(10, TimeUnit.SECONDS));
+
+    assertEquals(Arrays.asList(HOST_A, HOST_B), hosts(serviceRegistry.getServiceRegistrationsByLoad(SERVICE_TYPE)));
+    assertEquals(2, fetches.get());
+  }
+
+  private void activate() throws Exception {
+    activate(null, null);
+  }
+
+  private void activate(String cacheTtl, String demotionTime) throws Exception {
+    BundleContext bundleContext = EasyMock.createNiceMock(BundleContext.class);
+    EasyMock.expect(bundleContext.getProperty(ServiceRegistryRemoteImpl.OPT_CACHE_TTL)).andReturn(cacheTtl).anyTimes();
+    EasyMock.expect(bundleContext.getProperty(ServiceRegistryRemoteImpl.OPT_DEMOTION_TIME)).andReturn(demotionTime)
+            .anyTimes();
+    ComponentContext cc = EasyMock.createNiceMock(ComponentContext.class);
+    EasyMock.expect(cc.getBundleContext()).andReturn(bundleContext).anyTimes();
+    EasyMock.replay(bundleContext, cc);
+    serviceRegistry.activate(cc);
+  }
+
+  private static ServiceRegistration service(String host) {
+    return new JaxbServiceRegistration(SERVICE_TYPE, host, "/composer/ffmpeg");
+  }
+
+  private static List<String> hosts(List<ServiceRegistration> services) {
+    List<String> hosts = new ArrayList<String>();
+    for (ServiceRegistration service : services) {
+      hosts.add(service.getHost());
+    }
+    return hosts;
+  }
+
+  private static String toXml(List<ServiceRegistration> services) throws Exception {
+    JaxbServiceRegistrationList list = new JaxbServiceRegistrationList();
+    for (ServiceRegistration service : services) {
+      list.add(service);
+    }
+    StringWriter writer = new StringWriter();
+    JAXBContext.newInstance(JaxbServiceRegistrationList.class).createMarshaller().marshal(list, writer);
+    return writer.toString();
+  }
+
+}
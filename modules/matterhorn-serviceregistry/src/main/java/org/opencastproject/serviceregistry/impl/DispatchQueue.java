@@ -0,0 +1,279 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.serviceregistry.impl;
+
+import org.opencastproject.job.api.Job.Status;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * In-memory, priority ordered queue of the jobs that are waiting to be dispatched.
+ * <p>
+ * The queue is kept current by the service registry whenever a job is created or changes its status and is
+ * periodically replaced with the list of dispatchable jobs found in the database. It holds the job attributes that are
+ * needed to decide on the dispatching order and on the services a job may be dispatched to, so that the job itself only
+ * needs to be loaded once a service is available to take it.
+ */
+class DispatchQueue {
+
+  /** The ordering applied to queued jobs, following the order used when paging through the jobs in the database */
+  static final Comparator<Entry> ORDER = new Comparator<Entry>() {
+    @Override
+    public int compare(Entry a, Entry b) {
+      // Regular jobs should be processed prior to workflow and workflow operation jobs
+      if (a.isWorkflow() != b.isWorkflow())
+        return a.isWorkflow() ? 1 : -1;
+
+      // Jobs that are in "restart" mode should be handled first
+      if (a.getStatus() != b.getStatus())
+        return Status.RESTART.equals(a.getStatus()) ? -1 : 1;
+
+      if (a.getDateCreated() != b.getDateCreated())
+        return a.getDateCreated() < b.getDateCreated() ? -1 : 1;
+
+      return Long.compare(a.getId(), b.getId());
+    }
+  };
+
+  /** The queued jobs by identifier */
+  private final Map<Long, Entry> entries = new HashMap<>();
+
+  /** The queued jobs in dispatching order */
+  private final TreeSet<Entry> ordered = new TreeSet<>(ORDER);
+
+  /** Changes made while the queue is being reloaded, with <code>null</code> values marking removed jobs */
+  private Map<Long, Entry> pendingChanges = null;
+
+  /**
+   * Returns <code>true</code> if a job with the given status is waiting to be dispatched.
+   *
+   * @param dispatchable
+   *          whether the job is dispatchable
+   * @param status
+   *          the job status
+   * @return <code>true</code> if the job belongs into the dispatch queue
+   */
+  static boolean isQueueable(boolean dispatchable, Status status) {
+    return dispatchable && (Status.QUEUED.equals(status) || Status.RESTART.equals(status));
+  }
+
+  /**
+   * Adds the job to the queue if it is waiting to be dispatched, or removes it from the queue otherwise.
+   *
+   * @param id
+   *          the job identifier
+   * @param jobType
+   *          the job type
+   * @param operation
+   *          the job operation
+   * @param status
+   *          the job's current status
+   * @param dispatchable
+   *          whether the job is dispatchable
+   * @param dateCreated
+   *          the job's creation date in milliseconds
+   * @param creator
+   *          the name of the user who created the job
+   * @param organization
+   *          the identifier of the organization the job belongs to
+   * @param parentId
+   *          the identifier of the parent job, or <code>null</code> if this is a root job
+   */
+  synchronized void update(long id, String jobType, String operation, Status status, boolean dispatchable,
+          long dateCreated, String creator, String organization, Long parentId) {
+    remove(id);
+    if (!isQueueable(dispatchable, status))
+      return;
+    Entry entry = new Entry(id, jobType, operation, status, dateCreated, creator, organization, parentId);
+    entries.put(id, entry);
+    ordered.add(entry);
+    if (pendingChanges != null)
+      pendingChanges.put(id, entry);
+  }
+
+  /**
+   * Removes the job from the queue.
+   *
+   * @param id
+   *          the job identifier
+   * @return <code>true</code> if the job was queued
+   */
+  synchronized boolean remove(long id) {
+    if (pendingChanges != null)
+      pendingChanges.put(id, null);
+    Entry entry = entries.remove(id);
+    if (entry == null)
+      return false;
+    ordered.remove(entry);
+    return true;
+  }
+
+  /**
+   * Starts recording the changes made to the queue, so that they can be applied on top of the jobs passed to
+   * {@link #reset(Collection)}. This needs to be called before the dispatchable jobs are loaded from the database.
+   */
+  synchronized void beginReset() {
+    pendingChanges = new HashMap<>();
+  }
+
+  /** Stops recording the changes made to the queue without replacing its contents. */
+  synchronized void cancelReset() {
+    pendingChanges = null;
+  }
+
+  /**
+   * Replaces the queue contents with the given entries. Changes that have been made since {@link #beginReset()} was
+   * called take precedence over the given entries.
+   *
+   * @param newEntries
+   *          the jobs that are currently waiting to be dispatched
+   */
+  synchronized void reset(Collection<Entry> newEntries) {
+    Map<Long, Entry> changes = pendingChanges;
+    pendingChanges = null;
+    entries.clear();
+    ordered.clear();
+    for (Entry entry : newEntries) {
+      if (changes != null && changes.containsKey(entry.getId()))
+        continue;
+      entries.put(entry.getId(), entry);
+      ordered.add(entry);
+    }
+    if (changes != null) {
+      for (Entry entry : changes.values()) {
+        if (entry == null)
+          continue;
+        entries.put(entry.getId(), entry);
+        ordered.add(entry);
+      }
+    }
+  }
+
+  /**
+   * Returns whether a job is currently queued.
+   *
+   * @param id
+   *          the job identifier
+   * @return <code>true</code> if the job is queued
+   */
+  synchronized boolean contains(long id) {
+    return entries.containsKey(id);
+  }
+
+  /**
+   * Returns a copy of the queue in dispatching order. Changes to the queue will not be reflected in the returned list.
+   *
+   * @return the queued jobs
+   */
+  synchronized List<Entry> snapshot() {
+    return new ArrayList<>(ordered);
+  }
+
+  /**
+   * Returns the number of queued jobs.
+   *
+   * @return the queue size
+   */
+  synchronized int size() {
+    return entries.size();
+  }
+
+  /** A queued job */
+  static final class Entry {
+
+    private final long id;
+    private final String jobType;
+    private final String operation;
+    private final Status status;
+    private final long dateCreated;
+    private final String creator;
+    private final String organization;
+    private final Long parentId;
+
+    Entry(long id, String jobType, String operation, Status status, long dateCreated, String creator,
+            String organization, Long parentId) {
+      this.id = id;
+      this.jobType = jobType;
+      this.operation = operation;
+      this.status = status;
+      this.dateCreated = dateCreated;
+      this.creator = creator;
+      this.organization = organization;
+      this.parentId = parentId;
+    }
+
+    long getId() {
+      return id;
+    }
+
+    String getJobType() {
+      return jobType;
+    }
+
+    String getOperation() {
+      return operation;
+    }
+
+    Status getStatus() {
+      return status;
+    }
+
+    long getDateCreated() {
+      return dateCreated;
+    }
+
+    String getCreator() {
+      return creator;
+    }
+
+    String getOrganization() {
+      return organization;
+    }
+
+    /** Returns the identifier of the parent job, or <code>null</code> if this is a root job */
+    Long getParentId() {
+      return parentId;
+    }
+
+    boolean isWorkflow() {
+      return ServiceRegistryJpaImpl.TYPE_WORKFLOW.equals(jobType);
+    }
+
+    /** Returns the signature used to skip jobs of a type that can't currently be dispatched */
+    String getSignature() {
+      return new StringBuilder(jobType).append('@').append(operation).toString();
+    }
+
+    @Override
+    public String toString() {
+      return "Job " + id + " (" + jobType + ", " + status + ")";
+    }
+
+  }
+
+}
@@ -0,0 +1,265 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.serviceregistry.impl;
+
+import org.opencastproject.job.api.Job.Status;
+import org.opencastproject.serviceregistry.api.SystemLoad;
+import org.opencastproject.serviceregistry.api.SystemLoad.NodeLoad;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-host record of the load caused by queued, dispatching and running jobs.
+ * <p>
+ * The ledger remembers the host and load of every job that is adding to a host's load, so that it can be adjusted
+ * incrementally whenever a job changes its status or processing host. It is reconciled with the database from time to
+ * time to correct any drift, e. g. caused by changes that have been made to the jobs table directly.
+ * <p>
+ * The ledger also counts the running jobs of every parent job, which tells the dispatcher whether the children of a
+ * job are competing for the available capacity.
+ */
+class HostLoadLedger {
+
+  /** The jobs currently adding to the load, by identifier */
+  private final Map<Long, JobLoad> jobs = new HashMap<>();
+
+  /** The current load by host */
+  private final Map<String, Float> loads = new HashMap<>();
+
+  /** The number of running jobs by parent job identifier */
+  private final Map<Long, Integer> runningChildren = new HashMap<>();
+
+  /** Changes made while the ledger is being reconciled, with <code>null</code> values marking unloading jobs */
+  private Map<Long, JobLoad> pendingChanges = null;
+
+  /** Time of the last reconciliation with the database in milliseconds, or 0 if the ledger has never been filled */
+  private long lastReconciled = 0L;
+
+  /**
+   * Returns <code>true</code> if a job in the given state is adding to its processing host's load.
+   *
+   * @param jobType
+   *          the job type
+   * @param status
+   *          the job status
+   * @return whether the job is adding to the load
+   */
+  static boolean isLoading(String jobType, Status status) {
+    // Workflow related jobs are not counting. Workflows are load balanced by the workflow service directly
+    if (ServiceRegistryJpaImpl.TYPE_WORKFLOW.equals(jobType))
+      return false;
+    return status != null && ServiceRegistryJpaImpl.JOB_STATUSES_INFLUENCING_LOAD_BALANCING.contains(status);
+  }
+
+  /**
+   * Records the current state of a job, moving its load to the current processing host or removing it from the ledger
+   * if the job is no longer adding to any host's load.
+   *
+   * @param id
+   *          the job identifier
+   * @param jobType
+   *          the job type
+   * @param load
+   *          the job load
+   * @param host
+   *          the current processing host, may be <code>null</code>
+   * @param status
+   *          the current job status
+   * @param parentId
+   *          the identifier of the parent job, or <code>null</code> if this is a root job
+   */
+  synchronized void update(long id, String jobType, Float load, String host, Status status, Long parentId) {
+    JobLoad jobLoad = null;
+    if (host != null && load != null && isLoading(jobType, status))
+      jobLoad = new JobLoad(id, host, load, Status.RUNNING.equals(status) ? parentId : null);
+    apply(id, jobLoad);
+    if (pendingChanges != null)
+      pendingChanges.put(id, jobLoad);
+  }
+
+  /**
+   * Removes a job from the ledger.
+   *
+   * @param id
+   *          the job identifier
+   */
+  synchronized void remove(long id) {
+    apply(id, null);
+    if (pendingChanges != null)
+      pendingChanges.put(id, null);
+  }
+
+  private void apply(long id, JobLoad jobLoad) {
+    JobLoad previous = jobLoad != null ? jobs.put(id, jobLoad) : jobs.remove(id);
+    if (previous != null) {
+      add(previous.getHost(), -previous.getLoad());
+      countRunningChild(previous.getRunningParentId(), -1);
+    }
+    if (jobLoad != null) {
+      add(jobLoad.getHost(), jobLoad.getLoad());
+      countRunningChild(jobLoad.getRunningParentId(), 1);
+    }
+  }
+
+  private void countRunningChild(Long parentId, int delta) {
+    if (parentId == null)
+      return;
+    Integer current = runningChildren.get(parentId);
+    int count = (current == null ? 0 : current) + delta;
+    if (count > 0)
+      runningChildren.put(parentId, count);
+    else
+      runningChildren.remove(parentId);
+  }
+
+  private void add(String host, float load) {
+    Float current = loads.get(host);
+    // Don't let rounding errors turn into a negative load
+    loads.put(host, Math.max(0.0f, (current == null ? 0.0f : current) + load));
+  }
+
+  /**
+   * Starts recording the changes made to the ledger, so that they can be applied on top of the job loads passed to
+   * {@link #reconcile(Collection, long)}. This needs to be called before the job loads are loaded from the database.
+   */
+  synchronized void beginReconcile() {
+    pendingChanges = new HashMap<>();
+  }
+
+  /** Stops recording the changes made to the ledger without replacing its contents. */
+  synchronized void cancelReconcile() {
+    pendingChanges = null;
+  }
+
+  /**
+   * Replaces the ledger contents with the given job loads. Changes that have been made since {@link #beginReconcile()}
+   * was called take precedence over the given job loads.
+   *
+   * @param jobLoads
+   *          the loads of all jobs that are currently adding to a host's load
+   * @param now
+   *          the current time in milliseconds
+   */
+  synchronized void reconcile(Collection<JobLoad> jobLoads, long now) {
+    Map<Long, JobLoad> changes = pendingChanges;
+    pendingChanges = null;
+    jobs.clear();
+    loads.clear();
+    runningChildren.clear();
+    for (JobLoad jobLoad : jobLoads) {
+      if (changes != null && changes.containsKey(jobLoad.getId()))
+        continue;
+      apply(jobLoad.getId(), jobLoad);
+    }
+    if (changes != null) {
+      for (Map.Entry<Long, JobLoad> change : changes.entrySet()) {
+        apply(change.getKey(), change.getValue());
+      }
+    }
+    lastReconciled = now;
+  }
+
+  /**
+   * Returns whether the ledger needs to be reconciled with the database.
+   *
+   * @param now
+   *          the current time in milliseconds
+   * @param interval
+   *          the reconciliation interval in milliseconds
+   * @return <code>true</code> if the ledger has not been reconciled within the interval
+   */
+  synchronized boolean isReconciliationDue(long now, long interval) {
+    return lastReconciled == 0L || now - lastReconciled >= interval;
+  }
+
+  /** Forces a reconciliation with the database on the next dispatching round. */
+  synchronized void invalidate() {
+    lastReconciled = 0L;
+  }
+
+  /**
+   * Returns the current load of the given hosts. Hosts without any recorded load are listed with a load of zero.
+   *
+   * @param hosts
+   *          the base URLs of the hosts
+   * @return the system load
+   */
+  synchronized SystemLoad getLoads(Collection<String> hosts) {
+    SystemLoad systemLoad = new SystemLoad();
+    for (String host : hosts) {
+      Float load = loads.get(host);
+      systemLoad.addNodeLoad(new NodeLoad(host, load == null ? 0.0f : load));
+    }
+    return systemLoad;
+  }
+
+  /**
+   * Returns whether any child of the given job is currently running.
+   *
+   * @param parentId
+   *          the identifier of the parent job
+   * @return <code>true</code> if a child job is running
+   */
+  synchronized boolean hasRunningChildren(long parentId) {
+    return runningChildren.containsKey(parentId);
+  }
+
+  /** The load a single job is adding to its processing host */
+  static final class JobLoad {
+
+    private final long id;
+    private final String host;
+    private final float load;
+    private final Long runningParentId;
+
+    /**
+     * @param runningParentId
+     *          the identifier of the parent job if the job is running, <code>null</code> otherwise
+     */
+    JobLoad(long id, String host, float load, Long runningParentId) {
+      this.id = id;
+      this.host = host;
+      this.load = load;
+      this.runningParentId = runningParentId;
+    }
+
+    long getId() {
+      return id;
+    }
+
+    String getHost() {
+      return host;
+    }
+
+    float getLoad() {
+      return load;
+    }
+
+    Long getRunningParentId() {
+      return runningParentId;
+    }
+
+  }
+
+}
@@ -38,8 +38,12 @@ import static org.opencastproject.util.OsgiUtil.getOptContextProperty;
 
 import org.opencastproject.job.api.Job;
 import org.opencastproject.job.api.Job.Status;
+import org.opencastproject.job.api.JobImpl;
 import org.opencastproject.job.jpa.JpaJob;
+import org.opencastproject.message.broker.api.MessageSender;
+import org.opencastproject.message.broker.api.serviceregistry.ServiceRegistryItem;
 import org.opencastproject.rest.RestConstants;
+import org.opencastproject.security.api.DefaultOrganization;
 import org.opencastproject.security.api.Organization;
 import org.opencastproject.security.api.OrganizationDirectoryService;
 import org.opencastproject.security.api.SecurityService;
@@ -47,9 +51,11 @@ import org.opencastproject.security.api.TrustedHttpClient;
 import org.opencastproject.security.api.TrustedHttpClientException;
 import org.opencastproject.security.api.User;
 import org.opencastproject.security.api.UserDirectoryService;
+import org.opencastproject.security.util.SecurityUtil;
 import org.opencastproject.serviceregistry.api.HostRegistration;
 import org.opencastproject.serviceregistry.api.IncidentService;
 import org.opencastproject.serviceregistry.api.Incidents;
+import org.opencastproject.serviceregistry.api.JobCompletionNotifier;
 import org.opencastproject.serviceregistry.api.JaxbServiceStatistics;
 import org.opencastproject.serviceregistry.api.ServiceRegistration;
 import org.opencastproject.serviceregistry.api.ServiceRegistry;
@@ -65,6 +71,7 @@ import org.opencastproject.serviceregistry.impl.jpa.ServiceRegistrationJpaImpl;
 import org.opencastproject.systems.MatterhornConstants;
 import org.opencastproject.util.NotFoundException;
 import org.opencastproject.util.UrlSupport;
+import org.opencastproject.util.data.Effect0;
 import org.opencastproject.util.data.functions.Strings;
 import org.opencastproject.util.jmx.JmxUtil;
 
@@ -73,12 +80,14 @@ import com.entwinemedia.fn.Fn2;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.apache.commons.lang3.time.DateUtils;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpHead;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.conn.ConnectTimeoutException;
 import org.apache.http.message.BasicNameValuePair;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.InvalidSyntaxException;
@@ -90,24 +99,39 @@ import org.osgi.util.tracker.ServiceTracker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.net.ConnectException;
 import java.net.InetAddress;
+import java.net.NoRouteToHostException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.management.ObjectInstance;
 import javax.persistence.EntityManager;
@@ -174,9 +198,27 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
   /** Configuration key for the interval to check whether the hosts in the service registry are still alive [sec] * */
   protected static final String OPT_HEARTBEATINTERVAL = "heartbeat.interval";
 
+  /** Configuration key for the maximum number of hosts that are checked by the heartbeat at the same time */
+  protected static final String OPT_HEARTBEAT_PARALLELISM = "heartbeat.parallelism";
+
+  /** Configuration key for the time after which a heartbeat check on a single service is given up [sec] */
+  protected static final String OPT_HEARTBEAT_TIMEOUT = "heartbeat.timeout";
+
   /** Configuration key for the collection of job statistics */
   protected static final String OPT_JOBSTATISTICS = "jobstats.collect";
 
+  /** Configuration key for dispatching from the in-memory dispatch queue and host load ledger */
+  protected static final String OPT_DISPATCH_INMEMORY = "dispatch.inmemory";
+
+  /** Configuration key for the interval to reconcile the in-memory dispatch state with the database [sec] */
+  protected static final String OPT_DISPATCH_RECONCILE_INTERVAL = "dispatch.reconcile.interval";
+
+  /** Configuration key for waking up the dispatcher as soon as jobs are created or terminated */
+  protected static final String OPT_DISPATCH_TRIGGER = "dispatch.trigger";
+
+  /** Configuration key for the minimum delay between two rounds of dispatching woken up by job events [ms] */
+  protected static final String OPT_DISPATCH_TRIGGER_MIN_GAP = "dispatch.trigger.mingap";
+
   /** Configuration key for the retrieval of service statistics: Do not consider jobs older than max_job_age (in days) */
   protected static final String OPT_SERVICE_STATISTICS_MAX_JOB_AGE = "org.opencastproject.statistics.services.max_job_age";
 
@@ -196,6 +238,21 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
   /** Default setting on job statistics collection */
   static final boolean DEFAULT_JOB_STATISTICS = true;
 
+  /** The maximum number of job ids passed to a single query, since databases limit the size of IN clauses */
+  static final int MAX_JOB_IDS_PER_QUERY = 500;
+
+  /** Default setting on in-memory dispatching */
+  static final boolean DEFAULT_DISPATCH_INMEMORY = false;
+
+  /** Default interval between reconciliations of the in-memory dispatch state with the database in seconds */
+  static final long DEFAULT_DISPATCH_RECONCILE_INTERVAL = 60;
+
+  /** Default setting on waking up the dispatcher on job events */
+  static final boolean DEFAULT_DISPATCH_TRIGGER = true;
+
+  /** Default minimum delay between two rounds of dispatching woken up by job events, in milliseconds */
+  static final long DEFAULT_DISPATCH_TRIGGER_MIN_GAP = 500;
+
   /** Default setting on service statistics retrieval */
   static final int DEFAULT_SERVICE_STATISTICS_MAX_JOB_AGE = 14;
 
@@ -211,6 +268,12 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
   /** Default delay between checking if hosts are still alive in seconds * */
   static final long DEFAULT_HEART_BEAT = 60;
 
+  /** Default maximum number of hosts that are checked by the heartbeat at the same time */
+  static final int DEFAULT_HEARTBEAT_PARALLELISM = 8;
+
+  /** Default time after which a heartbeat check on a single service is given up in seconds */
+  static final long DEFAULT_HEARTBEAT_TIMEOUT = 10;
+
   /** This host's base URL */
   protected String hostName;
 
@@ -226,6 +289,26 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
   /** The thread pool to use for dispatching queued jobs and checking on phantom services. */
   protected ScheduledExecutorService scheduledExecutor = Executors.newScheduledThreadPool(2);
 
+  /** The thread pool to use for checking on the hosts in parallel during the heartbeat */
+  protected volatile ExecutorService heartbeatExecutor = Executors.newFixedThreadPool(DEFAULT_HEARTBEAT_PARALLELISM);
+
+  /**
+   * The timer aborting heartbeat checks that take too long. It has a thread of its own, so that the checks are aborted
+   * in time no matter how busy the dispatcher is.
+   */
+  protected final ScheduledExecutorService probeTimer = Executors.newSingleThreadScheduledExecutor(
+          new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+              Thread thread = new Thread(r, "Service registry heartbeat timer");
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+
+  /** The time after which a heartbeat check on a single service is given up in milliseconds */
+  protected volatile long heartbeatProbeTimeout = TimeUnit.SECONDS.toMillis(DEFAULT_HEARTBEAT_TIMEOUT);
+
   /** The security service */
   protected SecurityService securityService = null;
 
@@ -237,6 +320,18 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
 
   protected Incidents incidents;
 
+  /** Wakes up the threads waiting for jobs to terminate */
+  protected final JobCompletionNotifier jobCompletionNotifier = new JobCompletionNotifier();
+
+  /** The message sender announcing changes of the service registrations, if a message broker is available */
+  protected MessageSender messageSender = null;
+
+  /** Sends the announcements, so that registry changes are not held up by the message broker */
+  private final ExecutorService announcementExecutor = Executors.newSingleThreadExecutor();
+
+  /** The name of the system user the announcements are sent as */
+  private String systemUserName = null;
+
   /** Whether to collect detailed job statistics */
   protected boolean collectJobstats = DEFAULT_JOB_STATISTICS;
 
@@ -259,6 +354,36 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
   /** Whether to accept a job whose load exceeds the host’s max load */
   protected Boolean acceptJobLoadsExeedingMaxLoad = true;
 
+  /** Whether to dispatch from the in-memory dispatch queue and host load ledger instead of querying the database */
+  protected volatile boolean inMemoryDispatch = DEFAULT_DISPATCH_INMEMORY;
+
+  /** Interval between reconciliations of the in-memory dispatch state with the database in milliseconds */
+  protected long dispatchReconcileInterval = TimeUnit.SECONDS.toMillis(DEFAULT_DISPATCH_RECONCILE_INTERVAL);
+
+  /** The jobs waiting to be dispatched, if in-memory dispatching is enabled */
+  protected final DispatchQueue dispatchQueue = new DispatchQueue();
+
+  /** The load per host, if in-memory dispatching is enabled */
+  protected final HostLoadLedger hostLoadLedger = new HostLoadLedger();
+
+  /** The current delay between two rounds of scheduled dispatching in milliseconds, 0 if dispatching is disabled */
+  protected volatile long dispatchInterval = DEFAULT_DISPATCH_INTERVAL;
+
+  /** Whether to wake up the dispatcher as soon as jobs are created or terminated */
+  protected volatile boolean dispatchOnJobEvents = DEFAULT_DISPATCH_TRIGGER;
+
+  /** Minimum delay between two rounds of dispatching woken up by job events in milliseconds */
+  protected volatile long dispatchTriggerMinGap = DEFAULT_DISPATCH_TRIGGER_MIN_GAP;
+
+  /** Whether a round of dispatching has been requested by a job event and not been started yet */
+  private final AtomicBoolean dispatchRequested = new AtomicBoolean(false);
+
+  /** Lock making sure that only one round of dispatching is running at any time */
+  private final ReentrantLock dispatchLock = new ReentrantLock();
+
+  /** Start time of the latest round of dispatching in milliseconds */
+  private volatile long lastDispatchStarted = 0L;
+
   /** OSGi DI */
   void setEntityManagerFactory(EntityManagerFactory emf) {
     this.emf = emf;
@@ -273,6 +398,8 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
     } else {
       hostName = cc.getBundleContext().getProperty(MatterhornConstants.SERVER_URL_PROPERTY);
     }
+    if (cc != null)
+      systemUserName = SecurityUtil.getSystemUserName(cc);
 
     // Clean all undispatchable jobs that were orphaned when this host was last deactivated
     cleanUndispatchableJobs(hostName);
@@ -372,6 +499,12 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
     if (scheduledExecutor != null) {
       scheduledExecutor.shutdownNow();
     }
+    if (heartbeatExecutor != null) {
+      heartbeatExecutor.shutdownNow();
+    }
+    probeTimer.shutdownNow();
+    // Let the announcement of this host going offline go out
+    announcementExecutor.shutdown();
   }
 
   /**
@@ -570,6 +703,16 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
       em.persist(jpaJob);
       tx.commit();
 
+      if (inMemoryDispatch) {
+        Date created = jpaJob.getDateCreated();
+        dispatchQueue.update(jpaJob.getId(), serviceType, operation, jpaJob.getStatus(), dispatchable,
+                created != null ? created.getTime() : System.currentTimeMillis(), jpaJob.getCreator(),
+                jpaJob.getOrganization(), parentJob != null ? parentJob.getId() : null);
+      }
+      if (dispatchable) {
+        requestDispatch();
+      }
+
       setJobUri(jpaJob);
       Job job = jpaJob.toJob();
       return job;
@@ -607,6 +750,11 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
       tx.begin();
       em.remove(job);
       tx.commit();
+      if (inMemoryDispatch) {
+        dispatchQueue.remove(jobId);
+        hostLoadLedger.remove(jobId);
+      }
+      jobCompletionNotifier.jobTerminated(jobId);
       logger.debug("Job with ID '{}' deleted", jobId);
     } catch (NotFoundException e) {
       throw e;
@@ -642,6 +790,7 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
         tx.begin();
         em.remove(jobToDelete);
         tx.commit();
+        jobCompletionNotifier.jobTerminated(job.getId());
         logger.debug("Job '{}' deleted", job.getId());
       }
       logger.debug("Deleted all child jobs of job '{}'", jobId);
@@ -762,6 +911,39 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
       }
     }
 
+    int heartbeatParallelism = DEFAULT_HEARTBEAT_PARALLELISM;
+    String heartbeatParallelismString = StringUtils.trimToNull((String) properties.get(OPT_HEARTBEAT_PARALLELISM));
+    if (heartbeatParallelismString != null) {
+      try {
+        heartbeatParallelism = Integer.parseInt(heartbeatParallelismString);
+      } catch (NumberFormatException e) {
+        logger.warn("Heartbeat parallelism '{}' is malformed, setting to {}", heartbeatParallelismString,
+                DEFAULT_HEARTBEAT_PARALLELISM);
+      }
+      if (heartbeatParallelism < 1) {
+        logger.warn("Heartbeat parallelism {} too low, adjusting to {}", heartbeatParallelism,
+                DEFAULT_HEARTBEAT_PARALLELISM);
+        heartbeatParallelism = DEFAULT_HEARTBEAT_PARALLELISM;
+      }
+    }
+
+    long heartbeatTimeout = DEFAULT_HEARTBEAT_TIMEOUT;
+    String heartbeatTimeoutString = StringUtils.trimToNull((String) properties.get(OPT_HEARTBEAT_TIMEOUT));
+    if (heartbeatTimeoutString != null) {
+      try {
+        heartbeatTimeout = Long.parseLong(heartbeatTimeoutString);
+      } catch (NumberFormatException e) {
+        logger.warn("Heartbeat timeout '{}' is malformed, setting to {}", heartbeatTimeoutString,
+                DEFAULT_HEARTBEAT_TIMEOUT);
+      }
+      if (heartbeatTimeout <= 0) {
+        logger.warn("Heartbeat timeout {} seconds too low, adjusting to {}", heartbeatTimeout,
+                DEFAULT_HEARTBEAT_TIMEOUT);
+        heartbeatTimeout = DEFAULT_HEARTBEAT_TIMEOUT;
+      }
+    }
+    heartbeatProbeTimeout = TimeUnit.SECONDS.toMillis(heartbeatTimeout);
+
     String jobStatsString = StringUtils.trimToNull((String) properties.get(OPT_JOBSTATISTICS));
     if (StringUtils.isNotBlank(jobStatsString)) {
       try {
@@ -773,6 +955,60 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
       }
     }
 
+    boolean dispatchInMemory = DEFAULT_DISPATCH_INMEMORY;
+    String dispatchInMemoryString = StringUtils.trimToNull((String) properties.get(OPT_DISPATCH_INMEMORY));
+    if (dispatchInMemoryString != null) {
+      dispatchInMemory = Boolean.valueOf(dispatchInMemoryString);
+    }
+
+    long reconcileInterval = DEFAULT_DISPATCH_RECONCILE_INTERVAL;
+    String reconcileIntervalString = StringUtils.trimToNull((String) properties.get(OPT_DISPATCH_RECONCILE_INTERVAL));
+    if (reconcileIntervalString != null) {
+      try {
+        reconcileInterval = Long.parseLong(reconcileIntervalString);
+      } catch (NumberFormatException e) {
+        logger.warn("Dispatch reconciliation interval '{}' is malformed, setting to {}", reconcileIntervalString,
+                DEFAULT_DISPATCH_RECONCILE_INTERVAL);
+      }
+      if (reconcileInterval <= 0) {
+        logger.warn("Dispatch reconciliation interval {} seconds too low, adjusting to {}", reconcileInterval,
+                DEFAULT_DISPATCH_RECONCILE_INTERVAL);
+        reconcileInterval = DEFAULT_DISPATCH_RECONCILE_INTERVAL;
+      }
+    }
+    dispatchReconcileInterval = TimeUnit.SECONDS.toMillis(reconcileInterval);
+
+    String dispatchTriggerString = StringUtils.trimToNull((String) properties.get(OPT_DISPATCH_TRIGGER));
+    dispatchOnJobEvents = dispatchTriggerString != null ? Boolean.valueOf(dispatchTriggerString)
+            : DEFAULT_DISPATCH_TRIGGER;
+
+    long triggerMinGap = DEFAULT_DISPATCH_TRIGGER_MIN_GAP;
+    String triggerMinGapString = StringUtils.trimToNull((String) properties.get(OPT_DISPATCH_TRIGGER_MIN_GAP));
+    if (triggerMinGapString != null) {
+      try {
+        triggerMinGap = Long.parseLong(triggerMinGapString);
+      } catch (NumberFormatException e) {
+        logger.warn("Dispatch trigger minimum gap '{}' is malformed, setting to {}", triggerMinGapString,
+                DEFAULT_DISPATCH_TRIGGER_MIN_GAP);
+      }
+      if (triggerMinGap < 0) {
+        logger.warn("Dispatch trigger minimum gap {} ms too low, adjusting to {}", triggerMinGap,
+                DEFAULT_DISPATCH_TRIGGER_MIN_GAP);
+        triggerMinGap = DEFAULT_DISPATCH_TRIGGER_MIN_GAP;
+      }
+    }
+    dispatchTriggerMinGap = triggerMinGap;
+
+    if (dispatchInMemory != inMemoryDispatch) {
+      // Make sure the in-memory state is loaded from the database before it is used for dispatching
+      hostLoadLedger.invalidate();
+      inMemoryDispatch = dispatchInMemory;
+    }
+    if (inMemoryDispatch) {
+      logger.info("Dispatching from the in-memory dispatch queue, reconciling with the database every {} seconds",
+              reconcileInterval);
+    }
+
     String maxJobAgeString = StringUtils.trimToNull((String) properties.get(OPT_SERVICE_STATISTICS_MAX_JOB_AGE));
     if (maxJobAgeString != null) {
       try {
@@ -789,6 +1025,10 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
       scheduledExecutor.shutdown();
       scheduledExecutor = Executors.newScheduledThreadPool(2);
     }
+    if (heartbeatExecutor != null) {
+      heartbeatExecutor.shutdown();
+    }
+    heartbeatExecutor = Executors.newFixedThreadPool(heartbeatParallelism);
 
     // Schedule the service heartbeat if the interval is > 0
     if (heartbeatInterval > 0) {
@@ -797,7 +1037,8 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
               TimeUnit.SECONDS);
     }
 
-    // Schedule the job dispatching.
+    // Schedule the job dispatching. Rounds triggered by job events are scheduled on demand.
+    this.dispatchInterval = dispatchInterval;
     if (dispatchInterval > 0) {
       logger.debug("Starting job dispatching at a custom interval of {}s", DEFAULT_DISPATCH_INTERVAL / 1000);
       scheduledExecutor.scheduleWithFixedDelay(new JobDispatcher(), dispatchInterval, dispatchInterval,
@@ -835,6 +1076,42 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
     return getJpaJob(id).toJob();
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * @see org.opencastproject.serviceregistry.api.ServiceRegistry#waitForTerminatedJobs(List, long)
+   */
+  @Override
+  public List<Job> waitForTerminatedJobs(List<Long> ids, long timeout) throws NotFoundException,
+          ServiceRegistryException {
+    final long end = System.currentTimeMillis() + timeout;
+    // Subscribe before looking at the jobs, so that no termination in between goes unnoticed
+    final JobCompletionNotifier.Subscription subscription = jobCompletionNotifier.subscribe(ids);
+    try {
+      while (true) {
+        List<Job> statuses = getJobs(ids, false);
+        if (statuses.size() < new HashSet<Long>(ids).size())
+          throw new NotFoundException("One of the jobs " + ids + " does not exist");
+        // Only the terminated jobs are loaded completely
+        List<Job> terminated = new ArrayList<Job>();
+        for (Job status : statuses) {
+          if (status.getStatus().isTerminated())
+            terminated.add(getJob(status.getId()));
+        }
+        final long left = end - System.currentTimeMillis();
+        if (!terminated.isEmpty() || left <= 0)
+          return terminated;
+        // Job updates from all nodes go through this registry, so its notifier learns about every termination
+        subscription.await(left);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ServiceRegistryException("Interrupted while waiting for jobs " + ids, e);
+    } finally {
+      subscription.cancel();
+    }
+  }
+
   /**
    * {@inheritDoc}
    *
@@ -867,6 +1144,11 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
         updateServiceForFailover(job);
       }
 
+      // A terminated job frees up capacity, and may allow the next workflow operation to be dispatched
+      if (oldJob.getStatus() != job.getStatus() && job.getStatus().isTerminated()) {
+        requestDispatch();
+      }
+
       return jpaJob;
     } catch (PersistenceException e) {
       throw new ServiceRegistryException(e);
@@ -930,6 +1212,11 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
       tx.commit();
       job.setVersion(fromDb.toJob().getVersion());
       setJobUri(job);
+      if (inMemoryDispatch) {
+        updateDispatchState(fromDb);
+      }
+      if (fromDb.getStatus().isTerminated())
+        jobCompletionNotifier.jobTerminated(job.getId());
       return job;
     } catch (PersistenceException e) {
       if (tx.isActive()) {
@@ -939,6 +1226,23 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
     }
   }
 
+  /**
+   * Records a job's current status in the in-memory dispatch queue and host load ledger.
+   *
+   * @param job
+   *          the job as it has been persisted
+   */
+  private void updateDispatchState(JpaJob job) {
+    Date created = job.getDateCreated();
+    ServiceRegistrationJpaImpl processor = job.getProcessorServiceRegistration();
+    Long parentId = job.getParentJob() != null ? job.getParentJob().getId() : null;
+    dispatchQueue.update(job.getId(), job.getJobType(), job.getOperation(), job.getStatus(), job.isDispatchable(),
+            created != null ? created.getTime() : System.currentTimeMillis(), job.getCreator(), job.getOrganization(),
+            parentId);
+    hostLoadLedger.update(job.getId(), job.getJobType(), job.getJobLoad(),
+            processor != null ? processor.getHost() : null, job.getStatus(), parentId);
+  }
+
   /**
    * Internal method to update the service registration state, throwing unwrapped JPA exceptions.
    *
@@ -967,6 +1271,7 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
       fromDb.setErrorStateTrigger(registration.getErrorStateTrigger());
       tx.commit();
       servicesStatistics.updateService(registration);
+      announceRegistrationChange(registration.getServiceType(), registration.getHost());
       return registration;
     } catch (PersistenceException e) {
       if (tx.isActive()) {
@@ -1093,6 +1398,7 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
       logger.info("Registering {} with a maximum load of {}", host, maxLoad);
       tx.commit();
       hostsStatistics.updateHost(hostRegistration);
+      announceRegistrationChange(null, host);
     } catch (Exception e) {
       if (tx != null && tx.isActive()) {
         tx.rollback();
@@ -1131,6 +1437,7 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
       logger.info("Unregistering {}", host);
       tx.commit();
       hostsStatistics.updateHost(existingHostRegistration);
+      announceRegistrationChange(null, host);
     } catch (Exception e) {
       if (tx != null && tx.isActive()) {
         tx.rollback();
@@ -1174,6 +1481,7 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
       }
       tx.commit();
       hostsStatistics.updateHost(hostRegistration);
+      announceRegistrationChange(null, host);
     } catch (NotFoundException e) {
       throw e;
     } catch (Exception e) {
@@ -1216,6 +1524,7 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
       logger.info("Disabling {}", host);
       tx.commit();
       hostsStatistics.updateHost(hostRegistration);
+      announceRegistrationChange(null, host);
     } catch (NotFoundException e) {
       throw e;
     } catch (Exception e) {
@@ -1319,6 +1628,7 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
       tx.commit();
       hostsStatistics.updateHost(hostRegistration);
       servicesStatistics.updateService(registration);
+      announceRegistrationChange(serviceType, baseUrl);
       return registration;
     } catch (Exception e) {
       if (tx != null && tx.isActive()) {
@@ -1442,6 +1752,8 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
         em.merge(job);
       }
       tx.commit();
+      // Rescheduled jobs have been changed in the database directly
+      hostLoadLedger.invalidate();
     } catch (Exception e) {
       if (tx != null && tx.isActive()) {
         tx.rollback();
@@ -1493,6 +1805,7 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
       em.merge(reg);
       tx.commit();
       hostsStatistics.updateHost(reg);
+      announceRegistrationChange(null, baseUrl);
     } catch (RollbackException e) {
       if (tx != null && tx.isActive()) {
         tx.rollback();
@@ -1625,6 +1938,56 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
     return resultJobs;
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * @see org.opencastproject.serviceregistry.api.ServiceRegistry#getJobs(java.util.Collection, boolean)
+   */
+  @Override
+  public List<Job> getJobs(Collection<Long> ids, boolean withFinishedPayloads) throws ServiceRegistryException {
+    final List<Long> distinctIds = new ArrayList<Long>(new LinkedHashSet<Long>(ids));
+    final Map<Long, Job> jobs = new HashMap<Long, Job>();
+    EntityManager em = null;
+    try {
+      em = emf.createEntityManager();
+      for (int i = 0; i < distinctIds.size(); i += MAX_JOB_IDS_PER_QUERY) {
+        List<Long> chunk = distinctIds.subList(i, Math.min(i + MAX_JOB_IDS_PER_QUERY, distinctIds.size()));
+        Query query = em.createNamedQuery("Job.status.ids");
+        query.setParameter("ids", chunk);
+        for (Object result : query.getResultList()) {
+          Object[] row = (Object[]) result;
+          Job job = new JobImpl((Long) row[0]);
+          job.setStatus(Status.values()[((Number) row[1]).intValue()]);
+          jobs.put(job.getId(), job);
+        }
+        if (withFinishedPayloads) {
+          // The payloads are large, so they are only read where they are of interest
+          query = em.createNamedQuery("Job.payload.status.ids");
+          query.setParameter("status", Status.FINISHED.ordinal());
+          query.setParameter("ids", chunk);
+          for (Object result : query.getResultList()) {
+            Object[] row = (Object[]) result;
+            Job job = jobs.get(row[0]);
+            if (job != null)
+              job.setPayload((String) row[1]);
+          }
+        }
+      }
+    } catch (Exception e) {
+      throw new ServiceRegistryException(e);
+    } finally {
+      if (em != null)
+        em.close();
+    }
+    final List<Job> result = new ArrayList<Job>(jobs.size());
+    for (Long id : distinctIds) {
+      Job job = jobs.get(id);
+      if (job != null)
+        result.add(job);
+    }
+    return result;
+  }
+
   /**
    * {@inheritDoc}
    *
@@ -1760,6 +2123,55 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
     }
   }
 
+  /**
+   * Replaces the contents of the in-memory dispatch queue and host load ledger with the current state of the database.
+   *
+   * @param em the entity manager
+   * @param now the current time in milliseconds
+   * @throws ServiceRegistryException if there is a problem communicating with the jobs database
+   */
+  protected void reconcileDispatchState(EntityManager em, long now) throws ServiceRegistryException {
+    dispatchQueue.beginReset();
+    hostLoadLedger.beginReconcile();
+    List<DispatchQueue.Entry> entries = new ArrayList<>();
+    List<HostLoadLedger.JobLoad> jobLoads = new ArrayList<>();
+    try {
+      Query query = em.createNamedQuery("Job.dispatchable.status.queue");
+      query.setParameter("statuses", Arrays.asList(Status.RESTART.ordinal(), Status.QUEUED.ordinal()));
+      for (Object result : query.getResultList()) {
+        Object[] row = (Object[]) result;
+        Date created = (Date) row[4];
+        entries.add(new DispatchQueue.Entry((Long) row[0], (String) row[1], (String) row[2],
+                Status.values()[((Number) row[3]).intValue()], created != null ? created.getTime() : now,
+                (String) row[5], (String) row[6], (Long) row[7]));
+      }
+
+      List<Integer> statuses = new ArrayList<>();
+      for (Status status : JOB_STATUSES_INFLUENCING_LOAD_BALANCING) {
+        statuses.add(status.ordinal());
+      }
+      query = em.createNamedQuery("ServiceRegistration.jobloads");
+      query.setParameter("statuses", statuses);
+      query.setParameter("workflowType", TYPE_WORKFLOW);
+      for (Object result : query.getResultList()) {
+        Object[] row = (Object[]) result;
+        if (row[2] == null)
+          continue;
+        boolean running = Status.RUNNING.ordinal() == ((Number) row[3]).intValue();
+        jobLoads.add(new HostLoadLedger.JobLoad((Long) row[0], (String) row[1], ((Number) row[2]).floatValue(),
+                running ? (Long) row[4] : null));
+      }
+    } catch (Exception e) {
+      dispatchQueue.cancelReset();
+      hostLoadLedger.cancelReconcile();
+      throw new ServiceRegistryException(e);
+    }
+    dispatchQueue.reset(entries);
+    hostLoadLedger.reconcile(jobLoads, now);
+    logger.debug("Reconciled dispatch queue ({} jobs) and host load ledger ({} jobs) with the database",
+            entries.size(), jobLoads.size());
+  }
+
   /**
    * Return dispatchable job ids, where the job status is RESTART or QUEUED and the job id is listed in the given set.
    *
@@ -2320,6 +2732,53 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
     this.incidents = new Incidents(this, incidentService);
   }
 
+  /** OSGi DI. */
+  public void setMessageSender(MessageSender messageSender) {
+    this.messageSender = messageSender;
+  }
+
+  /** OSGi DI. */
+  public void unsetMessageSender(MessageSender messageSender) {
+    if (this.messageSender == messageSender)
+      this.messageSender = null;
+  }
+
+  /**
+   * Announces a change of the service registrations to the remote service registries, so that they drop the rankings
+   * they have cached for the service type.
+   *
+   * @param serviceType
+   *          the service type, or <code>null</code> if all services of the host are affected
+   * @param host
+   *          the host
+   */
+  private void announceRegistrationChange(final String serviceType, final String host) {
+    final MessageSender sender = messageSender;
+    if (sender == null)
+      return;
+    final ServiceRegistryItem item = serviceType == null ? ServiceRegistryItem.hostChanged(host)
+            : ServiceRegistryItem.serviceChanged(serviceType, host);
+    try {
+      announcementExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          // Registry changes happen outside of any organization, e.g. when a host comes up
+          Organization organization = new DefaultOrganization();
+          SecurityUtil.runAs(securityService, organization, SecurityUtil.createSystemUser(systemUserName, organization),
+                  new Effect0() {
+                    @Override
+                    protected void run() {
+                      sender.sendObjectMessage(ServiceRegistryItem.SERVICE_REGISTRY_TOPIC,
+                              MessageSender.DestinationType.Topic, item);
+                    }
+                  });
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      logger.debug("Not announcing change of {} on {} while shutting down", serviceType, host);
+    }
+  }
+
   /**
    * Update the jobs failure history and the service status with the given information. All these data are then use for
    * the jobs failover strategy. Only the terminated job (with FAILED or FINISHED status) are taken into account.
@@ -2778,6 +3237,30 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
     }
   };
 
+  /**
+   * Wakes up the job dispatcher, e. g. because a new job has been queued or a job has terminated and freed up
+   * capacity. Requests are coalesced into a single round of dispatching, which is started no earlier than the
+   * configured minimum gap after the previous round.
+   */
+  protected void requestDispatch() {
+    if (!dispatchOnJobEvents || dispatchInterval <= 0)
+      return;
+    if (dispatchRequested.compareAndSet(false, true))
+      scheduleTriggeredDispatch();
+  }
+
+  /** Schedules a round of dispatching on behalf of a job event, honoring the minimum gap between two rounds. */
+  private void scheduleTriggeredDispatch() {
+    long delay = Math.max(0L, lastDispatchStarted + dispatchTriggerMinGap - System.currentTimeMillis());
+    try {
+      scheduledExecutor.schedule(new JobDispatcher(true), delay, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      // The executor is being replaced or shut down, the scheduled dispatching will pick up the job
+      logger.debug("Unable to wake up the job dispatcher: {}", e.getMessage());
+      dispatchRequested.set(false);
+    }
+  }
+
   /**
    * This dispatcher implementation will check for jobs in the QUEUED {@link Status}. If
    * new jobs are found, the dispatcher will attempt to dispatch each job to the least loaded service.
@@ -2787,6 +3270,24 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
     /** A list with job types that cannot be dispatched in each interation */
     private List<String> undispatchableJobTypes = null;
 
+    /** Whether this round of dispatching has been requested by a job event rather than by the schedule */
+    private final boolean triggered;
+
+    /** Creates a dispatcher that is run on a fixed schedule. */
+    JobDispatcher() {
+      this(false);
+    }
+
+    /**
+     * Creates a dispatcher.
+     *
+     * @param triggered
+     *          whether the dispatcher is run because of a job event
+     */
+    JobDispatcher(boolean triggered) {
+      this.triggered = triggered;
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -2794,6 +3295,31 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
      */
     @Override
     public void run() {
+      // A round that has been started in the meantime already took care of the request
+      if (triggered && !dispatchRequested.get())
+        return;
+
+      // Only one round of dispatching at a time. The running round reschedules pending requests once it is done.
+      if (!dispatchLock.tryLock()) {
+        logger.trace("Skipping round of dispatching, the dispatcher is still busy");
+        return;
+      }
+      try {
+        dispatchRequested.set(false);
+        lastDispatchStarted = System.currentTimeMillis();
+        dispatch();
+      } finally {
+        dispatchLock.unlock();
+      }
+
+      if (dispatchRequested.get())
+        scheduleTriggeredDispatch();
+    }
+
+    /**
+     * Runs one round of dispatching.
+     */
+    private void dispatch() {
       undispatchableJobTypes = new ArrayList<String>();
       EntityManager em = null;
       try {
@@ -2806,6 +3332,11 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
           jobsStatistics.updateJobCount(getCountPerHostService(em));
         }
 
+        if (inMemoryDispatch) {
+          dispatchQueuedJobs(em);
+          return;
+        }
+
         if (!dispatchPriorityList.isEmpty()) {
           // Remove outdated jobs from priority list
           List<Long> jobIds = getDispatchableJobsWithIdFilter(em, dispatchPriorityList.keySet());
@@ -2871,114 +3402,257 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
     }
 
     /**
-     * Dispatch the given jobs.
+     * Dispatch the jobs waiting in the in-memory dispatch queue, reconciling the queue and the host load ledger with
+     * the database first if necessary. The service registrations are loaded once per round, and a queued job is only
+     * loaded once there is a service to dispatch it to.
      *
      * @param em the entity manager
-     * @param jobsToDispatch list with dispatchable jobs to dispatch
+     * @throws ServiceRegistryException if there is a problem communicating with the jobs database
      */
-    private void dispatchDispatchableJobs(EntityManager em, List<JpaJob> jobsToDispatch) {
-      for (JpaJob job : jobsToDispatch) {
+    private void dispatchQueuedJobs(EntityManager em) throws ServiceRegistryException {
+      long now = System.currentTimeMillis();
+      if (hostLoadLedger.isReconciliationDue(now, dispatchReconcileInterval)) {
+        reconcileDispatchState(em, now);
+      }
 
-        // Remember the job type
-        String jobType = job.getJobType();
+      // Remove outdated jobs from priority list
+      for (Long jobId : new HashSet<>(dispatchPriorityList.keySet())) {
+        if (!dispatchQueue.contains(jobId))
+          dispatchPriorityList.remove(jobId);
+      }
 
+      List<DispatchQueue.Entry> entries = dispatchQueue.snapshot();
+      if (entries.isEmpty())
+        return;
+
+      List<HostRegistration> hostRegistrations = getHostRegistrations(em);
+      List<ServiceRegistration> services = getServiceRegistrations(em);
+      for (DispatchQueue.Entry entry : entries) {
         // Skip jobs that we already know can't be dispatched except of jobs in the priority list
-        String jobSignature = new StringBuilder(jobType).append('@').append(job.getOperation()).toString();
-        if (undispatchableJobTypes.contains(jobSignature) && !dispatchPriorityList.keySet().contains(job.getId())) {
-          logger.trace("Skipping dispatching of jobs {} with type '{}' for this round of dispatching", job.getId(),
-                  jobType);
+        if (undispatchableJobTypes.contains(entry.getSignature()) && !dispatchPriorityList.containsKey(entry.getId())) {
+          logger.trace("Skipping dispatching of {} for this round of dispatching", entry);
           continue;
         }
+        dispatchQueuedJob(em, entry, hostRegistrations, services);
+      }
+    }
 
-        // Set the job's user and organization prior to dispatching
-        String creator = job.getCreator();
-        String creatorOrganization = job.getOrganization();
+    /**
+     * Dispatch a job from the in-memory dispatch queue. The services the job may be dispatched to are chosen based on
+     * the queue entry and the host load ledger, without touching the database.
+     *
+     * @param em the entity manager
+     * @param entry the queued job
+     * @param hostRegistrations the host registrations
+     * @param services the service registrations
+     */
+    private void dispatchQueuedJob(EntityManager em, DispatchQueue.Entry entry,
+            List<HostRegistration> hostRegistrations, List<ServiceRegistration> services) {
+      if (!setDispatchContext(entry.getId(), entry.getCreator(), entry.getOrganization()))
+        return;
 
-        // Try to load the organization.
-        Organization organization = null;
-        try {
-          organization = organizationDirectoryService.getOrganization(creatorOrganization);
-          securityService.setOrganization(organization);
-        } catch (NotFoundException e) {
-          logger.debug("Skipping dispatching of job for non-existing organization '{}'", creatorOrganization);
-          continue;
+      try {
+        String jobType = entry.getJobType();
+        SystemLoad systemLoad = hostLoadLedger.getLoads($(hostRegistrations).map(toBaseUrl).toList());
+        List<HostRegistration> hosts = $(hostRegistrations).filter(filterOutPriorityHosts._2(entry.getId())).toList();
+        Long parentId = entry.getParentId();
+        boolean capacityOnly = parentId == null || TYPE_WORKFLOW.equals(jobType)
+                || hostLoadLedger.hasRunningChildren(parentId);
+        List<ServiceRegistration> candidateServices = getCandidateServices(entry.getId(), jobType, capacityOnly,
+                services, hosts, systemLoad);
+        if (candidateServices.isEmpty()) {
+          markUnavailable(jobType, entry.getOperation(), entry.getSignature());
+          return;
         }
 
-        // Try to load the user
-        User user = userDirectoryService.loadUser(creator);
-        if (user == null) {
-          logger.warn("Unable to dispatch job {}: creator '{}' is not available", job.getId(), creator);
-          continue;
+        // There is a service to dispatch the job to, so it is worth loading
+        JpaJob job = em.find(JpaJob.class, entry.getId());
+        if (job == null) {
+          dispatchQueue.remove(entry.getId());
+          return;
         }
-        securityService.setUser(user);
+        em.refresh(job);
+        if (!DispatchQueue.isQueueable(job.isDispatchable(), job.getStatus())) {
+          logger.debug("Removing {} from the dispatch queue, it is no longer waiting to be dispatched", entry);
+          dispatchQueue.remove(entry.getId());
+          return;
+        }
+
+        tryDispatchJob(em, job, entry.getSignature(), candidateServices);
+      } catch (ServiceRegistryException e) {
+        Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+        logger.error("Error dispatching " + entry, cause);
+      } finally {
+        securityService.setUser(null);
+        securityService.setOrganization(null);
+      }
+    }
+
+    /**
+     * Dispatch the given jobs.
+     *
+     * @param em the entity manager
+     * @param jobsToDispatch list with dispatchable jobs to dispatch
+     */
+    private void dispatchDispatchableJobs(EntityManager em, List<JpaJob> jobsToDispatch) {
+      for (JpaJob job : jobsToDispatch) {
+        dispatchDispatchableJob(em, job);
+      }
+    }
 
-        // Start dispatching
+    /**
+     * Dispatch the given job.
+     *
+     * @param em the entity manager
+     * @param job the dispatchable job to dispatch
+     */
+    private void dispatchDispatchableJob(EntityManager em, JpaJob job) {
+      // Remember the job type
+      String jobType = job.getJobType();
+
+      // Skip jobs that we already know can't be dispatched except of jobs in the priority list
+      String jobSignature = new StringBuilder(jobType).append('@').append(job.getOperation()).toString();
+      if (undispatchableJobTypes.contains(jobSignature) && !dispatchPriorityList.keySet().contains(job.getId())) {
+        logger.trace("Skipping dispatching of jobs {} with type '{}' for this round of dispatching", job.getId(),
+                jobType);
+        return;
+      }
+
+      // Set the job's user and organization prior to dispatching
+      if (!setDispatchContext(job.getId(), job.getCreator(), job.getOrganization()))
+        return;
+
+      // Start dispatching
+      try {
+        List<HostRegistration> hostRegistrations = getHostRegistrations(em);
+        SystemLoad systemLoad = getHostLoads(em, true);
+        List<ServiceRegistration> services = getServiceRegistrations(em);
+        List<HostRegistration> hosts = $(hostRegistrations).filter(filterOutPriorityHosts._2(job.getId())).toList();
+
+        // Depending on whether this running job is trying to reach out to other services or whether this is an
+        // attempt to execute the next operation in a workflow, choose either from a limited or from the full list
+        // of services
+        Job parentJob = null;
         try {
-          SystemLoad systemLoad = getHostLoads(em, true);
-          List<ServiceRegistration> services = getServiceRegistrations(em);
-          List<HostRegistration> hosts = $(getHostRegistrations(em)).filter(filterOutPriorityHosts._2(job.getId()))
-                  .toList();
-          List<ServiceRegistration> candidateServices = null;
-
-          // Depending on whether this running job is trying to reach out to other services or whether this is an
-          // attempt to execute the next operation in a workflow, choose either from a limited or from the full list
-          // of services
-          Job parentJob = null;
-          try {
-            if (job.getParentJob() != null)
-              parentJob = getJob(job.getParentJob().getId());
-          } catch (NotFoundException e) {
-            // That's ok
-          }
+          if (job.getParentJob() != null)
+            parentJob = getJob(job.getParentJob().getId());
+        } catch (NotFoundException e) {
+          // That's ok
+        }
 
-          // When a job A starts a series of child jobs, then those child jobs should only be dispatched at the
-          // same time if there is processing capacity available.
-          boolean parentHasRunningChildren = false;
-          if (parentJob != null) {
-            for (Job child : getChildJobs(parentJob.getId())) {
-              if (Status.RUNNING.equals(child.getStatus())) {
-                parentHasRunningChildren = true;
-                break;
-              }
+        // When a job A starts a series of child jobs, then those child jobs should only be dispatched at the
+        // same time if there is processing capacity available.
+        boolean parentHasRunningChildren = false;
+        if (parentJob != null) {
+          for (Job child : getChildJobs(parentJob.getId())) {
+            if (Status.RUNNING.equals(child.getStatus())) {
+              parentHasRunningChildren = true;
+              break;
             }
           }
+        }
 
-          // If this is a root job (a new workflow or a new workflow operation), then only dispatch if there is
-          // capacity, i. e. the workflow service is ok dispatching the next workflow or the next workflow operation.
-          if (parentJob == null || TYPE_WORKFLOW.equals(jobType) || parentHasRunningChildren) {
-            logger.trace("Using available capacity only for dispatching of {} to a service of type '{}'", job,
-                    jobType);
-            candidateServices = getServiceRegistrationsWithCapacity(jobType, services, hosts, systemLoad);
-          } else {
-            logger.trace("Using full list of services for dispatching of {} to a service of type '{}'", job, jobType);
-            candidateServices = getServiceRegistrationsByLoad(jobType, services, hosts, systemLoad);
-          }
+        boolean capacityOnly = parentJob == null || TYPE_WORKFLOW.equals(jobType) || parentHasRunningChildren;
+        List<ServiceRegistration> candidateServices = getCandidateServices(job.getId(), jobType, capacityOnly,
+                services, hosts, systemLoad);
+        tryDispatchJob(em, job, jobSignature, candidateServices);
+      } catch (ServiceRegistryException e) {
+        Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+        logger.error("Error dispatching job " + job, cause);
+      } finally {
+        securityService.setUser(null);
+        securityService.setOrganization(null);
+      }
+    }
 
-          // Try to dispatch the job
-          String hostAcceptingJob = null;
-          try {
-            hostAcceptingJob = dispatchJob(em, job, candidateServices);
-            dispatchPriorityList.remove(job.getId());
-          } catch (ServiceUnavailableException e) {
-            logger.debug("Jobs of type {} currently cannot be dispatched", job.getOperation());
-            // Don't mark workflow jobs as undispatchable to not impact worklfow operations
-            if (!TYPE_WORKFLOW.equals(jobType))
-              undispatchableJobTypes.add(jobSignature);
-            continue;
-          } catch (UndispatchableJobException e) {
-            logger.debug("Job {} currently cannot be dispatched", job.getId());
-            continue;
-          }
+    /**
+     * Sets the organization and the user that have created a job as the current security context.
+     *
+     * @param jobId the job identifier
+     * @param creator the name of the user who created the job
+     * @param creatorOrganization the identifier of the organization the job belongs to
+     * @return <code>false</code> if the organization or the user are not available
+     */
+    private boolean setDispatchContext(long jobId, String creator, String creatorOrganization) {
+      // Try to load the organization.
+      Organization organization = null;
+      try {
+        organization = organizationDirectoryService.getOrganization(creatorOrganization);
+        securityService.setOrganization(organization);
+      } catch (NotFoundException e) {
+        logger.debug("Skipping dispatching of job for non-existing organization '{}'", creatorOrganization);
+        return false;
+      }
 
-          logger.debug("Job {} dispatched to {}", job.getId(), hostAcceptingJob);
-        } catch (ServiceRegistryException e) {
-          Throwable cause = (e.getCause() != null) ? e.getCause() : e;
-          logger.error("Error dispatching job " + job, cause);
-        } finally {
-          securityService.setUser(null);
-          securityService.setOrganization(null);
-        }
+      // Try to load the user
+      User user = userDirectoryService.loadUser(creator);
+      if (user == null) {
+        logger.warn("Unable to dispatch job {}: creator '{}' is not available", jobId, creator);
+        securityService.setOrganization(null);
+        return false;
+      }
+      securityService.setUser(user);
+      return true;
+    }
+
+    /**
+     * Returns the services a job may be dispatched to.
+     *
+     * @param jobId the job identifier
+     * @param jobType the job type
+     * @param capacityOnly whether only services with available capacity are eligible
+     * @param services the service registrations
+     * @param hosts the hosts that may take the job
+     * @param systemLoad the current load of the hosts
+     * @return the services in the order they should be tried
+     * @throws ServiceRegistryException if the service registrations are unavailable
+     */
+    private List<ServiceRegistration> getCandidateServices(long jobId, String jobType, boolean capacityOnly,
+            List<ServiceRegistration> services, List<HostRegistration> hosts, SystemLoad systemLoad)
+            throws ServiceRegistryException {
+      // If this is a root job (a new workflow or a new workflow operation), then only dispatch if there is
+      // capacity, i. e. the workflow service is ok dispatching the next workflow or the next workflow operation.
+      if (capacityOnly) {
+        logger.trace("Using available capacity only for dispatching of job {} to a service of type '{}'", jobId,
+                jobType);
+        return getServiceRegistrationsWithCapacity(jobType, services, hosts, systemLoad);
       }
+      logger.trace("Using full list of services for dispatching of job {} to a service of type '{}'", jobId, jobType);
+      return getServiceRegistrationsByLoad(jobType, services, hosts, systemLoad);
+    }
+
+    /**
+     * Tries to dispatch a job to one of the given services.
+     *
+     * @param em the entity manager
+     * @param job the job to dispatch
+     * @param jobSignature the signature used to skip jobs of the same type for the rest of the round
+     * @param candidateServices the services to try
+     * @throws ServiceRegistryException if the service registrations are unavailable
+     */
+    private void tryDispatchJob(EntityManager em, JpaJob job, String jobSignature,
+            List<ServiceRegistration> candidateServices) throws ServiceRegistryException {
+      String hostAcceptingJob = null;
+      try {
+        hostAcceptingJob = dispatchJob(em, job, candidateServices);
+        dispatchPriorityList.remove(job.getId());
+      } catch (ServiceUnavailableException e) {
+        markUnavailable(job.getJobType(), job.getOperation(), jobSignature);
+        return;
+      } catch (UndispatchableJobException e) {
+        logger.debug("Job {} currently cannot be dispatched", job.getId());
+        return;
+      }
+
+      logger.debug("Job {} dispatched to {}", job.getId(), hostAcceptingJob);
+    }
+
+    /** Skips jobs with the given signature for the rest of the dispatching round */
+    private void markUnavailable(String jobType, String operation, String jobSignature) {
+      logger.debug("Jobs of type {} currently cannot be dispatched", operation);
+      // Don't mark workflow jobs as undispatchable to not impact worklfow operations
+      if (!TYPE_WORKFLOW.equals(jobType))
+        undispatchableJobTypes.add(jobSignature);
     }
 
     /**
@@ -3164,6 +3838,8 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
       logger.debug("Checking for unresponsive services");
       List<ServiceRegistration> serviceRegistrations = getOnlineServiceRegistrations();
 
+      // Group the services to check by host, so every host is probed by a single task
+      Map<String, List<ServiceRegistration>> servicesByHost = new LinkedHashMap<>();
       for (ServiceRegistration service : serviceRegistrations) {
         hostsStatistics.updateHost(((ServiceRegistrationJpaImpl) service).getHostRegistration());
         servicesStatistics.updateService(service);
@@ -3171,59 +3847,80 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
           continue;
         if (service.isInMaintenanceMode())
           continue;
+        List<ServiceRegistration> hostServices = servicesByHost.get(service.getHost());
+        if (hostServices == null) {
+          hostServices = new ArrayList<>();
+          servicesByHost.put(service.getHost(), hostServices);
+        }
+        hostServices.add(service);
+      }
 
-        // We think this service is online and available. Prove it.
-        String serviceUrl = UrlSupport.concat(service.getHost(), service.getPath(), "dispatch");
-        HttpHead options = new HttpHead(serviceUrl);
-        HttpResponse response = null;
-        try {
+      List<HostProbe> probes = new ArrayList<>();
+      for (Map.Entry<String, List<ServiceRegistration>> entry : servicesByHost.entrySet()) {
+        probes.add(new HostProbe(entry.getKey(), entry.getValue()));
+      }
+
+      List<ProbeResult> results = new ArrayList<>();
+      try {
+        for (Future<List<ProbeResult>> future : heartbeatExecutor.invokeAll(probes)) {
           try {
-            response = client.execute(options);
-            if (response != null) {
-              switch (response.getStatusLine().getStatusCode()) {
-                case HttpStatus.SC_OK:
-                  // this service is reachable, continue checking other services
-                  logger.trace("Service " + service.toString() + " is responsive: " + response.getStatusLine());
-                  if (unresponsive.remove(service)) {
-                    logger.info("Service {} is still online", service);
-                  } else if (!service.isOnline()) {
-                    try {
-                      setOnlineStatus(service.getServiceType(), service.getHost(), service.getPath(), true, true);
-                      logger.info("Service {} is back online", service);
-                    } catch (ServiceRegistryException e) {
-                      logger.warn("Error setting online status for {}", service);
-                    }
-                  }
-                  continue;
-                default:
-                  if (!service.isOnline())
-                    continue;
-                  logger.warn("Service {} is not working as expected: {}", service, response.getStatusLine());
+            results.addAll(future.get());
+          } catch (ExecutionException e) {
+            logger.warn("Error checking services for responsiveness", e.getCause());
+          }
+        }
+      } catch (InterruptedException e) {
+        logger.debug("Interrupted while checking for unresponsive services");
+        Thread.currentThread().interrupt();
+        return;
+      } catch (RejectedExecutionException e) {
+        logger.debug("Unable to check for unresponsive services, the heartbeat is being shut down");
+        return;
+      }
+
+      for (ProbeResult result : results) {
+        ServiceRegistration service = result.getService();
+        if (result.getLatency() >= 0)
+          servicesStatistics.updateProbeLatency(service, result.getLatency());
+
+        switch (result.getStatus()) {
+          case RESPONSIVE:
+            // this service is reachable, continue checking other services
+            logger.trace("Service {} is responsive: {}", service, result.getDetail());
+            if (unresponsive.remove(service)) {
+              logger.info("Service {} is still online", service);
+            } else if (!service.isOnline()) {
+              try {
+                setOnlineStatus(service.getServiceType(), service.getHost(), service.getPath(), true, true);
+                logger.info("Service {} is back online", service);
+              } catch (ServiceRegistryException e) {
+                logger.warn("Error setting online status for {}", service);
               }
-            } else {
-              logger.warn("Service {} does not respond: {}", service.toString());
             }
-          } catch (TrustedHttpClientException e) {
+            continue;
+          case NOT_WORKING:
             if (!service.isOnline())
               continue;
-            logger.warn("Unable to reach {} : {}", service, e);
-          }
+            logger.warn("Service {} is not working as expected: {}", service, result.getDetail());
+            break;
+          default:
+            if (!service.isOnline())
+              continue;
+            logger.warn("Unable to reach {} : {}", service, result.getDetail());
+        }
 
-          // If we get here, the service did not respond as expected
-          try {
-            if (unresponsive.contains(service)) {
-              unRegisterService(service.getServiceType(), service.getHost());
-              unresponsive.remove(service);
-              logger.warn("Marking {} as offline", service);
-            } else {
-              unresponsive.add(service);
-              logger.warn("Added {} to the watch list", service);
-            }
-          } catch (ServiceRegistryException e) {
-            logger.warn("Unable to unregister unreachable service: {} : {}", service, e);
+        // If we get here, the service did not respond as expected
+        try {
+          if (unresponsive.contains(service)) {
+            unRegisterService(service.getServiceType(), service.getHost());
+            unresponsive.remove(service);
+            logger.warn("Marking {} as offline", service);
+          } else {
+            unresponsive.add(service);
+            logger.warn("Added {} to the watch list", service);
           }
-        } finally {
-          client.close(response);
+        } catch (ServiceRegistryException e) {
+          logger.warn("Unable to unregister unreachable service: {} : {}", service, e);
         }
       }
 
@@ -3232,6 +3929,136 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
 
   }
 
+  /** The outcome of probing a service for responsiveness */
+  enum ProbeStatus {
+    /** The service answered as expected */
+    RESPONSIVE,
+    /** The service answered with an unexpected status code */
+    NOT_WORKING,
+    /** The service could not be reached within the probe timeout */
+    UNREACHABLE,
+    /** No connection could be made to the host of the service */
+    HOST_UNREACHABLE
+  }
+
+  /** The result of probing a single service */
+  static final class ProbeResult {
+
+    private final ServiceRegistration service;
+    private final ProbeStatus status;
+    private final String detail;
+    private final long latency;
+
+    ProbeResult(ServiceRegistration service, ProbeStatus status, String detail, long latency) {
+      this.service = service;
+      this.status = status;
+      this.detail = detail;
+      this.latency = latency;
+    }
+
+    ServiceRegistration getService() {
+      return service;
+    }
+
+    ProbeStatus getStatus() {
+      return status;
+    }
+
+    String getDetail() {
+      return detail;
+    }
+
+    /** Returns the time it took to probe the service in milliseconds, or -1 if the service has not been probed */
+    long getLatency() {
+      return latency;
+    }
+
+  }
+
+  /**
+   * Probes the services of a single host one after another. Every service that answers, or fails to answer in time, is
+   * judged by its own response, so a single slow service does not affect the other services on the same host. Once no
+   * connection can be made to the host at all, its remaining services are reported as unreachable without being probed.
+   */
+  class HostProbe implements Callable<List<ProbeResult>> {
+
+    private final String host;
+    private final List<ServiceRegistration> services;
+
+    HostProbe(String host, List<ServiceRegistration> services) {
+      this.host = host;
+      this.services = services;
+    }
+
+    @Override
+    public List<ProbeResult> call() {
+      logger.trace("Checking {} services on host {}", services.size(), host);
+      List<ProbeResult> results = new ArrayList<>(services.size());
+      String unreachable = null;
+      for (ServiceRegistration service : services) {
+        if (unreachable != null) {
+          results.add(new ProbeResult(service, ProbeStatus.HOST_UNREACHABLE, unreachable, -1L));
+          continue;
+        }
+        ProbeResult result = probe(service);
+        if (result.getStatus() == ProbeStatus.HOST_UNREACHABLE)
+          unreachable = "Host " + host + " is unreachable: " + result.getDetail();
+        results.add(result);
+      }
+      return results;
+    }
+
+    /**
+     * Sends a HEAD request to the service's dispatch endpoint. The probe timeout applies to connecting and to waiting
+     * for data, and requests that take longer than that in total are aborted.
+     */
+    private ProbeResult probe(ServiceRegistration service) {
+      String serviceUrl = UrlSupport.concat(service.getHost(), service.getPath(), "dispatch");
+      final HttpHead head = new HttpHead(serviceUrl);
+      final int timeout = (int) heartbeatProbeTimeout;
+      ScheduledFuture<?> watchdog = null;
+      HttpResponse response = null;
+      long start = System.currentTimeMillis();
+      try {
+        try {
+          watchdog = probeTimer.schedule(new Runnable() {
+            @Override
+            public void run() {
+              head.abort();
+            }
+          }, timeout, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+          logger.debug("Unable to limit the time spent on checking {}, the heartbeat is being shut down", service);
+        }
+        response = client.execute(head, timeout, timeout);
+        long latency = System.currentTimeMillis() - start;
+        if (response == null)
+          return new ProbeResult(service, ProbeStatus.UNREACHABLE, "no response", latency);
+        if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK)
+          return new ProbeResult(service, ProbeStatus.RESPONSIVE, response.getStatusLine().toString(), latency);
+        return new ProbeResult(service, ProbeStatus.NOT_WORKING, response.getStatusLine().toString(), latency);
+      } catch (TrustedHttpClientException e) {
+        ProbeStatus status = isConnectFailure(e) ? ProbeStatus.HOST_UNREACHABLE : ProbeStatus.UNREACHABLE;
+        return new ProbeResult(service, status, e.getMessage(), System.currentTimeMillis() - start);
+      } finally {
+        if (watchdog != null)
+          watchdog.cancel(false);
+        client.close(response);
+      }
+    }
+
+    /** Returns whether the probe failed because no connection could be made to the host */
+    private boolean isConnectFailure(Throwable t) {
+      for (Throwable cause : ExceptionUtils.getThrowableList(t)) {
+        if (cause instanceof ConnectException || cause instanceof ConnectTimeoutException
+                || cause instanceof NoRouteToHostException || cause instanceof UnknownHostException)
+          return true;
+      }
+      return false;
+    }
+
+  }
+
   /**
    * Comparator that will sort service registrations depending on their capacity, wich is defined by the number of jobs
    * the service's host is already running. The lower that number, the bigger the capacity.
@@ -61,6 +61,7 @@ import org.osgi.service.component.ComponentContext;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Semaphore;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -86,6 +87,15 @@ import javax.ws.rs.core.Response.Status;
 @RestService(name = "serviceregistry", title = "Service Registry", notes = { "All paths above are relative to the REST endpoint base" }, abstractText = "Provides registration and management functions for servers and services in this matterhorn instance or cluster.")
 public class ServiceRegistryEndpoint {
 
+  /** The maximum time in milliseconds a request waits for jobs to terminate, so that it does not tie up a thread */
+  static final long MAX_JOB_WAIT_TIME = 30000L;
+
+  /** The maximum number of requests waiting for jobs to terminate at the same time */
+  static final int MAX_JOB_WAITERS = 50;
+
+  /** Limits the requests waiting for jobs to terminate, so that they cannot tie up all request threads */
+  private final Semaphore jobWaiters = new Semaphore(MAX_JOB_WAITERS);
+
   /** The remote service maanger */
   protected ServiceRegistry serviceRegistry = null;
 
@@ -516,6 +526,44 @@ public class ServiceRegistryEndpoint {
     }
   }
 
+  @GET
+  @Path("jobs/status.xml")
+  @Produces(MediaType.TEXT_XML)
+  @RestQuery(name = "jobstatusesasxml", description = "Returns the status of a number of jobs as XML. The jobs only carry their identifier and status, and the payload if they have finished and payloads are requested.", returnDescription = "The job statuses as XML, leaving out jobs that don't exist", restParameters = {
+          @RestParameter(name = "id", isRequired = true, type = Type.INTEGER, description = "The identifier of a job, which may be given multiple times"),
+          @RestParameter(name = "payloads", isRequired = false, type = Type.BOOLEAN, defaultValue = "false", description = "Whether to include the payloads of finished jobs") }, reponses = { @RestResponse(responseCode = SC_OK, description = "The job statuses.") })
+  public JaxbJobList getJobStatusesAsXml(@QueryParam("id") List<Long> ids, @QueryParam("payloads") boolean payloads) {
+    try {
+      return new JaxbJobList(serviceRegistry.getJobs(ids, payloads));
+    } catch (ServiceRegistryException e) {
+      throw new WebApplicationException(e);
+    }
+  }
+
+  @GET
+  @Path("jobs/terminated.xml")
+  @Produces(MediaType.TEXT_XML)
+  @RestQuery(name = "terminatedjobsasxml", description = "Waits until at least one of the jobs has terminated and returns the terminated jobs as XML.", returnDescription = "The terminated jobs as XML, which is an empty list if none has terminated within the timeout", restParameters = {
+          @RestParameter(name = "id", isRequired = true, type = Type.INTEGER, description = "The identifier of a job to wait for, which may be given multiple times"),
+          @RestParameter(name = "timeout", isRequired = false, type = Type.INTEGER, defaultValue = "0", description = "The maximum time to wait in milliseconds, which is limited to 30 seconds") }, reponses = {
+          @RestResponse(responseCode = SC_OK, description = "The terminated jobs."),
+          @RestResponse(responseCode = SC_NOT_FOUND, description = "One of the jobs does not exist."),
+          @RestResponse(responseCode = SC_SERVICE_UNAVAILABLE, description = "Too many requests are waiting for jobs already, the jobs need to be polled instead.") })
+  public JaxbJobList getTerminatedJobsAsXml(@QueryParam("id") List<Long> ids, @QueryParam("timeout") long timeout)
+          throws NotFoundException {
+    final long wait = Math.min(timeout, MAX_JOB_WAIT_TIME);
+    if (wait > 0 && !jobWaiters.tryAcquire())
+      throw new WebApplicationException(Status.SERVICE_UNAVAILABLE);
+    try {
+      return new JaxbJobList(serviceRegistry.waitForTerminatedJobs(ids, wait));
+    } catch (ServiceRegistryException e) {
+      throw new WebApplicationException(e);
+    } finally {
+      if (wait > 0)
+        jobWaiters.release();
+    }
+  }
+
   @GET
   @Path("jobs.xml")
   @Produces(MediaType.TEXT_XML)
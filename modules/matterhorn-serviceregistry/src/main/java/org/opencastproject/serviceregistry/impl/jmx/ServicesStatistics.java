@@ -49,6 +49,7 @@ public class ServicesStatistics extends NotificationBroadcasterSupport implement
   private static final String DELIMITER = ";";
 
   private Map<Tuple<String, String>, ServiceState> services = new HashMap<Tuple<String, String>, ServiceState>();
+  private Map<Tuple<String, String>, Long> probeLatencies = new HashMap<Tuple<String, String>, Long>();
   private long sequenceNumber = 1;
   private final String hostName;
 
@@ -69,6 +70,7 @@ public class ServicesStatistics extends NotificationBroadcasterSupport implement
   public void updateService(ServiceRegistration registration) {
     if (!registration.isActive()) {
       services.remove(Tuple.tuple(registration.getHost(), registration.getServiceType()));
+      probeLatencies.remove(Tuple.tuple(registration.getHost(), registration.getServiceType()));
       logger.trace("Removing inactive service '{}'", registration);
     } else {
       services.put(Tuple.tuple(registration.getHost(), registration.getServiceType()), registration.getServiceState());
@@ -77,6 +79,18 @@ public class ServicesStatistics extends NotificationBroadcasterSupport implement
     sendNotification(JmxUtil.createUpdateNotification(this, sequenceNumber++, "Service updated"));
   }
 
+  /**
+   * Records the time it took the service to answer the latest heartbeat check.
+   *
+   * @param registration
+   *          the service registration
+   * @param latency
+   *          the time in milliseconds
+   */
+  public void updateProbeLatency(ServiceRegistration registration, long latency) {
+    probeLatencies.put(Tuple.tuple(registration.getHost(), registration.getServiceType()), latency);
+  }
+
   @Override
   public MBeanNotificationInfo[] getNotificationInfo() {
     String[] types = new String[] { JmxUtil.MATTERHORN_UPDATE_NOTIFICATION };
@@ -274,4 +288,16 @@ public class ServicesStatistics extends NotificationBroadcasterSupport implement
     return erroServices.toArray(new String[erroServices.size()]);
   }
 
+  /**
+   * @see org.opencastproject.serviceregistry.impl.jmx.ServicesStatisticsMXBean#getServiceProbeLatencies()
+   */
+  @Override
+  public String[] getServiceProbeLatencies() {
+    List<String> latencies = new ArrayList<String>();
+    for (Entry<Tuple<String, String>, Long> entry : probeLatencies.entrySet()) {
+      latencies.add(entry.getKey().getA() + DELIMITER + entry.getKey().getB() + DELIMITER + entry.getValue());
+    }
+    return latencies.toArray(new String[latencies.size()]);
+  }
+
 }
@@ -138,4 +138,11 @@ public interface ServicesStatisticsMXBean {
    */
   int getErrorServiceCountByNode();
 
+  /**
+   * Gets the time it took each service to answer the latest heartbeat check, in milliseconds
+   *
+   * @return an array including the host, service type and latency of each checked service
+   */
+  String[] getServiceProbeLatencies();
+
 }
@@ -0,0 +1,102 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.serviceregistry.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.opencastproject.job.api.Job.Status;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class DispatchQueueTest {
+
+  private DispatchQueue queue;
+
+  @Before
+  public void setUp() {
+    queue = new DispatchQueue();
+  }
+
+  @Test
+  public void testOrder() {
+    update(1L, ServiceRegistryJpaImpl.TYPE_WORKFLOW, "START_OPERATION", Status.RESTART, true, 100L);
+    update(2L, "composer", "Encode", Status.QUEUED, true, 200L);
+    update(3L, "composer", "Encode", Status.QUEUED, true, 150L);
+    update(4L, "inspect", "Inspect", Status.RESTART, true, 300L);
+
+    List<DispatchQueue.Entry> entries = queue.snapshot();
+    assertEquals(4, entries.size());
+    assertEquals(4L, entries.get(0).getId());
+    assertEquals(3L, entries.get(1).getId());
+    assertEquals(2L, entries.get(2).getId());
+    assertEquals(1L, entries.get(3).getId());
+  }
+
+  @Test
+  public void testStatusTransitions() {
+    update(1L, "composer", "Encode", Status.QUEUED, true, 100L);
+    update(2L, "composer", "Encode", Status.INSTANTIATED, false, 100L);
+    assertTrue(queue.contains(1L));
+    assertFalse(queue.contains(2L));
+
+    update(1L, "composer", "Encode", Status.DISPATCHING, true, 100L);
+    assertFalse(queue.contains(1L));
+    assertEquals(0, queue.size());
+
+    update(1L, "composer", "Encode", Status.QUEUED, true, 100L);
+    assertTrue(queue.contains(1L));
+    assertTrue(queue.remove(1L));
+    assertFalse(queue.remove(1L));
+  }
+
+  @Test
+  public void testResetKeepsConcurrentChanges() {
+    update(1L, "composer", "Encode", Status.QUEUED, true, 100L);
+    queue.beginReset();
+    update(2L, "composer", "Encode", Status.QUEUED, true, 200L);
+    update(3L, "composer", "Encode", Status.RUNNING, true, 300L);
+    queue.reset(Arrays.asList(entry(1L, "composer", "Encode", Status.QUEUED, 100L),
+            entry(3L, "composer", "Encode", Status.QUEUED, 300L)));
+
+    assertEquals(2, queue.size());
+    assertTrue(queue.contains(1L));
+    assertTrue(queue.contains(2L));
+    assertFalse(queue.contains(3L));
+  }
+
+  private void update(long id, String jobType, String operation, Status status, boolean dispatchable,
+          long dateCreated) {
+    queue.update(id, jobType, operation, status, dispatchable, dateCreated, "admin", "mh_default_org", null);
+  }
+
+  private static DispatchQueue.Entry entry(long id, String jobType, String operation, Status status,
+          long dateCreated) {
+    return new DispatchQueue.Entry(id, jobType, operation, status, dateCreated, "admin", "mh_default_org", null);
+  }
+
+}
@@ -0,0 +1,128 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.serviceregistry.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Tests waking up the job dispatcher on job events.
+ */
+public class DispatchTriggerTest {
+
+  private static final long MIN_GAP = 1000L;
+
+  private ServiceRegistryJpaImpl serviceRegistry;
+
+  /** The start times of the rounds of dispatching */
+  private final List<Long> rounds = new CopyOnWriteArrayList<Long>();
+
+  /** Counted down when the first round of dispatching starts */
+  private final CountDownLatch firstRound = new CountDownLatch(1);
+
+  /** Counted down when the second round of dispatching starts */
+  private final CountDownLatch secondRound = new CountDownLatch(2);
+
+  /** Keeps the rounds of dispatching busy until it is counted down */
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  @Before
+  public void setUp() throws Exception {
+    // Every round of dispatching starts by asking for an entity manager
+    EntityManagerFactory emf = EasyMock.createNiceMock(EntityManagerFactory.class);
+    EasyMock.expect(emf.createEntityManager()).andAnswer(new IAnswer<EntityManager>() {
+      @Override
+      public EntityManager answer() throws Throwable {
+        rounds.add(System.currentTimeMillis());
+        firstRound.countDown();
+        secondRound.countDown();
+        release.await();
+        throw new IllegalStateException("No database available in this test");
+      }
+    }).anyTimes();
+    EasyMock.replay(emf);
+
+    serviceRegistry = new ServiceRegistryJpaImpl();
+    serviceRegistry.setEntityManagerFactory(emf);
+    serviceRegistry.dispatchOnJobEvents = true;
+    serviceRegistry.dispatchTriggerMinGap = MIN_GAP;
+  }
+
+  @After
+  public void tearDown() {
+    release.countDown();
+    serviceRegistry.scheduledExecutor.shutdownNow();
+    serviceRegistry.heartbeatExecutor.shutdownNow();
+    serviceRegistry.probeTimer.shutdownNow();
+  }
+
+  @Test
+  public void testWakeupsWithinTheMinimumGapAreCoalesced() throws Exception {
+    serviceRegistry.requestDispatch();
+    assertTrue(firstRound.await(30, TimeUnit.SECONDS));
+
+    // Ask for more rounds while the first one is still busy
+    for (int i = 0; i < 5; i++) {
+      serviceRegistry.requestDispatch();
+    }
+    release.countDown();
+    assertTrue(secondRound.await(30, TimeUnit.SECONDS));
+
+    // Run whatever has been scheduled in the meantime
+    awaitDispatcher();
+    assertEquals(2, rounds.size());
+    assertTrue("Dispatched again after " + (rounds.get(1) - rounds.get(0)) + "ms",
+            rounds.get(1) - rounds.get(0) >= MIN_GAP / 2);
+  }
+
+  @Test
+  public void testWakeupsAreIgnoredIfTurnedOff() throws Exception {
+    serviceRegistry.dispatchOnJobEvents = false;
+    serviceRegistry.requestDispatch();
+    release.countDown();
+
+    awaitDispatcher();
+    assertEquals(Collections.emptyList(), rounds);
+  }
+
+  /** Shuts down the dispatcher after the rounds of dispatching it has scheduled so far have run. */
+  private void awaitDispatcher() throws InterruptedException {
+    serviceRegistry.scheduledExecutor.shutdown();
+    assertTrue(serviceRegistry.scheduledExecutor.awaitTermination(30, TimeUnit.SECONDS));
+  }
+
+}
@@ -0,0 +1,115 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.serviceregistry.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.opencastproject.job.api.Job.Status;
+import org.opencastproject.serviceregistry.api.SystemLoad;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class HostLoadLedgerTest {
+
+  private static final String HOST_A = "http://a.example.org";
+  private static final String HOST_B = "http://b.example.org";
+  private static final List<String> HOSTS = Arrays.asList(HOST_A, HOST_B);
+
+  private HostLoadLedger ledger;
+
+  @Before
+  public void setUp() {
+    ledger = new HostLoadLedger();
+  }
+
+  @Test
+  public void testJobLifecycle() {
+    ledger.update(1L, "composer", 2.0f, null, Status.QUEUED, null);
+    assertEquals(0.0f, ledger.getLoads(HOSTS).get(HOST_A).getLoadFactor(), 0.0001f);
+
+    ledger.update(1L, "composer", 2.0f, HOST_A, Status.DISPATCHING, null);
+    ledger.update(2L, "composer", 1.5f, HOST_A, Status.RUNNING, null);
+    assertEquals(3.5f, ledger.getLoads(HOSTS).get(HOST_A).getLoadFactor(), 0.0001f);
+
+    // Moving a job to a different host moves its load
+    ledger.update(1L, "composer", 2.0f, HOST_B, Status.RUNNING, null);
+    SystemLoad loads = ledger.getLoads(HOSTS);
+    assertEquals(1.5f, loads.get(HOST_A).getLoadFactor(), 0.0001f);
+    assertEquals(2.0f, loads.get(HOST_B).getLoadFactor(), 0.0001f);
+
+    ledger.update(1L, "composer", 2.0f, HOST_B, Status.FINISHED, null);
+    ledger.remove(2L);
+    loads = ledger.getLoads(HOSTS);
+    assertEquals(0.0f, loads.get(HOST_A).getLoadFactor(), 0.0001f);
+    assertEquals(0.0f, loads.get(HOST_B).getLoadFactor(), 0.0001f);
+  }
+
+  @Test
+  public void testWorkflowJobsDontCount() {
+    ledger.update(1L, ServiceRegistryJpaImpl.TYPE_WORKFLOW, 1.0f, HOST_A, Status.RUNNING, null);
+    assertEquals(0.0f, ledger.getLoads(HOSTS).get(HOST_A).getLoadFactor(), 0.0001f);
+  }
+
+  @Test
+  public void testRunningChildren() {
+    ledger.update(2L, "composer", 1.0f, HOST_A, Status.DISPATCHING, 1L);
+    assertFalse(ledger.hasRunningChildren(1L));
+
+    ledger.update(2L, "composer", 1.0f, HOST_A, Status.RUNNING, 1L);
+    ledger.update(3L, "composer", 1.0f, HOST_B, Status.RUNNING, 1L);
+    assertTrue(ledger.hasRunningChildren(1L));
+
+    ledger.update(2L, "composer", 1.0f, HOST_A, Status.FINISHED, 1L);
+    assertTrue(ledger.hasRunningChildren(1L));
+    ledger.remove(3L);
+    assertFalse(ledger.hasRunningChildren(1L));
+
+    ledger.reconcile(Collections.singletonList(new HostLoadLedger.JobLoad(4L, HOST_A, 1.0f, 1L)), 1000L);
+    assertTrue(ledger.hasRunningChildren(1L));
+  }
+
+  @Test
+  public void testReconcile() {
+    assertTrue(ledger.isReconciliationDue(1000L, 60000L));
+    ledger.update(1L, "composer", 1.0f, HOST_A, Status.RUNNING, null);
+
+    ledger.beginReconcile();
+    ledger.update(2L, "composer", 1.0f, HOST_B, Status.RUNNING, null);
+    ledger.reconcile(Collections.singletonList(new HostLoadLedger.JobLoad(3L, HOST_A, 4.0f, null)), 1000L);
+
+    SystemLoad loads = ledger.getLoads(HOSTS);
+    assertEquals(4.0f, loads.get(HOST_A).getLoadFactor(), 0.0001f);
+    assertEquals(1.0f, loads.get(HOST_B).getLoadFactor(), 0.0001f);
+    assertFalse(ledger.isReconciliationDue(2000L, 60000L));
+
+    ledger.invalidate();
+    assertTrue(ledger.isReconciliationDue(2000L, 60000L));
+  }
+
+}
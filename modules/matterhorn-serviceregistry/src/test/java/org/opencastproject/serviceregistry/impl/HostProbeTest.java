@@ -0,0 +1,159 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.serviceregistry.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.opencastproject.security.api.TrustedHttpClient;
+import org.opencastproject.security.api.TrustedHttpClientException;
+import org.opencastproject.serviceregistry.api.ServiceRegistration;
+import org.opencastproject.serviceregistry.impl.ServiceRegistryJpaImpl.ProbeResult;
+import org.opencastproject.serviceregistry.impl.ServiceRegistryJpaImpl.ProbeStatus;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class HostProbeTest {
+
+  private static final String HOST = "http://localhost:8080";
+
+  private ServiceRegistryJpaImpl serviceRegistry;
+
+  /** The number of requests sent to the host */
+  private final AtomicInteger requests = new AtomicInteger();
+
+  /** Released at the end of each test to unblock the tasks occupying the scheduled executor */
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  @Before
+  public void setUp() throws Exception {
+    serviceRegistry = new ServiceRegistryJpaImpl();
+    serviceRegistry.heartbeatProbeTimeout = 200L;
+
+    TrustedHttpClient client = EasyMock.createNiceMock(TrustedHttpClient.class);
+    EasyMock.expect(client.execute(EasyMock.anyObject(HttpUriRequest.class), EasyMock.anyInt(), EasyMock.anyInt()))
+            .andAnswer(new IAnswer<HttpResponse>() {
+              @Override
+              public HttpResponse answer() throws Throwable {
+                HttpHead head = (HttpHead) EasyMock.getCurrentArguments()[0];
+                requests.incrementAndGet();
+                if (head.getURI().getPath().startsWith("/refused"))
+                  throw new TrustedHttpClientException(new ConnectException("Connection refused"));
+                if (!head.getURI().getPath().startsWith("/slow"))
+                  return new BasicHttpResponse(new BasicStatusLine(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK"));
+                // Hang until the request is aborted, like a service that accepts the connection but never answers
+                long giveUp = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+                while (!head.isAborted() && System.currentTimeMillis() < giveUp) {
+                  Thread.sleep(10);
+                }
+                throw new TrustedHttpClientException(new IOException("Request aborted"));
+              }
+            }).anyTimes();
+    EasyMock.replay(client);
+    serviceRegistry.setTrustedHttpClient(client);
+  }
+
+  @After
+  public void tearDown() {
+    release.countDown();
+    serviceRegistry.scheduledExecutor.shutdownNow();
+    serviceRegistry.heartbeatExecutor.shutdownNow();
+    serviceRegistry.probeTimer.shutdownNow();
+  }
+
+  @Test
+  public void testSlowServiceDoesNotAffectOtherServices() throws Exception {
+    List<ServiceRegistration> services = Arrays.asList(service("/slow"), service("/composer"), service("/ingest"));
+    List<ProbeResult> results = serviceRegistry.new HostProbe(HOST, services).call();
+
+    assertEquals(3, results.size());
+    assertEquals(ProbeStatus.UNREACHABLE, results.get(0).getStatus());
+    assertEquals(ProbeStatus.RESPONSIVE, results.get(1).getStatus());
+    assertEquals(ProbeStatus.RESPONSIVE, results.get(2).getStatus());
+    assertTrue(results.get(1).getLatency() >= 0);
+  }
+
+  @Test
+  public void testUnreachableHostIsNotProbedAgain() throws Exception {
+    List<ServiceRegistration> services = Arrays.asList(service("/refused"), service("/composer"), service("/ingest"));
+    List<ProbeResult> results = serviceRegistry.new HostProbe(HOST, services).call();
+
+    assertEquals(3, results.size());
+    for (ProbeResult result : results) {
+      assertEquals(ProbeStatus.HOST_UNREACHABLE, result.getStatus());
+    }
+    assertEquals(1, requests.get());
+    assertEquals(-1L, results.get(1).getLatency());
+  }
+
+  @Test
+  public void testProbeIsAbortedWhileTheDispatcherIsBusy() throws Exception {
+    // Keep all threads of the executor running the heartbeat and the dispatcher busy
+    for (int i = 0; i < 2; i++) {
+      serviceRegistry.scheduledExecutor.submit(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      });
+    }
+
+    long start = System.currentTimeMillis();
+    List<ProbeResult> results = serviceRegistry.new HostProbe(HOST, Arrays.asList(service("/slow"))).call();
+    long duration = System.currentTimeMillis() - start;
+
+    assertEquals(ProbeStatus.UNREACHABLE, results.get(0).getStatus());
+    assertTrue("Probe took " + duration + "ms", duration < TimeUnit.SECONDS.toMillis(5));
+  }
+
+  private static ServiceRegistration service(String path) {
+    ServiceRegistration service = EasyMock.createNiceMock(ServiceRegistration.class);
+    EasyMock.expect(service.getHost()).andReturn(HOST).anyTimes();
+    EasyMock.expect(service.getPath()).andReturn(path).anyTimes();
+    EasyMock.replay(service);
+    return service;
+  }
+
+}
@@ -66,9 +66,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.beans.PropertyVetoException;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import javax.management.ObjectInstance;
 import javax.persistence.EntityManagerFactory;
@@ -220,6 +226,34 @@ public class ServiceRegistryJpaImplTest {
     serviceRegistryJpaImpl.removeJob(-1L);
   }
 
+  @Test
+  public void testWaitingForJobsIsWokenUpByTheirTermination() throws Exception {
+    serviceRegistryJpaImpl.activate(null);
+    registerTestHostAndService();
+    final Job job = serviceRegistryJpaImpl.createJob(TEST_HOST, TEST_SERVICE, TEST_OPERATION, null, null, false, null);
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<List<Job>> terminated = executor.submit(new Callable<List<Job>>() {
+        @Override
+        public List<Job> call() throws Exception {
+          return serviceRegistryJpaImpl.waitForTerminatedJobs(Collections.singletonList(job.getId()),
+                  TimeUnit.MINUTES.toMillis(10));
+        }
+      });
+
+      job.setStatus(Status.FINISHED);
+      serviceRegistryJpaImpl.updateJob(job);
+
+      List<Job> jobs = terminated.get(1, TimeUnit.MINUTES);
+      assertEquals(1, jobs.size());
+      assertEquals(job.getId(), jobs.get(0).getId());
+      assertEquals(Status.FINISHED, jobs.get(0).getStatus());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
   @Test
   public void testCancelUndispatchablesOrphanedByActivatingNode() throws Exception {
     serviceRegistryJpaImpl.activate(null);
@@ -0,0 +1,255 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.usertracking.impl;
+
+import org.opencastproject.usertracking.api.UserAction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the footprints of the sessions that are currently watching in memory, so that the heartbeats of a viewer do
+ * not have to go to the database one by one.
+ * <p>
+ * Every session has an open footprint that is extended by each contiguous footprint of the session. A footprint for a
+ * different media package or position closes it and opens a new one. Footprints that changed since they were last
+ * written are handed out in batches by {@link #drain(int)}, and the outcome of writing a batch is reported back with
+ * {@link #stored(List)} or {@link #failed(List)}.
+ */
+class FootprintBuffer {
+
+  /** The open footprints, by session identifier */
+  private final Map<String, Entry> sessions = new HashMap<String, Entry>();
+
+  /** The footprints that were closed before they were written */
+  private final List<Entry> closed = new ArrayList<Entry>();
+
+  /** The entries of the footprints that are being written, by the copies handed out for writing */
+  private final Map<UserActionImpl, Entry> writing = new IdentityHashMap<UserActionImpl, Entry>();
+
+  /** The number of footprints that need to be written */
+  private int pending = 0;
+
+  /**
+   * Adds a footprint, merging it with the open footprint of its session if it continues where that one ends.
+   *
+   * @param footprint
+   *          the footprint
+   * @return a copy of the open footprint of the session, which has no identifier as long as it has not been written
+   */
+  synchronized UserActionImpl add(UserAction footprint) {
+    String sessionId = footprint.getSession().getSessionId();
+    Entry entry = sessions.get(sessionId);
+    if (entry != null && entry.footprint.getMediapackageId().equals(footprint.getMediapackageId())
+            && entry.footprint.getOutpoint() == footprint.getInpoint()) {
+      entry.footprint.setOutpoint(footprint.getOutpoint());
+      markDirty(entry);
+      return copy(entry.footprint);
+    }
+    if (entry != null && entry.dirty)
+      closed.add(entry);
+    entry = new Entry(copy(footprint));
+    sessions.put(sessionId, entry);
+    markDirty(entry);
+    return copy(entry.footprint);
+  }
+
+  /**
+   * Returns the number of footprints that need to be written.
+   */
+  synchronized int getPending() {
+    return pending;
+  }
+
+  /**
+   * Returns copies of the footprints of a media package that are not yet stored in their current state, including the
+   * ones that are being written.
+   *
+   * @param mediapackageId
+   *          the media package identifier
+   * @return the footprints
+   */
+  synchronized List<UserActionImpl> getPending(String mediapackageId) {
+    List<UserActionImpl> footprints = new ArrayList<UserActionImpl>();
+    for (Entry entry : getPendingEntries(mediapackageId)) {
+      footprints.add(copy(entry.footprint));
+    }
+    return footprints;
+  }
+
+  /**
+   * Returns the parts of the footprints of a media package that are not yet stored, as footprints that range from the
+   * outpoint that was last written to the current one. These are the views to add to the stored footprint histogram.
+   *
+   * @param mediapackageId
+   *          the media package identifier
+   * @return the footprints
+   */
+  synchronized List<UserActionImpl> getUnwritten(String mediapackageId) {
+    List<UserActionImpl> footprints = new ArrayList<UserActionImpl>();
+    for (Entry entry : getPendingEntries(mediapackageId)) {
+      if (entry.footprint.getOutpoint() <= entry.written)
+        continue;
+      UserActionImpl footprint = copy(entry.footprint);
+      footprint.setInpoint(Math.max(entry.written, entry.footprint.getInpoint()));
+      footprints.add(footprint);
+    }
+    return footprints;
+  }
+
+  /**
+   * Hands out copies of footprints that need to be written, closed ones first. Footprints without an identifier are
+   * new, the others have to be updated.
+   *
+   * @param max
+   *          the maximum number of footprints to hand out
+   * @return the footprints
+   */
+  synchronized List<UserActionImpl> drain(int max) {
+    List<UserActionImpl> footprints = new ArrayList<UserActionImpl>();
+    for (Iterator<Entry> i = closed.iterator(); i.hasNext() && footprints.size() < max;) {
+      Entry entry = i.next();
+      i.remove();
+      footprints.add(startWriting(entry));
+    }
+    for (Iterator<Entry> i = sessions.values().iterator(); i.hasNext() && footprints.size() < max;) {
+      Entry entry = i.next();
+      if (entry.dirty)
+        footprints.add(startWriting(entry));
+    }
+    return footprints;
+  }
+
+  /**
+   * Reports that footprints handed out by {@link #drain(int)} have been written, with their identifiers set.
+   *
+   * @param footprints
+   *          the footprints
+   */
+  synchronized void stored(List<UserActionImpl> footprints) {
+    for (UserActionImpl footprint : footprints) {
+      Entry entry = writing.remove(footprint);
+      if (entry == null)
+        continue;
+      if (entry.footprint.getId() == null)
+        entry.footprint.setId(footprint.getId());
+      entry.written = footprint.getOutpoint();
+    }
+  }
+
+  /**
+   * Reports that footprints handed out by {@link #drain(int)} could not be written, so that they are handed out again.
+   *
+   * @param footprints
+   *          the footprints
+   */
+  synchronized void failed(List<UserActionImpl> footprints) {
+    for (UserActionImpl footprint : footprints) {
+      Entry entry = writing.remove(footprint);
+      if (entry == null)
+        continue;
+      if (sessions.get(entry.footprint.getSession().getSessionId()) != entry && !entry.dirty)
+        closed.add(entry);
+      markDirty(entry);
+    }
+  }
+
+  /**
+   * Forgets about the sessions that have been written and have not sent a footprint for some time.
+   *
+   * @param maxIdleTime
+   *          the time in milliseconds after which a session is considered to have ended
+   */
+  synchronized void removeIdleSessions(long maxIdleTime) {
+    long now = System.currentTimeMillis();
+    for (Iterator<Entry> i = sessions.values().iterator(); i.hasNext();) {
+      Entry entry = i.next();
+      if (!entry.dirty && !writing.containsValue(entry) && now - entry.lastUpdate > maxIdleTime)
+        i.remove();
+    }
+  }
+
+  private Set<Entry> getPendingEntries(String mediapackageId) {
+    Set<Entry> entries = Collections.newSetFromMap(new IdentityHashMap<Entry, Boolean>());
+    entries.addAll(closed);
+    entries.addAll(writing.values());
+    for (Entry entry : sessions.values()) {
+      if (entry.dirty)
+        entries.add(entry);
+    }
+    for (Iterator<Entry> i = entries.iterator(); i.hasNext();) {
+      if (!i.next().footprint.getMediapackageId().equals(mediapackageId))
+        i.remove();
+    }
+    return entries;
+  }
+
+  private void markDirty(Entry entry) {
+    entry.lastUpdate = System.currentTimeMillis();
+    if (!entry.dirty) {
+      entry.dirty = true;
+      pending++;
+    }
+  }
+
+  private UserActionImpl startWriting(Entry entry) {
+    entry.dirty = false;
+    pending--;
+    UserActionImpl footprint = copy(entry.footprint);
+    writing.put(footprint, entry);
+    return footprint;
+  }
+
+  private static UserActionImpl copy(UserAction footprint) {
+    UserActionImpl copy = new UserActionImpl();
+    copy.setId(footprint.getId());
+    copy.setMediapackageId(footprint.getMediapackageId());
+    copy.setSession(footprint.getSession());
+    copy.setInpoint(footprint.getInpoint());
+    copy.setOutpoint(footprint.getOutpoint());
+    copy.setType(footprint.getType());
+    copy.setIsPlaying(footprint.getIsPlaying());
+    copy.setCreated(footprint.getCreated());
+    return copy;
+  }
+
+  /** The footprint of a session */
+  private static final class Entry {
+    private final UserActionImpl footprint;
+    private boolean dirty = false;
+    private long lastUpdate;
+    /** The outpoint that was last written, which is the inpoint as long as nothing was written */
+    private int written;
+
+    Entry(UserActionImpl footprint) {
+      this.footprint = footprint;
+      this.written = footprint.getInpoint();
+    }
+  }
+
+}
@@ -0,0 +1,276 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.usertracking.impl;
+
+import org.opencastproject.usertracking.api.Footprint;
+import org.opencastproject.usertracking.api.FootprintList;
+import org.opencastproject.usertracking.api.UserAction;
+import org.opencastproject.usertracking.endpoint.FootprintImpl;
+import org.opencastproject.usertracking.endpoint.FootprintsListImpl;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.persistence.Access;
+import javax.persistence.AccessType;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.Table;
+
+/**
+ * The footprints of a media package, aggregated per second of the recording, and the number of sessions it was
+ * watched in. Both are kept up to date as footprints arrive, so that reading them does not require going through all
+ * footprints of the media package.
+ * <p>
+ * The footprints are run-length encoded as the positions at which the number of views changes, each with the number
+ * of views from there on, e.g. <code>0:0,10:2,20:1,30:0</code>. This is the form of a {@link FootprintList}.
+ */
+@Entity(name = "FootprintHistogram")
+@Access(AccessType.FIELD)
+@Table(name = "mh_user_footprint_histogram")
+@NamedQueries({
+        @NamedQuery(name = "addFootprintHistogramViews", query = "UPDATE FootprintHistogram h "
+                + "SET h.views = h.views + :views WHERE h.mediapackageId = :mediapackageId") })
+public class FootprintHistogram {
+
+  @Id
+  @Column(name = "mediapackage", length = 128)
+  private String mediapackageId;
+
+  @Column(name = "views")
+  private int views;
+
+  @Lob
+  @Column(name = "footprints", length = 65535)
+  private String footprints;
+
+  /**
+   * Default constructor needed by JPA
+   */
+  public FootprintHistogram() {
+  }
+
+  /**
+   * Creates an empty histogram.
+   *
+   * @param mediapackageId
+   *          the media package identifier
+   */
+  public FootprintHistogram(String mediapackageId) {
+    this.mediapackageId = mediapackageId;
+    this.views = 0;
+    this.footprints = encode(new TreeMap<Integer, Integer>());
+  }
+
+  /**
+   * Creates a copy of a histogram.
+   *
+   * @param histogram
+   *          the histogram
+   */
+  public FootprintHistogram(FootprintHistogram histogram) {
+    this.mediapackageId = histogram.mediapackageId;
+    this.views = histogram.views;
+    this.footprints = histogram.footprints;
+  }
+
+  public String getMediapackageId() {
+    return mediapackageId;
+  }
+
+  /**
+   * Returns the number of sessions in which the media package was watched.
+   */
+  public int getViews() {
+    return views;
+  }
+
+  public void setViews(int views) {
+    this.views = views;
+  }
+
+  /**
+   * Adds the range of a footprint, from its inpoint up to but not including its outpoint, the given number of times.
+   *
+   * @param inpoint
+   *          the inpoint
+   * @param outpoint
+   *          the outpoint
+   * @param count
+   *          the number of views to add, which is negative to remove the range again
+   */
+  public void addFootprint(int inpoint, int outpoint, int count) {
+    TreeMap<Integer, Integer> changes = new TreeMap<Integer, Integer>();
+    addRange(changes, inpoint, outpoint, count);
+    update(changes);
+  }
+
+  /**
+   * Adds the ranges of footprints.
+   *
+   * @param footprints
+   *          the footprints
+   */
+  public void addFootprints(Collection<? extends UserAction> footprints) {
+    TreeMap<Integer, Integer> changes = new TreeMap<Integer, Integer>();
+    for (UserAction footprint : footprints) {
+      addRange(changes, footprint.getInpoint(), footprint.getOutpoint(), 1);
+    }
+    update(changes);
+  }
+
+  /**
+   * Applies the changes collected for the media package at once.
+   *
+   * @param delta
+   *          the changes
+   */
+  public void apply(Delta delta) {
+    views += delta.views;
+    update(new TreeMap<Integer, Integer>(delta.changes));
+  }
+
+  /**
+   * Returns the footprints as a list of the positions at which the number of views changes.
+   */
+  public FootprintList toFootprintList() {
+    FootprintList list = new FootprintsListImpl();
+    for (Map.Entry<Integer, Integer> run : decode(footprints).entrySet()) {
+      Footprint footprint = new FootprintImpl();
+      footprint.setPosition(run.getKey());
+      footprint.setViews(run.getValue());
+      list.add(footprint);
+    }
+    return list;
+  }
+
+  /**
+   * Records the changes in the number of views at the start and the end of a range.
+   */
+  private static void addRange(TreeMap<Integer, Integer> changes, int inpoint, int outpoint, int count) {
+    int start = Math.max(0, inpoint);
+    if (outpoint <= start || count == 0)
+      return;
+    Integer change = changes.get(start);
+    changes.put(start, (change == null ? 0 : change) + count);
+    change = changes.get(outpoint);
+    changes.put(outpoint, (change == null ? 0 : change) - count);
+  }
+
+  /**
+   * Applies changes in the number of views to the runs.
+   */
+  private void update(TreeMap<Integer, Integer> changes) {
+    if (changes.isEmpty())
+      return;
+    TreeMap<Integer, Integer> runs = decode(footprints);
+    // Turn the runs into changes as well and sum them up again
+    int last = 0;
+    for (Map.Entry<Integer, Integer> run : runs.entrySet()) {
+      Integer change = changes.get(run.getKey());
+      changes.put(run.getKey(), (change == null ? 0 : change) + run.getValue() - last);
+      last = run.getValue();
+    }
+    TreeMap<Integer, Integer> updated = new TreeMap<Integer, Integer>();
+    int views = 0;
+    for (Map.Entry<Integer, Integer> change : changes.entrySet()) {
+      views += change.getValue();
+      updated.put(change.getKey(), views);
+    }
+    footprints = encode(updated);
+  }
+
+  /**
+   * Encodes runs, leaving out the ones that do not change the number of views. The first run always starts at position
+   * <code>0</code>.
+   */
+  private static String encode(TreeMap<Integer, Integer> runs) {
+    StringBuilder sb = new StringBuilder("0:");
+    Integer first = runs.get(0);
+    int last = first == null ? 0 : first;
+    sb.append(last);
+    for (Map.Entry<Integer, Integer> run : runs.tailMap(0, false).entrySet()) {
+      if (run.getValue() == last)
+        continue;
+      last = run.getValue();
+      sb.append(',').append(run.getKey()).append(':').append(last);
+    }
+    return sb.toString();
+  }
+
+  private static TreeMap<Integer, Integer> decode(String footprints) {
+    if (footprints == null || footprints.isEmpty())
+      return new TreeMap<Integer, Integer>(Collections.singletonMap(0, 0));
+    TreeMap<Integer, Integer> runs = new TreeMap<Integer, Integer>();
+    for (String run : footprints.split(",")) {
+      int separator = run.indexOf(':');
+      runs.put(Integer.parseInt(run.substring(0, separator)), Integer.parseInt(run.substring(separator + 1)));
+    }
+    return runs;
+  }
+
+  /**
+   * Changes to the histogram of a media package, collected while its footprints are written, so that the histogram
+   * only needs to be decoded and encoded once per transaction.
+   */
+  public static final class Delta {
+
+    private final TreeMap<Integer, Integer> changes = new TreeMap<Integer, Integer>();
+    private int views = 0;
+
+    /**
+     * Adds the range of a footprint, from its inpoint up to but not including its outpoint, the given number of times.
+     *
+     * @param inpoint
+     *          the inpoint
+     * @param outpoint
+     *          the outpoint
+     * @param count
+     *          the number of views to add, which is negative to remove the range again
+     */
+    public void addFootprint(int inpoint, int outpoint, int count) {
+      addRange(changes, inpoint, outpoint, count);
+    }
+
+    /**
+     * Counts another session in which the media package was watched.
+     */
+    public void addView() {
+      views++;
+    }
+
+    /**
+     * Returns whether there are no changes.
+     */
+    public boolean isEmpty() {
+      return views == 0 && changes.isEmpty();
+    }
+
+  }
+
+}
@@ -21,7 +21,6 @@
 
 package org.opencastproject.usertracking.impl;
 
-import org.opencastproject.usertracking.api.Footprint;
 import org.opencastproject.usertracking.api.FootprintList;
 import org.opencastproject.usertracking.api.Report;
 import org.opencastproject.usertracking.api.ReportItem;
@@ -30,11 +29,13 @@ import org.opencastproject.usertracking.api.UserActionList;
 import org.opencastproject.usertracking.api.UserSession;
 import org.opencastproject.usertracking.api.UserTrackingException;
 import org.opencastproject.usertracking.api.UserTrackingService;
-import org.opencastproject.usertracking.endpoint.FootprintImpl;
-import org.opencastproject.usertracking.endpoint.FootprintsListImpl;
 import org.opencastproject.usertracking.endpoint.ReportImpl;
 import org.opencastproject.usertracking.endpoint.ReportItemImpl;
 import org.opencastproject.util.NotFoundException;
+import org.opencastproject.util.OsgiUtil;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
 import org.apache.commons.lang3.StringUtils;
 import org.osgi.service.cm.ConfigurationException;
@@ -44,16 +45,30 @@ import org.slf4j.LoggerFactory;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Dictionary;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.EntityTransaction;
+import javax.persistence.FlushModeType;
+import javax.persistence.LockModeType;
 import javax.persistence.NoResultException;
+import javax.persistence.PersistenceException;
 import javax.persistence.Query;
 import javax.persistence.TemporalType;
 
@@ -73,6 +88,26 @@ public class UserTrackingServiceImpl implements UserTrackingService, ManagedServ
   public static final String IP_LOGGING = "org.opencastproject.usertracking.log.ip";
   public static final String USER_LOGGING = "org.opencastproject.usertracking.log.user";
   public static final String SESSION_LOGGING = "org.opencastproject.usertracking.log.session";
+  public static final String FOOTPRINT_FLUSH_INTERVAL = "org.opencastproject.usertracking.footprint.flush.interval";
+  public static final String FOOTPRINT_FLUSH_SIZE = "org.opencastproject.usertracking.footprint.flush.size";
+  public static final String FOOTPRINT_MAX_PENDING = "org.opencastproject.usertracking.footprint.max.pending";
+  public static final String FOOTPRINT_CACHE_SIZE = "org.opencastproject.usertracking.footprint.cache.size";
+  public static final String FOOTPRINT_CACHE_EXPIRATION = "org.opencastproject.usertracking.footprint.cache.expiration";
+
+  /** The default number of footprints that are written in one transaction */
+  public static final int DEFAULT_FOOTPRINT_FLUSH_SIZE = 500;
+
+  /** The default number of buffered footprints at which the footprints are written right away */
+  public static final int DEFAULT_FOOTPRINT_MAX_PENDING = 10000;
+
+  /** The default number of media packages whose footprint histograms are cached */
+  public static final int DEFAULT_FOOTPRINT_CACHE_SIZE = 1000;
+
+  /** The default number of seconds after which a cached footprint histogram is read again */
+  public static final int DEFAULT_FOOTPRINT_CACHE_EXPIRATION = 60;
+
+  /** The time in milliseconds after which a session without new footprints is considered to have ended */
+  private static final long SESSION_IDLE_TIME = 10 * 60 * 1000L;
 
   private static final Logger logger = LoggerFactory.getLogger(UserTrackingServiceImpl.class);
 
@@ -81,6 +116,24 @@ public class UserTrackingServiceImpl implements UserTrackingService, ManagedServ
   private boolean logUser = true;
   private boolean logSession = true;
 
+  /** The number of seconds between writing the buffered footprints, or <code>0</code> to write them immediately */
+  private volatile int footprintFlushInterval = 0;
+  private int footprintFlushSize = DEFAULT_FOOTPRINT_FLUSH_SIZE;
+  private int footprintMaxPending = DEFAULT_FOOTPRINT_MAX_PENDING;
+
+  /** The footprints of the sessions that are currently watching */
+  private final FootprintBuffer footprintBuffer = new FootprintBuffer();
+
+  /** Makes sure that the buffered footprints are written by one thread at a time */
+  private final Object flushLock = new Object();
+
+  /** Writes the buffered footprints periodically */
+  private ScheduledExecutorService footprintFlusher = null;
+
+  /** The footprint histograms of recently read media packages, or <code>null</code> if caching is disabled */
+  private volatile Cache<String, FootprintHistogram> histogramCache = createHistogramCache(
+          DEFAULT_FOOTPRINT_CACHE_SIZE, DEFAULT_FOOTPRINT_CACHE_EXPIRATION);
+
   /** The factory used to generate the entity manager */
   protected EntityManagerFactory emf = null;
 
@@ -98,6 +151,21 @@ public class UserTrackingServiceImpl implements UserTrackingService, ManagedServ
     logger.debug("activate()");
   }
 
+  /**
+   * Deactivation callback, which writes the buffered footprints.
+   */
+  public synchronized void deactivate() {
+    if (footprintFlusher != null) {
+      footprintFlusher.shutdown();
+      footprintFlusher = null;
+    }
+    footprintFlushInterval = 0;
+    flushFootprints();
+    int pending = footprintBuffer.getPending();
+    if (pending > 0)
+      logger.warn("Unable to write {} buffered footprints", pending);
+  }
+
   @Override
   public void updated(Dictionary props) throws ConfigurationException {
     if (props == null) {
@@ -122,20 +190,193 @@ public class UserTrackingServiceImpl implements UserTrackingService, ManagedServ
       logSession = Boolean.valueOf((String) val);
     }
 
+    histogramCache = createHistogramCache(
+            OsgiUtil.getOptCfgAsInt(props, FOOTPRINT_CACHE_SIZE).getOrElse(DEFAULT_FOOTPRINT_CACHE_SIZE),
+            OsgiUtil.getOptCfgAsInt(props, FOOTPRINT_CACHE_EXPIRATION).getOrElse(DEFAULT_FOOTPRINT_CACHE_EXPIRATION));
+    footprintFlushSize = Math.max(1, OsgiUtil.getOptCfgAsInt(props, FOOTPRINT_FLUSH_SIZE).getOrElse(
+            DEFAULT_FOOTPRINT_FLUSH_SIZE));
+    footprintMaxPending = Math.max(1, OsgiUtil.getOptCfgAsInt(props, FOOTPRINT_MAX_PENDING).getOrElse(
+            DEFAULT_FOOTPRINT_MAX_PENDING));
+    scheduleFootprintFlusher(Math.max(0, OsgiUtil.getOptCfgAsInt(props, FOOTPRINT_FLUSH_INTERVAL).getOrElse(0)));
+  }
+
+  /**
+   * Starts writing the buffered footprints at the given interval, or stops buffering them if the interval is
+   * <code>0</code>.
+   *
+   * @param interval
+   *          the number of seconds between writing the buffered footprints
+   */
+  private synchronized void scheduleFootprintFlusher(int interval) {
+    if (footprintFlusher != null) {
+      footprintFlusher.shutdown();
+      footprintFlusher = null;
+    }
+    footprintFlushInterval = interval;
+    if (interval == 0) {
+      flushFootprints();
+      logger.info("Writing footprints immediately");
+      return;
+    }
+    footprintFlusher = Executors.newSingleThreadScheduledExecutor();
+    footprintFlusher.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        flushFootprints();
+      }
+    }, interval, interval, TimeUnit.SECONDS);
+    logger.info("Writing footprints every {} seconds in batches of {}", interval, footprintFlushSize);
+  }
+
+  private static Cache<String, FootprintHistogram> createHistogramCache(int size, int expiration) {
+    if (size <= 0 || expiration <= 0)
+      return null;
+    return CacheBuilder.newBuilder().maximumSize(size).expireAfterWrite(expiration, TimeUnit.SECONDS).build();
   }
 
   public int getViews(String mediapackageId) {
+    return getHistogram(mediapackageId).getViews();
+  }
+
+  /**
+   * Returns the footprint histogram of a media package, which is shared and must not be modified.
+   *
+   * @param mediapackageId
+   *          the media package identifier
+   * @return the histogram
+   */
+  private FootprintHistogram getHistogram(String mediapackageId) {
+    Cache<String, FootprintHistogram> cache = histogramCache;
+    FootprintHistogram histogram = cache != null ? cache.getIfPresent(mediapackageId) : null;
+    if (histogram != null)
+      return histogram;
+
     EntityManager em = null;
     try {
       em = emf.createEntityManager();
-      Query q = em.createNamedQuery("countSessionsOfMediapackage");
-      q.setParameter("mediapackageId", mediapackageId);
-      return ((Long) q.getSingleResult()).intValue();
+      histogram = em.find(FootprintHistogram.class, mediapackageId);
+      // Media packages that were watched before histograms were kept have theirs created on the next footprint
+      if (histogram == null)
+        histogram = createHistogram(em, mediapackageId);
     } finally {
       if (em != null && em.isOpen()) {
         em.close();
       }
     }
+    if (cache != null)
+      cache.put(mediapackageId, histogram);
+    return histogram;
+  }
+
+  /**
+   * Creates the footprint histograms of the media packages that have none yet from their stored user actions. This has
+   * to happen before user actions of the media packages are changed. Each histogram is created in a transaction of its
+   * own, so that a writer which loses the race to create it does not lose its user actions as well.
+   *
+   * @param mediapackageIds
+   *          the media package identifiers
+   * @throws UserTrackingException
+   *           if a histogram can neither be created nor found
+   */
+  private void createMissingHistograms(Collection<String> mediapackageIds) throws UserTrackingException {
+    EntityManager em = null;
+    try {
+      em = emf.createEntityManager();
+      for (String mediapackageId : mediapackageIds) {
+        if (em.find(FootprintHistogram.class, mediapackageId) != null)
+          continue;
+        EntityTransaction tx = em.getTransaction();
+        try {
+          tx.begin();
+          em.persist(createHistogram(em, mediapackageId));
+          tx.commit();
+        } catch (PersistenceException e) {
+          if (tx.isActive()) {
+            tx.rollback();
+          }
+          // Another writer may have created the histogram in the meantime
+          em.clear();
+          if (em.find(FootprintHistogram.class, mediapackageId) == null)
+            throw new UserTrackingException(e);
+          logger.debug("Footprint histogram of {} has been created concurrently", mediapackageId);
+        }
+      }
+    } finally {
+      if (em != null && em.isOpen()) {
+        em.close();
+      }
+    }
+  }
+
+  /**
+   * Applies the collected changes to the footprint histograms, locking them in a fixed order to avoid deadlocks. This
+   * is done at the end of the transaction, so that the histograms stay locked for as short as possible.
+   *
+   * @param em
+   *          the entity manager
+   * @param deltas
+   *          the changes per media package
+   */
+  private static void applyHistogramDeltas(EntityManager em, Map<String, FootprintHistogram.Delta> deltas) {
+    for (Map.Entry<String, FootprintHistogram.Delta> delta : new TreeMap<String, FootprintHistogram.Delta>(deltas)
+            .entrySet()) {
+      if (delta.getValue().isEmpty())
+        continue;
+      FootprintHistogram histogram = em.find(FootprintHistogram.class, delta.getKey(),
+              LockModeType.PESSIMISTIC_WRITE);
+      if (histogram == null)
+        throw new IllegalStateException("No footprint histogram for media package " + delta.getKey());
+      histogram.apply(delta.getValue());
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private FootprintHistogram createHistogram(EntityManager em, String mediapackageId) {
+    FootprintHistogram histogram = new FootprintHistogram(mediapackageId);
+    Query q = em.createNamedQuery("countSessionsOfMediapackage");
+    q.setParameter("mediapackageId", mediapackageId);
+    histogram.setViews(((Long) q.getSingleResult()).intValue());
+    q = em.createNamedQuery("findUserActionsByTypeAndMediapackageId");
+    q.setParameter("type", FOOTPRINT_KEY);
+    q.setParameter("mediapackageId", mediapackageId);
+    histogram.addFootprints(q.getResultList());
+    return histogram;
+  }
+
+  /**
+   * Returns whether the session has no stored user action for the media package yet, which makes a new action a new
+   * view.
+   */
+  private boolean isNewView(EntityManager em, UserSession session, String mediapackageId) {
+    Query q = em.createNamedQuery("countUserActionsOfSessionAndMediapackage");
+    q.setParameter("session", session);
+    q.setParameter("mediapackageId", mediapackageId);
+    return ((Long) q.getSingleResult()).intValue() == 0;
+  }
+
+  /**
+   * Moves the outpoint of a stored footprint and records the change to the histogram.
+   */
+  private static void extendFootprint(FootprintHistogram.Delta delta, UserAction footprint, int outpoint) {
+    delta.addFootprint(footprint.getInpoint(), footprint.getOutpoint(), -1);
+    delta.addFootprint(footprint.getInpoint(), outpoint, 1);
+    footprint.setOutpoint(outpoint);
+  }
+
+  private static FootprintHistogram.Delta getDelta(Map<String, FootprintHistogram.Delta> deltas,
+          String mediapackageId) {
+    FootprintHistogram.Delta delta = deltas.get(mediapackageId);
+    if (delta == null) {
+      delta = new FootprintHistogram.Delta();
+      deltas.put(mediapackageId, delta);
+    }
+    return delta;
+  }
+
+  private void invalidateHistograms(Collection<String> mediapackageIds) {
+    Cache<String, FootprintHistogram> cache = histogramCache;
+    if (cache != null)
+      cache.invalidateAll(mediapackageIds);
   }
 
   @SuppressWarnings("unchecked")
@@ -146,11 +387,23 @@ public class UserTrackingServiceImpl implements UserTrackingService, ManagedServ
     if (!logIp) session.setUserIp("-omitted-");
     if (!logUser) session.setUserId("-omitted-");
     if (!logSession) session.setSessionId("-omitted-");
+
+    // Contiguous footprints of a session are merged in memory and written later on
+    if (footprintFlushInterval > 0) {
+      a.setSession(session);
+      UserAction footprint = footprintBuffer.add(a);
+      if (footprintBuffer.getPending() >= footprintMaxPending)
+        flushFootprints();
+      return footprint;
+    }
+
     try {
+      createMissingHistograms(Collections.singleton(a.getMediapackageId()));
       em = emf.createEntityManager();
       tx = em.getTransaction();
       tx.begin();
       UserSession userSession = populateSession(em, session);
+      FootprintHistogram.Delta delta = new FootprintHistogram.Delta();
 
       Query q = em.createNamedQuery("findLastUserFootprintOfSession");
       q.setMaxResults(1);
@@ -162,18 +415,18 @@ public class UserTrackingServiceImpl implements UserTrackingService, ManagedServ
         if (last.getMediapackageId().equals(a.getMediapackageId()) && last.getType().equals(a.getType())
                 && last.getOutpoint() == a.getInpoint()) {
           //We are assuming in this case that the sessions match and are unchanged (IP wise, for example)
-          last.setOutpoint(a.getOutpoint());
+          extendFootprint(delta, last, a.getOutpoint());
           a = last;
           a.setId(last.getId());
         } else {
-          a.setSession(userSession);
-          em.persist(a);
+          persistFootprint(em, delta, a, userSession);
         }
       } else {
-        a.setSession(userSession);
-        em.persist(a);
+        persistFootprint(em, delta, a, userSession);
       }
+      applyHistogramDeltas(em, Collections.singletonMap(a.getMediapackageId(), delta));
       tx.commit();
+      invalidateHistograms(Collections.singleton(a.getMediapackageId()));
       return a;
     } catch (Exception e) {
       if (tx != null && tx.isActive()) {
@@ -187,6 +440,134 @@ public class UserTrackingServiceImpl implements UserTrackingService, ManagedServ
     }
   }
 
+  private void persistFootprint(EntityManager em, FootprintHistogram.Delta delta, UserAction a, UserSession session) {
+    if (isNewView(em, session, a.getMediapackageId()))
+      delta.addView();
+    delta.addFootprint(a.getInpoint(), a.getOutpoint(), 1);
+    a.setSession(session);
+    em.persist(a);
+  }
+
+  /**
+   * Writes the buffered footprints to the database, in batches of the configured size.
+   */
+  private void flushFootprints() {
+    synchronized (flushLock) {
+      while (true) {
+        List<UserActionImpl> footprints = footprintBuffer.drain(footprintFlushSize);
+        if (footprints.isEmpty())
+          break;
+        try {
+          storeFootprints(footprints);
+          footprintBuffer.stored(footprints);
+        } catch (UserTrackingException e) {
+          footprintBuffer.failed(footprints);
+          logger.warn("Unable to write {} footprints, trying again later: {}", footprints.size(), e.getMessage());
+          break;
+        }
+      }
+      footprintBuffer.removeIdleSessions(SESSION_IDLE_TIME);
+    }
+  }
+
+  /**
+   * Writes footprints in a single transaction. Footprints with an identifier update the outpoint of the stored
+   * footprint, new ones either extend the last stored footprint of their session or are inserted. The generated
+   * identifiers are set on the footprints.
+   *
+   * @param footprints
+   *          the footprints
+   * @throws UserTrackingException
+   *           if writing the footprints fails
+   */
+  @SuppressWarnings("unchecked")
+  private void storeFootprints(List<UserActionImpl> footprints) throws UserTrackingException {
+    EntityManager em = null;
+    EntityTransaction tx = null;
+    try {
+      Set<String> mediapackageIds = new TreeSet<String>();
+      for (UserActionImpl footprint : footprints) {
+        mediapackageIds.add(footprint.getMediapackageId());
+      }
+      createMissingHistograms(mediapackageIds);
+
+      em = emf.createEntityManager();
+      // Keep the statements until the commit, so that they can be sent in batches
+      em.setFlushMode(FlushModeType.COMMIT);
+      tx = em.getTransaction();
+      tx.begin();
+
+      // The changes to the histograms are collected per media package and applied once
+      Map<String, FootprintHistogram.Delta> deltas = new HashMap<String, FootprintHistogram.Delta>();
+
+      List<Long> ids = new ArrayList<Long>();
+      for (UserActionImpl footprint : footprints) {
+        if (footprint.getId() != null)
+          ids.add(footprint.getId());
+      }
+      Map<Long, UserAction> stored = new HashMap<Long, UserAction>();
+      if (!ids.isEmpty()) {
+        Query q = em.createNamedQuery("findUserActionsByIds");
+        q.setParameter("ids", ids);
+        for (UserAction a : (List<UserAction>) q.getResultList()) {
+          stored.put(a.getId(), a);
+        }
+      }
+
+      Map<String, UserSession> sessions = new HashMap<String, UserSession>();
+      // The sessions and media packages that got a new footprint in this transaction, which the queries do not see
+      Set<String> viewed = new HashSet<String>();
+      for (UserActionImpl footprint : footprints) {
+        FootprintHistogram.Delta delta = getDelta(deltas, footprint.getMediapackageId());
+        if (footprint.getId() != null) {
+          UserAction a = stored.get(footprint.getId());
+          if (a != null)
+            extendFootprint(delta, a, footprint.getOutpoint());
+          continue;
+        }
+
+        UserSession userSession = sessions.get(footprint.getSession().getSessionId());
+        if (userSession == null) {
+          userSession = populateSession(em, footprint.getSession());
+          sessions.put(userSession.getSessionId(), userSession);
+        }
+
+        Query q = em.createNamedQuery("findLastUserFootprintOfSession");
+        q.setMaxResults(1);
+        q.setParameter("session", userSession);
+        List<UserAction> userActions = q.getResultList();
+        if (userActions.size() >= 1) {
+          UserAction last = userActions.get(0);
+          if (last.getMediapackageId().equals(footprint.getMediapackageId())
+                  && last.getOutpoint() == footprint.getInpoint()) {
+            extendFootprint(delta, last, footprint.getOutpoint());
+            footprint.setId(last.getId());
+            continue;
+          }
+        }
+        if (viewed.add(userSession.getSessionId() + "/" + footprint.getMediapackageId())) {
+          persistFootprint(em, delta, footprint, userSession);
+        } else {
+          delta.addFootprint(footprint.getInpoint(), footprint.getOutpoint(), 1);
+          footprint.setSession(userSession);
+          em.persist(footprint);
+        }
+      }
+      applyHistogramDeltas(em, deltas);
+      tx.commit();
+      invalidateHistograms(mediapackageIds);
+    } catch (Exception e) {
+      if (tx != null && tx.isActive()) {
+        tx.rollback();
+      }
+      throw new UserTrackingException(e);
+    } finally {
+      if (em != null && em.isOpen()) {
+        em.close();
+      }
+    }
+  }
+
   public UserAction addUserTrackingEvent(UserAction a, UserSession session) throws UserTrackingException {
     EntityManager em = null;
     EntityTransaction tx = null;
@@ -194,16 +575,29 @@ public class UserTrackingServiceImpl implements UserTrackingService, ManagedServ
     if (!logUser) session.setUserId("-omitted-");
     if (!logSession) session.setSessionId("-omitted-");
     try {
+      if (a.getMediapackageId() != null)
+        createMissingHistograms(Collections.singleton(a.getMediapackageId()));
       em = emf.createEntityManager();
       tx = em.getTransaction();
       tx.begin();
       UserSession userSession = populateSession(em, session);
+      // Only the first action of a session counts as a view
+      boolean newView = a.getMediapackageId() != null && isNewView(em, userSession, a.getMediapackageId());
       a.setSession(userSession);
       em.persist(a);
+      if (newView) {
+        // Count the view without reading the histogram, which would otherwise have to be locked
+        Query q = em.createNamedQuery("addFootprintHistogramViews");
+        q.setParameter("views", 1);
+        q.setParameter("mediapackageId", a.getMediapackageId());
+        q.executeUpdate();
+      }
       tx.commit();
+      if (newView)
+        invalidateHistograms(Collections.singleton(a.getMediapackageId()));
       return a;
     } catch (Exception e) {
-      if (tx.isActive()) {
+      if (tx != null && tx.isActive()) {
         tx.rollback();
       }
       throw new UserTrackingException(e);
@@ -618,47 +1012,39 @@ public class UserTrackingServiceImpl implements UserTrackingService, ManagedServ
   public FootprintList getFootprints(String mediapackageId, String userId) {
     EntityManager em = null;
     if (! logUser) userId = null;
+    if (StringUtils.trimToNull(userId) == null) {
+      // Buffered footprints add their views on top of the stored ones
+      FootprintHistogram histogram = new FootprintHistogram(getHistogram(mediapackageId));
+      histogram.addFootprints(footprintBuffer.getUnwritten(mediapackageId));
+      return histogram.toFootprintList();
+    }
+
     try {
       em = emf.createEntityManager();
-      Query q = null;
-      if (StringUtils.trimToNull(userId) == null) {
-        q = em.createNamedQuery("findUserActionsByTypeAndMediapackageIdOrderByOutpointDESC");
-      } else {
-        q = em.createNamedQuery("findUserActionsByTypeAndMediapackageIdByUserOrderByOutpointDESC");
-        q.setParameter("userid", userId);
-      }
+      Query q = em.createNamedQuery("findUserActionsByTypeAndMediapackageIdByUserOrderByOutpointDESC");
+      q.setParameter("userid", userId);
       q.setParameter("type", FOOTPRINT_KEY);
       q.setParameter("mediapackageId", mediapackageId);
       @SuppressWarnings("unchecked")
       Collection<UserAction> userActions = q.getResultList();
 
-      int[] resultArray = new int[1];
-      boolean first = true;
-
-      for (UserAction a : userActions) {
-        if (first) {
-          // Get one more item than the known outpoint to append a footprint of 0 views at the end of the result set
-          resultArray = new int[a.getOutpoint() + 1];
-          first = false;
-        }
-        for (int i = a.getInpoint(); i < a.getOutpoint(); i++) {
-          resultArray[i]++;
-        }
+      // Buffered footprints take the place of their stored state
+      List<UserAction> footprints = new ArrayList<UserAction>();
+      Set<Long> buffered = new HashSet<Long>();
+      for (UserActionImpl a : footprintBuffer.getPending(mediapackageId)) {
+        if (userId.equals(a.getSession().getUserId()))
+          footprints.add(a);
+        if (a.getId() != null)
+          buffered.add(a.getId());
       }
-      FootprintList list = new FootprintsListImpl();
-      int current = -1;
-      int last = -1;
-      for (int i = 0; i < resultArray.length; i++) {
-        current = resultArray[i];
-        if (last != current) {
-          Footprint footprint = new FootprintImpl();
-          footprint.setPosition(i);
-          footprint.setViews(current);
-          list.add(footprint);
-        }
-        last = current;
+      for (UserAction a : userActions) {
+        if (!buffered.contains(a.getId()))
+          footprints.add(a);
       }
-      return list;
+
+      FootprintHistogram histogram = new FootprintHistogram(mediapackageId);
+      histogram.addFootprints(footprints);
+      return histogram.toFootprintList();
     } finally {
       if (em != null && em.isOpen()) {
         em.close();
@@ -0,0 +1,128 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.usertracking.impl;
+
+import org.opencastproject.usertracking.api.Footprint;
+import org.opencastproject.usertracking.api.FootprintList;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class FootprintHistogramTest {
+
+  /**
+   * Tests that single footprints are added and removed again
+   */
+  @Test
+  public void testAddFootprint() {
+    FootprintHistogram histogram = new FootprintHistogram("mp");
+    assertFootprints(histogram, 0, 0);
+
+    histogram.addFootprint(10, 20, 1);
+    assertFootprints(histogram, 0, 0, 10, 1, 20, 0);
+    histogram.addFootprint(15, 30, 1);
+    assertFootprints(histogram, 0, 0, 10, 1, 15, 2, 20, 1, 30, 0);
+    histogram.addFootprint(0, 10, 1);
+    assertFootprints(histogram, 0, 1, 15, 2, 20, 1, 30, 0);
+
+    // Extending a footprint
+    histogram.addFootprint(15, 30, -1);
+    histogram.addFootprint(15, 40, 1);
+    assertFootprints(histogram, 0, 1, 15, 2, 20, 1, 40, 0);
+
+    // Empty ranges do not count
+    histogram.addFootprint(50, 50, 1);
+    histogram.addFootprint(60, 55, 1);
+    assertFootprints(histogram, 0, 1, 15, 2, 20, 1, 40, 0);
+
+    // Copies are independent
+    FootprintHistogram copy = new FootprintHistogram(histogram);
+    copy.addFootprint(0, 40, -1);
+    assertFootprints(copy, 0, 0, 15, 1, 20, 0);
+    assertFootprints(histogram, 0, 1, 15, 2, 20, 1, 40, 0);
+  }
+
+  /**
+   * Tests that the histogram built from footprints matches the one built by adding them one by one
+   */
+  @Test
+  public void testAddFootprints() {
+    List<UserActionImpl> footprints = new ArrayList<UserActionImpl>();
+    FootprintHistogram single = new FootprintHistogram("mp");
+    int[][] ranges = { { 10, 20 }, { 560, 720 }, { 20, 30 }, { 0, 5 }, { 5, 15 } };
+    for (int[] range : ranges) {
+      UserActionImpl footprint = new UserActionImpl();
+      footprint.setInpoint(range[0]);
+      footprint.setOutpoint(range[1]);
+      footprints.add(footprint);
+      single.addFootprint(range[0], range[1], 1);
+    }
+
+    FootprintHistogram histogram = new FootprintHistogram("mp");
+    histogram.addFootprints(footprints);
+    assertFootprints(histogram, 0, 1, 10, 2, 15, 1, 30, 0, 560, 1, 720, 0);
+    assertFootprints(single, 0, 1, 10, 2, 15, 1, 30, 0, 560, 1, 720, 0);
+  }
+
+  /**
+   * Tests that changes collected in a delta are applied at once, like adding them one by one
+   */
+  @Test
+  public void testApplyDelta() {
+    FootprintHistogram histogram = new FootprintHistogram("mp");
+    histogram.addFootprint(10, 20, 1);
+    histogram.setViews(1);
+
+    FootprintHistogram.Delta delta = new FootprintHistogram.Delta();
+    Assert.assertTrue(delta.isEmpty());
+    // Extending the stored footprint and adding another one
+    delta.addFootprint(10, 20, -1);
+    delta.addFootprint(10, 30, 1);
+    delta.addFootprint(25, 40, 1);
+    delta.addView();
+    Assert.assertFalse(delta.isEmpty());
+
+    histogram.apply(delta);
+    assertFootprints(histogram, 0, 0, 10, 1, 25, 2, 30, 1, 40, 0);
+    Assert.assertEquals(2, histogram.getViews());
+
+    // The delta is not used up by applying it
+    FootprintHistogram other = new FootprintHistogram("other");
+    other.addFootprint(10, 20, 1);
+    other.apply(delta);
+    assertFootprints(other, 0, 0, 10, 1, 25, 2, 30, 1, 40, 0);
+  }
+
+  private static void assertFootprints(FootprintHistogram histogram, int... positionsAndViews) {
+    FootprintList list = histogram.toFootprintList();
+    Assert.assertEquals(positionsAndViews.length / 2, list.getFootprints().size());
+    for (int i = 0; i < positionsAndViews.length / 2; i++) {
+      Footprint footprint = list.getFootprints().get(i);
+      Assert.assertEquals(positionsAndViews[2 * i], footprint.getPosition());
+      Assert.assertEquals(positionsAndViews[2 * i + 1], footprint.getViews());
+    }
+  }
+
+}
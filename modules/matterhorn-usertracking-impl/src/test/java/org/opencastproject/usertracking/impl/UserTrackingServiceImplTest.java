@@ -178,6 +178,62 @@ public class UserTrackingServiceImplTest {
     verifyFootprintViewsAndPositions(list, 2, 30, 0);
   }
 
+  /**
+   * Test that buffered footprints are merged, taken into account and written on deactivation
+   * @throws Exception
+   */
+  @Test
+  public void testWriteBehindFootprints() throws Exception {
+    Properties props = new Properties();
+    props.setProperty(UserTrackingServiceImpl.FOOTPRINT_FLUSH_INTERVAL, "3600");
+    props.setProperty(UserTrackingServiceImpl.FOOTPRINT_FLUSH_SIZE, "1");
+    service.updated(props);
+
+    UserSession session = createUserSession("session123", "me", "127.0.0.1");
+    UserAction footprint = service.addUserFootprint(createUserAction(UserTrackingServiceImpl.FOOTPRINT_KEY, "mp", 10,
+            20, new Date(1000), session), session);
+    Assert.assertNull(footprint.getId());
+    footprint = service.addUserFootprint(createUserAction(UserTrackingServiceImpl.FOOTPRINT_KEY, "mp", 20, 30,
+            new Date(1000), session), session);
+    Assert.assertEquals(10, footprint.getInpoint());
+    Assert.assertEquals(30, footprint.getOutpoint());
+    service.addUserFootprint(createUserAction(UserTrackingServiceImpl.FOOTPRINT_KEY, "mp", 50, 60, new Date(2000),
+            session), session);
+
+    // Nothing is written yet, but the buffered footprints count
+    Assert.assertEquals(0, service.getUserActions(0, 0).getTotal());
+    FootprintList list = getFootprintList("mp", null, 5);
+    verifyFootprintViewsAndPositions(list, 0, 0, 0);
+    verifyFootprintViewsAndPositions(list, 1, 10, 1);
+    verifyFootprintViewsAndPositions(list, 2, 30, 0);
+    verifyFootprintViewsAndPositions(list, 3, 50, 1);
+    verifyFootprintViewsAndPositions(list, 4, 60, 0);
+    getFootprintList("mp", "someone else", 1);
+
+    service.deactivate();
+    UserActionList actions = service.getUserActionsByTypeAndMediapackageIdByDate(
+            UserTrackingServiceImpl.FOOTPRINT_KEY, "mp", 0, 0);
+    Assert.assertEquals(2, actions.getTotal());
+    Assert.assertEquals(10, actions.getUserActions().get(0).getInpoint());
+    Assert.assertEquals(30, actions.getUserActions().get(0).getOutpoint());
+    Assert.assertEquals(50, actions.getUserActions().get(1).getInpoint());
+    Assert.assertEquals(1, service.getViews("mp"));
+
+    // Footprints that continue a stored one extend it
+    service.updated(props);
+    service.addUserFootprint(createUserAction(UserTrackingServiceImpl.FOOTPRINT_KEY, "mp", 60, 70, new Date(3000),
+            session), session);
+    service.deactivate();
+    Assert.assertEquals(2, service.getUserActions(0, 0).getTotal());
+    list = getFootprintList("mp", "me", 5);
+    verifyFootprintViewsAndPositions(list, 3, 50, 1);
+    verifyFootprintViewsAndPositions(list, 4, 70, 0);
+    list = getFootprintList("mp", null, 5);
+    verifyFootprintViewsAndPositions(list, 3, 50, 1);
+    verifyFootprintViewsAndPositions(list, 4, 70, 0);
+    Assert.assertEquals(1, service.getViews("mp"));
+  }
+
   /**
    * Tests basic user action lists and reports
    * @throws Exception
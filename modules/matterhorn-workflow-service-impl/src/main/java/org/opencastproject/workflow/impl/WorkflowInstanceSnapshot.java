@@ -0,0 +1,74 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+
+package org.opencastproject.workflow.impl;
+
+import org.opencastproject.workflow.api.WorkflowInstance;
+import org.opencastproject.workflow.api.WorkflowParser;
+import org.opencastproject.workflow.api.WorkflowParsingException;
+
+/**
+ * The state of a workflow instance at the time of an update, kept in the serialized form that has been stored with the
+ * update. The instance is parsed when it is first asked for, at most once, and the result is shared by everyone asking.
+ * Since the parsed instance is shared, it must not be modified.
+ */
+final class WorkflowInstanceSnapshot {
+
+  /** The serialized workflow instance */
+  private final String xml;
+
+  /** The parsed workflow instance, if it has been asked for */
+  private WorkflowInstance instance = null;
+
+  /**
+   * Creates a snapshot.
+   *
+   * @param xml
+   *          the workflow instance as serialized by {@link WorkflowParser#toXml(WorkflowInstance)}
+   */
+  WorkflowInstanceSnapshot(String xml) {
+    this.xml = xml;
+  }
+
+  /**
+   * Returns the serialized workflow instance.
+   *
+   * @return the workflow instance as xml
+   */
+  String getXml() {
+    return xml;
+  }
+
+  /**
+   * Returns the workflow instance.
+   *
+   * @return the workflow instance
+   * @throws WorkflowParsingException
+   *           if the workflow instance cannot be parsed
+   */
+  synchronized WorkflowInstance get() throws WorkflowParsingException {
+    if (instance == null)
+      instance = WorkflowParser.parseWorkflowInstance(xml);
+    return instance;
+  }
+
+}
@@ -0,0 +1,91 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.workflow.impl;
+
+import org.opencastproject.workflow.api.WorkflowDatabaseException;
+import org.opencastproject.workflow.api.WorkflowInstance;
+import org.opencastproject.workflow.api.WorkflowInstanceImpl;
+import org.opencastproject.workflow.api.WorkflowParsingException;
+
+/**
+ * Append-only record of the changes to running workflows.
+ * <p>
+ * The job payload of a workflow holds a complete snapshot of the workflow instance. Instead of rewriting that snapshot
+ * on every update, the workflow service appends the parts of the instance that have changed to the journal, and only
+ * writes a new snapshot every now and then, after which the journal is compacted. The current state of a workflow is
+ * the snapshot with the journal entries applied on top of it.
+ */
+public interface WorkflowJournal {
+
+  /**
+   * Records the current state of the workflow, storing only the operations and the mediapackage if they have changed
+   * since the previous entry. The parts of the entry are taken from the serialized workflow the caller already has at
+   * hand.
+   *
+   * @param workflow
+   *          the workflow instance
+   * @param xml
+   *          the workflow instance as serialized by {@link org.opencastproject.workflow.api.WorkflowParser#toXml}
+   * @return whether enough entries have piled up to write a new snapshot and compact the journal
+   * @throws WorkflowDatabaseException
+   *           if the entry could not be stored
+   */
+  boolean append(WorkflowInstance workflow, String xml) throws WorkflowDatabaseException;
+
+  /**
+   * Restores the current state of a workflow from its latest snapshot and the journal.
+   *
+   * @param workflowId
+   *          the workflow identifier
+   * @param snapshot
+   *          the serialized snapshot, as found in the job payload
+   * @return the workflow instance
+   * @throws WorkflowDatabaseException
+   *           if the journal could not be read
+   * @throws WorkflowParsingException
+   *           if the snapshot or a journal entry is malformed
+   */
+  WorkflowInstanceImpl restore(long workflowId, String snapshot) throws WorkflowDatabaseException,
+          WorkflowParsingException;
+
+  /**
+   * Drops the entries that are covered by a snapshot of the current state of the workflow. The latest entry is kept,
+   * so that the next one can still be limited to what changes from here.
+   *
+   * @param workflowId
+   *          the workflow identifier
+   * @throws WorkflowDatabaseException
+   *           if the entries could not be removed
+   */
+  void compact(long workflowId) throws WorkflowDatabaseException;
+
+  /**
+   * Removes all entries of a workflow.
+   *
+   * @param workflowId
+   *          the workflow identifier
+   * @throws WorkflowDatabaseException
+   *           if the entries could not be removed
+   */
+  void remove(long workflowId) throws WorkflowDatabaseException;
+
+}
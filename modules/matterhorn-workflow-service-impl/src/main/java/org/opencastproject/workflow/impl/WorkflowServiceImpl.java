@@ -219,6 +219,9 @@ public class WorkflowServiceImpl extends AbstractIndexProducer implements Workfl
   /** The data access object responsible for storing and retrieving workflow instances */
   protected WorkflowServiceIndex index;
 
+  /** The journal of workflow changes, if workflow snapshots are not written on every update */
+  protected WorkflowJournal journal;
+
   /** The list of workflow listeners */
   private final List<WorkflowListener> listeners = new CopyOnWriteArrayList<WorkflowListener>();
 
@@ -328,9 +331,18 @@ public class WorkflowServiceImpl extends AbstractIndexProducer implements Workfl
   }
 
   /**
-   * Fires the workflow listeners on workflow updates.
+   * Fires the workflow listeners on workflow updates. The listeners share a snapshot of the updated workflow instance,
+   * which is only parsed if a listener is notified.
+   *
+   * @param oldWorkflowInstance
+   *          the workflow instance before the update, or <code>null</code> if it is new
+   * @param newWorkflowInstance
+   *          the updated workflow instance
+   * @param snapshot
+   *          the snapshot of the updated workflow instance the listeners receive
    */
-  protected void fireListeners(final WorkflowInstance oldWorkflowInstance, final WorkflowInstance newWorkflowInstance) {
+  protected void fireListeners(final WorkflowInstance oldWorkflowInstance, final WorkflowInstance newWorkflowInstance,
+          final WorkflowInstanceSnapshot snapshot) {
     final User currentUser = securityService.getUser();
     final Organization currentOrganization = securityService.getOrganization();
     for (final WorkflowListener listener : listeners) {
@@ -341,7 +353,9 @@ public class WorkflowServiceImpl extends AbstractIndexProducer implements Workfl
             try {
               securityService.setUser(currentUser);
               securityService.setOrganization(currentOrganization);
-              listener.stateChanged(newWorkflowInstance);
+              listener.stateChanged(snapshot.get());
+            } catch (WorkflowParsingException e) {
+              logger.error(e, "Unable to notify %s of workflow %s", listener, newWorkflowInstance.getId());
             } finally {
               securityService.setUser(null);
               securityService.setOrganization(null);
@@ -362,7 +376,9 @@ public class WorkflowServiceImpl extends AbstractIndexProducer implements Workfl
               try {
                 securityService.setUser(currentUser);
                 securityService.setOrganization(currentOrganization);
-                listener.operationChanged(newWorkflowInstance);
+                listener.operationChanged(snapshot.get());
+              } catch (WorkflowParsingException e) {
+                logger.error(e, "Unable to notify %s of workflow %s", listener, newWorkflowInstance.getId());
               } finally {
                 securityService.setUser(null);
                 securityService.setOrganization(null);
@@ -555,7 +571,7 @@ public class WorkflowServiceImpl extends AbstractIndexProducer implements Workfl
         throw new NotFoundException("Workflow '" + id + "' has been deleted");
       }
       if (JOB_TYPE.equals(job.getJobType()) && Operation.START_WORKFLOW.toString().equals(job.getOperation())) {
-        WorkflowInstanceImpl workflow = WorkflowParser.parseWorkflowInstance(job.getPayload());
+        WorkflowInstanceImpl workflow = readWorkflow(job);
         assertPermission(workflow, Permissions.Action.READ.toString());
         return workflow;
       } else {
@@ -1091,6 +1107,11 @@ public class WorkflowServiceImpl extends AbstractIndexProducer implements Workfl
             serviceRegistry.removeJob(workflowInstanceId);
             messageSender.sendObjectMessage(WorkflowItem.WORKFLOW_QUEUE, MessageSender.DestinationType.Queue,
                                             WorkflowItem.deleteInstance(workflowInstanceId, instance));
+            if (journal != null)
+              journal.remove(workflowInstanceId);
+          } catch (WorkflowDatabaseException e) {
+            logger.warn("Problems while removing the journal of workflow instance '%d': %s", workflowInstanceId,
+                        e.getMessage());
           } catch (ServiceRegistryException e) {
             logger.warn("Problems while removing workflow instance job '%d': %s", workflowInstanceId,
                         ExceptionUtils.getStackTrace(e));
@@ -1335,10 +1356,14 @@ public class WorkflowServiceImpl extends AbstractIndexProducer implements Workfl
           throw new IllegalStateException("In-memory workflow instance could not be serialized", e);
         }
 
+        // Unless a new snapshot is due, only the changes are recorded and the job payload is left as it is
+        boolean snapshot = journal == null || isSnapshotState(workflowState);
+
         Job job = null;
         try {
           job = serviceRegistry.getJob(workflowInstance.getId());
-          job.setPayload(xml);
+          if (snapshot)
+            job.setPayload(xml);
 
           // Synchronize workflow and job state
           switch (workflowState) {
@@ -1377,9 +1402,13 @@ public class WorkflowServiceImpl extends AbstractIndexProducer implements Workfl
         // Update both workflow and workflow job
         try {
           job = serviceRegistry.updateJob(job);
+          // Only the state that has made it into the job is recorded
+          if (journal != null)
+            job = appendToJournal(job, workflowInstance, xml, snapshot);
+          // The serialized instance is shared by the job, the message and the index
           messageSender.sendObjectMessage(WorkflowItem.WORKFLOW_QUEUE, MessageSender.DestinationType.Queue,
-                  WorkflowItem.updateInstance(workflowInstance));
-          index(workflowInstance);
+                  WorkflowItem.updateInstance(workflowInstance, xml));
+          index(workflowInstance, xml);
         } catch (ServiceRegistryException e) {
           logger.error(
                   "Update of workflow job %s in the service registry failed, service registry and workflow index may be out of sync",
@@ -1399,29 +1428,127 @@ public class WorkflowServiceImpl extends AbstractIndexProducer implements Workfl
           workflowsStatistics.updateWorkflow(getBeanStatistics(), getHoldWorkflows());
         }
 
-        try {
-          WorkflowInstance clone = WorkflowParser.parseWorkflowInstance(WorkflowParser.toXml(workflowInstance));
-          fireListeners(originalWorkflowInstance, clone);
-        } catch (Exception e) {
-          // Can't happen, since we are converting from an in-memory object
-          throw new IllegalStateException("In-memory workflow instance could not be serialized", e);
-        }
+        // Rather than a copy of the instance, which may be changed after the update, listeners get the stored state
+        fireListeners(originalWorkflowInstance, workflowInstance, new WorkflowInstanceSnapshot(xml));
         return null;
       }
     });
   }
 
+  /**
+   * Reads the current state of a workflow from its job and, if there is one, the journal.
+   *
+   * @param job
+   *          the workflow job
+   * @return the workflow instance
+   * @throws WorkflowDatabaseException
+   *           if the journal could not be read
+   * @throws WorkflowParsingException
+   *           if the workflow is malformed
+   */
+  protected WorkflowInstanceImpl readWorkflow(Job job) throws WorkflowDatabaseException, WorkflowParsingException {
+    if (journal == null)
+      return WorkflowParser.parseWorkflowInstance(job.getPayload());
+    return journal.restore(job.getId(), job.getPayload());
+  }
+
+  /**
+   * Returns whether a snapshot of workflows in this state should be written right away, since they are going to stay
+   * in it for a while.
+   */
+  private static boolean isSnapshotState(WorkflowState state) {
+    return state == WorkflowState.PAUSED || state == WorkflowState.SUCCEEDED || state == WorkflowState.FAILED
+            || state == WorkflowState.STOPPED;
+  }
+
+  /**
+   * Records an update of a workflow in the journal, once the job has been updated. A snapshot is written if one is due
+   * or if the journal cannot be appended to.
+   *
+   * @param job
+   *          the workflow job
+   * @param workflowInstance
+   *          the workflow
+   * @param xml
+   *          the serialized workflow
+   * @param snapshot
+   *          whether the job payload has been updated with a snapshot of the workflow
+   * @return the workflow job
+   * @throws ServiceRegistryException
+   *           if the snapshot could not be written
+   * @throws NotFoundException
+   *           if the workflow job no longer exists
+   */
+  private Job appendToJournal(Job job, WorkflowInstance workflowInstance, String xml, boolean snapshot)
+          throws ServiceRegistryException, NotFoundException {
+    boolean snapshotDue;
+    try {
+      snapshotDue = journal.append(workflowInstance, xml);
+    } catch (WorkflowDatabaseException e) {
+      if (!snapshot) {
+        logger.warn("Unable to record workflow %s in the journal, writing a snapshot instead",
+                workflowInstance.getId());
+        job.setPayload(xml);
+        job = serviceRegistry.updateJob(job);
+      }
+      // Older entries must not be applied to the snapshot
+      try {
+        journal.remove(workflowInstance.getId());
+      } catch (WorkflowDatabaseException e2) {
+        logger.error("Unable to remove the outdated journal of workflow %s: %s", workflowInstance.getId(),
+                e2.getMessage());
+      }
+      return job;
+    }
+
+    if (!snapshot && snapshotDue) {
+      job.setPayload(xml);
+      try {
+        job = serviceRegistry.updateJob(job);
+      } catch (ServiceRegistryException e) {
+        // The update is safe in the journal, the snapshot is due again with the next update
+        logger.warn("Unable to write a snapshot of workflow %s: %s", workflowInstance.getId(), e.getMessage());
+        return job;
+      }
+      snapshot = true;
+    }
+    if (snapshot)
+      compactJournal(workflowInstance);
+    return job;
+  }
+
+  /**
+   * Drops the journal entries of a workflow that are covered by the snapshot that has just been written.
+   *
+   * @param workflowInstance
+   *          the workflow
+   */
+  private void compactJournal(WorkflowInstance workflowInstance) {
+    try {
+      WorkflowState state = workflowInstance.getState();
+      if (state == WorkflowState.SUCCEEDED || state == WorkflowState.FAILED || state == WorkflowState.STOPPED)
+        journal.remove(workflowInstance.getId());
+      else
+        journal.compact(workflowInstance.getId());
+    } catch (WorkflowDatabaseException e) {
+      // The journal is still consistent with the snapshot, it just takes longer to read
+      logger.warn("Unable to compact the journal of workflow %s: %s", workflowInstance.getId(), e.getMessage());
+    }
+  }
+
   /**
    * Updates the search index entries for this workflow instance.
    *
    * @param workflowInstance
    *          the workflow
+   * @param xml
+   *          the serialized workflow
    * @throws WorkflowDatabaseException
    *           if there is a problem storing the workflow instance
    */
-  protected void index(final WorkflowInstance workflowInstance) throws WorkflowDatabaseException {
+  protected void index(final WorkflowInstance workflowInstance, final String xml) throws WorkflowDatabaseException {
     // Update the search index
-    index.update(workflowInstance);
+    index.update(workflowInstance, xml);
   }
 
   /**
@@ -1904,7 +2031,7 @@ public class WorkflowServiceImpl extends AbstractIndexProducer implements Workfl
         op = Operation.valueOf(operation);
         switch (op) {
           case START_WORKFLOW:
-            workflowInstance = WorkflowParser.parseWorkflowInstance(job.getPayload());
+            workflowInstance = readWorkflow(job);
             logger.debug("Starting new workflow %s", workflowInstance);
             runWorkflow(workflowInstance);
             break;
@@ -2170,6 +2297,16 @@ public class WorkflowServiceImpl extends AbstractIndexProducer implements Workfl
     this.index = index;
   }
 
+  /**
+   * Sets the journal recording the changes to workflows between snapshots.
+   *
+   * @param journal
+   *          the workflow journal
+   */
+  public void setJournal(WorkflowJournal journal) {
+    this.journal = journal;
+  }
+
   /**
    * Sets the series service
    *
@@ -2472,7 +2609,7 @@ public class WorkflowServiceImpl extends AbstractIndexProducer implements Workfl
                   public Boolean apply() {
                     WorkflowInstance instance;
                     try {
-                      instance = WorkflowParser.parseWorkflowInstance(job.getPayload());
+                      instance = readWorkflow(job);
                       messageSender.sendObjectMessage(destinationId, MessageSender.DestinationType.Queue,
                               WorkflowItem.updateInstance(instance));
                       messageSender.sendObjectMessage(IndexProducer.RESPONSE_QUEUE,
@@ -2480,7 +2617,7 @@ public class WorkflowServiceImpl extends AbstractIndexProducer implements Workfl
                                       IndexRecreateObject.Service.Workflow, total, current[0]));
                       current[0] += 1;
                       return false;
-                    } catch (WorkflowParsingException e) {
+                    } catch (WorkflowException e) {
                       logger.warn("Skipping restoring of workflow job {}: {}", job.getId(),
                               ExceptionUtils.getMessage(e));
                       errors[0] += 1;
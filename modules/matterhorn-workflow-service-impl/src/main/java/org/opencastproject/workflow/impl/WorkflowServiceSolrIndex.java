@@ -195,6 +195,9 @@ public class WorkflowServiceSolrIndex implements WorkflowServiceIndex {
   /** The security service */
   private SecurityService securityService = null;
 
+  /** The journal of workflow changes since the snapshots in the job payloads */
+  private WorkflowJournal journal = null;
+
   /** Whether to index workflows synchronously as they are stored */
   protected boolean synchronousIndexing = true;
 
@@ -298,7 +301,8 @@ public class WorkflowServiceSolrIndex implements WorkflowServiceIndex {
           WorkflowInstance instance = null;
           boolean erroneousWorkflowJob = false;
           try {
-            instance = WorkflowParser.parseWorkflowInstance(job.getPayload());
+            instance = journal == null ? WorkflowParser.parseWorkflowInstance(job.getPayload()) : journal.restore(job
+                    .getId(), job.getPayload());
             Organization organization = orgDirectory.getOrganization(job.getOrganization());
             securityService.setOrganization(organization);
             securityService.setUser(SecurityUtil.createSystemUser(systemUserName, organization));
@@ -400,9 +404,38 @@ public class WorkflowServiceSolrIndex implements WorkflowServiceIndex {
   }
 
   public void index(final WorkflowInstance instance) throws WorkflowDatabaseException {
+    final String xml;
+    try {
+      xml = WorkflowParser.toXml(instance);
+    } catch (Exception e) {
+      throw new WorkflowDatabaseException("Unable to index workflow", e);
+    }
+    index(instance, xml);
+  }
+
+  /**
+   * Adds a workflow instance to the search index.
+   *
+   * @param instance
+   *          the instance
+   * @param xml
+   *          the serialized instance
+   * @throws WorkflowDatabaseException
+   *           if indexing synchronously failed
+   */
+  private void index(final WorkflowInstance instance, final String xml) throws WorkflowDatabaseException {
+    // The document is created right away, so that later changes to the instance don't make it into the index
+    final SolrInputDocument doc;
+    try {
+      doc = createDocument(instance, xml);
+    } catch (Exception e) {
+      if (synchronousIndexing)
+        throw new WorkflowDatabaseException("Unable to index workflow", e);
+      logger.warn("Unable to index {}: {}", instance, e);
+      return;
+    }
     if (synchronousIndexing) {
       try {
-        SolrInputDocument doc = createDocument(instance);
         synchronized (solrServer) {
           solrServer.add(doc);
           solrServer.commit();
@@ -415,7 +448,6 @@ public class WorkflowServiceSolrIndex implements WorkflowServiceIndex {
         @Override
         public void run() {
           try {
-            SolrInputDocument doc = createDocument(instance);
             synchronized (solrServer) {
               solrServer.add(doc);
               // Use solr's autoCommit feature instead of committing on each document addition.
@@ -440,11 +472,24 @@ public class WorkflowServiceSolrIndex implements WorkflowServiceIndex {
    * @throws Exception
    */
   protected SolrInputDocument createDocument(WorkflowInstance instance) throws Exception {
+    return createDocument(instance, WorkflowParser.toXml(instance));
+  }
+
+  /**
+   * Adds the workflow instance to the search index.
+   *
+   * @param instance
+   *          the instance
+   * @param xml
+   *          the serialized instance
+   * @return the solr input document
+   * @throws Exception
+   */
+  protected SolrInputDocument createDocument(WorkflowInstance instance, String xml) throws Exception {
     SolrInputDocument doc = new SolrInputDocument();
     doc.addField(ID_KEY, instance.getId());
     doc.addField(WORKFLOW_DEFINITION_KEY, instance.getTemplate());
     doc.addField(STATE_KEY, instance.getState().toString());
-    String xml = WorkflowParser.toXml(instance);
     doc.addField(XML_KEY, xml);
 
     // index the current operation if there is one. If the workflow is finished, there is no current operation, so use a
@@ -1073,6 +1118,16 @@ public class WorkflowServiceSolrIndex implements WorkflowServiceIndex {
     index(instance);
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * @see org.opencastproject.workflow.impl.WorkflowServiceIndex#update(WorkflowInstance, String)
+   */
+  @Override
+  public void update(WorkflowInstance instance, String xml) throws WorkflowDatabaseException {
+    index(instance, xml);
+  }
+
   /**
    * Clears the index of all workflow instances.
    */
@@ -1107,6 +1162,16 @@ public class WorkflowServiceSolrIndex implements WorkflowServiceIndex {
     this.orgDirectory = orgDirectory;
   }
 
+  /**
+   * Callback for setting the workflow journal.
+   *
+   * @param journal
+   *          the workflow journal
+   */
+  protected void setJournal(WorkflowJournal journal) {
+    this.journal = journal;
+  }
+
   /**
    * Callback for setting the authorization service.
    *
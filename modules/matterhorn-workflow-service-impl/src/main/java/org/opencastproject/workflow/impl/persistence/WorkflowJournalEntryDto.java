@@ -0,0 +1,150 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package org.opencastproject.workflow.impl.persistence;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+/**
+ * Entity object for a workflow journal entry. An entry holds the workflow without its operations and mediapackage, the
+ * operations that changed since the previous entry and the mediapackage if it changed.
+ */
+@Entity(name = "WorkflowJournalEntry")
+@Table(name = "mh_workflow_journal", uniqueConstraints = {
+        @UniqueConstraint(columnNames = { "workflow_id", "sequence_number" }) })
+@NamedQueries({
+        @NamedQuery(name = "WorkflowJournalEntry.findByWorkflow", query = "SELECT e FROM WorkflowJournalEntry e WHERE e.workflowId = :workflowId ORDER BY e.sequence ASC"),
+        @NamedQuery(name = "WorkflowJournalEntry.findLatestChecksums", query = "SELECT e.sequence, e.operationChecksums, e.mediaPackageChecksum FROM WorkflowJournalEntry e WHERE e.workflowId = :workflowId ORDER BY e.sequence DESC"),
+        @NamedQuery(name = "WorkflowJournalEntry.countByWorkflow", query = "SELECT COUNT(e) FROM WorkflowJournalEntry e WHERE e.workflowId = :workflowId"),
+        @NamedQuery(name = "WorkflowJournalEntry.deleteBefore", query = "DELETE FROM WorkflowJournalEntry e WHERE e.workflowId = :workflowId AND e.sequence < :sequence"),
+        @NamedQuery(name = "WorkflowJournalEntry.delete", query = "DELETE FROM WorkflowJournalEntry e WHERE e.workflowId = :workflowId") })
+public class WorkflowJournalEntryDto {
+
+  @Id
+  @GeneratedValue
+  @Column(name = "id")
+  private long id;
+
+  @Column(name = "workflow_id", nullable = false)
+  private long workflowId;
+
+  /** The position of the entry in the workflow's journal, starting at 1 */
+  @Column(name = "sequence_number", nullable = false)
+  private long sequence;
+
+  /** The serialized workflow without operations and mediapackage */
+  @Lob
+  @Column(name = "shell", length = 16777215, nullable = false)
+  private String shell;
+
+  /** The serialized operations that changed */
+  @Lob
+  @Column(name = "operations", length = 16777215)
+  private String operations;
+
+  /** The total number of operations of the workflow */
+  @Column(name = "operation_count", nullable = false)
+  private int operationCount;
+
+  /** The comma separated positions of the operations that changed */
+  @Lob
+  @Column(name = "operation_positions", length = 65535)
+  private String operationPositions;
+
+  /** The comma separated checksums of all operations of the workflow */
+  @Lob
+  @Column(name = "operation_checksums", length = 65535)
+  private String operationChecksums;
+
+  /** The serialized mediapackage, if it changed */
+  @Lob
+  @Column(name = "mediapackage", length = 16777215)
+  private String mediaPackage;
+
+  @Column(name = "mediapackage_checksum", length = 64)
+  private String mediaPackageChecksum;
+
+  /** Default constructor */
+  public WorkflowJournalEntryDto() {
+  }
+
+  /** Creates a journal entry */
+  public WorkflowJournalEntryDto(long workflowId, long sequence, String shell, String operations, int operationCount,
+          String operationPositions, String operationChecksums, String mediaPackage, String mediaPackageChecksum) {
+    this.workflowId = workflowId;
+    this.sequence = sequence;
+    this.shell = shell;
+    this.operations = operations;
+    this.operationCount = operationCount;
+    this.operationPositions = operationPositions;
+    this.operationChecksums = operationChecksums;
+    this.mediaPackage = mediaPackage;
+    this.mediaPackageChecksum = mediaPackageChecksum;
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  public long getWorkflowId() {
+    return workflowId;
+  }
+
+  public long getSequence() {
+    return sequence;
+  }
+
+  public String getShell() {
+    return shell;
+  }
+
+  public String getOperations() {
+    return operations;
+  }
+
+  public int getOperationCount() {
+    return operationCount;
+  }
+
+  public String getOperationPositions() {
+    return operationPositions;
+  }
+
+  public String getOperationChecksums() {
+    return operationChecksums;
+  }
+
+  public String getMediaPackage() {
+    return mediaPackage;
+  }
+
+  public String getMediaPackageChecksum() {
+    return mediaPackageChecksum;
+  }
+
+}
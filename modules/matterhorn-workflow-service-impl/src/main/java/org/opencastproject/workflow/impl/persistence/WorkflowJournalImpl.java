@@ -0,0 +1,563 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.workflow.impl.persistence;
+
+import org.opencastproject.mediapackage.MediaPackageParser;
+import org.opencastproject.util.Checksum;
+import org.opencastproject.workflow.api.WorkflowDatabaseException;
+import org.opencastproject.workflow.api.WorkflowInstance;
+import org.opencastproject.workflow.api.WorkflowInstanceImpl;
+import org.opencastproject.workflow.api.WorkflowOperationInstance;
+import org.opencastproject.workflow.api.WorkflowOperationInstanceImpl;
+import org.opencastproject.workflow.api.WorkflowParser;
+import org.opencastproject.workflow.api.WorkflowParsingException;
+import org.opencastproject.workflow.impl.WorkflowJournal;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.osgi.service.component.ComponentContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import javax.persistence.Query;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.transform.stream.StreamSource;
+
+/**
+ * Implements {@link WorkflowJournal}, keeping the journal in the database.
+ * <p>
+ * The operations and the mediapackage are cut out of the workflow as it has been serialized for the update, and each
+ * is compared to the previous entry by its checksum, so the entries only grow with the operations and mediapackage
+ * changes of a single update.
+ */
+public class WorkflowJournalImpl implements WorkflowJournal {
+
+  /** Logging utilities */
+  private static final Logger logger = LoggerFactory.getLogger(WorkflowJournalImpl.class);
+
+  /** JPA persistence unit name */
+  public static final String PERSISTENCE_UNIT = "org.opencastproject.workflow.impl.persistence";
+
+  /** Configuration key for the number of journal entries after which a new snapshot is written */
+  public static final String COMPACTION_INTERVAL_KEY = "org.opencastproject.workflow.journal.compaction.interval";
+
+  /** The default number of journal entries after which a new snapshot is written */
+  public static final int DEFAULT_COMPACTION_INTERVAL = 20;
+
+  /** The namespace of the workflow documents */
+  private static final String WORKFLOW_NAMESPACE = "http://workflow.opencastproject.org";
+
+  /** The namespace of the mediapackage documents */
+  private static final String MEDIAPACKAGE_NAMESPACE = "http://mediapackage.opencastproject.org";
+
+  /** Context for parsing the operations of a journal entry */
+  private static final JAXBContext jaxbContext;
+
+  static {
+    try {
+      jaxbContext = JAXBContext.newInstance(Operations.class);
+    } catch (JAXBException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** Factory used to create {@link EntityManager}s for transactions */
+  protected EntityManagerFactory emf;
+
+  /** The number of journal entries after which a new snapshot is written */
+  protected int compactionInterval = DEFAULT_COMPACTION_INTERVAL;
+
+  /** OSGi DI */
+  public void setEntityManagerFactory(EntityManagerFactory emf) {
+    this.emf = emf;
+  }
+
+  /**
+   * OSGi callback on component activation.
+   *
+   * @param cc
+   *          the component context
+   */
+  public void activate(ComponentContext cc) {
+    String value = StringUtils.trimToNull(cc.getBundleContext().getProperty(COMPACTION_INTERVAL_KEY));
+    if (value != null) {
+      compactionInterval = NumberUtils.toInt(value, -1);
+      if (compactionInterval < 1) {
+        logger.warn("Configuration key '{}' is not a positive number, using {}", COMPACTION_INTERVAL_KEY,
+                DEFAULT_COMPACTION_INTERVAL);
+        compactionInterval = DEFAULT_COMPACTION_INTERVAL;
+      }
+    }
+    logger.info("Writing workflow snapshots every {} updates", compactionInterval);
+  }
+
+  /**
+   * Sets the number of journal entries after which a new snapshot is written.
+   *
+   * @param compactionInterval
+   *          the number of entries
+   */
+  public void setCompactionInterval(int compactionInterval) {
+    this.compactionInterval = compactionInterval;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @see org.opencastproject.workflow.impl.WorkflowJournal#append(org.opencastproject.workflow.api.WorkflowInstance,
+   *      java.lang.String)
+   */
+  @Override
+  public boolean append(WorkflowInstance workflow, String xml) throws WorkflowDatabaseException {
+    SerializedWorkflow serialized;
+    try {
+      serialized = new SerializedWorkflow(xml);
+    } catch (WorkflowParsingException e) {
+      logger.error("Could not append to the journal of workflow {}: {}", workflow.getId(), e.getMessage());
+      throw new WorkflowDatabaseException(e);
+    }
+    List<String> operationXml = serialized.getOperations();
+    String[] operationChecksums = new String[operationXml.size()];
+    for (int i = 0; i < operationXml.size(); i++) {
+      operationChecksums[i] = checksum(operationXml.get(i));
+    }
+    String mediaPackageXml = serialized.getMediaPackage();
+    String mediaPackageChecksum = mediaPackageXml != null ? checksum(mediaPackageXml) : null;
+
+    EntityManager em = emf.createEntityManager();
+    EntityTransaction tx = em.getTransaction();
+    try {
+      tx.begin();
+      Query query = em.createNamedQuery("WorkflowJournalEntry.findLatestChecksums");
+      query.setParameter("workflowId", workflow.getId());
+      query.setMaxResults(1);
+      List<?> latest = query.getResultList();
+
+      long sequence = 1L;
+      String[] previousChecksums = new String[0];
+      String previousMediaPackageChecksum = null;
+      if (!latest.isEmpty()) {
+        Object[] row = (Object[]) latest.get(0);
+        sequence = ((Number) row[0]).longValue() + 1;
+        previousChecksums = StringUtils.split(StringUtils.defaultString((String) row[1]), ',');
+        previousMediaPackageChecksum = (String) row[2];
+      }
+
+      // Only keep what differs from the previous entry
+      List<String> changed = new ArrayList<String>();
+      List<String> positions = new ArrayList<String>();
+      for (int i = 0; i < operationXml.size(); i++) {
+        if (i >= previousChecksums.length || !previousChecksums[i].equals(operationChecksums[i])) {
+          changed.add(operationXml.get(i));
+          positions.add(Integer.toString(i));
+        }
+      }
+      String changedMediaPackage = null;
+      if (mediaPackageXml != null && !mediaPackageChecksum.equals(previousMediaPackageChecksum))
+        changedMediaPackage = serialized.getStandaloneMediaPackage();
+
+      em.persist(new WorkflowJournalEntryDto(workflow.getId(), sequence, serialized.getShell(), positions.isEmpty()
+              ? null : serialized.wrapOperations(changed), operationXml.size(), StringUtils.join(positions, ','),
+              StringUtils.join(operationChecksums, ','), changedMediaPackage, mediaPackageChecksum));
+
+      Query count = em.createNamedQuery("WorkflowJournalEntry.countByWorkflow");
+      count.setParameter("workflowId", workflow.getId());
+      long entries = ((Number) count.getSingleResult()).longValue();
+      tx.commit();
+      // The entry that is covered by the latest snapshot doesn't count
+      return entries > compactionInterval;
+    } catch (Exception e) {
+      logger.error("Could not append to the journal of workflow {}: {}", workflow.getId(), e.getMessage());
+      if (tx.isActive())
+        tx.rollback();
+      throw new WorkflowDatabaseException(e);
+    } finally {
+      em.close();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @see org.opencastproject.workflow.impl.WorkflowJournal#restore(long, java.lang.String)
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public WorkflowInstanceImpl restore(long workflowId, String snapshot) throws WorkflowDatabaseException,
+          WorkflowParsingException {
+    List<WorkflowJournalEntryDto> entries;
+    EntityManager em = emf.createEntityManager();
+    try {
+      Query query = em.createNamedQuery("WorkflowJournalEntry.findByWorkflow");
+      query.setParameter("workflowId", workflowId);
+      entries = query.getResultList();
+    } catch (Exception e) {
+      logger.error("Could not read the journal of workflow {}: {}", workflowId, e.getMessage());
+      throw new WorkflowDatabaseException(e);
+    } finally {
+      em.close();
+    }
+
+    WorkflowInstanceImpl workflow = WorkflowParser.parseWorkflowInstance(snapshot);
+    if (entries.isEmpty())
+      return workflow;
+
+    // Apply the entries in order. Since each entry only holds values that were current at its time, entries that are
+    // already part of the snapshot do no harm.
+    List<WorkflowOperationInstance> operations = new ArrayList<WorkflowOperationInstance>(workflow.getOperations());
+    String mediaPackageXml = null;
+    String shell = null;
+    try {
+      for (WorkflowJournalEntryDto entry : entries) {
+        shell = entry.getShell();
+        while (operations.size() > entry.getOperationCount()) {
+          operations.remove(operations.size() - 1);
+        }
+        while (operations.size() < entry.getOperationCount()) {
+          operations.add(null);
+        }
+        if (entry.getOperations() != null) {
+          List<WorkflowOperationInstanceImpl> changed = jaxbContext.createUnmarshaller()
+                  .unmarshal(new StreamSource(new StringReader(entry.getOperations())), Operations.class).getValue()
+                  .getOperations();
+          String[] positions = StringUtils.split(entry.getOperationPositions(), ',');
+          if (positions.length != changed.size())
+            throw new WorkflowParsingException("Journal entry " + entry.getSequence() + " of workflow " + workflowId
+                    + " is malformed");
+          for (int i = 0; i < positions.length; i++) {
+            operations.set(Integer.parseInt(positions[i]), changed.get(i));
+          }
+        }
+        if (entry.getMediaPackage() != null)
+          mediaPackageXml = entry.getMediaPackage();
+      }
+      if (operations.contains(null))
+        throw new WorkflowParsingException("The journal of workflow " + workflowId + " is missing operations");
+
+      WorkflowInstanceImpl restored = WorkflowParser.parseWorkflowInstance(shell);
+      restored.setOperations(operations);
+      restored.setMediaPackage(mediaPackageXml != null ? MediaPackageParser.getFromXml(mediaPackageXml) : workflow
+              .getMediaPackage());
+      return restored;
+    } catch (WorkflowParsingException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new WorkflowParsingException(e);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @see org.opencastproject.workflow.impl.WorkflowJournal#compact(long)
+   */
+  @Override
+  public void compact(long workflowId) throws WorkflowDatabaseException {
+    EntityManager em = emf.createEntityManager();
+    EntityTransaction tx = em.getTransaction();
+    try {
+      tx.begin();
+      Query query = em.createNamedQuery("WorkflowJournalEntry.findLatestChecksums");
+      query.setParameter("workflowId", workflowId);
+      query.setMaxResults(1);
+      List<?> latest = query.getResultList();
+      if (!latest.isEmpty()) {
+        Query delete = em.createNamedQuery("WorkflowJournalEntry.deleteBefore");
+        delete.setParameter("workflowId", workflowId);
+        delete.setParameter("sequence", ((Object[]) latest.get(0))[0]);
+        delete.executeUpdate();
+      }
+      tx.commit();
+    } catch (Exception e) {
+      logger.error("Could not compact the journal of workflow {}: {}", workflowId, e.getMessage());
+      if (tx.isActive())
+        tx.rollback();
+      throw new WorkflowDatabaseException(e);
+    } finally {
+      em.close();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @see org.opencastproject.workflow.impl.WorkflowJournal#remove(long)
+   */
+  @Override
+  public void remove(long workflowId) throws WorkflowDatabaseException {
+    EntityManager em = emf.createEntityManager();
+    EntityTransaction tx = em.getTransaction();
+    try {
+      tx.begin();
+      Query delete = em.createNamedQuery("WorkflowJournalEntry.delete");
+      delete.setParameter("workflowId", workflowId);
+      delete.executeUpdate();
+      tx.commit();
+    } catch (Exception e) {
+      logger.error("Could not remove the journal of workflow {}: {}", workflowId, e.getMessage());
+      if (tx.isActive())
+        tx.rollback();
+      throw new WorkflowDatabaseException(e);
+    } finally {
+      em.close();
+    }
+  }
+
+  private static String checksum(String xml) {
+    try {
+      MessageDigest md5 = MessageDigest.getInstance("MD5");
+      return Checksum.convertToHex(md5.digest(xml.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("Unable to create md5 message digest", e);
+    }
+  }
+
+  /** The operations of a journal entry */
+  @XmlRootElement(name = "operations", namespace = WORKFLOW_NAMESPACE)
+  @XmlAccessorType(XmlAccessType.NONE)
+  static class Operations {
+
+    @XmlElement(name = "operation", namespace = WORKFLOW_NAMESPACE)
+    private List<WorkflowOperationInstanceImpl> operations = new ArrayList<WorkflowOperationInstanceImpl>();
+
+    List<WorkflowOperationInstanceImpl> getOperations() {
+      return operations;
+    }
+
+  }
+
+  /**
+   * A serialized workflow instance, split into the workflow without its operations and mediapackage, the operations and
+   * the mediapackage. The parts are cut out of the serialized form rather than serialized on their own. This relies on
+   * the serialized form not containing comments or unescaped angle brackets within text and attribute values, which
+   * holds for everything written by JAXB.
+   */
+  static final class SerializedWorkflow {
+
+    /** Matches the namespace declarations of a start tag */
+    private static final Pattern NAMESPACE_DECLARATION = Pattern
+            .compile("\\s(xmlns(?::[^\\s=]+)?)\\s*=\\s*(\"[^\"]*\"|'[^']*')");
+
+    /** The namespace declarations of the root element, by attribute name */
+    private final Map<String, String> namespaces;
+
+    /** The qualified name of the operations element */
+    private final String operationsName;
+
+    /** The workflow without its operations and mediapackage */
+    private final String shell;
+
+    /** The operations */
+    private final List<String> operations = new ArrayList<String>();
+
+    /** The mediapackage, with the namespace declarations of the document left on the root element */
+    private final String mediaPackage;
+
+    /** The qualified name of the mediapackage element */
+    private final String mediaPackageName;
+
+    /**
+     * Splits a serialized workflow instance.
+     *
+     * @param xml
+     *          the workflow instance as serialized by {@link WorkflowParser#toXml(WorkflowInstance)}
+     * @throws WorkflowParsingException
+     *           if the workflow instance cannot be split
+     */
+    SerializedWorkflow(String xml) throws WorkflowParsingException {
+      int root = xml.indexOf('<');
+      while (root >= 0 && (xml.startsWith("<?", root) || xml.startsWith("<!", root))) {
+        root = xml.indexOf('<', root + 1);
+      }
+      if (root < 0)
+        throw new WorkflowParsingException("Workflow instance has no root element");
+      String rootTag = xml.substring(root, xml.indexOf('>', root) + 1);
+      namespaces = getNamespaceDeclarations(rootTag);
+      String rootName = getName(rootTag);
+      String prefix = rootName.indexOf(':') < 0 ? "" : rootName.substring(0, rootName.indexOf(':') + 1);
+      operationsName = prefix + "operations";
+
+      // The mediapackage
+      String mediaPackagePrefix = getPrefix(MEDIAPACKAGE_NAMESPACE);
+      mediaPackageName = mediaPackagePrefix == null ? null : mediaPackagePrefix + "mediapackage";
+      int[] mp = mediaPackageName == null ? null : find(xml, mediaPackageName, root, xml.length());
+      mediaPackage = mp == null ? null : xml.substring(mp[0], mp[3]);
+
+      // The operations
+      int[] ops = find(xml, operationsName, root, xml.length());
+      if (ops == null)
+        throw new WorkflowParsingException("Workflow instance has no operations");
+      int cursor = ops[1];
+      int[] op = find(xml, prefix + "operation", cursor, ops[2]);
+      while (op != null) {
+        operations.add(xml.substring(op[0], op[3]));
+        cursor = op[3];
+        op = find(xml, prefix + "operation", cursor, ops[2]);
+      }
+
+      // What is left is the shell
+      StringBuilder buf = new StringBuilder(xml.length() - (ops[2] - ops[1]));
+      if (mp == null) {
+        buf.append(xml, 0, ops[1]).append(xml, ops[2], xml.length());
+      } else if (mp[0] < ops[0]) {
+        buf.append(xml, 0, mp[0]).append(xml, mp[3], ops[1]).append(xml, ops[2], xml.length());
+      } else {
+        buf.append(xml, 0, ops[1]).append(xml, ops[2], mp[0]).append(xml, mp[3], xml.length());
+      }
+      shell = buf.toString();
+    }
+
+    /** Returns the workflow instance without its operations and mediapackage. */
+    String getShell() {
+      return shell;
+    }
+
+    /** Returns the serialized operations. They rely on the namespace declarations of the workflow document. */
+    List<String> getOperations() {
+      return operations;
+    }
+
+    /** Returns the serialized mediapackage or <code>null</code>. It relies on the declarations of the workflow. */
+    String getMediaPackage() {
+      return mediaPackage;
+    }
+
+    /**
+     * Returns the mediapackage as a document of its own.
+     *
+     * @return the mediapackage or <code>null</code>
+     */
+    String getStandaloneMediaPackage() {
+      if (mediaPackage == null)
+        return null;
+      String startTag = mediaPackage.substring(0, mediaPackage.indexOf('>') + 1);
+      int insert = mediaPackageName.length() + 1;
+      return mediaPackage.substring(0, insert) + getMissingDeclarations(startTag) + mediaPackage.substring(insert);
+    }
+
+    /**
+     * Wraps serialized operations into a document of their own.
+     *
+     * @param operations
+     *          the operations, as returned by {@link #getOperations()}
+     * @return the document
+     */
+    String wrapOperations(List<String> operations) {
+      StringBuilder buf = new StringBuilder("<").append(operationsName);
+      for (String declaration : namespaces.values()) {
+        buf.append(declaration);
+      }
+      buf.append('>');
+      for (String operation : operations) {
+        buf.append(operation);
+      }
+      return buf.append("</").append(operationsName).append('>').toString();
+    }
+
+    /** Returns the declarations of the root element that are not repeated in the given start tag. */
+    private String getMissingDeclarations(String startTag) {
+      Map<String, String> own = getNamespaceDeclarations(startTag);
+      StringBuilder buf = new StringBuilder();
+      for (Map.Entry<String, String> declaration : namespaces.entrySet()) {
+        if (!own.containsKey(declaration.getKey()))
+          buf.append(declaration.getValue());
+      }
+      return buf.toString();
+    }
+
+    /** Returns the prefix including the colon that the root element binds to a namespace, or <code>null</code>. */
+    private String getPrefix(String namespace) {
+      for (Map.Entry<String, String> declaration : namespaces.entrySet()) {
+        Matcher m = NAMESPACE_DECLARATION.matcher(declaration.getValue());
+        if (m.find() && m.group(2).substring(1, m.group(2).length() - 1).equals(namespace)) {
+          String name = declaration.getKey();
+          return name.indexOf(':') < 0 ? "" : name.substring(name.indexOf(':') + 1) + ":";
+        }
+      }
+      return null;
+    }
+
+    private static Map<String, String> getNamespaceDeclarations(String startTag) {
+      Map<String, String> declarations = new LinkedHashMap<String, String>();
+      Matcher m = NAMESPACE_DECLARATION.matcher(startTag);
+      while (m.find()) {
+        declarations.put(m.group(1), m.group());
+      }
+      return declarations;
+    }
+
+    private static String getName(String startTag) {
+      int end = 1;
+      while (end < startTag.length() && !Character.isWhitespace(startTag.charAt(end)) && startTag.charAt(end) != '>'
+              && startTag.charAt(end) != '/') {
+        end++;
+      }
+      return startTag.substring(1, end);
+    }
+
+    /**
+     * Finds the first element with the given name that starts within a range.
+     *
+     * @return the start of the element, the start and end of its content and its end, or <code>null</code>
+     */
+    private static int[] find(String xml, String name, int from, int to) throws WorkflowParsingException {
+      String open = "<" + name;
+      int start = xml.indexOf(open, from);
+      while (start >= 0 && start < to) {
+        char next = start + open.length() < xml.length() ? xml.charAt(start + open.length()) : '<';
+        if (Character.isWhitespace(next) || next == '>' || next == '/') {
+          int tagEnd = xml.indexOf('>', start) + 1;
+          if (xml.charAt(tagEnd - 2) == '/')
+            return new int[] { start, tagEnd, tagEnd, tagEnd };
+          String close = "</" + name + ">";
+          int end = xml.indexOf(close, tagEnd);
+          if (end < 0)
+            throw new WorkflowParsingException("Element " + name + " is not closed");
+          return new int[] { start, tagEnd, end, end + close.length() };
+        }
+        start = xml.indexOf(open, start + 1);
+      }
+      return null;
+    }
+
+  }
+
+}
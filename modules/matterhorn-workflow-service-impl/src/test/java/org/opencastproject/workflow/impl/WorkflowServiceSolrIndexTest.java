@@ -25,8 +25,13 @@ import static org.junit.Assert.assertEquals;
 
 import org.opencastproject.job.api.Job;
 import org.opencastproject.job.api.JobImpl;
+import org.opencastproject.mediapackage.MediaPackage;
 import org.opencastproject.mediapackage.MediaPackageBuilderFactory;
 import org.opencastproject.message.broker.api.MessageSender;
+import org.opencastproject.security.api.AccessControlEntry;
+import org.opencastproject.security.api.AccessControlList;
+import org.opencastproject.security.api.AclScope;
+import org.opencastproject.security.api.AuthorizationService;
 import org.opencastproject.security.api.DefaultOrganization;
 import org.opencastproject.security.api.JaxbRole;
 import org.opencastproject.security.api.JaxbUser;
@@ -36,13 +41,18 @@ import org.opencastproject.security.api.SecurityService;
 import org.opencastproject.security.api.User;
 import org.opencastproject.serviceregistry.api.ServiceRegistry;
 import org.opencastproject.util.PathSupport;
+import org.opencastproject.util.data.Tuple;
 import org.opencastproject.workflow.api.WorkflowInstance.WorkflowState;
 import org.opencastproject.workflow.api.WorkflowInstanceImpl;
+import org.opencastproject.workflow.api.WorkflowOperationInstance;
+import org.opencastproject.workflow.api.WorkflowOperationInstance.OperationState;
+import org.opencastproject.workflow.api.WorkflowOperationInstanceImpl;
 import org.opencastproject.workflow.api.WorkflowParser;
 import org.opencastproject.workflow.api.WorkflowQuery;
 import org.opencastproject.workflow.api.WorkflowService;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.solr.common.SolrInputDocument;
 import org.easymock.EasyMock;
 import org.junit.After;
 import org.junit.Before;
@@ -50,6 +60,8 @@ import org.junit.Test;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -95,12 +107,20 @@ public class WorkflowServiceSolrIndexTest {
     MessageSender messageSender = EasyMock.createNiceMock(MessageSender.class);
     EasyMock.replay(messageSender);
 
+    AccessControlList acl = new AccessControlList(new AccessControlEntry("ROLE_STUDENT", Permissions.Action.READ
+            .toString(), true));
+    AuthorizationService authorizationService = EasyMock.createNiceMock(AuthorizationService.class);
+    EasyMock.expect(authorizationService.getActiveAcl((MediaPackage) EasyMock.anyObject()))
+            .andReturn(Tuple.tuple(acl, AclScope.Episode)).anyTimes();
+    EasyMock.replay(authorizationService);
+
     // Now create the dao
     dao = new WorkflowServiceSolrIndex();
     dao.solrRoot = PathSupport.concat("target", Long.toString(System.currentTimeMillis()));
     dao.setServiceRegistry(serviceRegistry);
     dao.setSecurityService(securityService);
     dao.setOrgDirectory(orgDirectroy);
+    dao.setAuthorizationService(authorizationService);
     dao.activate("System Admin");
   }
 
@@ -182,4 +202,45 @@ public class WorkflowServiceSolrIndexTest {
     assertEquals(expected, solrQuery);
   }
 
+  /**
+   * Tests whether the document built from a snapshot of the stored workflow matches the one built from the instance
+   */
+  @Test
+  public void testDocumentFromSnapshotMatchesInstance() throws Exception {
+    MediaPackage mediaPackage = MediaPackageBuilderFactory.newInstance().newMediaPackageBuilder().createNew();
+    mediaPackage.setTitle("Lecture 1");
+    mediaPackage.setSeries("series1");
+    mediaPackage.setSeriesTitle("Physics");
+    mediaPackage.addCreator("Jane Doe");
+    // Serialized media packages keep the date to the second only
+    mediaPackage.setDate(new Date(1420070400000L));
+
+    WorkflowInstanceImpl workflow = new WorkflowInstanceImpl();
+    workflow.setId(456);
+    workflow.setTemplate("full");
+    workflow.setCreator(SecurityServiceStub.DEFAULT_ORG_ADMIN);
+    workflow.setOrganization(new DefaultOrganization());
+    workflow.setState(WorkflowState.RUNNING);
+    workflow.setMediaPackage(mediaPackage);
+    workflow.setOperations(Arrays.<WorkflowOperationInstance>asList(
+            new WorkflowOperationInstanceImpl("compose", OperationState.SUCCEEDED),
+            new WorkflowOperationInstanceImpl("publish", OperationState.RUNNING)));
+
+    String xml = WorkflowParser.toXml(workflow);
+    WorkflowInstanceSnapshot snapshot = new WorkflowInstanceSnapshot(xml);
+
+    SolrInputDocument expected = dao.createDocument(workflow);
+    assertDocumentEquals(expected, dao.createDocument(workflow, xml));
+    assertDocumentEquals(expected, dao.createDocument(snapshot.get(), snapshot.getXml()));
+    assertEquals("publish", expected.getFieldValue(WorkflowServiceSolrIndex.OPERATION_KEY));
+  }
+
+  private static void assertDocumentEquals(SolrInputDocument expected, SolrInputDocument actual) {
+    assertEquals(expected.getFieldNames(), actual.getFieldNames());
+    for (String name : expected.getFieldNames()) {
+      assertEquals(name, new ArrayList<Object>(expected.getFieldValues(name)),
+              new ArrayList<Object>(actual.getFieldValues(name)));
+    }
+  }
+
 }
@@ -0,0 +1,190 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.workflow.impl.persistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.opencastproject.mediapackage.MediaPackageBuilderFactory;
+import org.opencastproject.mediapackage.MediaPackageParser;
+import org.opencastproject.util.persistence.PersistenceUtil;
+import org.opencastproject.workflow.api.WorkflowDatabaseException;
+import org.opencastproject.workflow.api.WorkflowInstance.WorkflowState;
+import org.opencastproject.workflow.api.WorkflowInstanceImpl;
+import org.opencastproject.workflow.api.WorkflowOperationInstance;
+import org.opencastproject.workflow.api.WorkflowOperationInstance.OperationState;
+import org.opencastproject.workflow.api.WorkflowOperationInstanceImpl;
+import org.opencastproject.workflow.api.WorkflowParser;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Query;
+
+public class WorkflowJournalImplTest {
+
+  private EntityManagerFactory emf;
+  private WorkflowJournalImpl journal;
+  private WorkflowInstanceImpl workflow;
+  private String snapshot;
+
+  @Before
+  public void setUp() throws Exception {
+    emf = PersistenceUtil.newTestEntityManagerFactory(WorkflowJournalImpl.PERSISTENCE_UNIT);
+    journal = new WorkflowJournalImpl();
+    journal.setEntityManagerFactory(emf);
+    journal.setCompactionInterval(3);
+
+    workflow = new WorkflowInstanceImpl();
+    workflow.setId(1L);
+    workflow.setState(WorkflowState.RUNNING);
+    workflow.setTitle("Journal test");
+    workflow.setConfiguration("key", "value");
+    workflow.setMediaPackage(MediaPackageBuilderFactory.newInstance().newMediaPackageBuilder().createNew());
+    List<WorkflowOperationInstance> operations = new ArrayList<WorkflowOperationInstance>();
+    for (int i = 0; i < 3; i++) {
+      operations.add(new WorkflowOperationInstanceImpl("op" + i, OperationState.INSTANTIATED));
+    }
+    workflow.setOperations(operations);
+    snapshot = WorkflowParser.toXml(workflow);
+  }
+
+  @After
+  public void tearDown() {
+    emf.close();
+  }
+
+  @Test
+  public void testRestoreWithoutEntries() throws Exception {
+    WorkflowInstanceImpl restored = journal.restore(1L, snapshot);
+    assertEquals(snapshot, WorkflowParser.toXml(restored));
+  }
+
+  @Test
+  public void testOnlyChangesAreRecorded() throws Exception {
+    // The first entry has nothing to compare to
+    assertFalse(append());
+
+    ((WorkflowOperationInstanceImpl) workflow.getOperations().get(0)).setState(OperationState.SUCCEEDED);
+    workflow.setConfiguration("key", "other value");
+    assertFalse(append());
+
+    List<WorkflowJournalEntryDto> entries = getEntries();
+    assertEquals(2, entries.size());
+    assertEquals("0,1,2", entries.get(0).getOperationPositions());
+    assertNotNull(entries.get(0).getMediaPackage());
+    assertEquals("0", entries.get(1).getOperationPositions());
+    assertNull(entries.get(1).getMediaPackage());
+
+    workflow.getMediaPackage().setTitle("Changed");
+    ((WorkflowOperationInstanceImpl) workflow.getOperations().get(1)).setState(OperationState.RUNNING);
+    append();
+
+    WorkflowInstanceImpl restored = journal.restore(1L, snapshot);
+    assertEquals(WorkflowParser.toXml(workflow), WorkflowParser.toXml(restored));
+    assertEquals("Changed", restored.getMediaPackage().getTitle());
+    assertEquals(OperationState.RUNNING, restored.getOperations().get(1).getState());
+    assertEquals(1, restored.getOperations().get(1).getPosition());
+  }
+
+  @Test
+  public void testAddedOperations() throws Exception {
+    append();
+    List<WorkflowOperationInstance> operations = workflow.getOperations();
+    operations.add(new WorkflowOperationInstanceImpl("op3", OperationState.INSTANTIATED));
+    workflow.setOperations(operations);
+    append();
+
+    assertEquals("3", getEntries().get(1).getOperationPositions());
+    WorkflowInstanceImpl restored = journal.restore(1L, snapshot);
+    assertEquals(4, restored.getOperations().size());
+    assertEquals("op3", restored.getOperations().get(3).getTemplate());
+  }
+
+  @Test
+  public void testCompaction() throws Exception {
+    assertFalse(append());
+    assertFalse(append());
+    assertFalse(append());
+    workflow.setState(WorkflowState.PAUSED);
+    assertTrue(append());
+
+    // Write the snapshot, then compact
+    snapshot = WorkflowParser.toXml(workflow);
+    journal.compact(1L);
+    assertEquals(1, getEntries().size());
+    assertEquals(WorkflowState.PAUSED, journal.restore(1L, snapshot).getState());
+
+    // The next entry still only holds the changes
+    ((WorkflowOperationInstanceImpl) workflow.getOperations().get(2)).setState(OperationState.FAILED);
+    assertFalse(append());
+    assertEquals("2", getEntries().get(1).getOperationPositions());
+    assertEquals(OperationState.FAILED, journal.restore(1L, snapshot).getOperations().get(2).getState());
+
+    journal.remove(1L);
+    assertTrue(getEntries().isEmpty());
+  }
+
+  @Test
+  public void testEntriesAreCutFromTheSerializedWorkflow() throws Exception {
+    String xml = WorkflowParser.toXml(workflow);
+    journal.append(workflow, xml);
+
+    WorkflowJournalEntryDto entry = getEntries().get(0);
+    assertFalse(entry.getShell().contains("op0"));
+    assertFalse(entry.getShell().contains(workflow.getMediaPackage().getIdentifier().toString()));
+    assertEquals("Journal test", WorkflowParser.parseWorkflowInstance(entry.getShell()).getTitle());
+    assertEquals(workflow.getMediaPackage().getIdentifier(),
+            MediaPackageParser.getFromXml(entry.getMediaPackage()).getIdentifier());
+  }
+
+  @Test(expected = WorkflowDatabaseException.class)
+  public void testMalformedWorkflow() throws Exception {
+    journal.append(workflow, "<workflow/>");
+  }
+
+  private boolean append() throws Exception {
+    return journal.append(workflow, WorkflowParser.toXml(workflow));
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<WorkflowJournalEntryDto> getEntries() {
+    EntityManager em = emf.createEntityManager();
+    try {
+      Query query = em.createNamedQuery("WorkflowJournalEntry.findByWorkflow");
+      query.setParameter("workflowId", 1L);
+      return query.getResultList();
+    } finally {
+      em.close();
+    }
+  }
+
+}
@@ -0,0 +1,223 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.workingfilerepository.impl;
+
+import org.opencastproject.util.Checksum;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copies streams to files while calculating their md5 hash.
+ * <p>
+ * The data is read into direct buffers and written to the file through a {@link FileChannel}. Every buffer that has
+ * been written is handed to a separate thread which updates the hash, while the next buffer is being filled, so that
+ * hashing does not slow down the copy.
+ */
+class DigestingCopier {
+
+  /** The size of a single buffer */
+  static final int BUFFER_SIZE = 1024 * 1024;
+
+  /** The number of buffers used by a single copy */
+  private static final int BUFFER_COUNT = 4;
+
+  /** Marks the end of the data handed to the hashing thread */
+  private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+  /** The executor running the hashing */
+  private final ExecutorService executor;
+
+  /** Sets of direct buffers that are not in use, since direct buffers are expensive to allocate */
+  private final ConcurrentLinkedQueue<ByteBuffer[]> buffers = new ConcurrentLinkedQueue<ByteBuffer[]>();
+
+  /**
+   * Creates a new copier.
+   *
+   * @param executor
+   *          the executor to calculate the hashes on
+   */
+  DigestingCopier(ExecutorService executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Copies a stream to a file, replacing its contents.
+   *
+   * @param in
+   *          the stream, which is not closed
+   * @param file
+   *          the file
+   * @return the md5 hash of the data
+   * @throws IOException
+   *           if copying failed
+   */
+  String copy(InputStream in, File file) throws IOException {
+    // Streams on files are read through their channel, saving the copy into a heap buffer
+    final ReadableByteChannel source = in instanceof FileInputStream ? ((FileInputStream) in).getChannel() : Channels
+            .newChannel(in);
+    final MessageDigest md5 = newMd5();
+    final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<ByteBuffer>(BUFFER_COUNT);
+    final BlockingQueue<ByteBuffer> written = new ArrayBlockingQueue<ByteBuffer>(BUFFER_COUNT + 1);
+    ByteBuffer[] set = borrowBuffers();
+    for (ByteBuffer buffer : set) {
+      free.add(buffer);
+    }
+
+    Future<byte[]> digest = executor.submit(new Callable<byte[]>() {
+      @Override
+      public byte[] call() throws Exception {
+        while (true) {
+          ByteBuffer buffer = written.take();
+          if (buffer == END)
+            return md5.digest();
+          md5.update(buffer);
+          free.put(buffer);
+        }
+      }
+    });
+
+    FileOutputStream out = null;
+    try {
+      out = new FileOutputStream(file);
+      FileChannel target = out.getChannel();
+      boolean eof = false;
+      while (!eof) {
+        ByteBuffer buffer = takeFree(free, digest);
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+          if (source.read(buffer) == -1) {
+            eof = true;
+            break;
+          }
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+          target.write(buffer);
+        }
+        buffer.rewind();
+        written.add(buffer);
+      }
+      written.add(END);
+      out.close();
+      return Checksum.convertToHex(digest.get());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while copying to " + file);
+    } catch (ExecutionException e) {
+      throw new IOException("Unable to calculate the md5 hash of " + file, e.getCause());
+    } finally {
+      IOUtils.closeQuietly(out);
+      if (digest.isDone()) {
+        buffers.add(set);
+      } else {
+        // The buffers may still be in use, so they are left to the garbage collector
+        digest.cancel(true);
+      }
+    }
+  }
+
+  /** Takes the next buffer the hashing thread is done with. */
+  private static ByteBuffer takeFree(BlockingQueue<ByteBuffer> free, Future<byte[]> digest)
+          throws InterruptedException, ExecutionException {
+    while (true) {
+      ByteBuffer buffer = free.poll(1, TimeUnit.SECONDS);
+      if (buffer != null)
+        return buffer;
+      if (digest.isDone()) {
+        // Hashing ended unexpectedly, get() passes on the reason
+        digest.get();
+        throw new ExecutionException(new IllegalStateException("Hashing ended prematurely"));
+      }
+    }
+  }
+
+  private ByteBuffer[] borrowBuffers() {
+    ByteBuffer[] set = buffers.poll();
+    if (set == null) {
+      set = new ByteBuffer[BUFFER_COUNT];
+      for (int i = 0; i < set.length; i++) {
+        set[i] = ByteBuffer.allocateDirect(BUFFER_SIZE);
+      }
+    }
+    return set;
+  }
+
+  /**
+   * Calculates the md5 hash of a file.
+   *
+   * @param file
+   *          the file
+   * @return the md5 hash
+   * @throws IOException
+   *           if reading the file failed
+   */
+  String md5(File file) throws IOException {
+    MessageDigest md5 = newMd5();
+    ByteBuffer[] set = borrowBuffers();
+    FileInputStream in = null;
+    try {
+      in = new FileInputStream(file);
+      FileChannel channel = in.getChannel();
+      ByteBuffer buffer = set[0];
+      buffer.clear();
+      while (channel.read(buffer) != -1) {
+        buffer.flip();
+        md5.update(buffer);
+        buffer.clear();
+      }
+      return Checksum.convertToHex(md5.digest());
+    } finally {
+      IOUtils.closeQuietly(in);
+      buffers.add(set);
+    }
+  }
+
+  private static MessageDigest newMd5() {
+    try {
+      return MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("Unable to create md5 message digest", e);
+    }
+  }
+
+}
@@ -24,7 +24,6 @@ package org.opencastproject.workingfilerepository.impl;
 import org.opencastproject.rest.RestConstants;
 import org.opencastproject.serviceregistry.api.ServiceRegistry;
 import org.opencastproject.systems.MatterhornConstants;
-import org.opencastproject.util.Checksum;
 import org.opencastproject.util.FileSupport;
 import org.opencastproject.util.Log;
 import org.opencastproject.util.NotFoundException;
@@ -46,21 +45,31 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.security.DigestInputStream;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
 
 import javax.management.ObjectInstance;
 
 /**
  * A very simple (read: inadequate) implementation that stores all files under a root directory using the media package
  * ID as a subdirectory and the media package element ID as the file name.
+ * <p>
+ * Optionally, the contents of the files are deduplicated: every distinct content is stored once in a blob directory,
+ * named by its md5 hash, and the files of media package elements and collections are hard links to these blobs. Files
+ * are only linked to a blob if their contents are byte for byte the same. Each blob keeps a list of the files of the
+ * repository referencing it, and is removed once none of them is linking to it anymore. Links created by others, like
+ * the workspace or the distribution services, do not count as references.
  */
 public class WorkingFileRepositoryImpl implements WorkingFileRepository, PathMappable {
   /** The logger */
@@ -77,6 +86,21 @@ public class WorkingFileRepositoryImpl implements WorkingFileRepository, PathMap
     }
   };
 
+  /** Configuration key for enabling the deduplication of file contents */
+  public static final String DEDUPLICATION_KEY = "org.opencastproject.file.repo.deduplicate";
+
+  /** The directory below the root directory holding the deduplicated file contents */
+  private static final String BLOB_PATH_PREFIX = "/blobs/";
+
+  /** The extension of the files listing the references to a blob */
+  private static final String REFERENCES_EXTENSION = ".refs";
+
+  /** The pattern every md5 hash used to name a blob needs to match */
+  private static final Pattern MD5_PATTERN = Pattern.compile("[0-9a-f]{32}");
+
+  /** The number of locks used to serialize linking and releasing blobs */
+  private static final int BLOB_LOCK_COUNT = 64;
+
   /** Working file repository JMX type */
   private static final String JMX_WORKING_FILE_REPOSITORY_TYPE = "WorkingFileRepository";
 
@@ -98,6 +122,24 @@ public class WorkingFileRepositoryImpl implements WorkingFileRepository, PathMap
   /** The URL for the services provided by the working file repository */
   protected URI serviceUrl = null;
 
+  /** Whether to store identical file contents only once */
+  protected boolean deduplicate = false;
+
+  /** Locks serializing the linking and releasing of blobs, selected by the blob's md5 hash */
+  private final Object[] blobLocks = new Object[BLOB_LOCK_COUNT];
+
+  /** The executor calculating the md5 hashes of incoming files alongside writing them and cleaning up blobs */
+  private final ExecutorService digestExecutor = Executors.newCachedThreadPool();
+
+  /** Copies incoming files */
+  private final DigestingCopier copier = new DigestingCopier(digestExecutor);
+
+  {
+    for (int i = 0; i < blobLocks.length; i++) {
+      blobLocks[i] = new Object();
+    }
+  }
+
   /**
    * Activate the component
    */
@@ -144,6 +186,21 @@ public class WorkingFileRepositoryImpl implements WorkingFileRepository, PathMap
       throw e;
     }
 
+    // content deduplication
+    deduplicate = Boolean.valueOf(StringUtils.trimToNull(cc.getBundleContext().getProperty(DEDUPLICATION_KEY)));
+    if (deduplicate)
+      logger.info("Deduplicating the contents of the working file repository at {}", rootDirectory);
+
+    // Remove the blobs left behind by files that were not deleted through the repository
+    if (new File(rootDirectory, BLOB_PATH_PREFIX).isDirectory()) {
+      digestExecutor.submit(new Runnable() {
+        @Override
+        public void run() {
+          cleanupBlobs();
+        }
+      });
+    }
+
     registeredMXBean = JmxUtil.registerMXBean(workingFileRepositoryBean, JMX_WORKING_FILE_REPOSITORY_TYPE);
 
     logger.info(getDiskSpace());
@@ -154,6 +211,7 @@ public class WorkingFileRepositoryImpl implements WorkingFileRepository, PathMap
    */
   public void deactivate() {
     JmxUtil.unregisterMXBean(registeredMXBean);
+    digestExecutor.shutdown();
   }
 
   /**
@@ -165,10 +223,12 @@ public class WorkingFileRepositoryImpl implements WorkingFileRepository, PathMap
     File f;
     try {
       f = getFile(mediaPackageID, mediaPackageElementID);
+      String md5 = readMd5(getMd5File(f));
 
       File parentDirectory = f.getParentFile();
       logger.debug("Attempting to delete {}", parentDirectory.getAbsolutePath());
       FileUtils.forceDelete(parentDirectory);
+      releaseBlob(md5);
       File parentsParentDirectory = parentDirectory.getParentFile();
       if (parentsParentDirectory.isDirectory() && parentsParentDirectory.list().length == 0)
         FileUtils.forceDelete(parentDirectory.getParentFile());
@@ -267,11 +327,19 @@ public class WorkingFileRepositoryImpl implements WorkingFileRepository, PathMap
       // clear the directory
       File[] filesToDelete = dir.listFiles();
       if (filesToDelete != null && filesToDelete.length > 0) {
+        List<String> replacedMd5s = new ArrayList<String>();
+        for (File fileToDelete : filesToDelete) {
+          if (fileToDelete.getName().endsWith(MD5_EXTENSION))
+            replacedMd5s.add(readMd5(fileToDelete));
+        }
         for (File fileToDelete : filesToDelete) {
           if (!fileToDelete.delete()) {
             throw new IllegalStateException("Unable to delete file: " + fileToDelete.getAbsolutePath());
           }
         }
+        for (String replacedMd5 : replacedMd5s) {
+          releaseBlob(replacedMd5);
+        }
       }
     } else {
       logger.debug("Attempting to create a new directory at {}", dir.getAbsolutePath());
@@ -279,44 +347,32 @@ public class WorkingFileRepositoryImpl implements WorkingFileRepository, PathMap
     }
     f = new File(dir, PathSupport.toSafeName(filename));
     logger.debug("Attempting to write a file to {}", f.getAbsolutePath());
-    FileOutputStream out = null;
+    String md5 = null;
     try {
       if (!f.exists()) {
         f.createNewFile();
       } else {
         logger.debug("Attempting to overwrite the file at {}", f.getAbsolutePath());
       }
-      out = new FileOutputStream(f);
-
-      // Wrap the input stream and copy the input stream to the file
-      MessageDigest messageDigest = null;
-      DigestInputStream dis = null;
-      try {
-        messageDigest = MessageDigest.getInstance("MD5");
-        dis = new DigestInputStream(in, messageDigest);
-        IOUtils.copy(dis, out);
-      } catch (NoSuchAlgorithmException e1) {
-        logger.error("Unable to create md5 message digest");
-      }
+      // Copy the input stream to the file, calculating the hash on the way
+      md5 = copier.copy(in, f);
 
       // Store the hash
-      String md5 = Checksum.convertToHex(dis.getMessageDigest().digest());
       File md5File = null;
       try {
+        linkBlob(f, md5);
         md5File = getMd5File(f);
         FileUtils.writeStringToFile(md5File, md5);
       } catch (IOException e) {
         FileUtils.deleteQuietly(md5File);
         throw e;
-      } finally {
-        IOUtils.closeQuietly(dis);
       }
 
     } catch (IOException e) {
       FileUtils.deleteDirectory(dir);
+      releaseBlob(md5);
       throw e;
     } finally {
-      IOUtils.closeQuietly(out);
       IOUtils.closeQuietly(in);
     }
     return getURI(mediaPackageID, mediaPackageElementID, filename);
@@ -331,20 +387,15 @@ public class WorkingFileRepositoryImpl implements WorkingFileRepository, PathMap
    *         if the hash cannot be created
    */
   protected File createMd5(File f) throws IOException {
-    FileInputStream md5In = null;
     File md5File = null;
     try {
-      md5In = new FileInputStream(f);
-      String md5 = DigestUtils.md5Hex(md5In);
-      IOUtils.closeQuietly(md5In);
+      String md5 = copier.md5(f);
       md5File = getMd5File(f);
       FileUtils.writeStringToFile(md5File, md5);
       return md5File;
     } catch (IOException e) {
       FileUtils.deleteQuietly(md5File);
       throw e;
-    } finally {
-      IOUtils.closeQuietly(md5In);
     }
   }
 
@@ -391,6 +442,189 @@ public class WorkingFileRepositoryImpl implements WorkingFileRepository, PathMap
     return new File(md5File.getParent(), md5File.getName().substring(0, md5File.getName().length() - 4));
   }
 
+  /**
+   * Reads the md5 hash stored in an md5 file.
+   *
+   * @param md5File
+   *         The md5 file
+   * @return the md5 hash or <code>null</code> if it cannot be read
+   */
+  private String readMd5(File md5File) {
+    try {
+      return StringUtils.trimToNull(FileUtils.readFileToString(md5File, "utf-8"));
+    } catch (IOException e) {
+      logger.debug("Unable to read md5 hash from {}: {}", md5File, e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Gets the file handle for the blob holding the contents with the given md5 hash. Calling this method and obtaining a
+   * File handle is not a guarantee that the blob exists.
+   *
+   * @param md5
+   *         The md5 hash of the contents
+   * @return The blob file or <code>null</code> if the hash is not a valid md5 hash
+   */
+  private File getBlobFile(String md5) {
+    if (md5 == null || !MD5_PATTERN.matcher(md5).matches())
+      return null;
+    return new File(PathSupport.concat(new String[]{rootDirectory, BLOB_PATH_PREFIX, md5.substring(0, 2), md5}));
+  }
+
+  private Object getBlobLock(String md5) {
+    return blobLocks[(md5.hashCode() & Integer.MAX_VALUE) % blobLocks.length];
+  }
+
+  /**
+   * Stores the contents of a file only once if deduplication is enabled. If the same contents have been stored before,
+   * the file is replaced with a hard link to the existing blob. Otherwise, the file becomes the blob for its contents.
+   * If linking fails, or a different content with the same md5 hash is already stored, the file is kept as it is.
+   *
+   * @param f
+   *         the file that has just been written
+   * @param md5
+   *         the md5 hash of the file's contents
+   */
+  private void linkBlob(File f, String md5) {
+    if (!deduplicate)
+      return;
+    File blob = getBlobFile(md5);
+    if (blob == null)
+      return;
+    Path path = f.toPath();
+    Path link = new File(f.getParentFile(), f.getName() + ".link").toPath();
+    synchronized (getBlobLock(md5)) {
+      try {
+        if (blob.isFile()) {
+          // Equal hashes do not guarantee equal contents
+          if (blob.length() != f.length() || !FileUtils.contentEquals(blob, f)) {
+            logger.warn("Not deduplicating {}, its contents differ from blob {} with the same md5 hash", f, blob);
+            return;
+          }
+          // Replace the file atomically, so that it never disappears
+          Files.createLink(link, blob.toPath());
+          Files.move(link, path, StandardCopyOption.ATOMIC_MOVE);
+          logger.debug("Contents of {} are already stored as {}", f, blob);
+        } else {
+          FileUtils.forceMkdir(blob.getParentFile());
+          Files.createLink(blob.toPath(), path);
+        }
+        writeBlobReference(blob, f);
+      } catch (IOException | UnsupportedOperationException e) {
+        logger.warn("Unable to deduplicate the contents of {}: {}", f, e.getMessage());
+        FileUtils.deleteQuietly(link.toFile());
+      }
+    }
+  }
+
+  /**
+   * Records that a file is referencing a blob because it has been copied or moved from a file linking to the blob.
+   *
+   * @param f
+   *         the file
+   * @param md5
+   *         the md5 hash of the file's contents, may be <code>null</code>
+   */
+  private void addBlobReference(File f, String md5) {
+    File blob = getBlobFile(md5);
+    if (!deduplicate || blob == null)
+      return;
+    synchronized (getBlobLock(md5)) {
+      try {
+        if (blob.isFile() && Files.isSameFile(blob.toPath(), f.toPath()))
+          writeBlobReference(blob, f);
+      } catch (IOException e) {
+        logger.warn("Unable to add {} to the references of blob {}: {}", f, blob, e.getMessage());
+      }
+    }
+  }
+
+  private void writeBlobReference(File blob, File f) throws IOException {
+    String path = getRelativePath(f);
+    List<String> references = readBlobReferences(blob);
+    if (!references.contains(path)) {
+      references.add(path);
+      FileUtils.writeLines(getBlobReferencesFile(blob), "utf-8", references);
+    }
+  }
+
+  /**
+   * Removes the blob holding the contents with the given md5 hash once no file of the repository is linking to it
+   * anymore. References to files that have been deleted or replaced are dropped on the way.
+   *
+   * @param md5
+   *         the md5 hash of a file that has been deleted, may be <code>null</code>
+   */
+  private void releaseBlob(String md5) {
+    File blob = getBlobFile(md5);
+    if (blob == null)
+      return;
+    synchronized (getBlobLock(md5)) {
+      if (!blob.isFile())
+        return;
+      try {
+        List<String> references = readBlobReferences(blob);
+        List<String> remaining = new ArrayList<String>();
+        for (String reference : references) {
+          File f = new File(rootDirectory, reference);
+          if (f.isFile() && Files.isSameFile(blob.toPath(), f.toPath()))
+            remaining.add(reference);
+        }
+        if (remaining.isEmpty()) {
+          logger.debug("Removing unreferenced blob {}", blob);
+          Files.deleteIfExists(blob.toPath());
+          Files.deleteIfExists(getBlobReferencesFile(blob).toPath());
+        } else if (remaining.size() < references.size()) {
+          FileUtils.writeLines(getBlobReferencesFile(blob), "utf-8", remaining);
+        }
+      } catch (IOException e) {
+        logger.warn("Unable to release blob {}: {}", blob, e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Releases all blobs, which removes the ones that are no longer referenced, for instance because the repository was
+   * stopped while files were being deleted.
+   */
+  void cleanupBlobs() {
+    File blobDirectory = new File(rootDirectory, BLOB_PATH_PREFIX);
+    File[] prefixDirectories = blobDirectory.listFiles();
+    if (prefixDirectories == null)
+      return;
+    logger.debug("Cleaning up the blobs in {}", blobDirectory);
+    for (File prefixDirectory : prefixDirectories) {
+      File[] blobs = prefixDirectory.listFiles();
+      if (blobs == null)
+        continue;
+      for (File blob : blobs) {
+        if (MD5_PATTERN.matcher(blob.getName()).matches())
+          releaseBlob(blob.getName());
+      }
+    }
+  }
+
+  private List<String> readBlobReferences(File blob) throws IOException {
+    File referencesFile = getBlobReferencesFile(blob);
+    if (!referencesFile.isFile())
+      return new ArrayList<String>();
+    List<String> references = new ArrayList<String>();
+    for (String line : FileUtils.readLines(referencesFile, "utf-8")) {
+      if (StringUtils.isNotBlank(line))
+        references.add(line.trim());
+    }
+    return references;
+  }
+
+  private static File getBlobReferencesFile(File blob) {
+    return new File(blob.getParentFile(), blob.getName() + REFERENCES_EXTENSION);
+  }
+
+  private String getRelativePath(File f) {
+    return new File(rootDirectory).getAbsoluteFile().toPath().relativize(f.getAbsoluteFile().toPath()).toString();
+  }
+
   protected void checkPathSafe(String id) {
     if (id == null)
       throw new NullPointerException("IDs can not be null");
@@ -565,8 +799,17 @@ public class WorkingFileRepositoryImpl implements WorkingFileRepository, PathMap
     File f = new File(PathSupport.concat(new String[]{rootDirectory, COLLECTION_PATH_PREFIX, collectionId,
             PathSupport.toSafeName(fileName)}));
     logger.debug("Attempting to write a file to {}", f.getAbsolutePath());
-    FileOutputStream out = null;
+    String md5 = null;
     try {
+      if (f.exists()) {
+        // The file may be sharing its contents with other files, so it must not be overwritten in place
+        File replacedMd5File = getMd5File(f);
+        String replacedMd5 = readMd5(replacedMd5File);
+        FileUtils.deleteQuietly(replacedMd5File);
+        if (!f.delete())
+          throw new IOException(f + " cannot be replaced");
+        releaseBlob(replacedMd5);
+      }
       if (!f.exists()) {
         logger.debug("Attempting to create a new file at {}", f.getAbsolutePath());
         File collectionDirectory = getCollectionDirectory(collectionId, true);
@@ -578,37 +821,25 @@ public class WorkingFileRepositoryImpl implements WorkingFileRepository, PathMap
       } else {
         logger.debug("Attempting to overwrite the file at {}", f.getAbsolutePath());
       }
-      out = new FileOutputStream(f);
-
-      // Wrap the input stream and copy the input stream to the file
-      MessageDigest messageDigest = null;
-      DigestInputStream dis = null;
-      try {
-        messageDigest = MessageDigest.getInstance("MD5");
-        dis = new DigestInputStream(in, messageDigest);
-        IOUtils.copy(dis, out);
-      } catch (NoSuchAlgorithmException e1) {
-        logger.error("Unable to create md5 message digest");
-      }
+      // Copy the input stream to the file, calculating the hash on the way
+      md5 = copier.copy(in, f);
 
       // Store the hash
-      String md5 = Checksum.convertToHex(dis.getMessageDigest().digest());
       File md5File = null;
       try {
+        linkBlob(f, md5);
         md5File = getMd5File(f);
         FileUtils.writeStringToFile(md5File, md5);
       } catch (IOException e) {
         FileUtils.deleteQuietly(md5File);
         throw e;
-      } finally {
-        IOUtils.closeQuietly(dis);
       }
 
     } catch (IOException e) {
       FileUtils.deleteQuietly(f);
+      releaseBlob(md5);
       throw e;
     } finally {
-      IOUtils.closeQuietly(out);
       IOUtils.closeQuietly(in);
     }
     return getCollectionURI(collectionId, fileName);
@@ -640,7 +871,13 @@ public class WorkingFileRepositoryImpl implements WorkingFileRepository, PathMap
     try {
       destFile = new File(destDir, PathSupport.toSafeName(toFileName));
       FileSupport.link(source, destFile);
-      createMd5(destFile);
+      // The contents are identical, so there is no need to read them again to calculate the hash
+      File sourceMd5File = getMd5File(source);
+      if (sourceMd5File.isFile())
+        FileUtils.copyFile(sourceMd5File, getMd5File(destFile));
+      else
+        createMd5(destFile);
+      addBlobReference(destFile, readMd5(getMd5File(destFile)));
     } catch (Exception e) {
       FileUtils.deleteDirectory(destDir);
     }
@@ -684,6 +921,7 @@ public class WorkingFileRepositoryImpl implements WorkingFileRepository, PathMap
     try {
       FileUtils.moveFile(source, dest);
       FileUtils.moveFile(sourceMd5, getMd5File(dest));
+      addBlobReference(dest, readMd5(getMd5File(dest)));
     } catch (IOException e) {
       FileUtils.deleteDirectory(destDir);
       throw new IllegalStateException("unable to copy file" + e);
@@ -712,10 +950,12 @@ public class WorkingFileRepositoryImpl implements WorkingFileRepository, PathMap
       throw new IllegalStateException(f + " is not a regular file");
     if (!md5File.isFile())
       throw new IllegalStateException(md5File + " is not a regular file");
+    String md5 = readMd5(md5File);
     if (!md5File.delete())
       throw new IOException("MD5 hash " + md5File + " cannot be deleted");
     if (!f.delete())
       throw new IOException(f + " cannot be deleted");
+    releaseBlob(md5);
 
     File parentDirectory = f.getParentFile();
     if (parentDirectory.isDirectory() && parentDirectory.list().length == 0) {
@@ -799,20 +1039,13 @@ public class WorkingFileRepositoryImpl implements WorkingFileRepository, PathMap
 
     // Check if there is a precalculated md5 hash
     File md5HashFile = getMd5File(file);
-    if (file.exists()) {
+    if (md5HashFile.isFile()) {
       logger.trace("Reading precalculated hash for {} from {}", file, md5HashFile.getName());
       return FileUtils.readFileToString(md5HashFile, "utf-8");
     }
 
     // Calculate the md5 hash
-    InputStream in = null;
-    String md5 = null;
-    try {
-      in = new FileInputStream(file);
-      md5 = DigestUtils.md5Hex(in);
-    } finally {
-      IOUtils.closeQuietly(in);
-    }
+    String md5 = copier.md5(file);
 
     // Write the md5 hash to disk for later reference
     try {
@@ -307,9 +307,10 @@ public class WorkingFileRepositoryRestEndpoint extends WorkingFileRepositoryImpl
                 some(fileName), range).tag(md5).build();
 
       } else {
-        // No If-Non-Match header provided, or the file changed in the meantime
+        // No If-Non-Match header provided, or the file changed in the meantime. Advertise range support so that large
+        // files can be downloaded in parallel ranges.
         return fileResponse(getFile(mediaPackageID, mediaPackageElementID), mimeMap.getContentType(fileName),
-                some(fileName)).tag(md5).build();
+                some(fileName)).header("Accept-Ranges", "bytes").tag(md5).build();
       }
     } catch (Exception e) {
       logger.error("Unable to provide element '{}' from mediapackage '{}': {}", new Object[] { mediaPackageElementID,
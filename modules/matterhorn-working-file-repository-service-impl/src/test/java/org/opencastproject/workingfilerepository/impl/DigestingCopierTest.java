@@ -0,0 +1,97 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.workingfilerepository.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class DigestingCopierTest {
+
+  private File root;
+  private ExecutorService executor;
+  private DigestingCopier copier;
+  private byte[] content;
+
+  @Before
+  public void setUp() throws Exception {
+    root = new File("target" + File.separator + "digesting-copier-test");
+    FileUtils.forceMkdir(root);
+    executor = Executors.newCachedThreadPool();
+    copier = new DigestingCopier(executor);
+    // Span several buffers, with the last one filled partially
+    content = new byte[5 * DigestingCopier.BUFFER_SIZE + 4711];
+    new Random(42L).nextBytes(content);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    executor.shutdownNow();
+    FileUtils.deleteDirectory(root);
+  }
+
+  @Test
+  public void testCopyStream() throws Exception {
+    File file = new File(root, "stream");
+    assertEquals(DigestUtils.md5Hex(content), copier.copy(new ByteArrayInputStream(content), file));
+    assertArrayEquals(content, FileUtils.readFileToByteArray(file));
+  }
+
+  @Test
+  public void testCopyFileAndReuseBuffers() throws Exception {
+    File source = new File(root, "source");
+    FileUtils.writeByteArrayToFile(source, content);
+    for (int i = 0; i < 3; i++) {
+      File file = new File(root, "file" + i);
+      InputStream in = new FileInputStream(source);
+      try {
+        assertEquals(DigestUtils.md5Hex(content), copier.copy(in, file));
+      } finally {
+        IOUtils.closeQuietly(in);
+      }
+      assertArrayEquals(content, FileUtils.readFileToByteArray(file));
+      assertEquals(DigestUtils.md5Hex(content), copier.md5(file));
+    }
+  }
+
+  @Test
+  public void testEmptyStream() throws Exception {
+    File file = new File(root, "empty");
+    assertEquals(DigestUtils.md5Hex(new byte[0]), copier.copy(new ByteArrayInputStream(new byte[0]), file));
+    assertEquals(0L, file.length());
+  }
+
+}
@@ -0,0 +1,173 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.workingfilerepository.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import org.opencastproject.util.UrlSupport;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+
+public class WorkingFileRepositoryDeduplicationTest {
+
+  private static final byte[] CONTENT = "deduplicated content".getBytes();
+  private static final byte[] OTHER_CONTENT = "other content".getBytes();
+
+  private WorkingFileRepositoryImpl repo = new WorkingFileRepositoryImpl();
+
+  @Before
+  public void setUp() throws Exception {
+    repo.rootDirectory = "target" + File.separator + "repodeduptest";
+    repo.serverUrl = UrlSupport.DEFAULT_BASE_URL;
+    repo.serviceUrl = new URI(UrlSupport.concat(UrlSupport.DEFAULT_BASE_URL, WorkingFileRepositoryImpl.URI_PREFIX));
+    repo.deduplicate = true;
+    repo.createRootDirectory();
+    assumeTrue(Files.getFileStore(new File(repo.rootDirectory).toPath()).supportsFileAttributeView("unix"));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    FileUtils.forceDelete(new File(repo.rootDirectory));
+  }
+
+  @Test
+  public void testIdenticalContentsAreStoredOnce() throws Exception {
+    repo.put("mp1", "track", "track.mp4", new ByteArrayInputStream(CONTENT));
+    repo.put("mp2", "track", "track.mp4", new ByteArrayInputStream(CONTENT));
+    repo.putInCollection("collection", "track.mp4", new ByteArrayInputStream(CONTENT));
+
+    File first = repo.getFile("mp1", "track");
+    assertTrue(Files.isSameFile(first.toPath(), repo.getFile("mp2", "track").toPath()));
+    assertTrue(Files.isSameFile(first.toPath(), repo.getFileFromCollection("collection", "track.mp4").toPath()));
+    assertEquals(4, getLinkCount(first));
+    assertArrayEquals(CONTENT, read(repo.get("mp2", "track")));
+  }
+
+  @Test
+  public void testBlobIsRemovedWithLastReference() throws Exception {
+    repo.put("mp1", "track", "track.mp4", new ByteArrayInputStream(CONTENT));
+    repo.putInCollection("collection", "track.mp4", new ByteArrayInputStream(CONTENT));
+    File blobs = new File(repo.rootDirectory, "blobs");
+
+    assertTrue(repo.delete("mp1", "track"));
+    assertTrue(getBlob(CONTENT).isFile());
+    assertArrayEquals(CONTENT, read(repo.getFromCollection("collection", "track.mp4")));
+
+    assertTrue(repo.deleteFromCollection("collection", "track.mp4"));
+    assertTrue(FileUtils.listFiles(blobs, null, true).isEmpty());
+  }
+
+  @Test
+  public void testLinksOutsideTheRepositoryDoNotKeepBlobs() throws Exception {
+    repo.put("mp1", "track", "track.mp4", new ByteArrayInputStream(CONTENT));
+    // Like the workspace or a distribution service would
+    File external = new File(repo.rootDirectory, "external.mp4");
+    Files.createLink(external.toPath(), repo.getFile("mp1", "track").toPath());
+
+    assertTrue(repo.delete("mp1", "track"));
+    assertFalse(getBlob(CONTENT).exists());
+    assertArrayEquals(CONTENT, FileUtils.readFileToByteArray(external));
+  }
+
+  @Test
+  public void testDifferentContentsWithTheSameHashAreNotLinked() throws Exception {
+    // Pretend that some other content has the same md5 hash
+    File blob = getBlob(CONTENT);
+    FileUtils.writeByteArrayToFile(blob, OTHER_CONTENT);
+
+    repo.put("mp1", "track", "track.mp4", new ByteArrayInputStream(CONTENT));
+    assertFalse(Files.isSameFile(blob.toPath(), repo.getFile("mp1", "track").toPath()));
+    assertArrayEquals(CONTENT, read(repo.get("mp1", "track")));
+    assertArrayEquals(OTHER_CONTENT, FileUtils.readFileToByteArray(blob));
+  }
+
+  @Test
+  public void testCleanupRemovesOrphanedBlobs() throws Exception {
+    repo.put("mp1", "track", "track.mp4", new ByteArrayInputStream(CONTENT));
+    repo.put("mp2", "track", "track.mp4", new ByteArrayInputStream(OTHER_CONTENT));
+    // Files removed behind the repository's back leave their blobs behind
+    FileUtils.forceDelete(repo.getFile("mp2", "track").getParentFile());
+
+    repo.cleanupBlobs();
+    assertTrue(getBlob(CONTENT).isFile());
+    assertFalse(getBlob(OTHER_CONTENT).exists());
+  }
+
+  @Test
+  public void testReplacingSharedContentsDoesNotAffectOtherFiles() throws Exception {
+    repo.put("mp1", "track", "track.mp4", new ByteArrayInputStream(CONTENT));
+    repo.putInCollection("collection", "track.mp4", new ByteArrayInputStream(CONTENT));
+
+    repo.putInCollection("collection", "track.mp4", new ByteArrayInputStream(OTHER_CONTENT));
+    repo.put("mp2", "track", "track.mp4", new ByteArrayInputStream(CONTENT));
+    repo.put("mp2", "track", "track.mp4", new ByteArrayInputStream(OTHER_CONTENT));
+
+    assertArrayEquals(CONTENT, read(repo.get("mp1", "track")));
+    assertArrayEquals(OTHER_CONTENT, read(repo.getFromCollection("collection", "track.mp4")));
+    assertArrayEquals(OTHER_CONTENT, read(repo.get("mp2", "track")));
+    assertEquals(2, getLinkCount(repo.getFile("mp1", "track")));
+  }
+
+  @Test
+  public void testWithoutDeduplication() throws Exception {
+    repo.deduplicate = false;
+    repo.put("mp1", "track", "track.mp4", new ByteArrayInputStream(CONTENT));
+    repo.put("mp2", "track", "track.mp4", new ByteArrayInputStream(CONTENT));
+
+    assertFalse(Files.isSameFile(repo.getFile("mp1", "track").toPath(), repo.getFile("mp2", "track").toPath()));
+    assertFalse(new File(repo.rootDirectory, "blobs").exists());
+  }
+
+  private File getBlob(byte[] content) {
+    String md5 = DigestUtils.md5Hex(content);
+    return new File(repo.rootDirectory, "blobs" + File.separator + md5.substring(0, 2) + File.separator + md5);
+  }
+
+  private static int getLinkCount(File f) throws IOException {
+    return (Integer) Files.getAttribute(f.toPath(), "unix:nlink");
+  }
+
+  private static byte[] read(InputStream in) throws IOException {
+    try {
+      return IOUtils.toByteArray(in);
+    } finally {
+      IOUtils.closeQuietly(in);
+    }
+  }
+
+}
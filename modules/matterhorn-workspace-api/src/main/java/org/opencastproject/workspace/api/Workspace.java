@@ -25,6 +25,7 @@ import org.opencastproject.storage.StorageUsage;
 import org.opencastproject.util.NotFoundException;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
@@ -50,6 +51,24 @@ public interface Workspace extends StorageUsage {
    */
   File get(URI uri) throws NotFoundException, IOException;
 
+  /**
+   * Opens a stream on the locally cached file for the given URI. If the file is being downloaded into the workspace at
+   * the moment, the stream starts delivering the part that has already been downloaded and blocks until the rest
+   * arrives, rather than waiting for the whole download to finish. The default implementation gets the file and opens
+   * it.
+   *
+   * @param uri
+   *          the URI
+   * @return the stream, which needs to be closed by the caller
+   * @throws NotFoundException
+   *           if the file does not exist
+   * @throws IOException
+   *           if reading the file from the workspace fails
+   */
+  default InputStream read(URI uri) throws NotFoundException, IOException {
+    return new FileInputStream(get(uri));
+  }
+
   /**
    * Gets the base URI for files stored using this service.
    *
@@ -0,0 +1,181 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.workspace.impl;
+
+import org.opencastproject.util.IoSupport;
+import org.opencastproject.util.NotFoundException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+
+/**
+ * A file that is being fetched into the workspace.
+ * <p>
+ * The thread fetching the file reports how much of it has been written for good, so that others can wait for the file
+ * as a whole or stream the part that is already there.
+ */
+class InFlightDownload {
+
+  /** The workspace file */
+  private final File file;
+
+  /** The number of bytes at the beginning of the file that are final */
+  private long available = 0L;
+
+  /** Whether fetching the file is over, successfully or not */
+  private boolean done = false;
+
+  /** The reason why fetching the file failed */
+  private Exception failure = null;
+
+  /**
+   * Creates a new download.
+   *
+   * @param file
+   *          the workspace file
+   */
+  InFlightDownload(File file) {
+    this.file = file;
+  }
+
+  /**
+   * Reports that the first <code>bytes</code> bytes of the file have been written and won't change anymore.
+   *
+   * @param bytes
+   *          the number of final bytes
+   */
+  synchronized void progress(long bytes) {
+    if (bytes > available) {
+      available = bytes;
+      notifyAll();
+    }
+  }
+
+  /** Reports that the file has been fetched completely. */
+  synchronized void complete() {
+    available = file.length();
+    done = true;
+    notifyAll();
+  }
+
+  /**
+   * Reports that fetching the file failed.
+   *
+   * @param e
+   *          the reason
+   */
+  synchronized void fail(Exception e) {
+    failure = e;
+    done = true;
+    notifyAll();
+  }
+
+  /**
+   * Waits for the file to be fetched completely.
+   *
+   * @return the file
+   * @throws NotFoundException
+   *           if the file could not be found
+   * @throws IOException
+   *           if fetching the file failed or the thread has been interrupted while waiting
+   */
+  synchronized File await() throws NotFoundException, IOException {
+    while (!done) {
+      waitForProgress();
+    }
+    if (failure instanceof NotFoundException)
+      throw new NotFoundException(failure.getMessage(), failure);
+    if (failure != null)
+      throw new IOException("Fetching " + file + " into the workspace failed", failure);
+    return file;
+  }
+
+  /**
+   * Waits until there are final bytes beyond <code>position</code> or the download is over.
+   *
+   * @return the number of final bytes
+   */
+  private synchronized long awaitAvailable(long position) throws IOException {
+    while (!done && available <= position) {
+      waitForProgress();
+    }
+    if (failure != null)
+      throw new IOException("Fetching " + file + " into the workspace failed", failure);
+    return available;
+  }
+
+  private void waitForProgress() throws InterruptedIOException {
+    try {
+      wait();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for " + file);
+    }
+  }
+
+  /**
+   * Opens a stream on the file which delivers the bytes that are final right away and blocks until further bytes are.
+   *
+   * @return the stream
+   */
+  InputStream openStream() {
+    return new InputStream() {
+
+      private RandomAccessFile in = null;
+      private long position = 0L;
+
+      @Override
+      public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+          return 0;
+        long limit = awaitAvailable(position);
+        if (position >= limit)
+          return -1;
+        // The file is not opened before its first bytes are final, since it may still be replaced until then
+        if (in == null) {
+          in = new RandomAccessFile(file, "r");
+          in.seek(position);
+        }
+        int read = in.read(b, off, (int) Math.min(len, limit - position));
+        if (read > 0)
+          position += read;
+        return read;
+      }
+
+      @Override
+      public void close() throws IOException {
+        IoSupport.closeQuietly(in);
+      }
+
+    };
+  }
+
+}
@@ -0,0 +1,386 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.workspace.impl;
+
+import static java.lang.String.format;
+
+import org.opencastproject.security.api.TrustedHttpClient;
+import org.opencastproject.util.IoSupport;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+/**
+ * Downloads large files using several HTTP range requests in parallel.
+ * <p>
+ * The file is preallocated and every range is written to its position in the file as it arrives. The ranges that have
+ * been completely written are recorded in a journal next to the file, so that an interrupted download resumes with the
+ * missing ranges only. If the server provides an md5 hash as entity tag, the downloaded file is checked against it.
+ */
+class RangedDownloader {
+
+  /** The logging facility */
+  private static final Logger logger = LoggerFactory.getLogger(RangedDownloader.class);
+
+  /** The extension of the journal recording the completed ranges of a download */
+  static final String JOURNAL_EXTENSION = ".ranges";
+
+  private static final String JOURNAL_ETAG = "etag";
+  private static final String JOURNAL_LENGTH = "length";
+  private static final String JOURNAL_CHUNK_SIZE = "chunk.size";
+  private static final String JOURNAL_COMPLETED = "completed";
+
+  /** The pattern of an entity tag that is an md5 hash */
+  private static final Pattern MD5_PATTERN = Pattern.compile("[0-9a-fA-F]{32}");
+
+  /** The number of times a single range is requested before the download fails */
+  private static final int MAX_ATTEMPTS = 3;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final TrustedHttpClient client;
+  private final ExecutorService executor;
+  private final long chunkSize;
+
+  /**
+   * Creates a downloader.
+   *
+   * @param client
+   *          the HTTP client
+   * @param executor
+   *          the executor running the range requests
+   * @param chunkSize
+   *          the size of a single range in bytes. Only files larger than this are downloaded in ranges.
+   */
+  RangedDownloader(TrustedHttpClient client, ExecutorService executor, long chunkSize) {
+    this.client = client;
+    this.executor = executor;
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * Returns whether there is an unfinished download for the given file.
+   *
+   * @param dst
+   *          the destination file
+   * @return <code>true</code> if the download has been interrupted
+   */
+  static boolean isIncomplete(File dst) {
+    return getJournalFile(dst).isFile();
+  }
+
+  private static File getJournalFile(File dst) {
+    return new File(dst.getParentFile(), dst.getName() + JOURNAL_EXTENSION);
+  }
+
+  /**
+   * Downloads <code>src</code> to <code>dst</code> in ranges, continuing an interrupted download if possible.
+   *
+   * @param src
+   *          the source URI
+   * @param dst
+   *          the destination file
+   * @param download
+   *          receives the number of bytes at the beginning of the file that have been downloaded completely
+   * @return <code>false</code> if the source can't be downloaded in ranges, e. g. because it is too small or the server
+   *         does not support range requests, and needs to be downloaded as a whole
+   * @throws IOException
+   *           if the download failed. Completed ranges are kept so that the download can be resumed.
+   */
+  boolean download(URI src, File dst, InFlightDownload download) throws IOException {
+    boolean incomplete = isIncomplete(dst);
+    if (downloadRanges(src, dst, download))
+      return true;
+    if (incomplete) {
+      // Whatever has been downloaded before is of no use to a download of the whole file
+      logger.info("Discarding the partial download of {} to {}", src, dst);
+      FileUtils.deleteQuietly(getJournalFile(dst));
+      FileUtils.deleteQuietly(dst);
+    }
+    return false;
+  }
+
+  private boolean downloadRanges(final URI src, final File dst, final InFlightDownload download)
+          throws IOException {
+    // Find out about the size and version of the file
+    final HttpResponse head = client.execute(new HttpHead(src));
+    final long length;
+    final String etag;
+    try {
+      if (head.getStatusLine().getStatusCode() != 200) {
+        logger.debug("Not downloading {} in ranges, status {}", src, head.getStatusLine().getStatusCode());
+        return false;
+      }
+      Header acceptRanges = head.getFirstHeader("Accept-Ranges");
+      Header contentLength = head.getFirstHeader("Content-Length");
+      if (acceptRanges == null || !"bytes".equalsIgnoreCase(acceptRanges.getValue().trim()) || contentLength == null) {
+        logger.debug("Not downloading {} in ranges, the server does not support range requests", src);
+        return false;
+      }
+      length = Long.parseLong(contentLength.getValue().trim());
+      Header etagHeader = head.getFirstHeader("ETag");
+      etag = etagHeader == null ? null : StringUtils.strip(etagHeader.getValue().trim(), "\"");
+    } catch (NumberFormatException e) {
+      logger.debug("Not downloading {} in ranges, invalid content length", src);
+      return false;
+    } finally {
+      client.close(head);
+    }
+    if (length <= chunkSize) {
+      return false;
+    }
+
+    final int chunks = (int) ((length + chunkSize - 1) / chunkSize);
+    final File journal = getJournalFile(dst);
+    final BitSet completed = loadJournal(journal, etag, length);
+    if (completed.isEmpty()) {
+      // Start from scratch
+      saveJournal(journal, etag, length, completed);
+    } else {
+      logger.info("Resuming download of {} to {} with {} of {} ranges completed",
+              new Object[] { src, dst.getAbsolutePath(), completed.cardinality(), chunks });
+      download.progress(getCompletedPrefix(completed, length));
+    }
+
+    logger.info("Downloading {} to {} using {} ranges", new Object[] { src, dst.getAbsolutePath(), chunks });
+    RandomAccessFile raf = new RandomAccessFile(dst, "rw");
+    try {
+      raf.setLength(length);
+      final FileChannel channel = raf.getChannel();
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for (int i = 0; i < chunks; i++) {
+        if (completed.get(i))
+          continue;
+        final int chunk = i;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            long start = chunk * chunkSize;
+            long end = Math.min(length, start + chunkSize) - 1;
+            downloadRange(src, channel, start, end, etag);
+            // Make sure the range is on disk before recording it
+            channel.force(false);
+            synchronized (completed) {
+              completed.set(chunk);
+              saveJournal(journal, etag, length, completed);
+              download.progress(getCompletedPrefix(completed, length));
+            }
+            return null;
+          }
+        }));
+      }
+      IOException failure = null;
+      for (Future<Void> future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          if (failure == null)
+            failure = e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          for (Future<Void> f : futures) {
+            f.cancel(true);
+          }
+          throw new IOException("Interrupted while downloading " + src, e);
+        }
+      }
+      if (failure != null)
+        throw failure;
+    } finally {
+      IoSupport.closeQuietly(raf);
+    }
+
+    // Check the file against the md5 hash the server provided
+    if (etag != null && MD5_PATTERN.matcher(etag).matches()) {
+      String md5 = md5(dst);
+      if (!etag.equalsIgnoreCase(md5)) {
+        FileUtils.deleteQuietly(journal);
+        FileUtils.deleteQuietly(dst);
+        throw new IOException(format("Downloaded %s has md5 %s instead of %s", src, md5, etag));
+      }
+    }
+    FileUtils.deleteQuietly(journal);
+    return true;
+  }
+
+  /** Returns the number of bytes at the beginning of the file that are covered by completed ranges. */
+  private long getCompletedPrefix(BitSet completed, long length) {
+    return Math.min(length, completed.nextClearBit(0) * chunkSize);
+  }
+
+  /** Downloads a single range, retrying a few times if the transfer is interrupted. */
+  private void downloadRange(URI src, FileChannel channel, long start, long end, String etag) throws IOException {
+    IOException failure = null;
+    for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+      if (Thread.currentThread().isInterrupted())
+        throw new IOException("Interrupted while downloading " + src);
+      HttpGet get = new HttpGet(src);
+      get.setHeader("Range", "bytes=" + start + "-" + end);
+      HttpResponse response = null;
+      try {
+        response = client.execute(get);
+        int status = response.getStatusLine().getStatusCode();
+        if (status != 206)
+          throw new IOException(format("Received status %d instead of 206 for range %d-%d of %s", status, start, end,
+                  src));
+        Header contentRange = response.getFirstHeader("Content-Range");
+        if (contentRange == null || !contentRange.getValue().trim().startsWith("bytes " + start + "-" + end + "/"))
+          throw new IOException(format("Received unexpected range %s instead of %d-%d of %s",
+                  contentRange == null ? null : contentRange.getValue(), start, end, src));
+        Header responseEtag = response.getFirstHeader("ETag");
+        if (etag != null && responseEtag != null
+                && !etag.equals(StringUtils.strip(responseEtag.getValue().trim(), "\"")))
+          throw new IllegalStateException(format("%s has been modified during the download", src));
+        write(response.getEntity().getContent(), channel, start, end - start + 1);
+        return;
+      } catch (IOException e) {
+        logger.debug("Attempt {} to download range {}-{} of {} failed: {}",
+                new Object[] { attempt, start, end, src, e.getMessage() });
+        failure = e;
+      } finally {
+        if (response != null)
+          client.close(response);
+      }
+    }
+    throw failure;
+  }
+
+  /** Writes <code>length</code> bytes from the stream to the channel, starting at <code>position</code>. */
+  private static void write(InputStream in, FileChannel channel, long position, long length) throws IOException {
+    byte[] buffer = new byte[BUFFER_SIZE];
+    long written = 0;
+    try {
+      while (written < length) {
+        int read = in.read(buffer, 0, (int) Math.min(buffer.length, length - written));
+        if (read == -1)
+          break;
+        ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, read);
+        while (bytes.hasRemaining()) {
+          written += channel.write(bytes, position + written);
+        }
+      }
+    } finally {
+      IoSupport.closeQuietly(in);
+    }
+    if (written < length)
+      throw new IOException(format("Range ended after %d of %d bytes", written, length));
+  }
+
+  /**
+   * Loads the completed ranges of an interrupted download. Returns no ranges if the journal does not exist or belongs
+   * to another version of the file.
+   */
+  private BitSet loadJournal(File journal, String etag, long length) {
+    if (!journal.isFile())
+      return new BitSet();
+    Properties properties = new Properties();
+    InputStream in = null;
+    try {
+      in = new FileInputStream(journal);
+      properties.load(in);
+      if (!StringUtils.equals(etag, properties.getProperty(JOURNAL_ETAG))
+              || !Long.toString(length).equals(properties.getProperty(JOURNAL_LENGTH))
+              || !Long.toString(chunkSize).equals(properties.getProperty(JOURNAL_CHUNK_SIZE))) {
+        logger.debug("Discarding journal {} of a different download", journal);
+        return new BitSet();
+      }
+      BitSet completed = new BitSet();
+      for (String chunk : StringUtils.split(properties.getProperty(JOURNAL_COMPLETED, ""), ',')) {
+        completed.set(Integer.parseInt(chunk.trim()));
+      }
+      return completed;
+    } catch (IOException | NumberFormatException e) {
+      logger.warn("Unable to read download journal {}: {}", journal, e.getMessage());
+      return new BitSet();
+    } finally {
+      IoSupport.closeQuietly(in);
+    }
+  }
+
+  /** Records the completed ranges of a download. */
+  private void saveJournal(File journal, String etag, long length, BitSet completed) throws IOException {
+    Properties properties = new Properties();
+    if (etag != null)
+      properties.setProperty(JOURNAL_ETAG, etag);
+    properties.setProperty(JOURNAL_LENGTH, Long.toString(length));
+    properties.setProperty(JOURNAL_CHUNK_SIZE, Long.toString(chunkSize));
+    StringBuilder chunks = new StringBuilder();
+    for (int i = completed.nextSetBit(0); i >= 0; i = completed.nextSetBit(i + 1)) {
+      if (chunks.length() > 0)
+        chunks.append(',');
+      chunks.append(i);
+    }
+    properties.setProperty(JOURNAL_COMPLETED, chunks.toString());
+
+    // Replace the journal at once, so that it is never left half written
+    File tmp = new File(journal.getParentFile(), journal.getName() + ".tmp");
+    OutputStream out = null;
+    try {
+      out = new FileOutputStream(tmp);
+      properties.store(out, null);
+    } finally {
+      IoSupport.closeQuietly(out);
+    }
+    if (!tmp.renameTo(journal)) {
+      FileUtils.deleteQuietly(tmp);
+      throw new IOException("Unable to write download journal " + journal);
+    }
+  }
+
+  private static String md5(File file) throws IOException {
+    InputStream in = null;
+    try {
+      in = new FileInputStream(file);
+      return DigestUtils.md5Hex(in);
+    } finally {
+      IoSupport.closeQuietly(in);
+    }
+  }
+
+}
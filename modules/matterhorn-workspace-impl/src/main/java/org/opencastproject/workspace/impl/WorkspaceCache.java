@@ -0,0 +1,377 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.workspace.impl;
+
+import org.opencastproject.util.FileSupport;
+import org.opencastproject.util.IoSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size-bounded record of the files the workspace has fetched, in least recently used order.
+ * <p>
+ * Once the files take up more than the maximum size, the least recently used files are deleted until the size drops
+ * below the low watermark. Files which have been used recently or which are locked, e. g. because they are being
+ * downloaded, are never deleted. Neither are files which have been handed out and are still pinned, since the jobs
+ * working on them have not deleted them yet.
+ */
+class WorkspaceCache {
+
+  /** The logging facility */
+  private static final Logger logger = LoggerFactory.getLogger(WorkspaceCache.class);
+
+  /** The workspace root directory */
+  private final File root;
+
+  /** The size in bytes above which files are evicted, or 0 if the size is not limited */
+  private final long maxSize;
+
+  /** The size in bytes eviction stops at */
+  private final long lowWatermark;
+
+  /** The time in milliseconds a file needs to be idle before it may be evicted */
+  private final long minIdle;
+
+  /** The time in milliseconds after which a pinned file that has not been deleted may be evicted nevertheless */
+  static final long MAX_PIN_TIME = TimeUnit.HOURS.toMillis(24);
+
+  /** The tracked files by absolute path, least recently used first */
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+
+  /** The time the tracked files have last been handed out at, by absolute path, until they are deleted */
+  private final Map<String, Long> pins = new HashMap<>();
+
+  /** The total size of the tracked files */
+  private long size = 0L;
+
+  /** Whether an eviction is in progress */
+  private final AtomicBoolean evicting = new AtomicBoolean(false);
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private final AtomicLong evictedBytes = new AtomicLong();
+
+  /**
+   * Creates a new cache record.
+   *
+   * @param root
+   *          the workspace root directory
+   * @param maxSize
+   *          the size in bytes above which files are evicted, or 0 to not limit the size
+   * @param lowWatermark
+   *          the percentage of the maximum size eviction stops at
+   * @param minIdle
+   *          the time in milliseconds a file needs to be idle before it may be evicted
+   */
+  WorkspaceCache(File root, long maxSize, int lowWatermark, long minIdle) {
+    this.root = root;
+    this.maxSize = Math.max(0L, maxSize);
+    this.lowWatermark = this.maxSize / 100L * Math.min(100, Math.max(0, lowWatermark));
+    this.minIdle = Math.max(0L, minIdle);
+  }
+
+  /**
+   * Returns whether the size of the workspace is limited. If not, accesses are counted but files are not tracked.
+   *
+   * @return <code>true</code> if files are evicted
+   */
+  boolean isEnabled() {
+    return maxSize > 0L;
+  }
+
+  /** Counts a request for a file that was already present in the workspace and up to date. */
+  void hit() {
+    hits.incrementAndGet();
+  }
+
+  /** Counts a request for a file that had to be fetched into the workspace. */
+  void miss() {
+    misses.incrementAndGet();
+  }
+
+  /**
+   * Starts or continues tracking a file, marking it as the most recently used one.
+   *
+   * @param file
+   *          the file
+   * @param now
+   *          the current time in milliseconds
+   */
+  synchronized void access(File file, long now) {
+    if (!isEnabled())
+      return;
+    Entry entry = new Entry(file, file.length(), now);
+    // Re-insert the entry to move it to the end of the insertion ordered map
+    Entry previous = entries.remove(file.getAbsolutePath());
+    entries.put(file.getAbsolutePath(), entry);
+    if (previous != null)
+      size -= previous.getSize();
+    size += entry.getSize();
+  }
+
+  /**
+   * Pins a tracked file that has been handed out, so that it is not evicted while it is in use. The pin is released
+   * once the file is deleted from the workspace, or after {@link #MAX_PIN_TIME} if that never happens.
+   *
+   * @param file
+   *          the file
+   * @param now
+   *          the current time in milliseconds
+   */
+  synchronized void pin(File file, long now) {
+    String path = file.getAbsolutePath();
+    if (entries.containsKey(path))
+      pins.put(path, now);
+  }
+
+  /** Returns whether a file is pinned, releasing pins that have expired. */
+  private synchronized boolean isPinned(String path, long now) {
+    Long pinned = pins.get(path);
+    if (pinned == null)
+      return false;
+    if (now - pinned < MAX_PIN_TIME)
+      return true;
+    pins.remove(path);
+    return false;
+  }
+
+  /**
+   * Stops tracking a file, e. g. because it has been deleted. This releases the file's pin.
+   *
+   * @param file
+   *          the file
+   */
+  synchronized void remove(File file) {
+    pins.remove(file.getAbsolutePath());
+    Entry entry = entries.remove(file.getAbsolutePath());
+    if (entry != null)
+      size -= entry.getSize();
+  }
+
+  /**
+   * Stops tracking all files below a directory.
+   *
+   * @param directory
+   *          the directory
+   */
+  synchronized void removeAll(File directory) {
+    String prefix = directory.getAbsolutePath() + File.separator;
+    Iterator<Entry> iterator = entries.values().iterator();
+    while (iterator.hasNext()) {
+      Entry entry = iterator.next();
+      if (entry.getFile().getAbsolutePath().startsWith(prefix)) {
+        iterator.remove();
+        pins.remove(entry.getFile().getAbsolutePath());
+        size -= entry.getSize();
+      }
+    }
+  }
+
+  /**
+   * Returns whether the tracked files take up more than the maximum size.
+   *
+   * @return <code>true</code> if files should be evicted
+   */
+  synchronized boolean isOverCapacity() {
+    return isEnabled() && size > maxSize;
+  }
+
+  /**
+   * Evicts the least recently used files until the size drops below the low watermark. Returns immediately if another
+   * eviction is already in progress.
+   *
+   * @param now
+   *          the current time in milliseconds
+   * @return the number of evicted files
+   */
+  int evict(long now) {
+    if (!evicting.compareAndSet(false, true))
+      return 0;
+    try {
+      int evicted = 0;
+      for (Entry entry : getEvictionCandidates(now)) {
+        if (delete(entry, now)) {
+          evicted++;
+          evictions.incrementAndGet();
+          evictedBytes.addAndGet(entry.getSize());
+        }
+      }
+      if (evicted > 0)
+        logger.info("Evicted {} least recently used files from the workspace, {} bytes are in use now", evicted,
+                getSize());
+      return evicted;
+    } finally {
+      evicting.set(false);
+    }
+  }
+
+  /**
+   * Returns the idle files that are not pinned, least recently used first, that need to go to get down to the low
+   * watermark.
+   */
+  private synchronized List<Entry> getEvictionCandidates(long now) {
+    List<Entry> candidates = new ArrayList<>();
+    long projectedSize = size;
+    Iterator<Entry> iterator = entries.values().iterator();
+    while (projectedSize > lowWatermark && iterator.hasNext()) {
+      Entry entry = iterator.next();
+      // Entries are in access order, so all remaining entries have been used even more recently
+      if (now - entry.getLastAccess() < minIdle)
+        break;
+      if (isPinned(entry.getFile().getAbsolutePath(), now))
+        continue;
+      candidates.add(entry);
+      projectedSize -= entry.getSize();
+    }
+    return candidates;
+  }
+
+  /**
+   * Deletes a tracked file unless it has been used again in the meantime or is currently locked.
+   *
+   * @return <code>true</code> if the file has been deleted
+   */
+  private boolean delete(Entry entry, long now) {
+    File file = entry.getFile();
+    synchronized (this) {
+      // The file may have been accessed or handed out since it was selected
+      if (entries.get(file.getAbsolutePath()) != entry || isPinned(file.getAbsolutePath(), now))
+        return false;
+      if (!file.isFile()) {
+        remove(file);
+        return false;
+      }
+    }
+
+    RandomAccessFile raf = null;
+    FileLock lock = null;
+    try {
+      raf = new RandomAccessFile(file, "rw");
+      lock = raf.getChannel().tryLock();
+      if (lock == null) {
+        logger.debug("Not evicting {} from the workspace since it is locked", file);
+        return false;
+      }
+      synchronized (this) {
+        if (entries.get(file.getAbsolutePath()) != entry || isPinned(file.getAbsolutePath(), now))
+          return false;
+        remove(file);
+      }
+      logger.debug("Evicting {} from the workspace", file);
+      if (!file.delete()) {
+        logger.warn("Unable to evict {} from the workspace", file);
+        return false;
+      }
+    } catch (OverlappingFileLockException e) {
+      logger.debug("Not evicting {} from the workspace since it is in use", file);
+      return false;
+    } catch (IOException e) {
+      logger.warn("Unable to evict {} from the workspace: {}", file, e.getMessage());
+      return false;
+    } finally {
+      if (lock != null) {
+        try {
+          lock.release();
+        } catch (IOException ignore) {
+        }
+      }
+      IoSupport.closeQuietly(raf);
+    }
+    FileSupport.deleteHierarchyIfEmpty(root, file.getParentFile());
+    return true;
+  }
+
+  /** Returns the total size of the tracked files in bytes. */
+  synchronized long getSize() {
+    return size;
+  }
+
+  /** Returns the number of tracked files. */
+  synchronized int getFileCount() {
+    return entries.size();
+  }
+
+  /** Returns the number of accesses to files that were present in the workspace already. */
+  long getHits() {
+    return hits.get();
+  }
+
+  /** Returns the number of accesses to files that had to be fetched. */
+  long getMisses() {
+    return misses.get();
+  }
+
+  /** Returns the number of files that have been evicted. */
+  long getEvictions() {
+    return evictions.get();
+  }
+
+  /** Returns the number of bytes that have been evicted. */
+  long getEvictedBytes() {
+    return evictedBytes.get();
+  }
+
+  /** A tracked file */
+  private static final class Entry {
+
+    private final File file;
+    private final long size;
+    private final long lastAccess;
+
+    Entry(File file, long size, long lastAccess) {
+      this.file = file;
+      this.size = size;
+      this.lastAccess = lastAccess;
+    }
+
+    File getFile() {
+      return file;
+    }
+
+    long getSize() {
+      return size;
+    }
+
+    long getLastAccess() {
+      return lastAccess;
+    }
+
+  }
+
+}
@@ -75,9 +75,16 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.management.ObjectInstance;
 import javax.servlet.http.HttpServletResponse;
@@ -104,6 +111,27 @@ public final class WorkspaceImpl implements Workspace {
   public static final String WORKSPACE_CLEANUP_PERIOD_KEY = "org.opencastproject.workspace.cleanup.period";
   /** Configuration key for garbage collection max age. */
   public static final String WORKSPACE_CLEANUP_MAX_AGE_KEY = "org.opencastproject.workspace.cleanup.max.age";
+  /** Configuration key for the size in bytes above which least recently used files are evicted */
+  public static final String WORKSPACE_CACHE_MAX_SIZE_KEY = "org.opencastproject.workspace.cache.max.size";
+  /** Configuration key for the percentage of the maximum size that eviction stops at */
+  public static final String WORKSPACE_CACHE_LOW_WATERMARK_KEY = "org.opencastproject.workspace.cache.low.watermark";
+  /** Configuration key for the time in seconds a file needs to be unused before it may be evicted */
+  public static final String WORKSPACE_CACHE_MIN_IDLE_KEY = "org.opencastproject.workspace.cache.min.idle";
+
+  /** The default percentage of the maximum size that eviction stops at */
+  public static final int DEFAULT_CACHE_LOW_WATERMARK = 80;
+  /** The default time in seconds a file needs to be unused before it may be evicted */
+  public static final int DEFAULT_CACHE_MIN_IDLE = 3600;
+  /** Configuration key for the number of range requests used to download a single large file in parallel */
+  public static final String WORKSPACE_DOWNLOAD_PARALLELISM_KEY = "org.opencastproject.workspace.download.parallelism";
+  /** Configuration key for the size in bytes of the ranges large files are downloaded in */
+  public static final String WORKSPACE_DOWNLOAD_CHUNK_SIZE_KEY = "org.opencastproject.workspace.download.chunk.size";
+
+  /** The default size of the ranges large files are downloaded in: 64 MB */
+  public static final long DEFAULT_DOWNLOAD_CHUNK_SIZE = 64L * 1024L * 1024L;
+
+  /** The size of the buffer used to download files */
+  private static final int DOWNLOAD_BUFFER_SIZE = 64 * 1024;
 
   /** Workspace JMX type */
   private static final String JMX_WORKSPACE_TYPE = "Workspace";
@@ -114,6 +142,9 @@ public final class WorkspaceImpl implements Workspace {
   /** The JMX workspace bean */
   private WorkspaceBean workspaceBean = new WorkspaceBean(this);
 
+  /** The record of the files fetched into the workspace, evicting them once the workspace grows too large */
+  private WorkspaceCache cache = new WorkspaceCache(null, 0L, DEFAULT_CACHE_LOW_WATERMARK, 0L);
+
   /** The JMX bean object instance */
   private ObjectInstance registeredMXBean;
 
@@ -134,6 +165,15 @@ public final class WorkspaceImpl implements Workspace {
 
   private WorkspaceCleaner workspaceCleaner = null;
 
+  /** The executor running the range requests of parallel downloads */
+  private ExecutorService downloadExecutor = null;
+
+  /** Downloads large files in parallel ranges, or <code>null</code> if files are downloaded as a whole */
+  private RangedDownloader rangedDownloader = null;
+
+  /** The files that are being fetched into the workspace at the moment by absolute path */
+  private final ConcurrentMap<String, InFlightDownload> downloads = new ConcurrentHashMap<>();
+
   public WorkspaceImpl() {
   }
 
@@ -235,6 +275,71 @@ public final class WorkspaceImpl implements Workspace {
       }
     }
 
+    // Set up the size-bounded workspace cache
+    long cacheMaxSize = 0L;
+    if (ensureContextProp(cc, WORKSPACE_CACHE_MAX_SIZE_KEY)) {
+      String maxSize = cc.getBundleContext().getProperty(WORKSPACE_CACHE_MAX_SIZE_KEY);
+      try {
+        cacheMaxSize = Long.parseLong(maxSize.trim());
+      } catch (NumberFormatException e) {
+        logger.warn("Invalid configuration for workspace cache max size ({}={})", WORKSPACE_CACHE_MAX_SIZE_KEY,
+                maxSize);
+      }
+    }
+    int cacheLowWatermark = DEFAULT_CACHE_LOW_WATERMARK;
+    if (ensureContextProp(cc, WORKSPACE_CACHE_LOW_WATERMARK_KEY)) {
+      String lowWatermark = cc.getBundleContext().getProperty(WORKSPACE_CACHE_LOW_WATERMARK_KEY);
+      try {
+        cacheLowWatermark = Integer.parseInt(lowWatermark.trim());
+      } catch (NumberFormatException e) {
+        logger.warn("Invalid configuration for workspace cache low watermark ({}={})",
+                WORKSPACE_CACHE_LOW_WATERMARK_KEY, lowWatermark);
+      }
+    }
+    int cacheMinIdle = DEFAULT_CACHE_MIN_IDLE;
+    if (ensureContextProp(cc, WORKSPACE_CACHE_MIN_IDLE_KEY)) {
+      String minIdle = cc.getBundleContext().getProperty(WORKSPACE_CACHE_MIN_IDLE_KEY);
+      try {
+        cacheMinIdle = Integer.parseInt(minIdle.trim());
+      } catch (NumberFormatException e) {
+        logger.warn("Invalid configuration for workspace cache min idle time ({}={})", WORKSPACE_CACHE_MIN_IDLE_KEY,
+                minIdle);
+      }
+    }
+    cache = new WorkspaceCache(f, cacheMaxSize, cacheLowWatermark, cacheMinIdle * 1000L);
+    if (cache.isEnabled()) {
+      logger.info("Evicting least recently used files once the workspace exceeds {} bytes", cacheMaxSize);
+      trackExistingFiles();
+    }
+
+    // Set up parallel downloads of large files
+    int downloadParallelism = 1;
+    if (ensureContextProp(cc, WORKSPACE_DOWNLOAD_PARALLELISM_KEY)) {
+      String parallelism = cc.getBundleContext().getProperty(WORKSPACE_DOWNLOAD_PARALLELISM_KEY);
+      try {
+        downloadParallelism = Integer.parseInt(parallelism.trim());
+      } catch (NumberFormatException e) {
+        logger.warn("Invalid configuration for workspace download parallelism ({}={})",
+                WORKSPACE_DOWNLOAD_PARALLELISM_KEY, parallelism);
+      }
+    }
+    long downloadChunkSize = DEFAULT_DOWNLOAD_CHUNK_SIZE;
+    if (ensureContextProp(cc, WORKSPACE_DOWNLOAD_CHUNK_SIZE_KEY)) {
+      String chunkSize = cc.getBundleContext().getProperty(WORKSPACE_DOWNLOAD_CHUNK_SIZE_KEY);
+      try {
+        downloadChunkSize = Math.max(1L, Long.parseLong(chunkSize.trim()));
+      } catch (NumberFormatException e) {
+        logger.warn("Invalid configuration for workspace download chunk size ({}={})",
+                WORKSPACE_DOWNLOAD_CHUNK_SIZE_KEY, chunkSize);
+      }
+    }
+    if (downloadParallelism > 1) {
+      logger.info("Downloading files larger than {} bytes using {} parallel range requests", downloadChunkSize,
+              downloadParallelism);
+      downloadExecutor = Executors.newFixedThreadPool(downloadParallelism);
+      rangedDownloader = new RangedDownloader(trustedHttpClient, downloadExecutor, downloadChunkSize);
+    }
+
     registeredMXBean = JmxUtil.registerMXBean(workspaceBean, JMX_WORKSPACE_TYPE);
 
     // Start cleanup scheduler if we have sensible cleanup values:
@@ -250,12 +355,88 @@ public final class WorkspaceImpl implements Workspace {
     if (workspaceCleaner != null) {
       workspaceCleaner.shutdown();
     }
+    if (downloadExecutor != null) {
+      downloadExecutor.shutdownNow();
+    }
+  }
+
+  /**
+   * Starts tracking the files which are already in the workspace, in the order of their modification dates. Files
+   * which are hard links into the working file repository are not tracked since evicting them frees no space.
+   */
+  private void trackExistingFiles() {
+    final File root = new File(wsRoot);
+    List<File> files = new ArrayList<File>(FileUtils.listFiles(root, null, true));
+    Collections.sort(files, new Comparator<File>() {
+      @Override
+      public int compare(File a, File b) {
+        return Long.compare(a.lastModified(), b.lastModified());
+      }
+    });
+    for (File file : files) {
+      if (file.getName().startsWith("."))
+        continue;
+      if (linkingEnabled && isInWorkingFileRepositoryPath(root, file))
+        continue;
+      cache.access(file, file.lastModified());
+    }
+    logger.info("Tracking {} files with {} bytes in the workspace", cache.getFileCount(), cache.getSize());
+  }
+
+  /** Returns whether <code>file</code> mirrors a media package element or collection file. */
+  private static boolean isInWorkingFileRepositoryPath(File root, File file) {
+    return FileSupport.isParent(new File(root, WorkingFileRepository.MEDIAPACKAGE_PATH_PREFIX), file)
+            || FileSupport.isParent(new File(root, WorkingFileRepository.COLLECTION_PATH_PREFIX), file);
+  }
+
+  /** Evicts the least recently used files if the workspace has grown too large. */
+  private void evictIfNecessary() {
+    if (cache.isOverCapacity())
+      cache.evict(System.currentTimeMillis());
   }
 
   @Override
   public File get(final URI uri) throws NotFoundException, IOException {
     final File inWs = toWorkspaceFile(uri);
+    final String key = inWs.getAbsolutePath();
+
+    // Only one caller fetches a file, concurrent callers wait for it to be done
+    final InFlightDownload download = new InFlightDownload(inWs);
+    final InFlightDownload inFlight = downloads.putIfAbsent(key, download);
+    if (inFlight != null) {
+      logger.debug("Waiting for {} to be fetched by another caller", uri);
+      final File file = inFlight.await();
+      cache.hit();
+      cache.pin(file, System.currentTimeMillis());
+      return new File(file.getAbsolutePath());
+    }
+    try {
+      final File file = fetch(uri, inWs, download);
+      download.complete();
+      // The file is in use until the caller deletes it
+      cache.pin(file, System.currentTimeMillis());
+      return file;
+    } catch (NotFoundException | IOException | RuntimeException e) {
+      download.fail(e);
+      throw e;
+    } finally {
+      downloads.remove(key, download);
+    }
+  }
+
+  @Override
+  public InputStream read(final URI uri) throws NotFoundException, IOException {
+    final InFlightDownload inFlight = downloads.get(toWorkspaceFile(uri).getAbsolutePath());
+    if (inFlight != null) {
+      logger.debug("Streaming {} while it is being fetched", uri);
+      return inFlight.openStream();
+    }
+    return new FileInputStream(get(uri));
+  }
 
+  /** Fetches <code>uri</code> into the workspace file <code>inWs</code> if it is missing or outdated. */
+  private File fetch(final URI uri, final File inWs, final InFlightDownload download) throws NotFoundException,
+          IOException {
     if (wfrRoot != null && wfrUrl != null) {
       if (uri.toString().startsWith(wfrUrl)) {
         final String localPath = uri.toString().substring(wfrUrl.length());
@@ -268,8 +449,17 @@ public final class WorkspaceImpl implements Workspace {
           if (workspaceFileLastModified < wfrCopy.lastModified()) {
             logger.debug("Replacing {} with an updated version from the file repository", inWs.getAbsolutePath());
             locked(inWs, copyOrLink(wfrCopy));
+            cache.miss();
           } else {
             logger.debug("{} is up to date", inWs);
+            cache.hit();
+          }
+          if (linkingEnabled) {
+            // Linked files don't take up any additional space
+            cache.remove(inWs);
+          } else {
+            cache.access(inWs, System.currentTimeMillis());
+            evictIfNecessary();
           }
           logger.debug("Getting {} directly from working file repository root at {}", uri, inWs);
           return new File(inWs.getAbsolutePath());
@@ -280,7 +470,15 @@ public final class WorkspaceImpl implements Workspace {
       }
     }
     // do HTTP transfer
-    return locked(inWs, downloadIfNecessary(uri));
+    final long modified = inWs.lastModified();
+    final File downloaded = locked(inWs, downloadIfNecessary(uri, download));
+    if (modified != 0L && downloaded.lastModified() == modified)
+      cache.hit();
+    else
+      cache.miss();
+    cache.access(downloaded, System.currentTimeMillis());
+    evictIfNecessary();
+    return downloaded;
   }
 
   /** Copy or link <code>src</code> to <code>dst</code>. */
@@ -310,8 +508,8 @@ public final class WorkspaceImpl implements Workspace {
    * @throws IOException
    *           in case of any IO related issues
    */
-  private Either<String, Option<File>> handleDownloadResponse(HttpResponse response, URI src, File dst)
-          throws IOException {
+  private Either<String, Option<File>> handleDownloadResponse(HttpResponse response, URI src, File dst,
+          InFlightDownload download) throws IOException {
     final String url = src.toString();
     final int status = response.getStatusLine().getStatusCode();
     switch (status) {
@@ -325,7 +523,7 @@ public final class WorkspaceImpl implements Workspace {
         return left(response.getHeaders("token")[0].getValue());
       case HttpServletResponse.SC_OK:
         logger.info("Downloading {} to {}", url, dst.getAbsolutePath());
-        return right(some(downloadTo(response, dst)));
+        return right(some(downloadTo(response, dst, download)));
       default:
         logger.warn(format("Received unexpected response status %s while trying to download from %s", status, url));
         FileUtils.deleteQuietly(dst);
@@ -334,14 +532,15 @@ public final class WorkspaceImpl implements Workspace {
   }
 
   /**
-   * {@link #handleDownloadResponse(org.apache.http.HttpResponse, java.net.URI, java.io.File)} as a function.
-   * <code>(URI, dst_file) -> HttpResponse -> Either token (Option File)</code>
+   * {@link #handleDownloadResponse(HttpResponse, URI, File, InFlightDownload)} as a function.
+   * <code>(URI, dst_file, download) -> HttpResponse -> Either token (Option File)</code>
    */
-  private Function<HttpResponse, Either<String, Option<File>>> handleDownloadResponse(final URI src, final File dst) {
+  private Function<HttpResponse, Either<String, Option<File>>> handleDownloadResponse(final URI src, final File dst,
+          final InFlightDownload download) {
     return new Function.X<HttpResponse, Either<String, Option<File>>>() {
       @Override
       public Either<String, Option<File>> xapply(HttpResponse response) throws Exception {
-        return handleDownloadResponse(response, src, dst);
+        return handleDownloadResponse(response, src, dst, download);
       }
     };
   }
@@ -366,12 +565,18 @@ public final class WorkspaceImpl implements Workspace {
    *
    * @return the file
    */
-  private File downloadIfNecessary(final URI src, final File dst) throws IOException, NotFoundException {
+  private File downloadIfNecessary(final URI src, final File dst, final InFlightDownload download)
+          throws IOException, NotFoundException {
+    // Large files are downloaded in ranges, unless there is a complete copy whose version needs to be checked first
+    if (rangedDownloader != null && (dst.length() == 0 || RangedDownloader.isIncomplete(dst))) {
+      if (rangedDownloader.download(src, dst, download))
+        return dst;
+    }
     HttpGet get = createGetRequest(src, dst);
     while (true) {
       // run the http request and handle its response
       final Either<Exception, Either<String, Option<File>>> result = trustedHttpClient
-              .<Either<String, Option<File>>> runner(get).run(handleDownloadResponse(src, dst));
+              .<Either<String, Option<File>>> runner(get).run(handleDownloadResponse(src, dst, download));
       // handle to result of response processing
       // right: there's an expected result
       for (Either<String, Option<File>> a : result.right()) {
@@ -400,24 +605,25 @@ public final class WorkspaceImpl implements Workspace {
   }
 
   /**
-   * {@link #downloadIfNecessary(java.net.URI, java.io.File)} as a function.
-   * <code>src_uri -&gt; dst_file -&gt; dst_file</code>
+   * {@link #downloadIfNecessary(URI, File, InFlightDownload)} as a function.
+   * <code>(src_uri, download) -&gt; dst_file -&gt; dst_file</code>
    */
-  private Function<File, File> downloadIfNecessary(final URI src) {
+  private Function<File, File> downloadIfNecessary(final URI src, final InFlightDownload download) {
     return new Function.X<File, File>() {
       @Override
       public File xapply(final File dst) throws Exception {
-        return downloadIfNecessary(src, dst);
+        return downloadIfNecessary(src, dst, download);
       }
     };
   }
 
   /**
-   * Download content of an HTTP response to a file.
+   * Download content of an HTTP response to a file, reporting the progress to concurrent readers.
    *
    * @return the destination file
    */
-  private static File downloadTo(final HttpResponse response, final File dst) throws IOException {
+  private static File downloadTo(final HttpResponse response, final File dst, final InFlightDownload download)
+          throws IOException {
     // ignore return value
     dst.createNewFile();
     InputStream in = null;
@@ -425,7 +631,14 @@ public final class WorkspaceImpl implements Workspace {
     try {
       in = response.getEntity().getContent();
       out = new FileOutputStream(dst);
-      IOUtils.copyLarge(in, out);
+      final byte[] buffer = new byte[DOWNLOAD_BUFFER_SIZE];
+      long written = 0L;
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+        written += read;
+        download.progress(written);
+      }
     } finally {
       IoSupport.closeQuietly(in);
       IoSupport.closeQuietly(out);
@@ -488,6 +701,7 @@ public final class WorkspaceImpl implements Workspace {
       synchronized (lock) {
         File mpElementDir = f.getParentFile();
         FileUtils.forceDelete(f);
+        cache.remove(f);
         FileSupport.delete(mpElementDir);
         // Also delete mediapackage itself when empty
         FileSupport.delete(mpElementDir.getParentFile());
@@ -502,6 +716,7 @@ public final class WorkspaceImpl implements Workspace {
     // delete locally
     final File f = workspaceFile(WorkingFileRepository.MEDIAPACKAGE_PATH_PREFIX, mediaPackageID, mediaPackageElementID);
     FileUtils.deleteQuietly(f);
+    cache.removeAll(f);
     FileSupport.delete(f.getParentFile());
     // delete in WFR
     wfr.delete(mediaPackageID, mediaPackageElementID);
@@ -642,6 +857,7 @@ public final class WorkspaceImpl implements Workspace {
       FileUtils.forceMkdir(copy.getParentFile());
       FileUtils.deleteQuietly(copy);
       FileUtils.moveFile(original, copy);
+      cache.remove(original);
       FileSupport.delete(original.getParentFile());
     }
     // move in WFR
@@ -662,6 +878,7 @@ public final class WorkspaceImpl implements Workspace {
     final File f = workspaceFile(WorkingFileRepository.COLLECTION_PATH_PREFIX, collectionId,
             PathSupport.toSafeName(fileName));
     FileUtils.deleteQuietly(f);
+    cache.remove(f);
     FileSupport.delete(f.getParentFile());
     // delete in WFR
     try {
@@ -758,6 +975,26 @@ public final class WorkspaceImpl implements Workspace {
     return wfr.getBaseUri();
   }
 
+  /** Returns the number of requested files that were present in the workspace and up to date. */
+  public long getCacheHits() {
+    return cache.getHits();
+  }
+
+  /** Returns the number of requested files that had to be fetched into the workspace. */
+  public long getCacheMisses() {
+    return cache.getMisses();
+  }
+
+  /** Returns the number of files that have been evicted from the workspace to keep it below its maximum size. */
+  public long getCacheEvictions() {
+    return cache.getEvictions();
+  }
+
+  /** Returns the size in bytes of the files that are subject to eviction. */
+  public long getCacheSize() {
+    return cache.getSize();
+  }
+
   public void setRepository(WorkingFileRepository repo) {
     this.wfr = repo;
     if (repo instanceof PathMappable) {
@@ -829,6 +1066,7 @@ public final class WorkspaceImpl implements Workspace {
     for (File file : filesToDelete) {
       logger.info("Workspace cleanup: Deleting {}", file);
       FileSupport.deleteQuietly(file);
+      cache.remove(file);
       FileSupport.deleteHierarchyIfEmpty(rootDirecotry, file.getParentFile());
     }
     logger.debug("Finished cleanup of workspace!");
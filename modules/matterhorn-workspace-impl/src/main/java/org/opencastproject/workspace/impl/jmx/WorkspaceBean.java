@@ -22,13 +22,13 @@
 package org.opencastproject.workspace.impl.jmx;
 
 import org.opencastproject.util.data.Option.Match;
-import org.opencastproject.workspace.api.Workspace;
+import org.opencastproject.workspace.impl.WorkspaceImpl;
 
 public class WorkspaceBean implements WorkspaceMXBean {
 
-  private final Workspace workspace;
+  private final WorkspaceImpl workspace;
 
-  public WorkspaceBean(Workspace workspace) {
+  public WorkspaceBean(WorkspaceImpl workspace) {
     this.workspace = workspace;
   }
 
@@ -86,4 +86,36 @@ public class WorkspaceBean implements WorkspaceMXBean {
     });
   }
 
+  /**
+   * @see org.opencastproject.workspace.impl.jmx.WorkspaceMXBean#getCacheHits()
+   */
+  @Override
+  public long getCacheHits() {
+    return workspace.getCacheHits();
+  }
+
+  /**
+   * @see org.opencastproject.workspace.impl.jmx.WorkspaceMXBean#getCacheMisses()
+   */
+  @Override
+  public long getCacheMisses() {
+    return workspace.getCacheMisses();
+  }
+
+  /**
+   * @see org.opencastproject.workspace.impl.jmx.WorkspaceMXBean#getCacheEvictions()
+   */
+  @Override
+  public long getCacheEvictions() {
+    return workspace.getCacheEvictions();
+  }
+
+  /**
+   * @see org.opencastproject.workspace.impl.jmx.WorkspaceMXBean#getCacheSize()
+   */
+  @Override
+  public long getCacheSize() {
+    return workspace.getCacheSize();
+  }
+
 }
@@ -47,4 +47,32 @@ public interface WorkspaceMXBean {
    */
   long getTotalSpace();
 
+  /**
+   * Gets the number of requested files that were present in the workspace and up to date
+   *
+   * @return the number of cache hits
+   */
+  long getCacheHits();
+
+  /**
+   * Gets the number of requested files that had to be fetched into the workspace
+   *
+   * @return the number of cache misses
+   */
+  long getCacheMisses();
+
+  /**
+   * Gets the number of files that have been evicted to keep the workspace below its maximum size
+   *
+   * @return the number of evicted files
+   */
+  long getCacheEvictions();
+
+  /**
+   * Gets the size of the workspace files that are subject to eviction in bytes
+   *
+   * @return the size in bytes
+   */
+  long getCacheSize();
+
 }
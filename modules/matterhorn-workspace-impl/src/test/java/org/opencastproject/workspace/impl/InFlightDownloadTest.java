@@ -0,0 +1,135 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.workspace.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import org.opencastproject.util.NotFoundException;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class InFlightDownloadTest {
+
+  private File root;
+  private File file;
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() throws Exception {
+    root = new File("target" + File.separator + "in-flight-download-test");
+    FileUtils.forceMkdir(root);
+    file = new File(root, "track.mp4");
+    executor = Executors.newCachedThreadPool();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    executor.shutdownNow();
+    FileUtils.deleteDirectory(root);
+  }
+
+  @Test
+  public void testStreamDeliversPrefixWhileDownloading() throws Exception {
+    final InFlightDownload download = new InFlightDownload(file);
+    final InputStream in = download.openStream();
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      raf.write(new byte[] { 1, 2, 3, 4 });
+      download.progress(2);
+      byte[] buffer = new byte[4];
+      // Only the final bytes are delivered
+      assertEquals(2, in.read(buffer));
+      assertArrayEquals(new byte[] { 1, 2, 0, 0 }, buffer);
+
+      // Reading further blocks until more bytes are final
+      Future<byte[]> rest = executor.submit(new Callable<byte[]>() {
+        @Override
+        public byte[] call() throws Exception {
+          return IOUtils.toByteArray(in);
+        }
+      });
+      Thread.sleep(100);
+      raf.write(new byte[] { 5 });
+      download.complete();
+      assertArrayEquals(new byte[] { 3, 4, 5 }, rest.get(10, TimeUnit.SECONDS));
+    } finally {
+      raf.close();
+      in.close();
+    }
+  }
+
+  @Test
+  public void testWaitingCallersGetTheFile() throws Exception {
+    final InFlightDownload download = new InFlightDownload(file);
+    Future<File> waiting = executor.submit(new Callable<File>() {
+      @Override
+      public File call() throws Exception {
+        return download.await();
+      }
+    });
+    FileUtils.writeStringToFile(file, "content");
+    download.complete();
+    assertSame(file, waiting.get(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testFailureIsPassedOn() throws Exception {
+    InFlightDownload download = new InFlightDownload(file);
+    download.fail(new NotFoundException());
+    try {
+      download.await();
+      fail("The file should not have been found");
+    } catch (NotFoundException e) {
+      // expected
+    }
+
+    download = new InFlightDownload(file);
+    InputStream in = download.openStream();
+    download.fail(new IOException("Connection reset"));
+    try {
+      in.read();
+      fail("Reading should fail");
+    } catch (IOException e) {
+      // expected
+    } finally {
+      in.close();
+    }
+  }
+
+}
@@ -0,0 +1,203 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.workspace.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.opencastproject.security.api.TrustedHttpClient;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class RangedDownloaderTest {
+
+  private static final int CHUNK_SIZE = 1000;
+
+  private final URI src = URI.create("http://localhost:8080/files/mediapackage/mp/track/track.mp4");
+
+  private File root;
+  private File dst;
+  private ExecutorService executor;
+
+  /** The content served by the mocked server */
+  private byte[] content;
+  private String etag;
+  private boolean acceptRanges;
+  /** The number of range requests the mocked server fails before answering properly */
+  private int failures;
+  /** The ranges requested from the mocked server */
+  private final List<String> ranges = Collections.synchronizedList(new ArrayList<String>());
+
+  @Before
+  public void setUp() throws Exception {
+    root = new File("target" + File.separator + "ranged-downloader-test");
+    FileUtils.forceMkdir(root);
+    dst = new File(root, "track.mp4");
+    executor = Executors.newFixedThreadPool(4);
+    content = new byte[3500];
+    for (int i = 0; i < content.length; i++) {
+      content[i] = (byte) i;
+    }
+    etag = DigestUtils.md5Hex(content);
+    acceptRanges = true;
+    failures = 0;
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    executor.shutdownNow();
+    FileUtils.deleteDirectory(root);
+  }
+
+  private RangedDownloader createDownloader() throws Exception {
+    TrustedHttpClient client = EasyMock.createNiceMock(TrustedHttpClient.class);
+    EasyMock.expect(client.execute(EasyMock.anyObject(HttpUriRequest.class))).andAnswer(new IAnswer<HttpResponse>() {
+      @Override
+      public HttpResponse answer() throws Throwable {
+        return serve((HttpUriRequest) EasyMock.getCurrentArguments()[0]);
+      }
+    }).anyTimes();
+    EasyMock.replay(client);
+    return new RangedDownloader(client, executor, CHUNK_SIZE);
+  }
+
+  /** Answers requests like the working file repository does. */
+  private synchronized HttpResponse serve(HttpUriRequest request) throws IOException {
+    if ("HEAD".equals(request.getMethod())) {
+      HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+      response.setHeader("Content-Length", Integer.toString(content.length));
+      response.setHeader("ETag", "\"" + etag + "\"");
+      if (acceptRanges)
+        response.setHeader("Accept-Ranges", "bytes");
+      return response;
+    }
+    if (failures > 0) {
+      failures--;
+      throw new IOException("Connection reset");
+    }
+    String range = request.getFirstHeader("Range").getValue().substring("bytes=".length());
+    ranges.add(range);
+    int start = Integer.parseInt(range.split("-")[0]);
+    int end = Integer.parseInt(range.split("-")[1]);
+    HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 206, "Partial Content");
+    response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+    response.setHeader("ETag", "\"" + etag + "\"");
+    response.setEntity(new ByteArrayEntity(Arrays.copyOfRange(content, start, end + 1)));
+    return response;
+  }
+
+  @Test
+  public void testDownloadInRanges() throws Exception {
+    assertTrue(createDownloader().download(src, dst, new InFlightDownload(dst)));
+    assertArrayEquals(content, FileUtils.readFileToByteArray(dst));
+    assertEquals(4, ranges.size());
+    assertTrue(ranges.contains("3000-3499"));
+    assertFalse(RangedDownloader.isIncomplete(dst));
+  }
+
+  @Test
+  public void testFailedRangesAreRetried() throws Exception {
+    failures = 2;
+    assertTrue(createDownloader().download(src, dst, new InFlightDownload(dst)));
+    assertArrayEquals(content, FileUtils.readFileToByteArray(dst));
+  }
+
+  @Test
+  public void testResumeInterruptedDownload() throws Exception {
+    // Every range fails, but the first one is requested before the server goes down
+    failures = Integer.MAX_VALUE;
+    RangedDownloader downloader = createDownloader();
+    try {
+      downloader.download(src, dst, new InFlightDownload(dst));
+      fail("The download should have failed");
+    } catch (IOException e) {
+      assertTrue(RangedDownloader.isIncomplete(dst));
+    }
+
+    // Pretend the first two ranges made it to disk
+    RandomAccessFile raf = new RandomAccessFile(dst, "rw");
+    try {
+      raf.write(content, 0, 2 * CHUNK_SIZE);
+    } finally {
+      raf.close();
+    }
+    FileUtils.writeStringToFile(new File(root, dst.getName() + RangedDownloader.JOURNAL_EXTENSION), "etag=" + etag
+            + "\nlength=" + content.length + "\nchunk.size=" + CHUNK_SIZE + "\ncompleted=0,1\n");
+
+    failures = 0;
+    ranges.clear();
+    assertTrue(downloader.download(src, dst, new InFlightDownload(dst)));
+    assertArrayEquals(content, FileUtils.readFileToByteArray(dst));
+    assertEquals(2, ranges.size());
+    assertTrue(ranges.containsAll(Arrays.asList("2000-2999", "3000-3499")));
+    assertFalse(RangedDownloader.isIncomplete(dst));
+  }
+
+  @Test
+  public void testCorruptDownloadIsDiscarded() throws Exception {
+    etag = DigestUtils.md5Hex("something else");
+    try {
+      createDownloader().download(src, dst, new InFlightDownload(dst));
+      fail("The download should have failed");
+    } catch (IOException e) {
+      assertFalse(dst.exists());
+      assertFalse(RangedDownloader.isIncomplete(dst));
+    }
+  }
+
+  @Test
+  public void testFallbackToSingleRequest() throws Exception {
+    acceptRanges = false;
+    assertFalse(createDownloader().download(src, dst, new InFlightDownload(dst)));
+
+    acceptRanges = true;
+    content = new byte[CHUNK_SIZE];
+    assertFalse(createDownloader().download(src, dst, new InFlightDownload(dst)));
+    assertTrue(ranges.isEmpty());
+  }
+
+}
@@ -0,0 +1,187 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.workspace.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+
+public class WorkspaceCacheTest {
+
+  private static final long MINUTE = 60L * 1000L;
+
+  private File root;
+  private WorkspaceCache cache;
+
+  @Before
+  public void setUp() throws Exception {
+    root = new File("target" + File.separator + "workspace-cache-test");
+    FileUtils.forceMkdir(root);
+    // Evict above 1000 bytes down to 500 bytes, files need to be idle for 10 minutes
+    cache = new WorkspaceCache(root, 1000L, 50, 10L * MINUTE);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    FileUtils.deleteDirectory(root);
+  }
+
+  private File createFile(String name, int size) throws Exception {
+    File file = new File(root, "host" + File.separator + name);
+    FileUtils.writeByteArrayToFile(file, new byte[size]);
+    return file;
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsedFiles() throws Exception {
+    File a = createFile("a", 400);
+    File b = createFile("b", 400);
+    File c = createFile("c", 400);
+    cache.access(a, 0L);
+    cache.access(b, MINUTE);
+    // Using a again makes b the least recently used file
+    cache.access(a, 2L * MINUTE);
+    assertFalse(cache.isOverCapacity());
+    cache.access(c, 3L * MINUTE);
+    assertTrue(cache.isOverCapacity());
+
+    assertEquals(2, cache.evict(60L * MINUTE));
+    assertFalse(b.exists());
+    assertFalse(a.exists());
+    assertTrue(c.exists());
+    assertEquals(400L, cache.getSize());
+    assertEquals(2L, cache.getEvictions());
+    assertFalse(cache.isOverCapacity());
+  }
+
+  @Test
+  public void testRecentlyUsedFilesAreKept() throws Exception {
+    File a = createFile("a", 600);
+    File b = createFile("b", 600);
+    cache.access(a, 0L);
+    cache.access(b, 10L * MINUTE);
+
+    assertEquals(0, cache.evict(5L * MINUTE));
+    assertTrue(a.exists());
+    assertTrue(b.exists());
+
+    assertEquals(1, cache.evict(15L * MINUTE));
+    assertFalse(a.exists());
+    assertTrue(b.exists());
+  }
+
+  @Test
+  public void testLockedFilesAreSkipped() throws Exception {
+    File a = createFile("a", 600);
+    File b = createFile("b", 600);
+    cache.access(a, 0L);
+    cache.access(b, 0L);
+
+    RandomAccessFile raf = new RandomAccessFile(a, "rw");
+    try {
+      FileLock lock = raf.getChannel().lock();
+      try {
+        assertEquals(1, cache.evict(60L * MINUTE));
+      } finally {
+        lock.release();
+      }
+    } finally {
+      raf.close();
+    }
+    assertTrue(a.exists());
+    assertFalse(b.exists());
+    assertEquals(600L, cache.getSize());
+  }
+
+  @Test
+  public void testPinnedFilesAreSkipped() throws Exception {
+    File a = createFile("a", 600);
+    File b = createFile("b", 600);
+    cache.access(a, 0L);
+    cache.access(b, 0L);
+    // a has been handed out to a job that is still working on it
+    cache.pin(a, 0L);
+
+    assertEquals(1, cache.evict(60L * MINUTE));
+    assertTrue(a.exists());
+    assertFalse(b.exists());
+
+    // Deleting the file releases the pin
+    cache.remove(a);
+    cache.access(a, 0L);
+    cache.access(createFile("c", 300), 0L);
+    assertEquals(1, cache.evict(60L * MINUTE));
+    assertFalse(a.exists());
+  }
+
+  @Test
+  public void testPinsExpire() throws Exception {
+    File a = createFile("a", 600);
+    File b = createFile("b", 600);
+    cache.access(a, 0L);
+    cache.access(b, 0L);
+    cache.pin(a, 0L);
+    cache.pin(b, 30L * MINUTE);
+
+    assertEquals(0, cache.evict(60L * MINUTE));
+    assertEquals(1, cache.evict(WorkspaceCache.MAX_PIN_TIME));
+    assertFalse(a.exists());
+    assertTrue(b.exists());
+  }
+
+  @Test
+  public void testRemovedFilesAreNotEvicted() throws Exception {
+    File a = createFile("a", 600);
+    File b = createFile("b", 600);
+    cache.access(a, 0L);
+    cache.access(b, 0L);
+    cache.removeAll(a.getParentFile());
+
+    assertEquals(0L, cache.getSize());
+    assertFalse(cache.isOverCapacity());
+    assertEquals(0, cache.evict(60L * MINUTE));
+    assertTrue(a.exists());
+  }
+
+  @Test
+  public void testUnlimitedSize() throws Exception {
+    cache = new WorkspaceCache(root, 0L, 50, 0L);
+    cache.access(createFile("a", 2000), 0L);
+    cache.miss();
+    cache.hit();
+
+    assertEquals(0L, cache.getSize());
+    assertFalse(cache.isOverCapacity());
+    assertEquals(1L, cache.getHits());
+    assertEquals(1L, cache.getMisses());
+  }
+
+}